@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.helm.chemtoolkit.Attachment;
+import org.helm.chemtoolkit.AttachmentList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code AttachmentListBenchmark} measures copying and reading the attachment lists of the corpus monomers, as done by
+ * {@code getAttachments} and {@code setAttachments}. Run it with {@code -prof gc} to see the allocation per operation.
+ * The legacy benchmarks copy like the {@code ArrayList} based list of release 1.2.4, which cloned every attachment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttachmentListBenchmark {
+
+  private AttachmentList[] lists;
+
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    List<String> corpus = Corpus.extendedSmiles();
+    lists = new AttachmentList[corpus.size()];
+    for (int i = 0; i < lists.length; i++) {
+      lists[i] = Corpus.attachments(corpus.get(i));
+    }
+  }
+
+  private AttachmentList next() {
+    AttachmentList result = lists[cursor];
+    cursor = (cursor + 1) % lists.length;
+    return result;
+  }
+
+  @Benchmark
+  public AttachmentList cloneList() {
+    return next().cloneList();
+  }
+
+  @Benchmark
+  public List<Attachment> cloneListLegacy() {
+    AttachmentList source = next();
+    List<Attachment> cloned = new ArrayList<Attachment>();
+    for (int i = 0; i < source.size(); i++) {
+      cloned.add(source.peek(i).cloneAttachment());
+    }
+    Collections.sort(cloned);
+    return cloned;
+  }
+
+  /**
+   * copy and read every label, as a merge does with the attachments of its inputs
+   */
+  @Benchmark
+  public int cloneListAndPeek() {
+    AttachmentList copy = next().cloneList();
+    int length = 0;
+    for (int i = 0; i < copy.size(); i++) {
+      length += copy.peek(i).getLabel().length();
+    }
+    return length;
+  }
+
+  @Benchmark
+  public int cloneListAndIterate() {
+    AttachmentList copy = next().cloneList();
+    int length = 0;
+    for (Attachment attachment : copy) {
+      length += attachment.getLabel().length();
+    }
+    return length;
+  }
+
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.benchmark;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+import org.helm.chemtoolkit.Attachment;
+import org.helm.chemtoolkit.AttachmentList;
+import org.helm.chemtoolkit.StructureReader;
+
+/**
+ * {@code Corpus} monomer structures bundled with the benchmarks, read from {@code corpus/monomers.smi} (HELM extended
+ * SMILES, one per line) and {@code corpus/monomers.sdf} (molfiles with R# atoms).
+ */
+public final class Corpus {
+
+  public static final String SMILES_RESOURCE = "corpus/monomers.smi";
+
+  public static final String MOLFILE_RESOURCE = "corpus/monomers.sdf";
+
+  private Corpus() {
+  }
+
+  /**
+   * @return extended smiles of all corpus monomers
+   * @throws IOException if the resource can not be read
+   */
+  public static List<String> extendedSmiles() throws IOException {
+    return read(SMILES_RESOURCE, StType.SMILES);
+  }
+
+  /**
+   * @return molfiles of all corpus monomers
+   * @throws IOException if the resource can not be read
+   */
+  public static List<String> molfiles() throws IOException {
+    return read(MOLFILE_RESOURCE, StType.MOLFILE);
+  }
+
+  /**
+   * builds the attachment list of a monomer, one leaving group per R-group label of its extended smiles
+   *
+   * @param extendedSmiles monomer smiles with {@code _Rn} labels
+   * @return attachments, R1 is capped with hydrogen, every other R-group with hydroxy
+   */
+  public static AttachmentList attachments(String extendedSmiles) {
+    AttachmentList attachments = new AttachmentList();
+    int index = extendedSmiles.indexOf("_R");
+    while (index >= 0) {
+      int end = index + 2;
+      while (end < extendedSmiles.length() && Character.isDigit(extendedSmiles.charAt(end))) {
+        end++;
+      }
+      String label = extendedSmiles.substring(index + 1, end);
+      if ("R1".equals(label)) {
+        attachments.add(new Attachment(label + "-H", label, "H", "[*][H] |$_" + label + ";$|"));
+      } else {
+        attachments.add(new Attachment(label + "-OH", label, "OH", "O[*] |$;_" + label + "$|"));
+      }
+      index = extendedSmiles.indexOf("_R", end);
+    }
+    return attachments;
+  }
+
+  private static List<String> read(String resource, StType type) throws IOException {
+    List<String> result = new ArrayList<String>();
+    ClassLoader loader = Corpus.class.getClassLoader();
+    if (loader.getResource(resource) == null) {
+      throw new IOException("Corpus resource not found: " + resource);
+    }
+    try (StructureReader reader =
+        new StructureReader(new InputStreamReader(loader.getResourceAsStream(resource), StandardCharsets.UTF_8),
+            type)) {
+      String record;
+      while ((record = reader.next()) != null) {
+        result.add(record);
+      }
+    }
+    return result;
+  }
+
+}
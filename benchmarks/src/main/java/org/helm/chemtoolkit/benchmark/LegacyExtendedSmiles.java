@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@code LegacyExtendedSmiles} regex based {@code convertExtendedSmiles} of release 1.2.4, kept as the baseline of
+ * {@link ManipulatorBenchmark#convertExtendedSmilesLegacy()}. It compiles both patterns on every call like the
+ * original; do not use it outside of the benchmarks.
+ */
+final class LegacyExtendedSmiles {
+
+  private LegacyExtendedSmiles() {
+  }
+
+  /**
+   * @param data extended smiles
+   * @return smiles with atom mappings
+   */
+  static String convert(String data) {
+    if (data != null) {
+      Pattern pattern = Pattern.compile("\\[\\*\\]|\\*");
+      Matcher matcher = pattern.matcher(data);
+      if (matcher != null) {
+        String smiles = data.split("\\|")[0];
+        List<Integer> rgroupInformation = extractRgroups(data);
+        StringBuilder sb = new StringBuilder();
+        int start = 0;
+        int index = 0;
+        String rGroup = "";
+        while (matcher.find() && rgroupInformation.size() > 0) {
+          rGroup = smiles.substring(start, matcher.end());
+          rGroup = rGroup.replace(matcher.group(), "[*:" + rgroupInformation.get(index) + "]");
+          sb.append(rGroup);
+          index++;
+          start = matcher.end();
+        }
+        if (start < smiles.length()) {
+          sb.append(smiles.substring(start));
+        }
+        return sb.toString();
+      }
+    }
+    return data;
+  }
+
+  private static List<Integer> extractRgroups(String data) {
+    Pattern pattern = Pattern.compile("R[1-9]\\d*");
+    Matcher matcher = pattern.matcher(data);
+    List<Integer> listValues = new ArrayList<Integer>();
+
+    while (matcher.find()) {
+      listValues.add(Integer.parseInt(matcher.group().split("R")[1]));
+    }
+    return listValues;
+  }
+
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator;
+import org.helm.chemtoolkit.AbstractChemistryManipulator.OutputType;
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+import org.helm.chemtoolkit.AbstractMolecule;
+import org.helm.chemtoolkit.AssemblyPlan;
+import org.helm.chemtoolkit.ManipulatorFactory;
+import org.helm.chemtoolkit.MoleculeInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code ManipulatorBenchmark} measures the public operations of {@link AbstractChemistryManipulator} on the bundled
+ * monomer corpus. The backend is chosen by class name with {@code -p backend=<class>} and built through
+ * {@link ManipulatorFactory}, its jar has to be on the benchmark classpath. The default is the pure Java reference
+ * backend, which can not render, so run it with {@code -e render}.
+ * <p>
+ * Every invocation processes the next structure of the corpus, so the scores are averages over all monomers. The
+ * merge and assemble benchmarks include cloning their input monomers; {@link #cloneDimer()} and
+ * {@link #cloneChain()} measure the cloning alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManipulatorBenchmark {
+
+  @Param("org.helm.chemtoolkit.simple.SimpleManipulator")
+  public String backend;
+
+  @Param("10")
+  public int chainLength;
+
+  /** sequence passed to {@code renderSequence}, the 20 standard amino acids */
+  @Param("ACDEFGHIKLMNPQRSTVWY")
+  public String sequence;
+
+  private AbstractChemistryManipulator manipulator;
+
+  private String[] extendedSmiles;
+
+  private String[] smiles;
+
+  private String[] molfiles;
+
+  private String[] corpusMolfiles;
+
+  private AbstractMolecule[] molecules;
+
+  /** monomers carrying exactly R1 and R2, chained R2 to R1 */
+  private AbstractMolecule[] linearMonomers;
+
+  private int smilesCursor;
+
+  private int molfileCursor;
+
+  private int corpusMolfileCursor;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    manipulator = ManipulatorFactory.buildManipulator(backend);
+
+    List<String> corpus = Corpus.extendedSmiles();
+    extendedSmiles = corpus.toArray(new String[corpus.size()]);
+    smiles = new String[extendedSmiles.length];
+    molfiles = new String[extendedSmiles.length];
+    molecules = new AbstractMolecule[extendedSmiles.length];
+    List<AbstractMolecule> chainable = new ArrayList<AbstractMolecule>();
+    for (int i = 0; i < extendedSmiles.length; i++) {
+      smiles[i] = manipulator.convertExtendedSmiles(extendedSmiles[i]);
+      molfiles[i] = manipulator.convert(smiles[i], StType.SMILES);
+      molecules[i] = manipulator.getMolecule(extendedSmiles[i], Corpus.attachments(extendedSmiles[i]));
+      if (molecules[i].getAttachments().size() == 2 && extendedSmiles[i].contains("_R1")
+          && extendedSmiles[i].contains("_R2")) {
+        chainable.add(molecules[i]);
+      }
+    }
+    linearMonomers = chainable.toArray(new AbstractMolecule[chainable.size()]);
+
+    List<String> sdf = Corpus.molfiles();
+    corpusMolfiles = sdf.toArray(new String[sdf.size()]);
+  }
+
+  private int nextSmiles() {
+    int result = smilesCursor;
+    smilesCursor = (smilesCursor + 1) % smiles.length;
+    return result;
+  }
+
+  private int nextMolfile() {
+    int result = molfileCursor;
+    molfileCursor = (molfileCursor + 1) % molfiles.length;
+    return result;
+  }
+
+  private String nextCorpusMolfile() {
+    String result = corpusMolfiles[corpusMolfileCursor];
+    corpusMolfileCursor = (corpusMolfileCursor + 1) % corpusMolfiles.length;
+    return result;
+  }
+
+  @Benchmark
+  public String convertSmilesToMolfile() throws Exception {
+    return manipulator.convert(smiles[nextSmiles()], StType.SMILES);
+  }
+
+  @Benchmark
+  public String convertMolfileToSmiles() throws Exception {
+    return manipulator.convert(molfiles[nextMolfile()], StType.MOLFILE);
+  }
+
+  @Benchmark
+  public String convertCorpusMolfile() throws Exception {
+    return manipulator.convert(nextCorpusMolfile(), StType.MOLFILE);
+  }
+
+  @Benchmark
+  public String convertMolIntoSmilesWithAtomMapping() throws Exception {
+    return manipulator.convertMolIntoSmilesWithAtomMapping(nextCorpusMolfile());
+  }
+
+  @Benchmark
+  public String convertMolecule() throws Exception {
+    return manipulator.convertMolecule(molecules[nextSmiles()], StType.SMILES);
+  }
+
+  @Benchmark
+  public boolean isConnected() throws Exception {
+    return manipulator.isConnected(molfiles[nextMolfile()]);
+  }
+
+  @Benchmark
+  public boolean validateSMILES() {
+    return manipulator.validateSMILES(smiles[nextSmiles()]);
+  }
+
+  @Benchmark
+  public String canonicalize() throws Exception {
+    return manipulator.canonicalize(smiles[nextSmiles()]);
+  }
+
+  @Benchmark
+  public String convertExtendedSmiles() {
+    return manipulator.convertExtendedSmiles(extendedSmiles[nextSmiles()]);
+  }
+
+  /**
+   * baseline of {@link #convertExtendedSmiles()}, the regex implementation of release 1.2.4
+   */
+  @Benchmark
+  public String convertExtendedSmilesLegacy() {
+    return LegacyExtendedSmiles.convert(extendedSmiles[nextSmiles()]);
+  }
+
+  @Benchmark
+  public AbstractMolecule getMolecule() throws Exception {
+    int i = nextSmiles();
+    return manipulator.getMolecule(extendedSmiles[i], Corpus.attachments(extendedSmiles[i]));
+  }
+
+  @Benchmark
+  public MoleculeInfo getMoleculeInfo() throws Exception {
+    return manipulator.getMoleculeInfo(molecules[nextSmiles()]);
+  }
+
+  @Benchmark
+  public MoleculeInfo getSmilesMoleculeInfo() throws Exception {
+    return manipulator.getSmilesMoleculeInfo(smiles[nextSmiles()]);
+  }
+
+  @Benchmark
+  public byte[] renderMol() throws Exception {
+    return manipulator.renderMol(molfiles[nextMolfile()], OutputType.PNG, 300, 300, 0xFFFFFF);
+  }
+
+  @Benchmark
+  public byte[] renderSequence() throws Exception {
+    return manipulator.renderSequence(sequence, OutputType.PNG, 300, 300, 0xFFFFFF);
+  }
+
+  @Benchmark
+  public AbstractMolecule[] cloneDimer() throws Exception {
+    int i = nextSmiles() % linearMonomers.length;
+    return new AbstractMolecule[] {linearMonomers[i].cloneMolecule(),
+        linearMonomers[(i + 1) % linearMonomers.length].cloneMolecule()};
+  }
+
+  @Benchmark
+  public AbstractMolecule mergeDimer() throws Exception {
+    int i = nextSmiles() % linearMonomers.length;
+    AbstractMolecule first = linearMonomers[i].cloneMolecule();
+    AbstractMolecule second = linearMonomers[(i + 1) % linearMonomers.length].cloneMolecule();
+    return manipulator.merge(first, first.getRGroupAtom(2, true), second, second.getRGroupAtom(1, true));
+  }
+
+  @Benchmark
+  public AbstractMolecule[] cloneChain() throws Exception {
+    int start = nextSmiles();
+    AbstractMolecule[] result = new AbstractMolecule[chainLength];
+    for (int i = 0; i < chainLength; i++) {
+      result[i] = linearMonomers[(start + i) % linearMonomers.length].cloneMolecule();
+    }
+    return result;
+  }
+
+  @Benchmark
+  public AbstractMolecule assembleChain() throws Exception {
+    int start = nextSmiles();
+    AssemblyPlan plan = new AssemblyPlan();
+    for (int i = 0; i < chainLength; i++) {
+      plan.addMonomer(linearMonomers[(start + i) % linearMonomers.length].cloneMolecule());
+      if (i > 0) {
+        plan.connect(i - 1, 2, i, 1);
+      }
+    }
+    return manipulator.assemble(plan);
+  }
+
+}
@@ -17,8 +17,14 @@
 package org.helm.chemtoolkit;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,6 +42,11 @@ public abstract class AbstractChemistryManipulator {
 
   protected static final String SMILES_EXTENSION_SEPARATOR_REGEX = "\\|";
 
+  private static final Pattern ATOM_MAPPING_PATTERN = Pattern.compile("\\[\\*:([1-9]\\d*)\\]|\\[\\w+:([1-9]\\d*)");
+
+  /** context passed to the running merge with context, until the merge takes it */
+  private AssemblyContext mergeContext;
+
   /**
    * 
    * {@code StType} chemical notation type
@@ -82,7 +93,17 @@ public abstract class AbstractChemistryManipulator {
   
   public abstract String convertMolIntoSmilesWithAtomMapping(String molfile) throws CTKException;
   
-  public abstract boolean isConnected(String molfile) throws CTKException;
+  /**
+   * checks whether all atoms of a molfile are connected. Only the atom and bond blocks of the V2000 or V3000 molfile
+   * are scanned, no molecule is built.
+   * 
+   * @param molfile molfile
+   * @return true if the molfile has a single connected component or no atoms
+   * @throws CTKException if the molfile is invalid
+   */
+  public boolean isConnected(String molfile) throws CTKException {
+    return MolfileConnectivity.countComponents(molfile) <= 1;
+  }
   
   /**
    * convert input notation to another
@@ -100,50 +121,79 @@ public abstract class AbstractChemistryManipulator {
    * @param data chemical notation to convert
    * @return chemical notation
    */
-  public String convertExtendedSmiles(String data){
-	  if(data != null){
-	  Pattern pattern = Pattern.compile("\\[\\*\\]|\\*");
-	  Matcher matcher = pattern.matcher(data);
-	  	if(matcher  != null){
-	  		String smiles = data.split("\\|")[0];
-	  		List<Integer> rgroupInformation = extractRgroups(data);
-	  		StringBuilder sb = new StringBuilder();
-	  		int start = 0;
-	  		int index = 0;
-	  		String rGroup = "";
-	  		while(matcher.find() && rgroupInformation.size() > 0){
-	  			rGroup = smiles.substring(start, matcher.end());
-	  			rGroup = rGroup.replace(matcher.group(),  "[*:"  +rgroupInformation.get(index) + "]");
-	  			sb.append(rGroup);
-	  			index ++;
-	  			start = matcher.end();
-	  		}
-	  		if( start < smiles.length()){
-	  			sb.append(smiles.substring(start));
-	  		}
-	  		return sb.toString();
-	  	}
-	  }
-	  return data;
+  public String convertExtendedSmiles(String data) {
+    if (data == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder(data.length() + 16);
+    convertExtendedSmiles(data, sb);
+    return sb.toString();
   }
-  
+
   /**
-   * extract Rgroups from extended smiles
+   * convert extended smiles format to smiles with atom mappings and append the result to the given builder. The input
+   * is scanned once, without regular expressions or intermediate strings, so a builder reused between calls makes the
+   * conversion allocation free. Every {@code *} or {@code [*]} of the smiles part is replaced by {@code [*:n]}, where
+   * the n-th wildcard takes the n-th R-group label of the input; wildcards without a label are left unchanged.
+   * 
+   * @param data extended smiles to convert
+   * @param out builder the converted smiles is appended to
+   */
+  public void convertExtendedSmiles(CharSequence data, StringBuilder out) {
+    int smilesEnd = 0;
+    while (smilesEnd < data.length() && data.charAt(smilesEnd) != '|') {
+      smilesEnd++;
+    }
+
+    int label = nextRgroupLabel(data, 0);
+    int start = 0;
+    for (int i = 0; i < smilesEnd && label >= 0; i++) {
+      char c = data.charAt(i);
+      int end;
+      if (c == '*') {
+        end = i + 1;
+      } else if (c == '[' && i + 2 < smilesEnd && data.charAt(i + 1) == '*' && data.charAt(i + 2) == ']') {
+        end = i + 3;
+      } else {
+        continue;
+      }
+      out.append(data, start, i).append("[*:");
+      int digit = label + 1;
+      while (digit < data.length() && isDigit(data.charAt(digit))) {
+        out.append(data.charAt(digit));
+        digit++;
+      }
+      out.append(']');
+      label = nextRgroupLabel(data, digit);
+      start = end;
+      i = end - 1;
+    }
+    out.append(data, start, smilesEnd);
+  }
+
+  /**
+   * finds the next R-group label like R1 or R12 in the given extended smiles
    * 
    * @param data extended smiles
-   * @return List of Rgroups
-   */
-  private List<Integer> extractRgroups(String data){
-	  Pattern pattern = Pattern.compile("R[1-9]\\d*");
-	  Matcher matcher = pattern.matcher(data);
-	  List<Integer> listValues = new ArrayList<Integer>();
-	  
-	  while(matcher.find()){
-		listValues.add(Integer.parseInt(matcher.group().split("R")[1]));  
-	  }
-	  return listValues;
+   * @param from position to start the search at
+   * @return position of the 'R' of the label, -1 if there is no further label
+   */
+  private static int nextRgroupLabel(CharSequence data, int from) {
+    for (int i = from; i < data.length() - 1; i++) {
+      if (data.charAt(i) == 'R') {
+        char next = data.charAt(i + 1);
+        if (next >= '1' && next <= '9') {
+          return i;
+        }
+      }
+    }
+    return -1;
   }
-  
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
   /**
    * 
    * @param smiles to validate
@@ -161,6 +211,105 @@ public abstract class AbstractChemistryManipulator {
 
   public abstract MoleculeInfo getMoleculeInfo(AbstractMolecule container) throws CTKException;
 
+  /**
+   * returns molecule info like {@link #getMoleculeInfo(AbstractMolecule)} and keeps it with the molecule. Merges and
+   * assemblies of molecules with a kept info derive the info of the result from their inputs, so it is not calculated
+   * again for the whole result. The info is kept only for molecules whose implementation reports all structure
+   * changes, see {@link AbstractMolecule#reportsStructureChanges()}; for others it is calculated on every call.
+   * 
+   * @param container input AbstractMolecule
+   * @return org.helm.chemtoolkit.MoleculeInfo object
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public MoleculeInfo getIncrementalMoleculeInfo(AbstractMolecule container) throws CTKException {
+    if (container instanceof LazyMolecule && !((LazyMolecule) container).isMaterialized()) {
+      if (container.moleculeInfo == null) {
+        container.moleculeInfo = getSmilesMoleculeInfo(((LazyMolecule) container).getSmiles());
+      }
+      return new MoleculeInfo(container.moleculeInfo);
+    }
+    container = resolve(container);
+    if (!container.reportsStructureChanges()) {
+      return getMoleculeInfo(container);
+    }
+    if (container.moleculeInfo == null) {
+      container.moleculeInfo = getMoleculeInfo(container);
+    }
+    return new MoleculeInfo(container.moleculeInfo);
+  }
+
+  /**
+   * returns molecule info like {@link #getMoleculeInfo(AbstractMolecule)} straight from a SMILES, without building a
+   * molecule. By default it is calculated by {@link SmilesFormulaCalculator}, which does not count R-group atoms;
+   * implementations that count R-group atoms differently override this together with
+   * {@link #getRgroupInfo(IAtomBase)}.
+   * 
+   * @param smiles smiles string
+   * @return org.helm.chemtoolkit.MoleculeInfo object
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public MoleculeInfo getSmilesMoleculeInfo(String smiles) throws CTKException {
+    return new SmilesFormulaCalculator().calculate(smiles);
+  }
+
+  /**
+   * returns the part of the molecule info that goes away with a R-group atom on merging. By default this is the atom
+   * itself unless it is a pseudo atom; implementations that count R-group atoms differently override this.
+   * 
+   * @param rgroup R-group atom
+   * @return info of the removed atoms
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  protected MoleculeInfo getRgroupInfo(IAtomBase rgroup) throws CTKException {
+    int atomicNumber = rgroup.getIAtno();
+    if (atomicNumber <= 0 || atomicNumber > PeriodicTable.getMaxAtomicNumber()) {
+      return new MoleculeInfo(new int[0]);
+    }
+    int[] counts = new int[atomicNumber + 1];
+    counts[atomicNumber] = 1;
+    return new MoleculeInfo(counts);
+  }
+
+  /**
+   * @return info of the merged molecule if one of the inputs has a kept info, null otherwise or if it can not be
+   *         derived from the infos of the inputs
+   */
+  private MoleculeInfo getMergedInfo(AbstractMolecule firstContainer, IAtomBase firstRgroup,
+      AbstractMolecule secondContainer, IAtomBase secondRgroup, AssemblyContext context) throws CTKException {
+    if (firstContainer.moleculeInfo == null && secondContainer.moleculeInfo == null) {
+      return null;
+    }
+    if (context == null) {
+      context = new AssemblyContext();
+    }
+    context.startInfo();
+    context.addInfo(getKeptInfo(firstContainer), 1);
+    if (secondContainer != firstContainer) {
+      context.addInfo(getKeptInfo(secondContainer), 1);
+    }
+    context.addInfo(getRgroupInfo(firstRgroup), -1);
+    context.addInfo(getRgroupInfo(secondRgroup), -1);
+    return context.finishInfo();
+  }
+
+  /**
+   * @return the info kept with the molecule, calculated if there is none, null if it can not be calculated or the
+   *         molecule does not keep an info
+   */
+  private MoleculeInfo getKeptInfo(AbstractMolecule container) {
+    if (!container.reportsStructureChanges()) {
+      return null;
+    }
+    if (container.moleculeInfo == null) {
+      try {
+        container.moleculeInfo = getMoleculeInfo(container);
+      } catch (CTKException e) {
+        return null;
+      }
+    }
+    return container.moleculeInfo;
+  }
+
   /**
    * returns canonical smiles
    * 
@@ -199,6 +348,125 @@ public abstract class AbstractChemistryManipulator {
   public abstract byte[] renderSequence(String sequence, OutputType outputType, int width, int height, int rgb)
       throws CTKException;
 
+  /**
+   * renders a image of given molecule into a stream. By default the image is rendered with
+   * {@link #renderMol(String, OutputType, int, int, int)} and then written; implementations that can encode into a
+   * stream override this to avoid holding the whole image.
+   * 
+   * @param molFile for rendering
+   * @param outputType a image type instance of {@link OutputType}
+   * @param width the image width
+   * @param height the image height
+   * @param rgb a color code of image background
+   * @param out stream the encoded image is written to, it is not closed
+   * @throws IOException if the image can not be written
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public void renderMol(String molFile, OutputType outputType, int width, int height, int rgb, OutputStream out)
+      throws IOException, CTKException {
+    out.write(renderMol(molFile, outputType, width, height, rgb));
+  }
+
+  /**
+   * renders a image of given molecule into a channel, see
+   * {@link #renderMol(String, OutputType, int, int, int, OutputStream)}
+   * 
+   * @param molFile for rendering
+   * @param outputType a image type instance of {@link OutputType}
+   * @param width the image width
+   * @param height the image height
+   * @param rgb a color code of image background
+   * @param channel channel the encoded image is written to, it is not closed
+   * @throws IOException if the image can not be written
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public void renderMol(String molFile, OutputType outputType, int width, int height, int rgb,
+      WritableByteChannel channel) throws IOException, CTKException {
+    renderMol(molFile, outputType, width, height, rgb, Channels.newOutputStream(channel));
+  }
+
+  /**
+   * renders a image of given molecule into a buffer, e.g. a pooled direct buffer, see
+   * {@link #renderMol(String, OutputType, int, int, int, OutputStream)}. The default implementation renders the image
+   * into a byte array and copies it into the buffer, so no copy is saved until an implementation encodes into the
+   * stream or the buffer directly; until then the method only fixes the shape of the API.
+   * 
+   * @param molFile for rendering
+   * @param outputType a image type instance of {@link OutputType}
+   * @param width the image width
+   * @param height the image height
+   * @param rgb a color code of image background
+   * @param buffer buffer the encoded image is put into from its position on, the position is advanced
+   * @return number of bytes written
+   * @throws IOException if the image does not fit into the remaining buffer, the buffer content is undefined then
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public int renderMol(String molFile, OutputType outputType, int width, int height, int rgb, ByteBuffer buffer)
+      throws IOException, CTKException {
+    int start = buffer.position();
+    renderMol(molFile, outputType, width, height, rgb, new ByteBufferOutputStream(buffer));
+    return buffer.position() - start;
+  }
+
+  /**
+   * renders a image of molecule into a stream. By default the image is rendered with
+   * {@link #renderSequence(String, OutputType, int, int, int)} and then written; implementations that can encode into a
+   * stream override this to avoid holding the whole image.
+   * 
+   * @param sequence for rendering
+   * @param outputType a image type instance of {@link OutputType}
+   * @param width the image width
+   * @param height the image height
+   * @param rgb a color code of image background
+   * @param out stream the encoded image is written to, it is not closed
+   * @throws IOException if the image can not be written
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public void renderSequence(String sequence, OutputType outputType, int width, int height, int rgb,
+      OutputStream out) throws IOException, CTKException {
+    out.write(renderSequence(sequence, outputType, width, height, rgb));
+  }
+
+  /**
+   * renders a image of molecule into a channel, see
+   * {@link #renderSequence(String, OutputType, int, int, int, OutputStream)}
+   * 
+   * @param sequence for rendering
+   * @param outputType a image type instance of {@link OutputType}
+   * @param width the image width
+   * @param height the image height
+   * @param rgb a color code of image background
+   * @param channel channel the encoded image is written to, it is not closed
+   * @throws IOException if the image can not be written
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public void renderSequence(String sequence, OutputType outputType, int width, int height, int rgb,
+      WritableByteChannel channel) throws IOException, CTKException {
+    renderSequence(sequence, outputType, width, height, rgb, Channels.newOutputStream(channel));
+  }
+
+  /**
+   * renders a image of molecule into a buffer, e.g. a pooled direct buffer, see
+   * {@link #renderSequence(String, OutputType, int, int, int, OutputStream)}. Like
+   * {@link #renderMol(String, OutputType, int, int, int, ByteBuffer)} it copies the rendered byte array by default.
+   * 
+   * @param sequence for rendering
+   * @param outputType a image type instance of {@link OutputType}
+   * @param width the image width
+   * @param height the image height
+   * @param rgb a color code of image background
+   * @param buffer buffer the encoded image is put into from its position on, the position is advanced
+   * @return number of bytes written
+   * @throws IOException if the image does not fit into the remaining buffer, the buffer content is undefined then
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public int renderSequence(String sequence, OutputType outputType, int width, int height, int rgb,
+      ByteBuffer buffer) throws IOException, CTKException {
+    int start = buffer.position();
+    renderSequence(sequence, outputType, width, height, rgb, new ByteBufferOutputStream(buffer));
+    return buffer.position() - start;
+  }
+
   /**
    * returns a molecule i)nstance of {@link AbstractMolecule}
    * 
@@ -212,7 +480,29 @@ public abstract class AbstractChemistryManipulator {
       CTKException;
 
   /**
-   * merges second molecule to first using given rGroups
+   * returns a molecule handle that builds the molecule with {@link #getMolecule(String, AttachmentList)} only when a
+   * structural operation needs it
+   * 
+   * @param smiles smiles string
+   * @param attachments instance of {@link AttachmentList}
+   * @return molecule instance of {@link LazyMolecule}
+   */
+  public LazyMolecule getLazyMolecule(String smiles, AttachmentList attachments) {
+    return new LazyMolecule(this, smiles, attachments);
+  }
+
+  /**
+   * @param container a molecule, instance of {@link AbstractMolecule}
+   * @return the toolkit molecule of a {@link LazyMolecule}, built if necessary, the given molecule otherwise
+   * @throws CTKException if the molecule of a {@link LazyMolecule} can not be built
+   */
+  protected static AbstractMolecule resolve(AbstractMolecule container) throws CTKException {
+    return container instanceof LazyMolecule ? ((LazyMolecule) container).materialize() : container;
+  }
+
+  /**
+   * merges second molecule to first using given rGroups. Implementations that change merging override this method,
+   * the variant with context runs it.
    * 
    * @param firstContainer a first molecule to merge instance of {@link AbstractMolecule}
    * @param firstRgroup atom of first molecule to be removed, the connected atom is used for merging, instance of
@@ -227,10 +517,14 @@ public abstract class AbstractChemistryManipulator {
   public AbstractMolecule merge(AbstractMolecule firstContainer, IAtomBase firstRgroup,
       AbstractMolecule secondContainer,
       IAtomBase secondRgroup) throws CTKException {
+    AssemblyContext context = takeMergeContext();
+    firstContainer = resolve(firstContainer);
+    secondContainer = resolve(secondContainer);
 
     if (firstContainer.isSingleStereo(firstRgroup) && secondContainer.isSingleStereo(secondRgroup)) {
       throw new CTKException("Both R atoms are connected to chiral centers");
     }
+    MoleculeInfo info = getMergedInfo(firstContainer, firstRgroup, secondContainer, secondRgroup, context);
     if (firstContainer == secondContainer) {
       firstContainer.dearomatize();
       secondContainer.dearomatize();
@@ -261,13 +555,232 @@ public abstract class AbstractChemistryManipulator {
 
       firstContainer.addIBase(secondContainer);
 
-      firstContainer.setAttachments(mergedAttachments);
-
+      firstContainer.adoptAttachments(mergedAttachments);
+      secondContainer.invalidateStructure();
     }
+    firstContainer.invalidateStructure();
+    firstContainer.moleculeInfo = info;
 
     return firstContainer;
   }
 
+  /**
+   * merges second molecule to first like {@link #merge(AbstractMolecule, IAtomBase, AbstractMolecule, IAtomBase)},
+   * using the scratch buffers of the given context for the molecule info of the result. The merge runs through the
+   * variant without context, so implementations keep overriding that one.
+   * 
+   * @param firstContainer a first molecule to merge instance of {@link AbstractMolecule}
+   * @param firstRgroup atom of first molecule to be removed, the connected atom is used for merging, instance of
+   *          {@link IAtomBase}
+   * @param secondContainer a second molecule to merge, instance of {@link AbstractMolecule}
+   * @param secondRgroup of second molecule to be removed, the connected atom is used for merging, instance of
+   *          {@link IAtomBase}
+   * @param context scratch buffers, instance of {@link AssemblyContext}
+   * @return merged molecule instance of {@link AbstractMolecule}
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public final AbstractMolecule merge(AbstractMolecule firstContainer, IAtomBase firstRgroup,
+      AbstractMolecule secondContainer, IAtomBase secondRgroup, AssemblyContext context) throws CTKException {
+    AssemblyContext previous = mergeContext;
+    mergeContext = context;
+    try {
+      return merge(firstContainer, firstRgroup, secondContainer, secondRgroup);
+    } finally {
+      mergeContext = previous;
+      if (context != null) {
+        context.clear();
+      }
+    }
+  }
+
+  /**
+   * @return the context passed to the running merge with context, null if there is none. It is handed out once, so a
+   *         merge started while the first one runs does not share it.
+   */
+  AssemblyContext takeMergeContext() {
+    AssemblyContext context = mergeContext;
+    mergeContext = null;
+    return context;
+  }
+
+  /**
+   * assembles a molecule from all monomers and connections of the given plan in one pass. Every monomer is
+   * dearomatized once, the R-group atoms of all connections are removed, their neighbors are bound with
+   * {@link #bindAtoms(IAtomBase, IAtomBase)}, and the remaining attachments are renumbered once in monomer order. The
+   * work is linear in the size of the plan, unlike a chain of pairwise {@link #merge} calls. If a monomer has a kept
+   * molecule info, the info of the result is derived from the monomers. All connections are checked before a
+   * monomer is changed, so a plan naming a missing or already connected R-group, or connecting two chiral centers,
+   * leaves the monomers as they were.
+   * 
+   * @param plan monomers and connections, instance of {@link AssemblyPlan}
+   * @return assembled molecule, the first monomer of the plan with all others added
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public AbstractMolecule assemble(AssemblyPlan plan) throws CTKException {
+    return assemble(plan, new AssemblyContext());
+  }
+
+  /**
+   * assembles a molecule like {@link #assemble(AssemblyPlan)} using the scratch buffers of the given context
+   * 
+   * @param plan monomers and connections, instance of {@link AssemblyPlan}
+   * @param context scratch buffers, instance of {@link AssemblyContext}
+   * @return assembled molecule, the first monomer of the plan with all others added
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  public AbstractMolecule assemble(AssemblyPlan plan, AssemblyContext context) throws CTKException {
+    try {
+      return assemble(plan, context, context.monomers);
+    } finally {
+      context.clear();
+    }
+  }
+
+  private AbstractMolecule assemble(AssemblyPlan plan, AssemblyContext context, List<AbstractMolecule> monomers)
+      throws CTKException {
+    if (plan.getMonomerCount() == 0) {
+      throw new CTKException("Assembly plan contains no monomers");
+    }
+    for (AbstractMolecule monomer : plan.getMonomers()) {
+      monomer = resolve(monomer);
+      if (context.distinct.put(monomer, Boolean.TRUE) != null) {
+        throw new CTKException("Monomer instance is used twice in assembly plan");
+      }
+      monomers.add(monomer);
+    }
+    for (AbstractMolecule monomer : monomers) {
+      if (monomer.moleculeInfo != null) {
+        context.startInfo();
+        break;
+      }
+    }
+    if (context.hasInfo()) {
+      for (AbstractMolecule monomer : monomers) {
+        context.addInfo(getKeptInfo(monomer), 1);
+      }
+    }
+
+    // all connections are checked before the first monomer is changed
+    int connectionCount = plan.getConnectionCount();
+    IAtomBase[] rgroupAtoms = context.rgroupAtoms(connectionCount);
+    for (int i = 0; i < connectionCount; i++) {
+      AbstractMolecule first = monomers.get(plan.getFirstMonomer(i));
+      AbstractMolecule second = monomers.get(plan.getSecondMonomer(i));
+      IAtomBase firstRgroup = getRgroupAtom(first, plan.getFirstMonomer(i), plan.getFirstRgroup(i), context);
+      IAtomBase secondRgroup = getRgroupAtom(second, plan.getSecondMonomer(i), plan.getSecondRgroup(i), context);
+      if (first.isSingleStereo(firstRgroup) && second.isSingleStereo(secondRgroup)) {
+        throw new CTKException("Both R atoms are connected to chiral centers");
+      }
+      if (context.hasInfo()) {
+        context.addInfo(getRgroupInfo(firstRgroup), -1);
+        context.addInfo(getRgroupInfo(secondRgroup), -1);
+      }
+      rgroupAtoms[i * 2] = firstRgroup;
+      rgroupAtoms[i * 2 + 1] = secondRgroup;
+    }
+
+    for (AbstractMolecule monomer : monomers) {
+      monomer.dearomatize();
+    }
+    IAtomBase[] boundAtoms = context.boundAtoms(connectionCount);
+    List<IStereoElementBase> stereoElements = context.stereoElements;
+    for (int i = 0; i < connectionCount; i++) {
+      AbstractMolecule first = monomers.get(plan.getFirstMonomer(i));
+      AbstractMolecule second = monomers.get(plan.getSecondMonomer(i));
+      IAtomBase firstRgroup = rgroupAtoms[i * 2];
+      IAtomBase secondRgroup = rgroupAtoms[i * 2 + 1];
+      boolean firstStereo = first.isSingleStereo(firstRgroup);
+      boolean secondStereo = !firstStereo && second.isSingleStereo(secondRgroup);
+      IAtomBase atom1 = getNeighborAtom(firstRgroup);
+      IAtomBase atom2 = getNeighborAtom(secondRgroup);
+      if (firstStereo) {
+        stereoElements.add(getStereoInformation(first, firstRgroup, atom2, atom1));
+      } else if (secondStereo) {
+        stereoElements.add(getStereoInformation(second, secondRgroup, atom1, atom2));
+      }
+
+      first.removeAttachment(firstRgroup);
+      second.removeAttachment(secondRgroup);
+      first.removeINode(firstRgroup);
+      second.removeINode(secondRgroup);
+      boundAtoms[i * 2] = atom1;
+      boundAtoms[i * 2 + 1] = atom2;
+    }
+
+    MoleculeInfo info = context.finishInfo();
+    AttachmentList attachments = monomers.get(0).attachments != null ? monomers.get(0).attachments
+        : new AttachmentList();
+    int index = 1;
+    for (AbstractMolecule monomer : monomers) {
+      index = appendAttachments(monomer, index, attachments);
+      monomer.clearFlags();
+      monomer.invalidateStructure();
+    }
+
+    AbstractMolecule result = monomers.get(0);
+    for (int i = 1; i < monomers.size(); i++) {
+      result.addIBase(monomers.get(i));
+    }
+    for (int i = 0; i < connectionCount; i++) {
+      result.addIBase(bindAtoms(boundAtoms[i * 2], boundAtoms[i * 2 + 1]));
+    }
+    for (IStereoElementBase stereo : stereoElements) {
+      if (stereo != null) {
+        result.addIBase(stereo);
+      }
+    }
+    result.adoptAttachments(attachments);
+    result.invalidateStructure();
+    result.moleculeInfo = info;
+    return result;
+  }
+
+  private IAtomBase getRgroupAtom(AbstractMolecule monomer, int monomerIndex, int rgroup, AssemblyContext context)
+      throws CTKException {
+    IAtomBase atom = monomer.getRGroupAtom(rgroup, true);
+    if (atom == null) {
+      throw new CTKException("Monomer " + monomerIndex + " has no R-group R" + rgroup);
+    }
+    if (context.usedRgroups.put(atom.getMolAtom(), Boolean.TRUE) != null) {
+      throw new CTKException("R-group R" + rgroup + " of monomer " + monomerIndex + " is connected twice");
+    }
+    return atom;
+  }
+
+  /**
+   * renumbers the attachments of the molecule from the given number on and appends them to the target list.
+   * Attachments keeping their number are shared with the molecule instead of copied. If the target is the list of the
+   * molecule, the attachments are renumbered in place.
+   * 
+   * @return number following the last attachment
+   */
+  private static int appendAttachments(AbstractMolecule container, int index, AttachmentList target)
+      throws CTKException {
+    AttachmentList source = container.attachments;
+    if (source == null) {
+      return index;
+    }
+    for (int i = 0; i < source.size(); i++) {
+      Attachment a = source.peek(i);
+      container.changeAtomLabel(a.getCurrentIndex(), index);
+      if (source == target) {
+        if (a.getCurrentIndex() != index) {
+          a = a.cloneAttachment();
+          a.changeIndex(index);
+          target.set(i, a);
+        }
+      } else if (a.getCurrentIndex() == index) {
+        target.addShared(source, i);
+      } else {
+        a = a.cloneAttachment();
+        a.changeIndex(index);
+        target.add(a);
+      }
+      index++;
+    }
+    return index;
+  }
+
   /**
    * recycles and set stereo information on firstContaner
    * 
@@ -308,65 +821,20 @@ public abstract class AbstractChemistryManipulator {
    */
 
   protected List<String> getRGroupsFromExtendedSmiles(String smiles) {
-  String  extendedSmiles = getExtension(smiles);
     List<String> list = new ArrayList<>();
-    if (extendedSmiles != null) {
-      Integer currIndex = 0;
-      char[] items = extendedSmiles.toCharArray();
-      List<Integer> indexes = new ArrayList<Integer>();
-
-      while (extendedSmiles.indexOf("_R", currIndex) > 0) {
-        currIndex = extendedSmiles.indexOf("_R", currIndex);
-        indexes.add(currIndex);
-        currIndex++;
-      }
-
-      for (int k = 0; k < items.length; k++) {
-        if (items[k] == 'R') {
-          indexes.add(currIndex + k);
-          currIndex++;
+    ExtendedSmilesTokenizer tokenizer = new ExtendedSmilesTokenizer(smiles);
+    if (tokenizer.hasExtension()) {
+      while (tokenizer.next()) {
+        if (tokenizer.isRgroup()) {
+          list.add("R" + tokenizer.getRgroup());
         }
       }
-
-      String[] tokens = extendedSmiles.split("R", -1);
-      if (tokens.length > 1) {
-        for (int i = 1; i < tokens.length; i++) {
-          String token = tokens[i];
-          char[] chars = token.toCharArray();
-          String numbers = "";
-          for (int j = 0; j < chars.length; j++) {
-            String letter = String.valueOf(chars[j]);
-            if (letter.matches("[0-9]")) {
-              numbers += letter;
-            } else {
-              break;
-            }
-          }
-
-          if (numbers.length() > 0) {
-            list.add("R" + numbers);
-          }
-        }
+    } else {
+      Matcher matcher = ATOM_MAPPING_PATTERN.matcher(smiles);
+      while (matcher.find()) {
+        list.add("R" + (matcher.group(1) != null ? matcher.group(1) : matcher.group(2)));
       }
     }
-    
-    if(extendedSmiles == null){
-    	Pattern pattern = Pattern.compile("\\[\\*:([1-9]\\d*)\\]|\\[\\w+:([1-9]\\d*)");
-    	Matcher matcher = pattern.matcher(smiles);
-
-  	  
-  	  while(matcher.find()){
-  		  String info = "";
-  		  if(matcher.group(1) != null){
-  			  info = matcher.group(1);
-  		  }
-  		  if(matcher.group(2) != null){
-  			  info = matcher.group(2);
-  		  }
-  		  
-  		  list.add("R" + info);
-  	  }
-    }
 
     return list;
   }
@@ -391,16 +859,11 @@ public abstract class AbstractChemistryManipulator {
   }
 
   protected String getExtension(String smiles) {
-    String result = null;
-    try {
-
-      String[] components = smiles.split(SMILES_EXTENSION_SEPARATOR_REGEX);
-      result = components[1];
-    } catch (ArrayIndexOutOfBoundsException e) {
-// not extended SMILES
+    ExtendedSmilesTokenizer tokenizer = new ExtendedSmilesTokenizer(smiles);
+    if (tokenizer.hasExtension()) {
+      return smiles.substring(tokenizer.getExtensionStart(), tokenizer.getExtensionEnd());
     }
-
-    return result;
+    return null;
   }
 
   /**
@@ -412,33 +875,38 @@ public abstract class AbstractChemistryManipulator {
   protected abstract IBondBase bindAtoms(IAtomBase atom1, IAtomBase atom2) throws CTKException;
 
   /**
+   * binds the neighbors of the removed R-group atoms in a merged molecule, for implementations that bind after
+   * {@link #merge}. The kept molecule info stays valid, the bond takes the place of the removed R-group bonds.
+   * 
+   * @param container merged molecule
+   * @param atom1 first atom
+   * @param atom2 second atom
+   * @throws CTKException general ChemToolKit exception passed to HELMToolKit
+   */
+  protected void bindMergedAtoms(AbstractMolecule container, IAtomBase atom1, IAtomBase atom2) throws CTKException {
+    MoleculeInfo info = container.moleculeInfo;
+    container.addIBase(bindAtoms(atom1, atom2));
+    container.moleculeInfo = info;
+  }
+
+  /**
+   * renumbers the attachments of the first molecule in place and appends those of the second molecule to its list
+   * 
    * @param container first molecule
    * @param secondContainer second molecule
-   * @return AttachmentList containing all attachments from the merged molecules
+   * @return AttachmentList containing all attachments from the merged molecules, the list of the first molecule
    * @throws CTKException general ChemToolKit exception passed to HELMToolKit
    */
 
   protected AttachmentList mergeAttachments(AbstractMolecule container, AbstractMolecule secondContainer)
       throws CTKException {
-    AttachmentList result = new AttachmentList();
-    int index = 1;
-    for (Attachment item : container.getAttachments()) {
-      Attachment a = item.cloneAttachment();
-      container.changeAtomLabel(a.getCurrentIndex(), index);
-      a.changeIndex(index);
-      result.add(a);
-      index++;
-    }
-
-    for (Attachment item : secondContainer.getAttachments()) {
-      Attachment a = item.cloneAttachment();
-      secondContainer.changeAtomLabel(a.getCurrentIndex(), index);
-      a.changeIndex(index);
-      result.add(a);
-      index++;
-    }
+    AttachmentList result = container.attachments != null ? container.attachments : new AttachmentList();
+    int index = appendAttachments(container, 1, result);
+    appendAttachments(secondContainer, index, result);
     container.clearFlags();
     secondContainer.clearFlags();
+    container.invalidateStructure();
+    secondContainer.invalidateStructure();
     return result;
   }
 
@@ -453,8 +921,33 @@ public abstract class AbstractChemistryManipulator {
   protected abstract IStereoElementBase getStereoInformation(AbstractMolecule container, IAtomBase rGroup,
       IAtomBase atom1, IAtomBase atom2)
           throws CTKException;
-  
-  
- 
+
+  /**
+   * {@code ByteBufferOutputStream} writes into a fixed buffer and fails instead of growing
+   */
+  private static final class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferOutputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (!buffer.hasRemaining()) {
+        throw new IOException("Image does not fit into the buffer");
+      }
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len > buffer.remaining()) {
+        throw new IOException("Image does not fit into the buffer, " + buffer.remaining() + " bytes remaining");
+      }
+      buffer.put(b, off, len);
+    }
+  }
 
 }
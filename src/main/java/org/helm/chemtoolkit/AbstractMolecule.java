@@ -16,6 +16,7 @@
  ******************************************************************************/
 package org.helm.chemtoolkit;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +40,36 @@ public abstract class AbstractMolecule implements IChemObjectBase {
 
   protected List<IAtomBase> atoms;
 
+  /**
+   * info kept by {@link AbstractChemistryManipulator#getIncrementalMoleculeInfo(AbstractMolecule)} and updated by
+   * merges, null if not known. Implementations copy it to clones. It is dropped by {@link #invalidateStructure()};
+   * changes made through the toolkit molecule directly are not tracked. Only molecules that report all structure
+   * changes keep an info, see {@link #reportsStructureChanges()}.
+   */
+  protected MoleculeInfo moleculeInfo;
+
+  /** largest R-group number kept in the index, larger numbers are looked up by a scan */
+  private static final int MAX_INDEXED_RGROUP = 1024;
+
+  /**
+   * position + 1 in the atom list of the atom carrying each R-group number, 0 if no atom carries it. Positions
+   * instead of atoms let every hit be checked against the current atom list.
+   */
+  private int[] rgroupPositions;
+
+  private int indexedModCount;
+
+  private int indexedSize;
+
+  private boolean largeRgroups;
+
+  /** number of structure changes reported through {@link #invalidateStructure()} */
+  private int modCount;
+
+  private MoleculeGraph graph;
+
+  private int graphModCount;
+
   public AttachmentList getAttachments() {
     return attachments.cloneList();
   }
@@ -47,16 +78,34 @@ public abstract class AbstractMolecule implements IChemObjectBase {
     this.attachments = attachments.cloneList();
   }
 
+  /**
+   * sets a list built for this molecule without copying it
+   */
+  void adoptAttachments(AttachmentList attachments) {
+    this.attachments = attachments;
+  }
+
   protected AbstractMolecule() {
   }
 
   public Map<String, IAtomBase> getRgroups() throws CTKException {
     Map<String, IAtomBase> rgroupMap = new HashMap<String, IAtomBase>();
     List<IAtomBase> atoms = getIAtomArray();
-    for (int i = 0; i < atoms.size(); i++) {
-      int rId = atoms.get(i).getRgroup();
-      if (rId > 0) {
-        rgroupMap.put("R" + rId, atoms.get(i));
+    int[] positions = reportsStructureChanges() ? getRgroupPositions(atoms) : buildRgroupPositions(atoms);
+    for (int rId = 1; rId < positions.length; rId++) {
+      if (positions[rId] > 0) {
+        IAtomBase atom = findIndexedAtom(atoms, rId);
+        if (atom != null) {
+          rgroupMap.put("R" + rId, atom);
+        }
+        positions = rgroupPositions;
+      }
+    }
+    if (largeRgroups) {
+      for (IAtomBase atom : atoms) {
+        if (atom.getRgroup() >= MAX_INDEXED_RGROUP) {
+          rgroupMap.put("R" + atom.getRgroup(), atom);
+        }
       }
     }
     return rgroupMap;
@@ -64,35 +113,159 @@ public abstract class AbstractMolecule implements IChemObjectBase {
 
   public static int getIdFromLabel(String label) {
     int result = 0;
-    String[] array = label.split("R");
-    try {
-      result = Integer.parseInt(array[1]);
-    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-      //
+    int start = label.indexOf('R');
+    if (start >= 0) {
+      int end = label.indexOf('R', start + 1);
+      try {
+        result = Integer.parseInt(label.substring(start + 1, end < 0 ? label.length() : end));
+      } catch (NumberFormatException e) {
+        //
+      }
     }
     return result;
   }
 
   public IAtomBase getRGroupAtom(int groupId, boolean rgatom) throws CTKException {
-    IAtomBase result = null;
-    for (IAtomBase atom : getIAtomArray()) {
-      if (atom.getRgroup() == groupId) {
-        if (rgatom) {
-          result = atom;
-        } else {
-          IBondBase bond = atom.getIBond(0);
+    IAtomBase result = findRgroupAtom(groupId);
+    if (result != null && !rgatom) {
+      IBondBase bond = result.getIBond(0);
+
+      if (bond.getIAtom1().compare(result)) {
+        result = bond.getIAtom2();
+      } else
+        result = bond.getIAtom1();
+    }
 
-          if (bond.getIAtom1().compare(atom)) {
-            result = bond.getIAtom2();
-          } else
-            result = bond.getIAtom1();
-        }
+    return result;
+
+  }
+
+  /**
+   * counts a structure change, the R-group index and the cached {@link MoleculeGraph} are rebuilt on next use and the
+   * kept molecule info is dropped.
+   * Implementations call this whenever atoms or bonds are added or removed or R-group numbers or bond orders change,
+   * and return true from {@link #reportsStructureChanges()} once they do so for every change.
+   */
+  protected void invalidateStructure() {
+    modCount++;
+    graph = null;
+    moleculeInfo = null;
+  }
+
+  /**
+   * tells whether the implementation calls {@link #invalidateStructure()} on every structure change, including
+   * {@link #removeINode(IAtomBase)}, {@link #addIBase(IChemObjectBase)} and R-group relabeling. Only then is a miss of
+   * the R-group index trusted and a molecule info kept with the molecule; otherwise the atom list is scanned before an
+   * R-group is reported missing and the info is calculated on every request. False by default.
+   *
+   * @return true if every structure change is reported
+   */
+  protected boolean reportsStructureChanges() {
+    return false;
+  }
 
+  /**
+   * @return compact graph of the atoms and bonds, cached until the structure changes. Like the R-group index, the
+   *         cache is checked against the structure change count and the atom count, so it also serves backends that
+   *         return a new atom list on every call.
+   * @throws CTKException if the graph can not be built
+   */
+  public MoleculeGraph getGraph() throws CTKException {
+    List<IAtomBase> atoms = getIAtomArray();
+    if (graph == null || graphModCount != modCount || graph.getAtomCount() != atoms.size()) {
+      MoleculeGraph result = createGraph();
+      result.atoms = atoms.toArray(new IAtomBase[atoms.size()]);
+      graph = result;
+      graphModCount = modCount;
+    }
+    return graph;
+  }
+
+  /**
+   * builds the graph returned by {@link #getGraph()}, by default by walking the atoms and bonds. Implementations that
+   * keep atom and bond tables can build it from those.
+   *
+   * @return new graph of the molecule
+   * @throws CTKException if the graph can not be built
+   */
+  protected MoleculeGraph createGraph() throws CTKException {
+    return MoleculeGraph.of(this);
+  }
+
+  /**
+   * @param groupId R-group number
+   * @return atom carrying the given R-group number, if several atoms carry it the last one
+   */
+  private IAtomBase findRgroupAtom(int groupId) {
+    if (groupId <= 0) {
+      return null;
+    }
+    if (groupId >= MAX_INDEXED_RGROUP) {
+      IAtomBase result = null;
+      for (IAtomBase atom : getIAtomArray()) {
+        if (atom.getRgroup() == groupId) {
+          result = atom;
+        }
       }
+      return result;
     }
+    return findIndexedAtom(getIAtomArray(), groupId);
+  }
 
-    return result;
+  /**
+   * a hit is checked against the atom list and the index is rebuilt once if the atom moved or lost its number. A miss
+   * of a current index is trusted only if the implementation reports all structure changes, otherwise the index is
+   * rebuilt, which finds atoms that were relabeled without {@link #invalidateStructure()}.
+   */
+  private IAtomBase findIndexedAtom(List<IAtomBase> atoms, int groupId) {
+    int[] positions = getRgroupPositions(atoms);
+    IAtomBase atom = atomAt(atoms, positions, groupId);
+    if (atom == null && ((groupId < positions.length && positions[groupId] > 0) || !reportsStructureChanges())) {
+      // the atom list changed without invalidateStructure()
+      atom = atomAt(atoms, buildRgroupPositions(atoms), groupId);
+    }
+    return atom;
+  }
+
+  private static IAtomBase atomAt(List<IAtomBase> atoms, int[] positions, int groupId) {
+    int position = groupId < positions.length ? positions[groupId] : 0;
+    if (position == 0 || position > atoms.size()) {
+      return null;
+    }
+    IAtomBase atom = atoms.get(position - 1);
+    return atom.getRgroup() == groupId ? atom : null;
+  }
 
+  private int[] getRgroupPositions(List<IAtomBase> atoms) {
+    if (rgroupPositions != null && indexedModCount == modCount && indexedSize == atoms.size()) {
+      return rgroupPositions;
+    }
+    return buildRgroupPositions(atoms);
+  }
+
+  private int[] buildRgroupPositions(List<IAtomBase> atoms) {
+    int[] positions = rgroupPositions;
+    if (positions == null) {
+      positions = new int[8];
+    } else {
+      Arrays.fill(positions, 0);
+    }
+    largeRgroups = false;
+    for (int i = 0; i < atoms.size(); i++) {
+      int rId = atoms.get(i).getRgroup();
+      if (rId >= MAX_INDEXED_RGROUP) {
+        largeRgroups = true;
+      } else if (rId > 0) {
+        if (rId >= positions.length) {
+          positions = Arrays.copyOf(positions, Math.max(rId + 1, positions.length * 2));
+        }
+        positions[rId] = i + 1;
+      }
+    }
+    rgroupPositions = positions;
+    indexedModCount = modCount;
+    indexedSize = atoms.size();
+    return positions;
   }
 
   public void clearFlags() {
@@ -134,21 +307,39 @@ public abstract class AbstractMolecule implements IChemObjectBase {
    * @throws CTKException general ChemToolKit exception passed to HELMToolKit
    */
   public void removeAttachment(IAtomBase toRemove) throws CTKException {
-
-    Map<String, IAtomBase> groups = getRgroups();
-    for (String key : groups.keySet()) {
-
-      if (groups.get(key).compare(toRemove)) {
-        for (int i = 0; i < attachments.size(); i++) {
-          if (attachments.get(i).getLabel().equals(key)) {
-            attachments.remove(i);
-            break;
-          }
+    int rId = toRemove.getRgroup();
+    IAtomBase atom = findRgroupAtom(rId);
+    if (atom != null && atom.compare(toRemove)) {
+      for (int i = 0; i < attachments.size(); i++) {
+        if (isLabelOf(attachments.peek(i).getLabel(), rId)) {
+          attachments.remove(i);
+          break;
         }
       }
     }
   }
 
+  /**
+   * @return true if the label is R followed by the given number, e.g. R2
+   */
+  private static boolean isLabelOf(String label, int rId) {
+    if (label == null || label.length() < 2 || label.charAt(0) != 'R' || label.charAt(1) == '0') {
+      return false;
+    }
+    long value = 0;
+    for (int i = 1; i < label.length(); i++) {
+      char c = label.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+      value = value * 10 + (c - '0');
+      if (value > rId) {
+        return false;
+      }
+    }
+    return value == rId;
+  }
+
   public List<IAtomBase> getIAtomArray() {
     return atoms;
   }
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code AssemblyContext} scratch space of {@link AbstractChemistryManipulator#merge} and
+ * {@link AbstractChemistryManipulator#assemble}: the monomer list and identity map of an assembly, the R-group atoms
+ * of the connections, the atoms to bind, the stereo elements and the element counts of the kept molecule info. The buffers are cleared after every
+ * operation and grow to the largest assembly seen, so repeated operations with the same context allocate only their
+ * results.
+ * <p>
+ * A merge without context allocates scratch space only for the molecule info of its result, an assembly without
+ * context uses a new context whose buffers are allocated on first use. Callers repeating operations pass their own
+ * context. A context is not thread safe and must only be used by one operation at a time.
+ */
+public final class AssemblyContext {
+
+  final Map<AbstractMolecule, Boolean> distinct = new IdentityHashMap<AbstractMolecule, Boolean>();
+
+  final List<AbstractMolecule> monomers = new ArrayList<AbstractMolecule>();
+
+  final List<IStereoElementBase> stereoElements = new ArrayList<IStereoElementBase>();
+
+  /** R-group atoms of the connections, toolkit atoms by identity */
+  final Map<Object, Boolean> usedRgroups = new IdentityHashMap<Object, Boolean>();
+
+  /** R-group atoms to remove, both atoms of connection i at 2i and 2i + 1 */
+  IAtomBase[] rgroupAtoms = new IAtomBase[0];
+
+  /** neighbors of the removed R-group atoms, both atoms of connection i at 2i and 2i + 1 */
+  IAtomBase[] boundAtoms = new IAtomBase[0];
+
+  /** element counts of the info being built, allocated with the first info */
+  private int[] counts;
+
+  private double molecularWeight;
+
+  private double exactMass;
+
+  private boolean info;
+
+  /**
+   * @param connectionCount number of connections
+   * @return array holding the atoms of all connections
+   */
+  IAtomBase[] boundAtoms(int connectionCount) {
+    if (boundAtoms.length < connectionCount * 2) {
+      boundAtoms = new IAtomBase[Math.max(connectionCount * 2, boundAtoms.length * 2)];
+    }
+    return boundAtoms;
+  }
+
+  /**
+   * @param connectionCount number of connections
+   * @return array holding the R-group atoms of all connections
+   */
+  IAtomBase[] rgroupAtoms(int connectionCount) {
+    if (rgroupAtoms.length < connectionCount * 2) {
+      rgroupAtoms = new IAtomBase[Math.max(connectionCount * 2, rgroupAtoms.length * 2)];
+    }
+    return rgroupAtoms;
+  }
+
+  /**
+   * starts the molecule info of a result, empty
+   */
+  void startInfo() {
+    if (counts == null) {
+      counts = new int[PeriodicTable.getMaxAtomicNumber() + 1];
+    } else {
+      Arrays.fill(counts, 0);
+    }
+    molecularWeight = 0;
+    exactMass = 0;
+    info = true;
+  }
+
+  /**
+   * @return true if an info is being built
+   */
+  boolean hasInfo() {
+    return info;
+  }
+
+  /**
+   * adds or removes the atoms, weight and mass of an info. The info being built is dropped if the given info is not
+   * known, its formula can not be parsed, e.g. because of charges or R-groups, or more atoms are removed than added.
+   *
+   * @param other info to add, null if not known
+   * @param sign 1 to add, -1 to remove
+   */
+  void addInfo(MoleculeInfo other, int sign) {
+    if (!info) {
+      return;
+    }
+    int[] otherCounts;
+    try {
+      otherCounts = other != null ? other.counts() : null;
+    } catch (CTKException e) {
+      otherCounts = null;
+    }
+    if (otherCounts == null) {
+      info = false;
+      return;
+    }
+    if (otherCounts.length > counts.length) {
+      counts = Arrays.copyOf(counts, otherCounts.length);
+    }
+    for (int i = 0; i < otherCounts.length; i++) {
+      counts[i] += sign * otherCounts[i];
+      if (counts[i] < 0) {
+        info = false;
+        return;
+      }
+    }
+    molecularWeight += sign * other.getMolecularWeight();
+    exactMass += sign * other.getExactMass();
+  }
+
+  /**
+   * @return the built info, null if none was started or it was dropped
+   */
+  MoleculeInfo finishInfo() {
+    if (!info) {
+      return null;
+    }
+    info = false;
+    return new MoleculeInfo(molecularWeight, counts, exactMass);
+  }
+
+  /**
+   * drops all references to molecules and atoms, the buffers are kept
+   */
+  void clear() {
+    distinct.clear();
+    monomers.clear();
+    stereoElements.clear();
+    usedRgroups.clear();
+    Arrays.fill(rgroupAtoms, null);
+    Arrays.fill(boundAtoms, null);
+    info = false;
+  }
+
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code AssemblyPlan} connection plan of a molecule assembled from monomers, consumed by
+ * {@link AbstractChemistryManipulator#assemble(AssemblyPlan)}. Monomers are referenced by the index returned from
+ * {@link #addMonomer(AbstractMolecule)}, their R-groups by number. Every monomer instance can only be added once.
+ */
+public class AssemblyPlan {
+
+  private final List<AbstractMolecule> monomers = new ArrayList<>();
+
+  private int[] connections = new int[64];
+
+  private int connectionCount;
+
+  /**
+   * @param monomer monomer to add, it is modified by the assembly
+   * @return index of the monomer in this plan
+   */
+  public int addMonomer(AbstractMolecule monomer) {
+    monomers.add(monomer);
+    return monomers.size() - 1;
+  }
+
+  /**
+   * connects two monomers, the R-group atoms are removed and their neighbors are bound
+   *
+   * @param firstMonomer index of the first monomer
+   * @param firstRgroup R-group number of the first monomer
+   * @param secondMonomer index of the second monomer, may be the first monomer for a ring closure
+   * @param secondRgroup R-group number of the second monomer
+   */
+  public void connect(int firstMonomer, int firstRgroup, int secondMonomer, int secondRgroup) {
+    if (firstMonomer < 0 || firstMonomer >= monomers.size() || secondMonomer < 0
+        || secondMonomer >= monomers.size()) {
+      throw new IndexOutOfBoundsException("Unknown monomer in connection " + firstMonomer + "-" + secondMonomer);
+    }
+    int offset = connectionCount * 4;
+    if (offset + 4 > connections.length) {
+      connections = Arrays.copyOf(connections, connections.length * 2);
+    }
+    connections[offset] = firstMonomer;
+    connections[offset + 1] = firstRgroup;
+    connections[offset + 2] = secondMonomer;
+    connections[offset + 3] = secondRgroup;
+    connectionCount++;
+  }
+
+  public List<AbstractMolecule> getMonomers() {
+    return monomers;
+  }
+
+  public int getMonomerCount() {
+    return monomers.size();
+  }
+
+  public int getConnectionCount() {
+    return connectionCount;
+  }
+
+  public int getFirstMonomer(int connection) {
+    return connections[connection * 4];
+  }
+
+  public int getFirstRgroup(int connection) {
+    return connections[connection * 4 + 1];
+  }
+
+  public int getSecondMonomer(int connection) {
+    return connections[connection * 4 + 2];
+  }
+
+  public int getSecondRgroup(int connection) {
+    return connections[connection * 4 + 3];
+  }
+
+}
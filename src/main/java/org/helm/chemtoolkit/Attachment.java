@@ -16,6 +16,8 @@
  ******************************************************************************/
 package org.helm.chemtoolkit;
 
+import java.util.Arrays;
+
 /**
  * @author chistyakov
  *
@@ -30,15 +32,21 @@ public class Attachment implements Comparable<Attachment> {
 
   private String smiles;
 
+  /** R-group number parsed from the label */
+  private int index;
+
+  /** start of the R-group number in the label and id, -1 if it is not present */
+  private int labelDigits = -1;
+
+  private int idDigits = -1;
+
+  /** starts of the R-group number in every placeholder of the smiles, e.g. [*:1] and the _R1 of a CXSMILES block */
+  private int[] smilesDigits = NO_DIGITS;
+
+  private static final int[] NO_DIGITS = new int[0];
+
   public int getCurrentIndex() {
-    int result = 0;
-    String[] array = label.split("R");
-    try {
-      result = Integer.parseInt(array[1]);
-    } catch (NumberFormatException e) {
-      //
-    }
-    return result;
+    return index;
   }
 
   public String getId() {
@@ -47,6 +55,7 @@ public class Attachment implements Comparable<Attachment> {
 
   public void setId(String id) {
     this.id = id;
+    this.idDigits = findRgroupDigits(id, index);
   }
 
   public String getLabel() {
@@ -55,6 +64,9 @@ public class Attachment implements Comparable<Attachment> {
 
   public void setLabel(String label) {
     this.label = label;
+    parseLabel();
+    this.idDigits = findRgroupDigits(id, index);
+    this.smilesDigits = findPlaceholderDigits(smiles, index);
   }
 
   public String getName() {
@@ -71,19 +83,35 @@ public class Attachment implements Comparable<Attachment> {
 
   public void setSmiles(String smiles) {
     this.smiles = smiles;
+    this.smilesDigits = findPlaceholderDigits(smiles, index);
   }
 
+  /**
+   * renumbers this attachment: the R-group number is replaced in the label, in the id and in every R-group
+   * placeholder of the cap smiles. Other digits of the smiles, e.g. ring closures, are left untouched.
+   * 
+   * @param index new R-group number
+   */
   public void changeIndex(int index) {
-    String currIndex = String.valueOf(getCurrentIndex());
+    if (index == this.index) {
+      return;
+    }
     String toIndex = String.valueOf(index);
-    this.id = this.id.replace(currIndex, toIndex);
-    this.label = this.label.replace(currIndex, toIndex);
-    this.smiles = this.smiles.replace(currIndex, toIndex);
+    if (idDigits >= 0) {
+      this.id = replaceDigits(id, idDigits, toIndex);
+    }
+    if (smilesDigits.length > 0) {
+      this.smiles = replacePlaceholders(smiles, smilesDigits, toIndex);
+    }
+    if (labelDigits >= 0) {
+      this.label = replaceDigits(label, labelDigits, toIndex);
+      this.index = index;
+    }
 
   }
 
   public Attachment cloneAttachment() {
-    return new Attachment(this.id, this.label, this.name, this.smiles);
+    return new Attachment(this);
 
   }
 
@@ -92,7 +120,135 @@ public class Attachment implements Comparable<Attachment> {
     this.label = label;
     this.name = name;
     this.smiles = smiles;
+    parseLabel();
+    this.idDigits = findRgroupDigits(id, index);
+    this.smilesDigits = findPlaceholderDigits(smiles, index);
+
+  }
+
+  private Attachment(Attachment other) {
+    this.id = other.id;
+    this.label = other.label;
+    this.name = other.name;
+    this.smiles = other.smiles;
+    this.index = other.index;
+    this.labelDigits = other.labelDigits;
+    this.idDigits = other.idDigits;
+    this.smilesDigits = other.smilesDigits.clone();
+  }
+
+  /**
+   * parses the R-group number of labels like R1
+   */
+  private void parseLabel() {
+    index = 0;
+    labelDigits = -1;
+    if (label == null) {
+      return;
+    }
+    int start = label.indexOf('R') + 1;
+    if (start > 0) {
+      int end = digitsEnd(label, start);
+      if (end > start && (end == label.length() || label.charAt(end) == 'R')) {
+        long value = parseDigits(label, start, end);
+        if (value <= Integer.MAX_VALUE) {
+          index = (int) value;
+          labelDigits = start;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return start of the given number in a R-group reference like R1 in the text, -1 if there is none
+   */
+  private static int findRgroupDigits(String text, int value) {
+    if (text == null || value <= 0) {
+      return -1;
+    }
+    for (int i = 0; i < text.length() - 1; i++) {
+      if (text.charAt(i) == 'R' && isNumber(text, i + 1, value)) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
 
+  /**
+   * @return starts of the given number in the R-group placeholders [*:1], [1*] or _R1 of the smiles
+   */
+  private static int[] findPlaceholderDigits(String smiles, int value) {
+    if (smiles == null || value <= 0) {
+      return NO_DIGITS;
+    }
+    int[] starts = NO_DIGITS;
+    for (int i = 0; i < smiles.length() - 1; i++) {
+      char c = smiles.charAt(i);
+      char next = smiles.charAt(i + 1);
+      int start = -1;
+      if (c == '*' && next == ':') {
+        start = i + 2;
+      } else if (c == '[' && isDigit(next)) {
+        start = i + 1;
+        if (digitsEnd(smiles, start) >= smiles.length() || smiles.charAt(digitsEnd(smiles, start)) != '*') {
+          start = -1;
+        }
+      } else if (c == '_' && next == 'R') {
+        start = i + 2;
+      }
+      if (start >= 0 && isNumber(smiles, start, value)) {
+        starts = Arrays.copyOf(starts, starts.length + 1);
+        starts[starts.length - 1] = start;
+      }
+    }
+    return starts;
+  }
+
+  private static boolean isNumber(String text, int start, int value) {
+    int end = digitsEnd(text, start);
+    return end > start && parseDigits(text, start, end) == value;
+  }
+
+  private static int digitsEnd(String text, int start) {
+    int end = start;
+    while (end < text.length() && isDigit(text.charAt(end))) {
+      end++;
+    }
+    return end;
+  }
+
+  private static long parseDigits(String text, int start, int end) {
+    long value = 0;
+    for (int i = start; i < end && value <= Integer.MAX_VALUE; i++) {
+      value = value * 10 + (text.charAt(i) - '0');
+    }
+    return value;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static String replaceDigits(String text, int start, String digits) {
+    int end = digitsEnd(text, start);
+    return new StringBuilder(text.length() + digits.length()).append(text, 0, start).append(digits)
+        .append(text, end, text.length()).toString();
+  }
+
+  /**
+   * replaces the numbers at the given ascending starts and shifts the starts to the rewritten text
+   */
+  private static String replacePlaceholders(String text, int[] starts, String digits) {
+    StringBuilder sb = new StringBuilder(text.length() + starts.length * digits.length());
+    int last = 0;
+    for (int i = 0; i < starts.length; i++) {
+      int end = digitsEnd(text, starts[i]);
+      sb.append(text, last, starts[i]);
+      starts[i] = sb.length();
+      sb.append(digits);
+      last = end;
+    }
+    return sb.append(text, last, text.length()).toString();
   }
 
   /**
@@ -103,7 +259,7 @@ public class Attachment implements Comparable<Attachment> {
     int result = this.label.compareTo(o.getLabel());
     if (result != 0)
       return result;
-    result = this.getCurrentIndex() - o.getCurrentIndex();
+    result = this.index - o.index;
     if (result != 0) {
       return result / Math.abs(result);
     }
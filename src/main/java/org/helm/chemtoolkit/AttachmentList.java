@@ -1,14 +1,14 @@
 /*******************************************************************************
  * Copyright C 2015, The Pistoia Alliance
- * 
+ *
  * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
  * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
  * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
  * permit persons to whom the Software is furnished to do so, subject to the following conditions:
- * 
+ *
  * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
  * Software.
- * 
+ *
  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
  * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
  * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
@@ -16,37 +16,353 @@
  ******************************************************************************/
 package org.helm.chemtoolkit;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 /**
+ * List of attachments with copy-on-write sharing.
+ * <p>
+ * {@link #cloneList()} of a sorted list shares the elements with the copy instead of cloning them; each list copies
+ * the shared array only when it is structurally modified, and clones a shared attachment only when
+ * {@link #iterator()} hands out that attachment for in-place modification. {@link #get(int)} returns a copy as before,
+ * {@link #peek(int)} gives allocation free read access. The isolation between lists is the same as with eager cloning.
+ * <p>
+ * Since release 1.2.5 the list no longer extends {@link java.util.ArrayList}. Its serialized form changed with it,
+ * lists serialized by earlier releases can not be read.
+ *
  * @author chistyakov
  *
  */
-public class AttachmentList extends ArrayList<Attachment> {
+public class AttachmentList extends AbstractList<Attachment> implements RandomAccess, Cloneable, Serializable {
 
   /**
-   * 
+   *
    */
-  private static final long serialVersionUID = -8489331560640955474L;
+  private static final long serialVersionUID = 2L;
+
+  private static final Attachment[] EMPTY = new Attachment[0];
+
+  private Attachment[] elements;
+
+  private int size;
+
+  /** the array is shared with another list */
+  private transient boolean sharedArray;
+
+  /** the attachment instances are shared with another list, except those marked in {@link #owned} */
+  private transient boolean sharedElements;
+
+  /** attachments this list cloned for itself while the others are shared, null if none */
+  private transient boolean[] owned;
 
   public AttachmentList() {
     super();
+    elements = EMPTY;
   }
 
   @Override
   public Attachment get(int index) {
-    return super.get(index).cloneAttachment();
+    return peek(index).cloneAttachment();
+  }
+
+  /**
+   * returns the attachment at the given position without copying it, the returned instance must not be modified
+   *
+   * @param index position of the attachment
+   * @return the attachment
+   */
+  public Attachment peek(int index) {
+    if (index >= size || index < 0) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return elements[index];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Attachment set(int index, Attachment element) {
+    Attachment old = peek(index);
+    ownArray();
+    elements[index] = element;
+    if (owned != null) {
+      owned[index] = true;
+    }
+    return old;
+  }
+
+  @Override
+  public void add(int index, Attachment element) {
+    if (index > size || index < 0) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    ownArray();
+    if (size == elements.length) {
+      elements = Arrays.copyOf(elements, Math.max(4, size * 2));
+      if (owned != null) {
+        owned = Arrays.copyOf(owned, elements.length);
+      }
+    }
+    System.arraycopy(elements, index, elements, index + 1, size - index);
+    elements[index] = element;
+    if (owned != null) {
+      System.arraycopy(owned, index, owned, index + 1, size - index);
+      owned[index] = true;
+    }
+    size++;
+    modCount++;
+  }
+
+  @Override
+  public Attachment remove(int index) {
+    Attachment old = peek(index);
+    ownArray();
+    System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+    if (owned != null) {
+      System.arraycopy(owned, index + 1, owned, index, size - index - 1);
+    }
+    elements[--size] = null;
+    modCount++;
+    return old;
+  }
+
+  @Override
+  public void clear() {
+    elements = EMPTY;
+    size = 0;
+    sharedArray = false;
+    sharedElements = false;
+    owned = null;
+    modCount++;
+  }
+
+  /**
+   * iterates over the attachments of this list, which may be modified in place. A shared attachment is cloned when
+   * the iterator reaches it, for reading {@link #peek(int)} avoids that.
+   */
+  @Override
+  public Iterator<Attachment> iterator() {
+    return new Itr();
+  }
+
+  /**
+   * iterates like {@link #iterator()} in both directions, a shared attachment is cloned when the iterator reaches it
+   */
+  @Override
+  public ListIterator<Attachment> listIterator(int index) {
+    if (index > size || index < 0) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return new ListItr(index);
+  }
+
+  /**
+   * appends an attachment of another list without copying it, both lists clone the shared attachments before they hand
+   * them out for modification
+   *
+   * @param source list holding the attachment
+   * @param index position of the attachment in the source list
+   */
+  void addShared(AttachmentList source, int index) {
+    add(source.peek(index));
+    markShared();
+    if (owned != null) {
+      owned[size - 1] = false;
+    }
+    source.markShared();
+    if (source.owned != null) {
+      source.owned[index] = false;
+    }
+  }
+
+  /**
+   * marks the attachments as shared, keeping the own ones known so far
+   */
+  private void markShared() {
+    if (!sharedElements) {
+      sharedElements = true;
+      owned = new boolean[elements.length];
+      Arrays.fill(owned, 0, size, true);
+    }
   }
 
+  /**
+   * @return sorted copy of this list, which shares the attachments with this list until either list is modified
+   */
   public AttachmentList cloneList() {
     AttachmentList cloned = new AttachmentList();
-    for (int i = 0; i < this.size(); i++) {
-      cloned.add(this.get(i).cloneAttachment());
+    if (isSorted()) {
+      cloned.share(this);
+    } else {
+      cloned.elements = new Attachment[size];
+      for (int i = 0; i < size; i++) {
+        cloned.elements[i] = elements[i].cloneAttachment();
+      }
+      cloned.size = size;
+      Arrays.sort(cloned.elements);
     }
-    Collections.sort(cloned);
     return cloned;
 
   }
 
+  /**
+   * @return copy of this list in the same order, which shares the attachments with this list until either list is
+   *         modified
+   */
+  @Override
+  public AttachmentList clone() {
+    AttachmentList cloned = new AttachmentList();
+    cloned.share(this);
+    return cloned;
+  }
+
+  /**
+   * the order is checked on demand because attachments handed out by the iterator may have been modified
+   */
+  private boolean isSorted() {
+    for (int i = 1; i < size; i++) {
+      if (elements[i - 1].compareTo(elements[i]) > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void share(AttachmentList source) {
+    elements = source.elements;
+    size = source.size;
+    sharedArray = true;
+    sharedElements = true;
+    source.sharedArray = true;
+    source.sharedElements = true;
+    source.owned = null;
+  }
+
+  private void ownArray() {
+    if (sharedArray) {
+      elements = Arrays.copyOf(elements, Math.max(4, size + 1));
+      if (owned != null) {
+        owned = Arrays.copyOf(owned, elements.length);
+      }
+      sharedArray = false;
+    }
+  }
+
+  /**
+   * @return the attachment at the given position, cloned first if it is shared with another list
+   */
+  private Attachment ownElement(int index) {
+    if (sharedElements) {
+      if (owned == null) {
+        owned = new boolean[elements.length];
+      }
+      if (!owned[index]) {
+        ownArray();
+        elements[index] = elements[index].cloneAttachment();
+        owned[index] = true;
+      }
+    }
+    return elements[index];
+  }
+
+  private class Itr implements Iterator<Attachment> {
+
+    int cursor;
+
+    int last = -1;
+
+    int expectedModCount = modCount;
+
+    @Override
+    public boolean hasNext() {
+      return cursor < size;
+    }
+
+    @Override
+    public Attachment next() {
+      checkForComodification();
+      if (cursor >= size) {
+        throw new NoSuchElementException();
+      }
+      last = cursor++;
+      return ownElement(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      checkForComodification();
+      AttachmentList.this.remove(last);
+      cursor = last;
+      last = -1;
+      expectedModCount = modCount;
+    }
+
+    void checkForComodification() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+
+  private class ListItr extends Itr implements ListIterator<Attachment> {
+
+    ListItr(int index) {
+      cursor = index;
+    }
+
+    @Override
+    public boolean hasPrevious() {
+      return cursor > 0;
+    }
+
+    @Override
+    public Attachment previous() {
+      checkForComodification();
+      if (cursor <= 0) {
+        throw new NoSuchElementException();
+      }
+      last = --cursor;
+      return ownElement(last);
+    }
+
+    @Override
+    public int nextIndex() {
+      return cursor;
+    }
+
+    @Override
+    public int previousIndex() {
+      return cursor - 1;
+    }
+
+    @Override
+    public void set(Attachment element) {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      checkForComodification();
+      AttachmentList.this.set(last, element);
+    }
+
+    @Override
+    public void add(Attachment element) {
+      checkForComodification();
+      AttachmentList.this.add(cursor++, element);
+      last = -1;
+      expectedModCount = modCount;
+    }
+  }
+
 }
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator.OutputType;
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+
+/**
+ * {@code BatchProcessor} runs manipulator operations over many inputs in parallel.
+ * <p>
+ * The inputs are split into chunks which are executed on the given executor, e.g. a
+ * {@link java.util.concurrent.ForkJoinPool}. Every chunk borrows one manipulator from the pool for its whole run, so
+ * the pool size bounds the parallelism. Results are returned in input order; a failing item is reported in its
+ * {@link BatchResult} and does not abort the batch.
+ */
+public class BatchProcessor {
+
+  public static final int DEFAULT_CHUNK_SIZE = 64;
+
+  /**
+   * {@code Operation} operation applied to each item of a batch
+   *
+   * @param <I> input type
+   * @param <O> output type
+   */
+  public interface Operation<I, O> {
+    O apply(AbstractChemistryManipulator manipulator, I item) throws Exception;
+  }
+
+  private final ManipulatorPool pool;
+
+  private final ExecutorService executor;
+
+  private final int chunkSize;
+
+  public BatchProcessor(ManipulatorPool pool, ExecutorService executor) {
+    this(pool, executor, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param pool manipulators used by the workers
+   * @param executor executor running the chunks
+   * @param chunkSize number of items handled by one task
+   */
+  public BatchProcessor(ManipulatorPool pool, ExecutorService executor, int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+    }
+    this.pool = pool;
+    this.executor = executor;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * converts every input, see {@link AbstractChemistryManipulator#convert(String, StType)}
+   *
+   * @param data chemical notations to convert
+   * @param type type of the input data
+   * @return results in input order
+   * @throws CTKException if the batch is interrupted
+   */
+  public List<BatchResult<String>> convertAll(List<String> data, final StType type) throws CTKException {
+    return processAll(data, new Operation<String, String>() {
+      @Override
+      public String apply(AbstractChemistryManipulator manipulator, String item) throws Exception {
+        return manipulator.convert(item, type);
+      }
+    });
+  }
+
+  /**
+   * canonicalizes every input, see {@link AbstractChemistryManipulator#canonicalize(String)}
+   *
+   * @param data smiles to canonicalize
+   * @return results in input order
+   * @throws CTKException if the batch is interrupted
+   */
+  public List<BatchResult<String>> canonicalizeAll(List<String> data) throws CTKException {
+    return processAll(data, new Operation<String, String>() {
+      @Override
+      public String apply(AbstractChemistryManipulator manipulator, String item) throws Exception {
+        return manipulator.canonicalize(item);
+      }
+    });
+  }
+
+  /**
+   * calculates the molecule info of every input, see {@link AbstractChemistryManipulator#getMoleculeInfo}
+   *
+   * @param molecules molecules to calculate, each molecule must belong to exactly one item
+   * @return results in input order
+   * @throws CTKException if the batch is interrupted
+   */
+  public List<BatchResult<MoleculeInfo>> getMoleculeInfoAll(List<? extends AbstractMolecule> molecules)
+      throws CTKException {
+    return processAll(molecules, new Operation<AbstractMolecule, MoleculeInfo>() {
+      @Override
+      public MoleculeInfo apply(AbstractChemistryManipulator manipulator, AbstractMolecule item) throws Exception {
+        return manipulator.getMoleculeInfo(item);
+      }
+    });
+  }
+
+  /**
+   * renders every molfile, see {@link AbstractChemistryManipulator#renderMol}. Images found in the cache are not
+   * rendered again, new images are added to it.
+   *
+   * @param molfiles molfiles to render
+   * @param outputType image type
+   * @param width image width
+   * @param height image height
+   * @param rgb background color
+   * @param cache cache shared by the workers, null to render every item
+   * @return images in input order
+   * @throws CTKException if the batch is interrupted
+   */
+  public List<BatchResult<byte[]>> renderMolAll(List<String> molfiles, OutputType outputType, int width, int height,
+      int rgb, RenderCache cache) throws CTKException {
+    return processAll(molfiles, new RenderOperation(StType.MOLFILE, outputType, width, height, rgb, cache));
+  }
+
+  /**
+   * renders every sequence, see {@link AbstractChemistryManipulator#renderSequence}. Images found in the cache are not
+   * rendered again, new images are added to it.
+   *
+   * @param sequences sequences to render
+   * @param outputType image type
+   * @param width image width
+   * @param height image height
+   * @param rgb background color
+   * @param cache cache shared by the workers, null to render every item
+   * @return images in input order
+   * @throws CTKException if the batch is interrupted
+   */
+  public List<BatchResult<byte[]>> renderSequenceAll(List<String> sequences, OutputType outputType, int width,
+      int height, int rgb, RenderCache cache) throws CTKException {
+    return processAll(sequences, new RenderOperation(StType.SEQUENCE, outputType, width, height, rgb, cache));
+  }
+
+  /**
+   * applies the given operation to every input
+   *
+   * @param items inputs
+   * @param operation operation to apply
+   * @param <I> input type
+   * @param <O> output type
+   * @return results in input order
+   * @throws CTKException if the batch is interrupted
+   */
+  public <I, O> List<BatchResult<O>> processAll(List<? extends I> items, Operation<I, O> operation)
+      throws CTKException {
+    List<BatchResult<O>> results = new ArrayList<BatchResult<O>>(Collections.<BatchResult<O>> nCopies(items.size(),
+        null));
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int start = 0; start < items.size(); start += chunkSize) {
+      int end = Math.min(start + chunkSize, items.size());
+      futures.add(executor.submit(new Chunk<I, O>(items, start, end, operation, results)));
+    }
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancel(futures);
+      throw new CTKException("Batch interrupted", e);
+    } catch (ExecutionException e) {
+      cancel(futures);
+      throw new CTKException("Batch failed", e.getCause());
+    }
+    return results;
+  }
+
+  private static void cancel(List<Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  private class Chunk<I, O> implements Callable<Void> {
+
+    private final List<? extends I> items;
+
+    private final int start;
+
+    private final int end;
+
+    private final Operation<I, O> operation;
+
+    private final List<BatchResult<O>> results;
+
+    Chunk(List<? extends I> items, int start, int end, Operation<I, O> operation, List<BatchResult<O>> results) {
+      this.items = items;
+      this.start = start;
+      this.end = end;
+      this.operation = operation;
+      this.results = results;
+    }
+
+    @Override
+    public Void call() {
+      AbstractChemistryManipulator manipulator;
+      try {
+        manipulator = pool.borrow();
+      } catch (CTKException e) {
+        for (int i = start; i < end; i++) {
+          results.set(i, BatchResult.<O> failure(e));
+        }
+        return null;
+      }
+      try {
+        for (int i = start; i < end; i++) {
+          try {
+            results.set(i, BatchResult.success(operation.apply(manipulator, items.get(i))));
+          } catch (Exception e) {
+            results.set(i, BatchResult.<O> failure(e));
+          }
+        }
+      } finally {
+        pool.release(manipulator);
+      }
+      return null;
+    }
+  }
+
+  private static final class RenderOperation implements Operation<String, byte[]> {
+
+    private final StType type;
+
+    private final OutputType outputType;
+
+    private final int width;
+
+    private final int height;
+
+    private final int rgb;
+
+    private final RenderCache cache;
+
+    RenderOperation(StType type, OutputType outputType, int width, int height, int rgb, RenderCache cache) {
+      this.type = type;
+      this.outputType = outputType;
+      this.width = width;
+      this.height = height;
+      this.rgb = rgb;
+      this.cache = cache;
+    }
+
+    @Override
+    public byte[] apply(AbstractChemistryManipulator manipulator, String item) throws Exception {
+      boolean cached = cache != null && item != null;
+      byte[] image = cached ? cache.get(type, item, outputType, width, height, rgb) : null;
+      if (image == null) {
+        image = type == StType.SEQUENCE ? manipulator.renderSequence(item, outputType, width, height, rgb)
+            : manipulator.renderMol(item, outputType, width, height, rgb);
+        if (cached && image != null) {
+          cache.put(type, item, outputType, width, height, rgb, image);
+        }
+      }
+      return image;
+    }
+  }
+
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+/**
+ * {@code BatchResult} result of one item of a batch operation, either a value or the error the item failed with
+ *
+ * @param <T> value type
+ */
+public class BatchResult<T> {
+
+  private final T value;
+
+  private final Exception error;
+
+  private BatchResult(T value, Exception error) {
+    this.value = value;
+    this.error = error;
+  }
+
+  public static <T> BatchResult<T> success(T value) {
+    return new BatchResult<T>(value, null);
+  }
+
+  public static <T> BatchResult<T> failure(Exception error) {
+    return new BatchResult<T>(null, error);
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  /**
+   * @return result value, null if the item failed
+   */
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * @return error the item failed with, null on success
+   */
+  public Exception getError() {
+    return error;
+  }
+
+}
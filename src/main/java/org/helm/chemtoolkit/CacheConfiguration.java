@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.nio.file.Path;
+
+/**
+ * {@code CacheConfiguration} settings of a {@link CachingChemistryManipulator}. A size of 0 disables the cache of the
+ * corresponding operation. Rendered images are kept in a {@link RenderCache}, optionally backed by a directory.
+ */
+public class CacheConfiguration {
+
+  public static final int DEFAULT_SIZE = 10000;
+
+  /** rendered images can be large, so their cache is disabled unless a size is set */
+  public static final int DEFAULT_RENDER_SIZE = 0;
+
+  private int canonicalizeCacheSize = DEFAULT_SIZE;
+
+  private CachePolicy canonicalizePolicy = CachePolicy.LRU;
+
+  private int convertCacheSize = DEFAULT_SIZE;
+
+  private CachePolicy convertPolicy = CachePolicy.LRU;
+
+  private int renderCacheSize = DEFAULT_RENDER_SIZE;
+
+  private CachePolicy renderPolicy = CachePolicy.LRU;
+
+  private Path renderCacheDirectory;
+
+  public CacheConfiguration() {
+  }
+
+  public CacheConfiguration(int canonicalizeCacheSize, CachePolicy canonicalizePolicy, int convertCacheSize,
+      CachePolicy convertPolicy) {
+    this.canonicalizeCacheSize = canonicalizeCacheSize;
+    this.canonicalizePolicy = canonicalizePolicy;
+    this.convertCacheSize = convertCacheSize;
+    this.convertPolicy = convertPolicy;
+  }
+
+  public int getCanonicalizeCacheSize() {
+    return canonicalizeCacheSize;
+  }
+
+  public void setCanonicalizeCacheSize(int canonicalizeCacheSize) {
+    this.canonicalizeCacheSize = canonicalizeCacheSize;
+  }
+
+  public CachePolicy getCanonicalizePolicy() {
+    return canonicalizePolicy;
+  }
+
+  public void setCanonicalizePolicy(CachePolicy canonicalizePolicy) {
+    this.canonicalizePolicy = canonicalizePolicy;
+  }
+
+  public int getConvertCacheSize() {
+    return convertCacheSize;
+  }
+
+  public void setConvertCacheSize(int convertCacheSize) {
+    this.convertCacheSize = convertCacheSize;
+  }
+
+  public CachePolicy getConvertPolicy() {
+    return convertPolicy;
+  }
+
+  public void setConvertPolicy(CachePolicy convertPolicy) {
+    this.convertPolicy = convertPolicy;
+  }
+
+  public int getRenderCacheSize() {
+    return renderCacheSize;
+  }
+
+  public void setRenderCacheSize(int renderCacheSize) {
+    this.renderCacheSize = renderCacheSize;
+  }
+
+  public CachePolicy getRenderPolicy() {
+    return renderPolicy;
+  }
+
+  public void setRenderPolicy(CachePolicy renderPolicy) {
+    this.renderPolicy = renderPolicy;
+  }
+
+  /**
+   * @return directory the rendered images are written to, null if they are kept in memory only
+   */
+  public Path getRenderCacheDirectory() {
+    return renderCacheDirectory;
+  }
+
+  public void setRenderCacheDirectory(Path renderCacheDirectory) {
+    this.renderCacheDirectory = renderCacheDirectory;
+  }
+
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@code CachingChemistryManipulator} caches the results of {@link #canonicalize(String)},
+ * {@link #convert(String, StType)} and the render operations, which are pure functions of their input. Repeated inputs
+ * are answered from the cache without calling the wrapped manipulator. Failures are not cached. The caches are thread
+ * safe.
+ */
+public class CachingChemistryManipulator extends DelegatingChemistryManipulator {
+
+  private final ResultCache<String, String> canonicalizeCache;
+
+  private final ResultCache<ConvertKey, String> convertCache;
+
+  private final RenderCache renderCache;
+
+  public CachingChemistryManipulator(AbstractChemistryManipulator delegate, CacheConfiguration configuration) {
+    super(delegate);
+    this.canonicalizeCache = configuration.getCanonicalizeCacheSize() > 0 ? ResultCache.<String, String> create(
+        configuration.getCanonicalizePolicy(), configuration.getCanonicalizeCacheSize()) : null;
+    this.convertCache = configuration.getConvertCacheSize() > 0 ? ResultCache.<ConvertKey, String> create(
+        configuration.getConvertPolicy(), configuration.getConvertCacheSize()) : null;
+    this.renderCache = configuration.getRenderCacheSize() > 0 ? new RenderCache(configuration.getRenderPolicy(),
+        configuration.getRenderCacheSize(), configuration.getRenderCacheDirectory()) : null;
+  }
+
+  @Override
+  public String canonicalize(String data) throws CTKException, CTKSmilesException {
+    if (canonicalizeCache == null || data == null) {
+      return delegate.canonicalize(data);
+    }
+    String result = canonicalizeCache.get(data);
+    if (result == null) {
+      result = delegate.canonicalize(data);
+      if (result != null) {
+        canonicalizeCache.put(data, result);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public String convert(String data, StType type) throws CTKException {
+    if (convertCache == null || data == null) {
+      return delegate.convert(data, type);
+    }
+    ConvertKey key = new ConvertKey(data, type);
+    String result = convertCache.get(key);
+    if (result == null) {
+      result = delegate.convert(data, type);
+      if (result != null) {
+        convertCache.put(key, result);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public byte[] renderMol(String molFile, OutputType outputType, int width, int height, int rgb)
+      throws CTKException {
+    return render(StType.MOLFILE, molFile, outputType, width, height, rgb);
+  }
+
+  @Override
+  public byte[] renderSequence(String sequence, OutputType outputType, int width, int height, int rgb)
+      throws CTKException {
+    return render(StType.SEQUENCE, sequence, outputType, width, height, rgb);
+  }
+
+  /**
+   * writes the cached image if the render cache is enabled, streams from the wrapped manipulator otherwise
+   */
+  @Override
+  public void renderMol(String molFile, OutputType outputType, int width, int height, int rgb, OutputStream out)
+      throws IOException, CTKException {
+    if (renderCache == null) {
+      delegate.renderMol(molFile, outputType, width, height, rgb, out);
+    } else {
+      out.write(renderMol(molFile, outputType, width, height, rgb));
+    }
+  }
+
+  /**
+   * writes the cached image if the render cache is enabled, streams from the wrapped manipulator otherwise
+   */
+  @Override
+  public void renderSequence(String sequence, OutputType outputType, int width, int height, int rgb,
+      OutputStream out) throws IOException, CTKException {
+    if (renderCache == null) {
+      delegate.renderSequence(sequence, outputType, width, height, rgb, out);
+    } else {
+      out.write(renderSequence(sequence, outputType, width, height, rgb));
+    }
+  }
+
+  private byte[] render(StType type, String data, OutputType outputType, int width, int height, int rgb)
+      throws CTKException {
+    if (renderCache == null || data == null || outputType == null) {
+      return renderUncached(type, data, outputType, width, height, rgb);
+    }
+    byte[] result = renderCache.get(type, data, outputType, width, height, rgb);
+    if (result == null) {
+      result = renderUncached(type, data, outputType, width, height, rgb);
+      if (result != null) {
+        renderCache.put(type, data, outputType, width, height, rgb, result);
+      }
+    }
+    return result;
+  }
+
+  private byte[] renderUncached(StType type, String data, OutputType outputType, int width, int height, int rgb)
+      throws CTKException {
+    if (type == StType.SEQUENCE) {
+      return delegate.renderSequence(data, outputType, width, height, rgb);
+    }
+    return delegate.renderMol(data, outputType, width, height, rgb);
+  }
+
+  /**
+   * @return cache of canonicalize results, null if disabled
+   */
+  public ResultCache<String, String> getCanonicalizeCache() {
+    return canonicalizeCache;
+  }
+
+  /**
+   * @return cache of convert results, null if disabled
+   */
+  public ResultCache<?, String> getConvertCache() {
+    return convertCache;
+  }
+
+  /**
+   * @return cache of rendered images, null if disabled
+   */
+  public RenderCache getRenderCache() {
+    return renderCache;
+  }
+
+  /**
+   * clears all caches, images written to the render cache directory are kept
+   */
+  public void clearCaches() {
+    if (canonicalizeCache != null) {
+      canonicalizeCache.clear();
+    }
+    if (convertCache != null) {
+      convertCache.clear();
+    }
+    if (renderCache != null) {
+      renderCache.clear();
+    }
+  }
+
+  private static final class ConvertKey {
+    private final String data;
+
+    private final StType type;
+
+    ConvertKey(String data, StType type) {
+      this.data = data;
+      this.type = type;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * data.hashCode() + (type == null ? 0 : type.ordinal());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ConvertKey)) {
+        return false;
+      }
+      ConvertKey other = (ConvertKey) obj;
+      return type == other.type && data.equals(other.data);
+    }
+  }
+
+}
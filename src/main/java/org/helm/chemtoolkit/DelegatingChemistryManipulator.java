@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@code DelegatingChemistryManipulator} base class for decorators, forwards every operation to the wrapped
+ * manipulator. Subclasses override the operations they decorate.
+ */
+public abstract class DelegatingChemistryManipulator extends AbstractChemistryManipulator {
+
+  protected final AbstractChemistryManipulator delegate;
+
+  protected DelegatingChemistryManipulator(AbstractChemistryManipulator delegate) {
+    if (delegate == null) {
+      throw new IllegalArgumentException("delegate must not be null");
+    }
+    this.delegate = delegate;
+  }
+
+  /**
+   * @return the wrapped manipulator
+   */
+  public AbstractChemistryManipulator getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public String convertMolecule(AbstractMolecule container, StType type) throws CTKException {
+    return delegate.convertMolecule(container, type);
+  }
+
+  @Override
+  public String convertMolIntoSmilesWithAtomMapping(String molfile) throws CTKException {
+    return delegate.convertMolIntoSmilesWithAtomMapping(molfile);
+  }
+
+  @Override
+  public boolean isConnected(String molfile) throws CTKException {
+    return delegate.isConnected(molfile);
+  }
+
+  @Override
+  public String convert(String data, StType type) throws CTKException {
+    return delegate.convert(data, type);
+  }
+
+  @Override
+  public String convertExtendedSmiles(String data) {
+    return delegate.convertExtendedSmiles(data);
+  }
+
+  @Override
+  public void convertExtendedSmiles(CharSequence data, StringBuilder out) {
+    delegate.convertExtendedSmiles(data, out);
+  }
+
+  @Override
+  public boolean validateSMILES(String smiles) {
+    return delegate.validateSMILES(smiles);
+  }
+
+  @Override
+  public MoleculeInfo getMoleculeInfo(AbstractMolecule container) throws CTKException {
+    return delegate.getMoleculeInfo(container);
+  }
+
+  @Override
+  public MoleculeInfo getSmilesMoleculeInfo(String smiles) throws CTKException {
+    return delegate.getSmilesMoleculeInfo(smiles);
+  }
+
+  @Override
+  public String canonicalize(String data) throws CTKException, CTKSmilesException {
+    return delegate.canonicalize(data);
+  }
+
+  @Override
+  public byte[] renderMol(String molFile, OutputType outputType, int width, int height, int rgb)
+      throws CTKException {
+    return delegate.renderMol(molFile, outputType, width, height, rgb);
+  }
+
+  @Override
+  public byte[] renderSequence(String sequence, OutputType outputType, int width, int height, int rgb)
+      throws CTKException {
+    return delegate.renderSequence(sequence, outputType, width, height, rgb);
+  }
+
+  @Override
+  public void renderMol(String molFile, OutputType outputType, int width, int height, int rgb, OutputStream out)
+      throws IOException, CTKException {
+    delegate.renderMol(molFile, outputType, width, height, rgb, out);
+  }
+
+  @Override
+  public void renderSequence(String sequence, OutputType outputType, int width, int height, int rgb,
+      OutputStream out) throws IOException, CTKException {
+    delegate.renderSequence(sequence, outputType, width, height, rgb, out);
+  }
+
+  @Override
+  public AbstractMolecule getMolecule(String smiles, AttachmentList attachments) throws IOException, CTKException {
+    return delegate.getMolecule(smiles, attachments);
+  }
+
+  /**
+   * forwards the context of a merge with context to the wrapped manipulator
+   */
+  @Override
+  public AbstractMolecule merge(AbstractMolecule firstContainer, IAtomBase firstRgroup,
+      AbstractMolecule secondContainer, IAtomBase secondRgroup) throws CTKException {
+    AssemblyContext context = takeMergeContext();
+    if (context != null) {
+      return delegate.merge(firstContainer, firstRgroup, secondContainer, secondRgroup, context);
+    }
+    return delegate.merge(firstContainer, firstRgroup, secondContainer, secondRgroup);
+  }
+
+  @Override
+  public AbstractMolecule assemble(AssemblyPlan plan) throws CTKException {
+    return delegate.assemble(plan);
+  }
+
+  @Override
+  public AbstractMolecule assemble(AssemblyPlan plan, AssemblyContext context) throws CTKException {
+    return delegate.assemble(plan, context);
+  }
+
+  @Override
+  protected IBondBase bindAtoms(IAtomBase atom1, IAtomBase atom2) throws CTKException {
+    return delegate.bindAtoms(atom1, atom2);
+  }
+
+  @Override
+  protected IStereoElementBase getStereoInformation(AbstractMolecule container, IAtomBase rGroup, IAtomBase atom1,
+      IAtomBase atom2) throws CTKException {
+    return delegate.getStereoInformation(container, rGroup, atom1, atom2);
+  }
+
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+/**
+ * {@code ExtendedSmilesTokenizer} incremental tokenizer for the extension block of an extended smiles, e.g.
+ * {@code [*]N[C@@H](C)C([*])=O |$_R1;;;;;_R2;$|}.
+ * <p>
+ * The tokenizer works as a cursor over the given {@link CharSequence}: {@link #next()} advances to the next token and
+ * the token is described by its type, its bounds in the input and, for atom labels, the atom position and R-group
+ * number. No substrings are created, and an instance can be {@link #reset(CharSequence) reset} and reused for any
+ * number of inputs. Instances are not thread safe.
+ *
+ * @author chistyakov
+ *
+ */
+public class ExtendedSmilesTokenizer {
+
+  /**
+   *
+   * {@code TokenType} type of a token in the extension block
+   */
+  public enum TokenType {
+    /** a non empty label of the atom label field ($...$) */
+    ATOM_LABEL,
+    /** any other extension field, e.g. c:1,3 or the atom coordinates */
+    FIELD
+  }
+
+  private CharSequence data;
+
+  private int smilesEnd;
+
+  private int extensionStart;
+
+  private int extensionEnd;
+
+  private boolean extension;
+
+  private int position;
+
+  private boolean inLabels;
+
+  private int atomIndex;
+
+  private TokenType type;
+
+  private int start;
+
+  private int end;
+
+  private int tokenAtom;
+
+  private int rgroup;
+
+  public ExtendedSmilesTokenizer() {
+  }
+
+  public ExtendedSmilesTokenizer(CharSequence data) {
+    reset(data);
+  }
+
+  /**
+   * positions the tokenizer in front of the first token of the given extended smiles
+   *
+   * @param data extended smiles
+   * @return this tokenizer
+   */
+  public ExtendedSmilesTokenizer reset(CharSequence data) {
+    this.data = data;
+    int length = data.length();
+    smilesEnd = indexOfSeparator(data, 0);
+    extensionStart = Math.min(smilesEnd + 1, length);
+    extensionEnd = indexOfSeparator(data, extensionStart);
+    extension = false;
+    for (int i = extensionStart; i < length; i++) {
+      if (data.charAt(i) != '|') {
+        extension = true;
+        break;
+      }
+    }
+    position = extensionStart;
+    inLabels = false;
+    atomIndex = 0;
+    type = null;
+    start = 0;
+    end = 0;
+    tokenAtom = -1;
+    rgroup = 0;
+    return this;
+  }
+
+  /**
+   * advances to the next token of the extension block
+   *
+   * @return true if there is a token, false if the extension block is exhausted
+   */
+  public boolean next() {
+    if (!extension) {
+      return false;
+    }
+    while (position < extensionEnd) {
+      if (inLabels) {
+        int labelStart = position;
+        while (position < extensionEnd && data.charAt(position) != ';' && data.charAt(position) != '$') {
+          position++;
+        }
+        int labelEnd = position;
+        int atom = atomIndex;
+        if (position < extensionEnd && data.charAt(position) == ';') {
+          atomIndex++;
+        } else {
+          inLabels = false;
+        }
+        position++;
+        if (labelEnd > labelStart) {
+          setToken(TokenType.ATOM_LABEL, labelStart, labelEnd, atom);
+          return true;
+        }
+        continue;
+      }
+
+      char c = data.charAt(position);
+      if (c == ',') {
+        position++;
+      } else if (c == '$') {
+        inLabels = true;
+        atomIndex = 0;
+        position++;
+      } else {
+        int fieldStart = position;
+        int depth = 0;
+        while (position < extensionEnd) {
+          char f = data.charAt(position);
+          if (f == '(' || f == '{' || f == '[') {
+            depth++;
+          } else if (f == ')' || f == '}' || f == ']') {
+            depth--;
+          } else if (depth <= 0 && (f == '$'
+              || f == ',' && !(position + 1 < extensionEnd && isDigit(data.charAt(position + 1))))) {
+            break;
+          }
+          position++;
+        }
+        setToken(TokenType.FIELD, fieldStart, position, -1);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void setToken(TokenType type, int start, int end, int atom) {
+    this.type = type;
+    this.start = start;
+    this.end = end;
+    this.tokenAtom = atom;
+    this.rgroup = 0;
+    if (type == TokenType.ATOM_LABEL) {
+      int p = start;
+      if (p < end && data.charAt(p) == '_') {
+        p++;
+      }
+      if (p + 1 < end && data.charAt(p) == 'R') {
+        int value = 0;
+        p++;
+        while (p < end && isDigit(data.charAt(p))) {
+          value = value * 10 + (data.charAt(p) - '0');
+          p++;
+        }
+        if (p == end) {
+          this.rgroup = value;
+        }
+      }
+    }
+  }
+
+  private static int indexOfSeparator(CharSequence data, int from) {
+    int i = from;
+    while (i < data.length() && data.charAt(i) != '|') {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * @return true if the input has a non empty extension block
+   */
+  public boolean hasExtension() {
+    return extension;
+  }
+
+  /**
+   * @return end of the smiles part, i.e. the position of the first '|' or the input length
+   */
+  public int getSmilesEnd() {
+    return smilesEnd;
+  }
+
+  /**
+   * @return start of the extension block, the position after the first '|'
+   */
+  public int getExtensionStart() {
+    return extensionStart;
+  }
+
+  /**
+   * @return end of the extension block, the position of the closing '|' or the input length
+   */
+  public int getExtensionEnd() {
+    return extensionEnd;
+  }
+
+  public TokenType getType() {
+    return type;
+  }
+
+  /**
+   * @return start of the current token in the input
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * @return end (exclusive) of the current token in the input
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * @return zero based position of the atom the current label belongs to, -1 for other fields
+   */
+  public int getAtomIndex() {
+    return tokenAtom;
+  }
+
+  /**
+   * @return R-group number if the current token is a R-group label like _R1 or R1, 0 otherwise
+   */
+  public int getRgroup() {
+    return rgroup;
+  }
+
+  public boolean isRgroup() {
+    return rgroup > 0;
+  }
+
+  /**
+   * appends the current token to the given builder
+   *
+   * @param sb builder to append to
+   * @return the given builder
+   */
+  public StringBuilder appendToken(StringBuilder sb) {
+    return sb.append(data, start, end);
+  }
+
+}
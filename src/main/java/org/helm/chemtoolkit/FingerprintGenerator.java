@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.Arrays;
+
+/**
+ * {@code FingerprintGenerator} generates path fingerprints of molecules: every linear path of up to a maximum number
+ * of bonds is hashed from its atomic numbers and bond orders, independent of the direction it is read, and sets one
+ * bit of a fixed size bit set held in {@code long} words. Single, double and aromatic bonds share one code and only
+ * triple bonds are told apart: aromatic and Kekule forms of a ring, which merging may switch between, give the same
+ * fingerprint, and a chain path hashes the same whether or not it lies in a ring of a larger molecule.
+ * <p>
+ * Paths through atoms without atomic number (R-groups and other pseudo atoms) are left out, so every path of a
+ * monomer is also a path of a molecule it was merged into. A molecule therefore has all bits of each of its
+ * substructures set, which makes the fingerprints usable for substructure screening with {@link FingerprintIndex}.
+ * <p>
+ * Instances reuse scratch arrays between calls and are not thread safe.
+ */
+public final class FingerprintGenerator {
+
+  /** default fingerprint size in bits */
+  public static final int DEFAULT_SIZE = 1024;
+
+  /** default maximum path length in bonds */
+  public static final int DEFAULT_PATH_LENGTH = 7;
+
+  private static final int BOND_CODE = 256;
+
+  private static final int TRIPLE_BOND_CODE = 512;
+
+  private final int size;
+
+  private final int maxPathLength;
+
+  /** atom and bond codes of the current path, atoms at even positions */
+  private final int[] codes;
+
+  /** atom indices of the current path */
+  private final int[] path;
+
+  private boolean[] visited = new boolean[0];
+
+  private long[] words;
+
+  private MoleculeGraph graph;
+
+  public FingerprintGenerator() {
+    this(DEFAULT_SIZE, DEFAULT_PATH_LENGTH);
+  }
+
+  /**
+   * @param size fingerprint size in bits, a positive multiple of 64
+   * @param maxPathLength maximum number of bonds of a path, 0 for atom counts only
+   */
+  public FingerprintGenerator(int size, int maxPathLength) {
+    if (size <= 0 || size % 64 != 0) {
+      throw new IllegalArgumentException("Fingerprint size must be a positive multiple of 64: " + size);
+    }
+    if (maxPathLength < 0) {
+      throw new IllegalArgumentException("Maximum path length must not be negative: " + maxPathLength);
+    }
+    this.size = size;
+    this.maxPathLength = maxPathLength;
+    this.codes = new int[maxPathLength * 2 + 1];
+    this.path = new int[maxPathLength + 1];
+  }
+
+  /**
+   * @return fingerprint size in bits
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @return number of {@code long} words of a fingerprint
+   */
+  public int getWordCount() {
+    return size / 64;
+  }
+
+  public int getMaxPathLength() {
+    return maxPathLength;
+  }
+
+  /**
+   * @param molecule molecule
+   * @return fingerprint of the molecule
+   * @throws CTKException if the graph of the molecule can not be built
+   */
+  public long[] generate(AbstractMolecule molecule) throws CTKException {
+    return generate(molecule.getGraph());
+  }
+
+  /**
+   * @param graph molecule graph
+   * @return fingerprint of the graph
+   */
+  public long[] generate(MoleculeGraph graph) {
+    long[] result = new long[getWordCount()];
+    generate(graph, result, 0);
+    return result;
+  }
+
+  /**
+   * ORs the fingerprint of the graph into the given words, without allocation
+   *
+   * @param graph molecule graph
+   * @param fingerprint destination words
+   * @param offset index of the first word of the fingerprint in the destination
+   */
+  public void generate(MoleculeGraph graph, long[] fingerprint, int offset) {
+    int atomCount = graph.getAtomCount();
+    if (visited.length < atomCount) {
+      visited = new boolean[Math.max(atomCount, visited.length * 2)];
+    }
+    this.graph = graph;
+    this.words = fingerprint;
+    try {
+      for (int atom = 0; atom < atomCount; atom++) {
+        if (graph.getAtomicNumber(atom) > 0) {
+          visit(atom, 0, offset);
+        }
+      }
+    } finally {
+      this.graph = null;
+      this.words = null;
+    }
+  }
+
+  /**
+   * extends the current path by the given atom, each path is emitted once from the end with the lower atom index
+   */
+  private void visit(int atom, int length, int offset) {
+    path[length] = atom;
+    codes[length * 2] = graph.getAtomicNumber(atom);
+    if (length == 0 || path[0] < atom) {
+      setBit(hash(length), offset);
+    }
+    if (length == maxPathLength) {
+      return;
+    }
+    visited[atom] = true;
+    for (int i = 0; i < graph.getDegree(atom); i++) {
+      int neighbor = graph.getNeighbor(atom, i);
+      if (!visited[neighbor] && graph.getAtomicNumber(neighbor) > 0) {
+        int bond = graph.getAtomBond(atom, i);
+        codes[length * 2 + 1] = graph.getBondOrder(bond) == 3 ? TRIPLE_BOND_CODE : BOND_CODE;
+        visit(neighbor, length + 1, offset);
+      }
+    }
+    visited[atom] = false;
+  }
+
+  /**
+   * @return hash of the current path, the smaller of the hashes read forward and backward
+   */
+  private long hash(int length) {
+    int last = length * 2;
+    long forward = length;
+    long backward = length;
+    for (int i = 0; i <= last; i++) {
+      forward = (forward ^ codes[i]) * 0x100000001b3L;
+      backward = (backward ^ codes[last - i]) * 0x100000001b3L;
+    }
+    return mix(Math.min(forward, backward));
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+
+  private void setBit(long hash, int offset) {
+    int bit = (int) ((hash >>> 1) % size);
+    words[offset + (bit >>> 6)] |= 1L << bit;
+  }
+
+  @Override
+  public String toString() {
+    return "FingerprintGenerator[size=" + size + ", maxPathLength=" + maxPathLength + "]";
+  }
+
+  /**
+   * @param fingerprint fingerprint words
+   * @return number of set bits
+   */
+  public static int cardinality(long[] fingerprint) {
+    int count = 0;
+    for (long word : fingerprint) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /**
+   * @param first first fingerprint
+   * @param second second fingerprint of the same size
+   * @return Tanimoto similarity, the number of common bits divided by the number of bits set in either, 1 for two
+   *         empty fingerprints
+   */
+  public static double tanimoto(long[] first, long[] second) {
+    int common = 0;
+    int union = 0;
+    for (int i = 0; i < first.length; i++) {
+      common += Long.bitCount(first[i] & second[i]);
+      union += Long.bitCount(first[i] | second[i]);
+    }
+    return union == 0 ? 1 : (double) common / union;
+  }
+
+  /**
+   * @param target fingerprint of the molecule
+   * @param query fingerprint of the substructure, of the same size
+   * @return true if all bits of the query are set in the target, a necessary condition for a substructure match
+   */
+  public static boolean containsAll(long[] target, long[] query) {
+    for (int i = 0; i < query.length; i++) {
+      if ((target[i] & query[i]) != query[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param fingerprint fingerprint words
+   * @return bit string of the fingerprint, bit 0 first
+   */
+  public static String toBitString(long[] fingerprint) {
+    char[] bits = new char[fingerprint.length * 64];
+    Arrays.fill(bits, '0');
+    for (int i = 0; i < bits.length; i++) {
+      if ((fingerprint[i >>> 6] & (1L << i)) != 0) {
+        bits[i] = '1';
+      }
+    }
+    return new String(bits);
+  }
+
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@code FingerprintIndex} screening index over fingerprints of one size, see {@link FingerprintGenerator}. The
+ * fingerprints are packed one after the other into a single {@code long} array together with their bit counts, so a
+ * scan runs sequentially through memory without object access.
+ * <p>
+ * {@link #screen(long[])} returns the candidates for a substructure search, the fingerprints that contain all bits of
+ * the query; only these need to be matched by a full substructure matcher. {@link #search(long[], double)} returns
+ * the fingerprints with a minimum Tanimoto similarity and skips fingerprints whose bit count alone rules out the
+ * threshold. Fingerprints are addressed by the position returned from {@link #add(long[])}.
+ * <p>
+ * Scans can run concurrently, additions are exclusive.
+ */
+public class FingerprintIndex {
+
+  private static final int[] EMPTY = new int[0];
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final int wordCount;
+
+  private long[] words;
+
+  private int[] cardinalities;
+
+  private int size;
+
+  /**
+   * @param wordCount number of {@code long} words of every fingerprint
+   */
+  public FingerprintIndex(int wordCount) {
+    this(wordCount, 16);
+  }
+
+  /**
+   * @param wordCount number of {@code long} words of every fingerprint
+   * @param expectedSize number of fingerprints the index holds without growing
+   */
+  public FingerprintIndex(int wordCount, int expectedSize) {
+    if (wordCount <= 0) {
+      throw new IllegalArgumentException("Word count must be positive: " + wordCount);
+    }
+    this.wordCount = wordCount;
+    int capacity = Math.max(expectedSize, 1);
+    this.words = new long[capacity * wordCount];
+    this.cardinalities = new int[capacity];
+  }
+
+  /**
+   * @param fingerprint fingerprint, copied into the index
+   * @return position of the fingerprint
+   */
+  public int add(long[] fingerprint) {
+    checkSize(fingerprint);
+    lock.writeLock().lock();
+    try {
+      if (size == cardinalities.length) {
+        int capacity = cardinalities.length * 2;
+        if ((long) capacity * wordCount > Integer.MAX_VALUE - 8) {
+          capacity = (Integer.MAX_VALUE - 8) / wordCount;
+          if (capacity <= size) {
+            throw new IllegalStateException("Fingerprint index is full with " + size + " fingerprints");
+          }
+        }
+        words = Arrays.copyOf(words, capacity * wordCount);
+        cardinalities = Arrays.copyOf(cardinalities, capacity);
+      }
+      System.arraycopy(fingerprint, 0, words, size * wordCount, wordCount);
+      cardinalities[size] = FingerprintGenerator.cardinality(fingerprint);
+      return size++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param position position of the fingerprint
+   * @return copy of the fingerprint
+   */
+  public long[] get(int position) {
+    lock.readLock().lock();
+    try {
+      if (position < 0 || position >= size) {
+        throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+      }
+      return Arrays.copyOfRange(words, position * wordCount, (position + 1) * wordCount);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getWordCount() {
+    return wordCount;
+  }
+
+  /**
+   * substructure pre-filter
+   *
+   * @param query fingerprint of the substructure
+   * @return positions of the fingerprints containing all bits of the query, ascending
+   */
+  public int[] screen(long[] query) {
+    checkSize(query);
+    int[] queryWords = new int[wordCount];
+    int queryWordCount = 0;
+    for (int i = 0; i < wordCount; i++) {
+      if (query[i] != 0) {
+        queryWords[queryWordCount++] = i;
+      }
+    }
+    int queryCardinality = FingerprintGenerator.cardinality(query);
+    lock.readLock().lock();
+    try {
+      int[] result = EMPTY;
+      int count = 0;
+      candidates: for (int position = 0; position < size; position++) {
+        if (cardinalities[position] < queryCardinality) {
+          continue;
+        }
+        int base = position * wordCount;
+        for (int i = 0; i < queryWordCount; i++) {
+          long word = query[queryWords[i]];
+          if ((words[base + queryWords[i]] & word) != word) {
+            continue candidates;
+          }
+        }
+        if (count == result.length) {
+          result = Arrays.copyOf(result, Math.max(16, count * 2));
+        }
+        result[count++] = position;
+      }
+      return Arrays.copyOf(result, count);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * similarity search
+   *
+   * @param query fingerprint to compare with
+   * @param threshold minimum Tanimoto similarity
+   * @return positions of the fingerprints with at least the given similarity, ascending
+   */
+  public int[] search(long[] query, double threshold) {
+    checkSize(query);
+    int queryCardinality = FingerprintGenerator.cardinality(query);
+    lock.readLock().lock();
+    try {
+      int[] result = EMPTY;
+      int count = 0;
+      for (int position = 0; position < size; position++) {
+        if (similarity(position, query, queryCardinality, threshold) >= threshold) {
+          if (count == result.length) {
+            result = Arrays.copyOf(result, Math.max(16, count * 2));
+          }
+          result[count++] = position;
+        }
+      }
+      return Arrays.copyOf(result, count);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param position position of the fingerprint
+   * @param query fingerprint to compare with
+   * @return Tanimoto similarity of the fingerprint at the position and the query
+   */
+  public double tanimoto(int position, long[] query) {
+    checkSize(query);
+    lock.readLock().lock();
+    try {
+      if (position < 0 || position >= size) {
+        throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+      }
+      return similarity(position, query, FingerprintGenerator.cardinality(query), 0);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return Tanimoto similarity, -1 if the bit counts alone rule out the threshold
+   */
+  private double similarity(int position, long[] query, int queryCardinality, double threshold) {
+    int cardinality = cardinalities[position];
+    int min = Math.min(cardinality, queryCardinality);
+    int max = Math.max(cardinality, queryCardinality);
+    if (max == 0) {
+      return 1;
+    }
+    if (min < threshold * max) {
+      return -1;
+    }
+    int base = position * wordCount;
+    int common = 0;
+    for (int i = 0; i < wordCount; i++) {
+      common += Long.bitCount(words[base + i] & query[i]);
+    }
+    return (double) common / (cardinality + queryCardinality - common);
+  }
+
+  private void checkSize(long[] fingerprint) {
+    if (fingerprint.length != wordCount) {
+      throw new IllegalArgumentException("Fingerprint has " + fingerprint.length + " words instead of " + wordCount);
+    }
+  }
+
+}
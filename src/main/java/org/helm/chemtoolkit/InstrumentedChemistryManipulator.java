@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code InstrumentedChemistryManipulator} times every operation of the wrapped manipulator and reports it to a
+ * {@link ManipulatorListener} together with the input and its size. The operation result and exceptions are passed
+ * through unchanged.
+ * <p>
+ * Manipulators built without a listener are not wrapped, so instrumentation costs nothing unless it is used.
+ */
+public class InstrumentedChemistryManipulator extends DelegatingChemistryManipulator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InstrumentedChemistryManipulator.class);
+
+  private final ManipulatorListener listener;
+
+  public InstrumentedChemistryManipulator(AbstractChemistryManipulator delegate, ManipulatorListener listener) {
+    super(delegate);
+    if (listener == null) {
+      throw new IllegalArgumentException("listener must not be null");
+    }
+    this.listener = listener;
+  }
+
+  /**
+   * @return listener receiving the operations
+   */
+  public ManipulatorListener getListener() {
+    return listener;
+  }
+
+  @Override
+  public String convertMolecule(final AbstractMolecule container, final StType type) throws CTKException {
+    return timed(ManipulatorOperation.CONVERT_MOLECULE, container, size(container),
+        new Call<String, CTKException, RuntimeException>() {
+          @Override
+          String call() throws CTKException {
+            return delegate.convertMolecule(container, type);
+          }
+        });
+  }
+
+  @Override
+  public String convertMolIntoSmilesWithAtomMapping(final String molfile) throws CTKException {
+    return timed(ManipulatorOperation.CONVERT_MOL_WITH_ATOM_MAPPING, molfile, size(molfile),
+        new Call<String, CTKException, RuntimeException>() {
+          @Override
+          String call() throws CTKException {
+            return delegate.convertMolIntoSmilesWithAtomMapping(molfile);
+          }
+        });
+  }
+
+  @Override
+  public boolean isConnected(final String molfile) throws CTKException {
+    return timed(ManipulatorOperation.IS_CONNECTED, molfile, size(molfile),
+        new Call<Boolean, CTKException, RuntimeException>() {
+          @Override
+          Boolean call() throws CTKException {
+            return delegate.isConnected(molfile);
+          }
+        });
+  }
+
+  @Override
+  public String convert(final String data, final StType type) throws CTKException {
+    return timed(ManipulatorOperation.CONVERT, data, size(data), new Call<String, CTKException, RuntimeException>() {
+      @Override
+      String call() throws CTKException {
+        return delegate.convert(data, type);
+      }
+    });
+  }
+
+  @Override
+  public String convertExtendedSmiles(final String data) {
+    return timed(ManipulatorOperation.CONVERT_EXTENDED_SMILES, data, size(data),
+        new Call<String, RuntimeException, RuntimeException>() {
+          @Override
+          String call() {
+            return delegate.convertExtendedSmiles(data);
+          }
+        });
+  }
+
+  @Override
+  public void convertExtendedSmiles(final CharSequence data, final StringBuilder out) {
+    timed(ManipulatorOperation.CONVERT_EXTENDED_SMILES, data, size(data),
+        new Call<Void, RuntimeException, RuntimeException>() {
+          @Override
+          Void call() {
+            delegate.convertExtendedSmiles(data, out);
+            return null;
+          }
+        });
+  }
+
+  @Override
+  public boolean validateSMILES(final String smiles) {
+    return timed(ManipulatorOperation.VALIDATE_SMILES, smiles, size(smiles),
+        new Call<Boolean, RuntimeException, RuntimeException>() {
+          @Override
+          Boolean call() {
+            return delegate.validateSMILES(smiles);
+          }
+        });
+  }
+
+  @Override
+  public MoleculeInfo getMoleculeInfo(final AbstractMolecule container) throws CTKException {
+    return timed(ManipulatorOperation.GET_MOLECULE_INFO, container, size(container),
+        new Call<MoleculeInfo, CTKException, RuntimeException>() {
+          @Override
+          MoleculeInfo call() throws CTKException {
+            return delegate.getMoleculeInfo(container);
+          }
+        });
+  }
+
+  @Override
+  public MoleculeInfo getSmilesMoleculeInfo(final String smiles) throws CTKException {
+    return timed(ManipulatorOperation.GET_MOLECULE_INFO, smiles, size(smiles),
+        new Call<MoleculeInfo, CTKException, RuntimeException>() {
+          @Override
+          MoleculeInfo call() throws CTKException {
+            return delegate.getSmilesMoleculeInfo(smiles);
+          }
+        });
+  }
+
+  @Override
+  public String canonicalize(final String data) throws CTKException, CTKSmilesException {
+    return timed(ManipulatorOperation.CANONICALIZE, data, size(data),
+        new Call<String, CTKException, RuntimeException>() {
+          @Override
+          String call() throws CTKException {
+            return delegate.canonicalize(data);
+          }
+        });
+  }
+
+  @Override
+  public byte[] renderMol(final String molFile, final OutputType outputType, final int width, final int height,
+      final int rgb) throws CTKException {
+    return timed(ManipulatorOperation.RENDER_MOL, molFile, size(molFile),
+        new Call<byte[], CTKException, RuntimeException>() {
+          @Override
+          byte[] call() throws CTKException {
+            return delegate.renderMol(molFile, outputType, width, height, rgb);
+          }
+        });
+  }
+
+  @Override
+  public byte[] renderSequence(final String sequence, final OutputType outputType, final int width,
+      final int height, final int rgb) throws CTKException {
+    return timed(ManipulatorOperation.RENDER_SEQUENCE, sequence, size(sequence),
+        new Call<byte[], CTKException, RuntimeException>() {
+          @Override
+          byte[] call() throws CTKException {
+            return delegate.renderSequence(sequence, outputType, width, height, rgb);
+          }
+        });
+  }
+
+  @Override
+  public void renderMol(final String molFile, final OutputType outputType, final int width, final int height,
+      final int rgb, final OutputStream out) throws IOException, CTKException {
+    timed(ManipulatorOperation.RENDER_MOL, molFile, size(molFile), new Call<Void, IOException, CTKException>() {
+      @Override
+      Void call() throws IOException, CTKException {
+        delegate.renderMol(molFile, outputType, width, height, rgb, out);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void renderSequence(final String sequence, final OutputType outputType, final int width, final int height,
+      final int rgb, final OutputStream out) throws IOException, CTKException {
+    timed(ManipulatorOperation.RENDER_SEQUENCE, sequence, size(sequence),
+        new Call<Void, IOException, CTKException>() {
+          @Override
+          Void call() throws IOException, CTKException {
+            delegate.renderSequence(sequence, outputType, width, height, rgb, out);
+            return null;
+          }
+        });
+  }
+
+  @Override
+  public AbstractMolecule getMolecule(final String smiles, final AttachmentList attachments) throws IOException,
+      CTKException {
+    return timed(ManipulatorOperation.GET_MOLECULE, smiles, size(smiles),
+        new Call<AbstractMolecule, IOException, CTKException>() {
+          @Override
+          AbstractMolecule call() throws IOException, CTKException {
+            return delegate.getMolecule(smiles, attachments);
+          }
+        });
+  }
+
+  /**
+   * the input size is the number of atoms of both molecules, taken before the merge
+   */
+  @Override
+  public AbstractMolecule merge(final AbstractMolecule firstContainer, final IAtomBase firstRgroup,
+      final AbstractMolecule secondContainer, final IAtomBase secondRgroup) throws CTKException {
+    return timed(ManipulatorOperation.MERGE, firstContainer, size(firstContainer) + size(secondContainer),
+        new Call<AbstractMolecule, CTKException, RuntimeException>() {
+          @Override
+          AbstractMolecule call() throws CTKException {
+            return InstrumentedChemistryManipulator.super.merge(firstContainer, firstRgroup, secondContainer,
+                secondRgroup);
+          }
+        });
+  }
+
+  /**
+   * the input size is the number of atoms of all monomers, taken before the assembly
+   */
+  @Override
+  public AbstractMolecule assemble(final AssemblyPlan plan) throws CTKException {
+    return timed(ManipulatorOperation.ASSEMBLE, plan, size(plan),
+        new Call<AbstractMolecule, CTKException, RuntimeException>() {
+          @Override
+          AbstractMolecule call() throws CTKException {
+            return delegate.assemble(plan);
+          }
+        });
+  }
+
+  /**
+   * the input size is the number of atoms of all monomers, taken before the assembly
+   */
+  @Override
+  public AbstractMolecule assemble(final AssemblyPlan plan, final AssemblyContext assemblyContext)
+      throws CTKException {
+    return timed(ManipulatorOperation.ASSEMBLE, plan, size(plan),
+        new Call<AbstractMolecule, CTKException, RuntimeException>() {
+          @Override
+          AbstractMolecule call() throws CTKException {
+            return delegate.assemble(plan, assemblyContext);
+          }
+        });
+  }
+
+  /**
+   * call of the wrapped manipulator, timed by {@link InstrumentedChemistryManipulator#timed}
+   *
+   * @param <T> result type, {@link Void} for operations without result
+   * @param <E1> checked exception of the call, {@link RuntimeException} if there is none
+   * @param <E2> second checked exception of the call, {@link RuntimeException} if there is none
+   */
+  private abstract static class Call<T, E1 extends Exception, E2 extends Exception> {
+
+    abstract T call() throws E1, E2;
+  }
+
+  /**
+   * runs a call of the wrapped manipulator and reports its start, its duration and its completion or failure to the
+   * listener. The result and exceptions of the call are passed through unchanged.
+   */
+  private <T, E1 extends Exception, E2 extends Exception> T timed(ManipulatorOperation operation, Object input,
+      int inputSize, Call<T, E1, E2> call) throws E1, E2 {
+    Object context = started(operation, input);
+    long start = System.nanoTime();
+    T result;
+    try {
+      result = call.call();
+    } catch (Throwable e) {
+      failed(operation, input, inputSize, start, e, context);
+      throw e;
+    }
+    completed(operation, input, inputSize, start, context);
+    return result;
+  }
+
+  private static int size(AssemblyPlan plan) {
+    int size = 0;
+    if (plan != null) {
+      for (AbstractMolecule monomer : plan.getMonomers()) {
+        size += size(monomer);
+      }
+    }
+    return size;
+  }
+
+  private static int size(CharSequence data) {
+    return data == null ? 0 : data.length();
+  }
+
+  /**
+   * @return number of atoms, SMILES length for a {@link LazyMolecule} that is not built yet
+   */
+  private static int size(AbstractMolecule container) {
+    if (container instanceof LazyMolecule && !((LazyMolecule) container).isMaterialized()) {
+      return size(((LazyMolecule) container).getSmiles());
+    }
+    return container == null ? 0 : container.getIAtomArray().size();
+  }
+
+  private Object started(ManipulatorOperation operation, Object input) {
+    try {
+      return listener.operationStarted(operation, input);
+    } catch (RuntimeException e) {
+      LOG.warn("Listener failed on start of {}", operation, e);
+      return null;
+    }
+  }
+
+  private void completed(ManipulatorOperation operation, Object input, int inputSize, long start, Object context) {
+    long nanos = System.nanoTime() - start;
+    try {
+      listener.operationCompleted(operation, input, inputSize, nanos, context);
+    } catch (RuntimeException e) {
+      LOG.warn("Listener failed on completion of {}", operation, e);
+    }
+  }
+
+  private void failed(ManipulatorOperation operation, Object input, int inputSize, long start, Throwable error,
+      Object context) {
+    long nanos = System.nanoTime() - start;
+    LOG.debug("{} failed after {} ns: {}", operation, nanos, error.getMessage());
+    try {
+      listener.operationFailed(operation, input, inputSize, nanos, error, context);
+    } catch (RuntimeException e) {
+      LOG.warn("Listener failed on failure of {}", operation, e);
+    }
+  }
+
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code LazyMolecule} molecule handle holding a SMILES and its attachments, the toolkit molecule is built by the
+ * manipulator only when a structural operation needs it. The SMILES, its R-group labels, the attachments and the
+ * molecule info through {@link AbstractChemistryManipulator#getIncrementalMoleculeInfo(AbstractMolecule)} are
+ * answered without parsing. The SMILES derived molecule info is not handed to the built molecule, whose info is
+ * calculated by the toolkit again.
+ * <p>
+ * Once built, all operations are forwarded to the toolkit molecule, and the manipulator operations taking molecules
+ * work on it; {@link #materialize()} returns it. Methods that can not throw {@link CTKException} throw an
+ * {@link IllegalStateException} if the SMILES can not be parsed. Like the manipulator, a handle must only be used by
+ * one thread at a time.
+ */
+public class LazyMolecule extends AbstractMolecule {
+
+  private final AbstractChemistryManipulator manipulator;
+
+  private final String smiles;
+
+  private AbstractMolecule molecule;
+
+  /**
+   * @param manipulator manipulator building the molecule
+   * @param smiles SMILES of the molecule
+   * @param attachments attachments of the molecule, null if none
+   */
+  LazyMolecule(AbstractChemistryManipulator manipulator, String smiles, AttachmentList attachments) {
+    this.manipulator = manipulator;
+    this.smiles = smiles;
+    this.attachments = attachments == null ? null : attachments.cloneList();
+  }
+
+  /**
+   * @return the SMILES the molecule is built from
+   */
+  public String getSmiles() {
+    return smiles;
+  }
+
+  /**
+   * @return R-group labels of the SMILES, e.g. R1, without building the molecule
+   */
+  public List<String> getRgroupLabels() {
+    return manipulator.getRGroupsFromExtendedSmiles(smiles);
+  }
+
+  /**
+   * @return true if the toolkit molecule is built
+   */
+  public boolean isMaterialized() {
+    return molecule != null;
+  }
+
+  /**
+   * builds the toolkit molecule on the first call
+   *
+   * @return the toolkit molecule
+   * @throws CTKException if the SMILES can not be parsed
+   */
+  public AbstractMolecule materialize() throws CTKException {
+    if (molecule == null) {
+      AbstractMolecule result;
+      try {
+        result = manipulator.getMolecule(smiles, attachments);
+      } catch (IOException e) {
+        throw new CTKException("Molecule can not be built from " + smiles, e);
+      }
+      if (result == null) {
+        throw new CTKException("Molecule can not be built from " + smiles);
+      }
+      molecule = result;
+    }
+    return molecule;
+  }
+
+  private AbstractMolecule materialized() {
+    try {
+      return materialize();
+    } catch (CTKException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public AttachmentList getAttachments() {
+    if (molecule != null) {
+      return molecule.getAttachments();
+    }
+    return attachments == null ? new AttachmentList() : attachments.cloneList();
+  }
+
+  @Override
+  public void setAttachments(AttachmentList attachments) {
+    if (molecule != null) {
+      molecule.setAttachments(attachments);
+    } else {
+      this.attachments = attachments.cloneList();
+    }
+  }
+
+  @Override
+  public Map<String, IAtomBase> getRgroups() throws CTKException {
+    return materialize().getRgroups();
+  }
+
+  @Override
+  public IAtomBase getRGroupAtom(int groupId, boolean rgatom) throws CTKException {
+    return materialize().getRGroupAtom(groupId, rgatom);
+  }
+
+  @Override
+  public MoleculeGraph getGraph() throws CTKException {
+    return materialize().getGraph();
+  }
+
+  @Override
+  public void removeAttachment(IAtomBase toRemove) throws CTKException {
+    materialize().removeAttachment(toRemove);
+  }
+
+  @Override
+  public void clearFlags() {
+    materialized().clearFlags();
+  }
+
+  @Override
+  public List<IAtomBase> getIAtomArray() {
+    return materialized().getIAtomArray();
+  }
+
+  @Override
+  public Object getMolecule() {
+    return materialized().getMolecule();
+  }
+
+  @Override
+  public void dearomatize() throws CTKException {
+    materialize().dearomatize();
+  }
+
+  @Override
+  public void generateCoordinates(int dem) throws CTKException {
+    materialize().generateCoordinates(dem);
+  }
+
+  @Override
+  public void removeINode(IAtomBase node) throws CTKException {
+    materialize().removeINode(node);
+  }
+
+  @Override
+  public void addIBase(IChemObjectBase object) {
+    if (object instanceof LazyMolecule) {
+      object = ((LazyMolecule) object).materialized();
+    }
+    materialized().addIBase(object);
+  }
+
+  @Override
+  public void removeIBase(IChemObjectBase object) {
+    materialized().removeIBase(object);
+  }
+
+  @Override
+  public List<IBondBase> getIBondArray() {
+    return materialized().getIBondArray();
+  }
+
+  /**
+   * @return clone of the toolkit molecule if it is built, a new handle on the same SMILES otherwise
+   */
+  @Override
+  public AbstractMolecule cloneMolecule() throws CTKException {
+    if (molecule != null) {
+      return molecule.cloneMolecule();
+    }
+    LazyMolecule clone = new LazyMolecule(manipulator, smiles, attachments);
+    clone.moleculeInfo = moleculeInfo;
+    return clone;
+  }
+
+  @Override
+  public void changeAtomLabel(int index, int toIndex) throws CTKException {
+    materialize().changeAtomLabel(index, toIndex);
+  }
+
+  @Override
+  public boolean isSingleStereo(IAtomBase atom) throws CTKException {
+    return materialize().isSingleStereo(atom);
+  }
+
+  @Override
+  protected void invalidateStructure() {
+    super.invalidateStructure();
+    if (molecule != null) {
+      molecule.invalidateStructure();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LazyMolecule[" + smiles + (molecule != null ? ", materialized]" : "]");
+  }
+
+}
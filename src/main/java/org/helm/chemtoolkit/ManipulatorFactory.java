@@ -17,13 +17,22 @@
  */
 package org.helm.chemtoolkit;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * {@code ManipulatorFactory} TODO comment me
+ * {@code ManipulatorFactory} builds manipulator instances by class name.
+ * <p>
+ * Manipulators are not thread safe, an instance must only be used by one thread at a time. Threads either use their
+ * own instance ({@link #getThreadManipulator(String)}) or borrow one from a {@link ManipulatorPool}
+ * ({@link #buildPool(String, int)}). The constructor of each manipulator class is looked up once and cached.
  * 
  * @author <a href="mailto:chistyakov@quattro-research.com">Dmitry Chistyakov</a>
  * @version $Id$
@@ -33,14 +42,127 @@ public class ManipulatorFactory {
   /** The Logger for this class */
   private static final Logger LOG = LoggerFactory.getLogger(ManipulatorFactory.class);
 
+  private static final ConcurrentMap<String, Constructor<? extends AbstractChemistryManipulator>> CONSTRUCTORS =
+      new ConcurrentHashMap<String, Constructor<? extends AbstractChemistryManipulator>>();
+
+  private static final ThreadLocal<Map<String, AbstractChemistryManipulator>> THREAD_MANIPULATORS =
+      new ThreadLocal<Map<String, AbstractChemistryManipulator>>() {
+        @Override
+        protected Map<String, AbstractChemistryManipulator> initialValue() {
+          return new HashMap<String, AbstractChemistryManipulator>();
+        }
+      };
+
   public static AbstractChemistryManipulator buildManipulator(String className) throws ClassNotFoundException,
       NoSuchMethodException, SecurityException, InstantiationException, IllegalAccessException,
       IllegalArgumentException, InvocationTargetException {
     AbstractChemistryManipulator manipulator = null;
 
     if (className != null) {
-      Class<?> clazz = Class.forName(className);
-      manipulator = (AbstractChemistryManipulator) clazz.getConstructor().newInstance();
+      manipulator = getConstructor(className).newInstance();
+    }
+    return manipulator;
+  }
+
+  /**
+   * returns the manipulator of the calling thread, the instance is created on the first call of each thread and
+   * reused afterwards
+   * 
+   * @param className class name of the manipulator implementation
+   * @return manipulator owned by the calling thread
+   * @throws ClassNotFoundException if the class does not exist
+   * @throws NoSuchMethodException if the class has no default constructor
+   * @throws SecurityException if the constructor is not accessible
+   * @throws InstantiationException if the class is abstract
+   * @throws IllegalAccessException if the constructor is not accessible
+   * @throws IllegalArgumentException if the constructor is not accessible
+   * @throws InvocationTargetException if the constructor fails
+   */
+  public static AbstractChemistryManipulator getThreadManipulator(String className) throws ClassNotFoundException,
+      NoSuchMethodException, SecurityException, InstantiationException, IllegalAccessException,
+      IllegalArgumentException, InvocationTargetException {
+    Map<String, AbstractChemistryManipulator> manipulators = THREAD_MANIPULATORS.get();
+    AbstractChemistryManipulator manipulator = manipulators.get(className);
+    if (manipulator == null) {
+      manipulator = buildManipulator(className);
+      manipulators.put(className, manipulator);
+    }
+    return manipulator;
+  }
+
+  /**
+   * builds a pool of manipulators, instances are created on demand up to the given maximum
+   * 
+   * @param className class name of the manipulator implementation
+   * @param maximumSize maximum number of instances
+   * @return pool instance of {@link ManipulatorPool}
+   * @throws ClassNotFoundException if the class does not exist
+   * @throws NoSuchMethodException if the class has no default constructor
+   * @throws SecurityException if the constructor is not accessible
+   */
+  public static ManipulatorPool buildPool(String className, int maximumSize) throws ClassNotFoundException,
+      NoSuchMethodException, SecurityException {
+    return new ManipulatorPool(getConstructor(className), maximumSize);
+  }
+
+  static Constructor<? extends AbstractChemistryManipulator> getConstructor(String className)
+      throws ClassNotFoundException, NoSuchMethodException, SecurityException {
+    Constructor<? extends AbstractChemistryManipulator> constructor = CONSTRUCTORS.get(className);
+    if (constructor == null) {
+      Class<? extends AbstractChemistryManipulator> clazz =
+          Class.forName(className).asSubclass(AbstractChemistryManipulator.class);
+      constructor = clazz.getConstructor();
+      CONSTRUCTORS.putIfAbsent(className, constructor);
+      LOG.debug("Manipulator class {} loaded", className);
+    }
+    return constructor;
+  }
+
+  /**
+   * builds a manipulator whose canonicalize and convert results are cached according to the given configuration
+   * 
+   * @param className class name of the manipulator implementation
+   * @param configuration cache settings, null for a manipulator without cache
+   * @return manipulator instance of {@link CachingChemistryManipulator} if a configuration is given
+   * @throws ClassNotFoundException if the class does not exist
+   * @throws NoSuchMethodException if the class has no default constructor
+   * @throws SecurityException if the constructor is not accessible
+   * @throws InstantiationException if the class is abstract
+   * @throws IllegalAccessException if the constructor is not accessible
+   * @throws IllegalArgumentException if the constructor is not accessible
+   * @throws InvocationTargetException if the constructor fails
+   */
+  public static AbstractChemistryManipulator buildManipulator(String className, CacheConfiguration configuration)
+      throws ClassNotFoundException, NoSuchMethodException, SecurityException, InstantiationException,
+      IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+    AbstractChemistryManipulator manipulator = buildManipulator(className);
+    if (manipulator != null && configuration != null) {
+      manipulator = new CachingChemistryManipulator(manipulator, configuration);
+    }
+    return manipulator;
+  }
+
+  /**
+   * builds a manipulator whose operations are reported to the given listener, cache hits included
+   * 
+   * @param className class name of the manipulator implementation
+   * @param configuration cache settings, null for a manipulator without cache
+   * @param listener listener for the operations, null for a manipulator without instrumentation
+   * @return manipulator instance of {@link InstrumentedChemistryManipulator} if a listener is given
+   * @throws ClassNotFoundException if the class does not exist
+   * @throws NoSuchMethodException if the class has no default constructor
+   * @throws SecurityException if the constructor is not accessible
+   * @throws InstantiationException if the class is abstract
+   * @throws IllegalAccessException if the constructor is not accessible
+   * @throws IllegalArgumentException if the constructor is not accessible
+   * @throws InvocationTargetException if the constructor fails
+   */
+  public static AbstractChemistryManipulator buildManipulator(String className, CacheConfiguration configuration,
+      ManipulatorListener listener) throws ClassNotFoundException, NoSuchMethodException, SecurityException,
+      InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+    AbstractChemistryManipulator manipulator = buildManipulator(className, configuration);
+    if (manipulator != null && listener != null && listener != ManipulatorListener.NONE) {
+      manipulator = new InstrumentedChemistryManipulator(manipulator, listener);
     }
     return manipulator;
   }
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+/**
+ * {@code ManipulatorListener} receives the operations of an {@link InstrumentedChemistryManipulator}, for metrics and
+ * tracing. Every call of an operation reports {@link #operationStarted(ManipulatorOperation, Object)} followed by
+ * either {@link #operationCompleted(ManipulatorOperation, Object, int, long, Object)} or
+ * {@link #operationFailed(ManipulatorOperation, Object, int, long, Throwable, Object)}, on the calling thread.
+ * <p>
+ * All methods do nothing by default, subclasses override the ones they need. Listeners are called on the hot path and
+ * should return quickly; a listener shared by several manipulators must be thread safe. Exceptions thrown by a
+ * listener are logged and do not affect the operation.
+ */
+public abstract class ManipulatorListener {
+
+  /** listener that ignores all operations */
+  public static final ManipulatorListener NONE = new ManipulatorListener() {
+  };
+
+  /**
+   * @param operation started operation
+   * @param input main input of the operation: the string for string operations, the molecule for molecule operations,
+   *          the first molecule for {@code merge} and the plan for {@code assemble}
+   * @return context passed back on completion, for example a trace span, may be null
+   */
+  public Object operationStarted(ManipulatorOperation operation, Object input) {
+    return null;
+  }
+
+  /**
+   * @param operation completed operation
+   * @param input main input of the operation
+   * @param inputSize length of the input string or number of atoms of the input molecules
+   * @param nanos duration in nanoseconds
+   * @param context value returned by {@link #operationStarted(ManipulatorOperation, Object)}
+   */
+  public void operationCompleted(ManipulatorOperation operation, Object input, int inputSize, long nanos,
+      Object context) {
+  }
+
+  /**
+   * @param operation failed operation
+   * @param input main input of the operation
+   * @param inputSize length of the input string or number of atoms of the input molecules
+   * @param nanos duration in nanoseconds
+   * @param error exception thrown by the operation
+   * @param context value returned by {@link #operationStarted(ManipulatorOperation, Object)}
+   */
+  public void operationFailed(ManipulatorOperation operation, Object input, int inputSize, long nanos,
+      Throwable error, Object context) {
+  }
+
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code ManipulatorPool} bounded pool of manipulators of one class. A borrowed manipulator belongs exclusively to the
+ * borrowing thread until it is released, so no instance is ever used by two threads at the same time:
+ *
+ * <pre>
+ * AbstractChemistryManipulator manipulator = pool.borrow();
+ * try {
+ *   manipulator.canonicalize(smiles);
+ * } finally {
+ *   pool.release(manipulator);
+ * }
+ * </pre>
+ *
+ * Instances are created on demand, up to the maximum size, and reused afterwards. If all instances are borrowed,
+ * {@link #borrow()} blocks until one is released.
+ */
+public class ManipulatorPool {
+
+  private final Constructor<? extends AbstractChemistryManipulator> constructor;
+
+  private final int maximumSize;
+
+  private final Semaphore permits;
+
+  private final LinkedBlockingDeque<AbstractChemistryManipulator> idle =
+      new LinkedBlockingDeque<AbstractChemistryManipulator>();
+
+  private final Set<AbstractChemistryManipulator> borrowed =
+      Collections.newSetFromMap(new ConcurrentHashMap<AbstractChemistryManipulator, Boolean>());
+
+  private final AtomicInteger created = new AtomicInteger();
+
+  ManipulatorPool(Constructor<? extends AbstractChemistryManipulator> constructor, int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximum pool size must be positive: " + maximumSize);
+    }
+    this.constructor = constructor;
+    this.maximumSize = maximumSize;
+    this.permits = new Semaphore(maximumSize);
+  }
+
+  /**
+   * borrows a manipulator, waits if all instances are in use
+   *
+   * @return manipulator owned by the caller until {@link #release(AbstractChemistryManipulator)}
+   * @throws CTKException if a new instance can not be created or the thread is interrupted while waiting
+   */
+  public AbstractChemistryManipulator borrow() throws CTKException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CTKException("Interrupted while waiting for a manipulator", e);
+    }
+    return take();
+  }
+
+  /**
+   * borrows a manipulator, waits at most the given time if all instances are in use
+   *
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @return manipulator owned by the caller, null if the timeout elapsed
+   * @throws CTKException if a new instance can not be created or the thread is interrupted while waiting
+   */
+  public AbstractChemistryManipulator borrow(long timeout, TimeUnit unit) throws CTKException {
+    try {
+      if (!permits.tryAcquire(timeout, unit)) {
+        return null;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CTKException("Interrupted while waiting for a manipulator", e);
+    }
+    return take();
+  }
+
+  /**
+   * returns a borrowed manipulator to the pool
+   *
+   * @param manipulator manipulator borrowed from this pool
+   * @throws IllegalStateException if the manipulator is not borrowed from this pool
+   */
+  public void release(AbstractChemistryManipulator manipulator) {
+    if (!borrowed.remove(manipulator)) {
+      throw new IllegalStateException("Manipulator was not borrowed from this pool");
+    }
+    idle.offerFirst(manipulator);
+    permits.release();
+  }
+
+  private AbstractChemistryManipulator take() throws CTKException {
+    AbstractChemistryManipulator manipulator = idle.pollFirst();
+    if (manipulator == null) {
+      try {
+        manipulator = constructor.newInstance();
+        created.incrementAndGet();
+      } catch (InstantiationException | IllegalAccessException | IllegalArgumentException
+          | InvocationTargetException e) {
+        permits.release();
+        throw new CTKException("Manipulator " + constructor.getDeclaringClass().getName()
+            + " can not be created", e);
+      }
+    }
+    borrowed.add(manipulator);
+    return manipulator;
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * @return number of instances created so far
+   */
+  public int getCreatedCount() {
+    return created.get();
+  }
+
+  /**
+   * @return number of instances currently borrowed
+   */
+  public int getBorrowedCount() {
+    return borrowed.size();
+  }
+
+}
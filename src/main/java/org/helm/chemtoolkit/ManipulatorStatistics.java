@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code ManipulatorStatistics} listener collecting {@link OperationStatistics} per operation, and optionally logging
+ * operations slower than a threshold with their input, to find slow monomers. It is thread safe and can be shared by
+ * all manipulators of a pool.
+ * <p>
+ * The statistics are read with {@link #getStatistics(ManipulatorOperation)} or {@link #getStatistics()}, for example
+ * by a scheduled job exporting them to a metrics system.
+ */
+public class ManipulatorStatistics extends ManipulatorListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ManipulatorStatistics.class);
+
+  private final Map<ManipulatorOperation, OperationStatistics> statistics;
+
+  private volatile long slowThresholdNanos = Long.MAX_VALUE;
+
+  public ManipulatorStatistics() {
+    Map<ManipulatorOperation, OperationStatistics> map =
+        new EnumMap<ManipulatorOperation, OperationStatistics>(ManipulatorOperation.class);
+    for (ManipulatorOperation operation : ManipulatorOperation.values()) {
+      map.put(operation, new OperationStatistics(operation));
+    }
+    this.statistics = Collections.unmodifiableMap(map);
+  }
+
+  @Override
+  public void operationCompleted(ManipulatorOperation operation, Object input, int inputSize, long nanos,
+      Object context) {
+    statistics.get(operation).record(input, inputSize, nanos, false);
+    if (nanos >= slowThresholdNanos) {
+      LOG.warn("Slow {} took {} ms for input of size {}: {}", operation, nanos / 1000000, inputSize,
+          OperationStatistics.summary(input));
+    }
+  }
+
+  @Override
+  public void operationFailed(ManipulatorOperation operation, Object input, int inputSize, long nanos,
+      Throwable error, Object context) {
+    statistics.get(operation).record(input, inputSize, nanos, true);
+    if (nanos >= slowThresholdNanos) {
+      LOG.warn("Slow {} failed after {} ms for input of size {}: {}", operation, nanos / 1000000, inputSize,
+          OperationStatistics.summary(input));
+    }
+  }
+
+  /**
+   * @param operation operation
+   * @return statistics of the operation
+   */
+  public OperationStatistics getStatistics(ManipulatorOperation operation) {
+    return statistics.get(operation);
+  }
+
+  /**
+   * @return statistics of all operations
+   */
+  public Map<ManipulatorOperation, OperationStatistics> getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * @return statistics of the operations that were called at least once
+   */
+  public List<OperationStatistics> getCalledOperations() {
+    List<OperationStatistics> result = new ArrayList<OperationStatistics>();
+    for (OperationStatistics operation : statistics.values()) {
+      if (operation.getCount() > 0) {
+        result.add(operation);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return duration from which operations are logged as slow in nanoseconds, {@link Long#MAX_VALUE} if disabled
+   */
+  public long getSlowThresholdNanos() {
+    return slowThresholdNanos;
+  }
+
+  /**
+   * @param slowThresholdNanos duration from which operations are logged as slow in nanoseconds,
+   *          {@link Long#MAX_VALUE} to disable the log
+   */
+  public void setSlowThresholdNanos(long slowThresholdNanos) {
+    this.slowThresholdNanos = slowThresholdNanos;
+  }
+
+  /**
+   * resets the statistics of all operations
+   */
+  public void reset() {
+    for (OperationStatistics operation : statistics.values()) {
+      operation.reset();
+    }
+  }
+
+}
@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code MoleculeGraph} compact view of the atoms and bonds of an {@link AbstractMolecule}: atomic numbers
+ * and R-group numbers as int arrays, bond orders as bytes and the adjacency in compressed sparse row (CSR) form. Atoms
+ * and bonds are addressed by their index in {@link AbstractMolecule#getIAtomArray()} and
+ * {@link AbstractMolecule#getIBondArray()}.
+ * <p>
+ * Neighbor and bond lookups run over the arrays without touching the {@link IAtomBase} and {@link IBondBase} objects
+ * and without allocation. Element counts, connectivity, ring bonds and the atom index are computed on first use.
+ * <p>
+ * The structure of a graph never changes. The values computed on first use are built completely before they are
+ * published through volatile fields, so a graph handed to other threads can be read concurrently; at worst two
+ * threads compute the same value.
+ * <p>
+ * A graph is a snapshot of the atoms and bonds, {@link #getAtom(int)} included. It is obtained through
+ * {@link AbstractMolecule#getGraph()}, which caches it until the structure of the molecule changes.
+ */
+public final class MoleculeGraph {
+
+  private final int atomCount;
+
+  private final int bondCount;
+
+  private final int[] atomicNumbers;
+
+  private final int[] rgroups;
+
+  /** both atoms of every bond */
+  private final int[] bondAtoms;
+
+  private final byte[] bondOrders;
+
+  /** the bonds of atom i are adjacencyBonds[adjacencyStart[i] .. adjacencyStart[i + 1]) */
+  private final int[] adjacencyStart;
+
+  private final int[] adjacencyBonds;
+
+  /** the atom at the other end of adjacencyBonds[i] */
+  private final int[] adjacencyAtoms;
+
+  /** atoms of the molecule when the graph was built, set by {@link AbstractMolecule#getGraph()} */
+  IAtomBase[] atoms;
+
+  private volatile Map<Object, Integer> atomIndex;
+
+  private volatile int[] elementCounts;
+
+  private volatile int componentCount = -1;
+
+  private volatile boolean[] ringBonds;
+
+  /**
+   * builds a graph from atom and bond tables, the arrays are copied
+   *
+   * @param atomCount number of atoms
+   * @param atomicNumbers atomic number of every atom, 0 for R-group and other pseudo atoms
+   * @param rgroups R-group number of every atom, 0 for atoms that are no R-group
+   * @param bondCount number of bonds
+   * @param bondAtoms both atom indices of every bond, the atoms of bond b at 2b and 2b + 1
+   * @param bondOrders order of every bond
+   * @throws CTKException if a bond refers to an unknown atom
+   */
+  public MoleculeGraph(int atomCount, int[] atomicNumbers, int[] rgroups, int bondCount, int[] bondAtoms,
+      byte[] bondOrders) throws CTKException {
+    this.atomCount = atomCount;
+    this.bondCount = bondCount;
+    this.atomicNumbers = Arrays.copyOf(atomicNumbers, atomCount);
+    this.rgroups = Arrays.copyOf(rgroups, atomCount);
+    this.bondAtoms = Arrays.copyOf(bondAtoms, bondCount * 2);
+    this.bondOrders = Arrays.copyOf(bondOrders, bondCount);
+    for (int i = 0; i < bondCount * 2; i++) {
+      if (this.bondAtoms[i] < 0 || this.bondAtoms[i] >= atomCount) {
+        throw new CTKException("Bond " + (i / 2) + " refers to an unknown atom");
+      }
+    }
+    int[] start = new int[atomCount + 1];
+    for (int i = 0; i < bondCount * 2; i++) {
+      start[this.bondAtoms[i] + 1]++;
+    }
+    for (int i = 0; i < atomCount; i++) {
+      start[i + 1] += start[i];
+    }
+    int[] fill = Arrays.copyOf(start, atomCount);
+    adjacencyBonds = new int[bondCount * 2];
+    adjacencyAtoms = new int[bondCount * 2];
+    for (int b = 0; b < bondCount; b++) {
+      int atom1 = this.bondAtoms[b * 2];
+      int atom2 = this.bondAtoms[b * 2 + 1];
+      adjacencyBonds[fill[atom1]] = b;
+      adjacencyAtoms[fill[atom1]++] = atom2;
+      adjacencyBonds[fill[atom2]] = b;
+      adjacencyAtoms[fill[atom2]++] = atom1;
+    }
+    adjacencyStart = start;
+  }
+
+  /**
+   * builds a graph by walking the atoms and bonds of the molecule, atoms are matched by
+   * {@link IAtomBase#getMolAtom()} identity. Bonds to atoms outside of the atom list are left out.
+   *
+   * @param molecule molecule
+   * @return graph of the molecule
+   * @throws CTKException if the graph can not be built
+   */
+  static MoleculeGraph of(AbstractMolecule molecule) throws CTKException {
+    List<IAtomBase> atomList = molecule.getIAtomArray();
+    int atomCount = atomList.size();
+    int[] atomicNumbers = new int[atomCount];
+    int[] rgroups = new int[atomCount];
+    Map<Object, Integer> index = new IdentityHashMap<Object, Integer>(atomCount * 2);
+    for (int i = 0; i < atomCount; i++) {
+      IAtomBase atom = atomList.get(i);
+      atomicNumbers[i] = atom.getIAtno();
+      rgroups[i] = atom.getRgroup();
+      index.put(atom.getMolAtom(), i);
+    }
+    List<IBondBase> bondList = molecule.getIBondArray();
+    int[] bondAtoms = new int[bondList.size() * 2];
+    byte[] bondOrders = new byte[bondList.size()];
+    int bondCount = 0;
+    for (IBondBase bond : bondList) {
+      Integer atom1 = index.get(bond.getIAtom1().getMolAtom());
+      Integer atom2 = index.get(bond.getIAtom2().getMolAtom());
+      if (atom1 != null && atom2 != null) {
+        bondAtoms[bondCount * 2] = atom1;
+        bondAtoms[bondCount * 2 + 1] = atom2;
+        bondOrders[bondCount++] = (byte) bond.getType();
+      }
+    }
+    MoleculeGraph graph = new MoleculeGraph(atomCount, atomicNumbers, rgroups, bondCount, bondAtoms, bondOrders);
+    graph.atomIndex = index;
+    return graph;
+  }
+
+  public int getAtomCount() {
+    return atomCount;
+  }
+
+  public int getBondCount() {
+    return bondCount;
+  }
+
+  public int getAtomicNumber(int atom) {
+    return atomicNumbers[atom];
+  }
+
+  public int getRgroup(int atom) {
+    return rgroups[atom];
+  }
+
+  public int getBondAtom1(int bond) {
+    return bondAtoms[bond * 2];
+  }
+
+  public int getBondAtom2(int bond) {
+    return bondAtoms[bond * 2 + 1];
+  }
+
+  public int getBondOrder(int bond) {
+    return bondOrders[bond];
+  }
+
+  /**
+   * @param atom atom index
+   * @return number of bonds of the atom
+   */
+  public int getDegree(int atom) {
+    return adjacencyStart[atom + 1] - adjacencyStart[atom];
+  }
+
+  /**
+   * @param atom atom index
+   * @param i position in the bond list of the atom, less than {@link #getDegree(int)}
+   * @return index of the i-th bond of the atom
+   */
+  public int getAtomBond(int atom, int i) {
+    return adjacencyBonds[adjacencyStart[atom] + i];
+  }
+
+  /**
+   * @param atom atom index
+   * @param i position in the bond list of the atom, less than {@link #getDegree(int)}
+   * @return index of the atom at the other end of the i-th bond
+   */
+  public int getNeighbor(int atom, int i) {
+    return adjacencyAtoms[adjacencyStart[atom] + i];
+  }
+
+  /**
+   * @param atom1 first atom
+   * @param atom2 second atom
+   * @return index of the bond between the given atoms, -1 if they are not bonded
+   */
+  public int getBond(int atom1, int atom2) {
+    for (int i = adjacencyStart[atom1]; i < adjacencyStart[atom1 + 1]; i++) {
+      if (adjacencyAtoms[i] == atom2) {
+        return adjacencyBonds[i];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param rgroup R-group number
+   * @return index of the atom carrying the R-group number, if several atoms carry it the last one, -1 if none
+   */
+  public int getRgroupAtom(int rgroup) {
+    for (int i = atomCount - 1; i >= 0; i--) {
+      if (rgroups[i] == rgroup) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param atomicNumber atomic number
+   * @return number of atoms with the given atomic number, hydrogens are counted only if they are explicit atoms
+   */
+  public int getElementCount(int atomicNumber) {
+    int[] counts = elementCounts;
+    if (counts == null) {
+      int max = 0;
+      for (int i = 0; i < atomCount; i++) {
+        max = Math.max(max, atomicNumbers[i]);
+      }
+      counts = new int[max + 1];
+      for (int i = 0; i < atomCount; i++) {
+        if (atomicNumbers[i] >= 0) {
+          counts[atomicNumbers[i]]++;
+        }
+      }
+      elementCounts = counts;
+    }
+    return atomicNumber >= 0 && atomicNumber < counts.length ? counts[atomicNumber] : 0;
+  }
+
+  /**
+   * @return number of connected components, 0 for an empty graph
+   */
+  public int getComponentCount() {
+    int result = componentCount;
+    if (result < 0) {
+      boolean[] visited = new boolean[atomCount];
+      int[] queue = new int[atomCount];
+      int components = 0;
+      for (int root = 0; root < atomCount; root++) {
+        if (visited[root]) {
+          continue;
+        }
+        components++;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        visited[root] = true;
+        while (head < tail) {
+          int atom = queue[head++];
+          for (int i = adjacencyStart[atom]; i < adjacencyStart[atom + 1]; i++) {
+            if (!visited[adjacencyAtoms[i]]) {
+              visited[adjacencyAtoms[i]] = true;
+              queue[tail++] = adjacencyAtoms[i];
+            }
+          }
+        }
+      }
+      result = components;
+      componentCount = result;
+    }
+    return result;
+  }
+
+  /**
+   * @param bond bond index
+   * @return true if the bond is part of a ring, that is if removing it leaves its atoms connected
+   */
+  public boolean isRingBond(int bond) {
+    boolean[] result = ringBonds;
+    if (result == null) {
+      result = findRingBonds();
+      ringBonds = result;
+    }
+    return result[bond];
+  }
+
+  /**
+   * marks every bond that is no bridge, bridges are found by an iterative depth first search comparing the discovery
+   * time of each atom with the lowest discovery time reachable from its subtree
+   */
+  private boolean[] findRingBonds() {
+    boolean[] result = new boolean[bondCount];
+    Arrays.fill(result, true);
+    int[] discovery = new int[atomCount];
+    int[] low = new int[atomCount];
+    int[] parentBond = new int[atomCount];
+    int[] next = new int[atomCount];
+    int[] stack = new int[atomCount];
+    int time = 0;
+    for (int root = 0; root < atomCount; root++) {
+      if (discovery[root] != 0) {
+        continue;
+      }
+      int depth = 0;
+      stack[depth++] = root;
+      discovery[root] = low[root] = ++time;
+      parentBond[root] = -1;
+      next[root] = adjacencyStart[root];
+      while (depth > 0) {
+        int atom = stack[depth - 1];
+        if (next[atom] < adjacencyStart[atom + 1]) {
+          int i = next[atom]++;
+          int bond = adjacencyBonds[i];
+          int neighbor = adjacencyAtoms[i];
+          if (bond == parentBond[atom]) {
+            continue;
+          }
+          if (discovery[neighbor] == 0) {
+            discovery[neighbor] = low[neighbor] = ++time;
+            parentBond[neighbor] = bond;
+            next[neighbor] = adjacencyStart[neighbor];
+            stack[depth++] = neighbor;
+          } else {
+            low[atom] = Math.min(low[atom], discovery[neighbor]);
+          }
+        } else {
+          depth--;
+          if (depth > 0) {
+            int parent = stack[depth - 1];
+            low[parent] = Math.min(low[parent], low[atom]);
+            if (low[atom] > discovery[parent]) {
+              result[parentBond[atom]] = false;
+            }
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return true if all atoms are connected, an empty graph counts as connected
+   */
+  public boolean isConnected() {
+    return getComponentCount() <= 1;
+  }
+
+  /**
+   * @param atom atom index
+   * @return atom of the molecule at the given index
+   */
+  public IAtomBase getAtom(int atom) {
+    return atoms[atom];
+  }
+
+  /**
+   * @param atom atom of the molecule, matched by {@link IAtomBase#getMolAtom()} identity
+   * @return index of the atom, -1 if it does not belong to the molecule
+   */
+  public int indexOf(IAtomBase atom) {
+    Map<Object, Integer> index = atomIndex;
+    if (index == null) {
+      index = new IdentityHashMap<Object, Integer>(atomCount * 2);
+      for (int i = 0; i < atomCount; i++) {
+        index.put(atoms[i].getMolAtom(), i);
+      }
+      atomIndex = index;
+    }
+    Integer result = index.get(atom.getMolAtom());
+    return result == null ? -1 : result;
+  }
+
+}
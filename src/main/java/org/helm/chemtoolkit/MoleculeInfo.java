@@ -21,6 +21,8 @@
  ******************************************************************************/
 package org.helm.chemtoolkit;
 
+import java.util.Arrays;
+
 /**
  * @author chistyakov
  *
@@ -29,6 +31,8 @@ public class MoleculeInfo {
 	private double molecularWeight;
 	private String molecularFormula;
 	private double exactMass;
+	/** atom count per atomic number, null until known */
+	private int[] elementCounts;
 
 	public double getMolecularWeight() {
 		return molecularWeight;
@@ -44,6 +48,7 @@ public class MoleculeInfo {
 
 	public void setMolecularFormula(String molecularFormula) {
 		this.molecularFormula = molecularFormula;
+		this.elementCounts = null;
 	}
 
 	public double getExactMass() {
@@ -64,4 +69,142 @@ public class MoleculeInfo {
 		this.exactMass = exactMass;
 	}
 
+	/**
+	 * calculates formula, molecular weight and exact mass from atom counts with the masses of {@link PeriodicTable}
+	 * 
+	 * @param elementCounts atom count per atomic number, hydrogens included
+	 */
+	public MoleculeInfo(int[] elementCounts) {
+		this.elementCounts = Arrays.copyOf(elementCounts, elementCounts.length);
+		for (int atomicNumber = 1; atomicNumber < elementCounts.length; atomicNumber++) {
+			if (elementCounts[atomicNumber] != 0) {
+				molecularWeight += elementCounts[atomicNumber] * PeriodicTable.getAtomicWeight(atomicNumber);
+				exactMass += elementCounts[atomicNumber] * PeriodicTable.getMonoisotopicMass(atomicNumber);
+			}
+		}
+		this.molecularFormula = PeriodicTable.getHillFormula(elementCounts);
+	}
+
+	/**
+	 * keeps weight and mass as they are, the formula is built from the counts
+	 */
+	MoleculeInfo(double molecularWeight, int[] elementCounts, double exactMass) {
+		this.molecularWeight = molecularWeight;
+		this.elementCounts = Arrays.copyOf(elementCounts, elementCounts.length);
+		this.molecularFormula = PeriodicTable.getHillFormula(elementCounts);
+		this.exactMass = exactMass;
+	}
+
+	public MoleculeInfo(MoleculeInfo info) {
+		this.molecularWeight = info.molecularWeight;
+		this.molecularFormula = info.molecularFormula;
+		this.exactMass = info.exactMass;
+		this.elementCounts = info.elementCounts;
+	}
+
+	/**
+	 * @return atom count per atomic number, parsed from the formula if the info was not built from counts
+	 * @throws CTKException if the formula can not be parsed
+	 */
+	public int[] getElementCounts() throws CTKException {
+		int[] counts = counts();
+		return Arrays.copyOf(counts, counts.length);
+	}
+
+	/**
+	 * @param atomicNumber atomic number
+	 * @return number of atoms of the element
+	 * @throws CTKException if the formula can not be parsed
+	 */
+	public int getElementCount(int atomicNumber) throws CTKException {
+		int[] counts = counts();
+		return atomicNumber > 0 && atomicNumber < counts.length ? counts[atomicNumber] : 0;
+	}
+
+	/**
+	 * adds the atoms of another info, weights and masses are added as they are
+	 * 
+	 * @param other info to add
+	 * @return new info of both
+	 * @throws CTKException if a formula can not be parsed
+	 */
+	public MoleculeInfo combine(MoleculeInfo other) throws CTKException {
+		return add(other, 1);
+	}
+
+	/**
+	 * removes the atoms of another info, weights and masses are subtracted as they are
+	 * 
+	 * @param other info to subtract
+	 * @return new info of the difference
+	 * @throws CTKException if a formula can not be parsed or the other info has atoms this one has not
+	 */
+	public MoleculeInfo subtract(MoleculeInfo other) throws CTKException {
+		return add(other, -1);
+	}
+
+	private MoleculeInfo add(MoleculeInfo other, int sign) throws CTKException {
+		int[] counts = counts();
+		int[] otherCounts = other.counts();
+		int[] sum = Arrays.copyOf(counts, Math.max(counts.length, otherCounts.length));
+		for (int i = 0; i < otherCounts.length; i++) {
+			sum[i] += sign * otherCounts[i];
+			if (sum[i] < 0) {
+				throw new CTKException("Can not subtract " + other.molecularFormula + " from " + molecularFormula);
+			}
+		}
+		MoleculeInfo result = new MoleculeInfo(molecularWeight + sign * other.molecularWeight,
+				PeriodicTable.getHillFormula(sum), exactMass + sign * other.exactMass);
+		result.elementCounts = sum;
+		return result;
+	}
+
+	int[] counts() throws CTKException {
+		if (elementCounts == null) {
+			elementCounts = parseFormula(molecularFormula);
+		}
+		return elementCounts;
+	}
+
+	/**
+	 * parses a molecular formula like C3H7NO2, an element may occur more than once
+	 * 
+	 * @param formula molecular formula
+	 * @return atom count per atomic number
+	 * @throws CTKException if the formula contains unknown elements or other characters
+	 */
+	public static int[] parseFormula(String formula) throws CTKException {
+		int[] counts = new int[PeriodicTable.getMaxAtomicNumber() + 1];
+		if (formula == null) {
+			return counts;
+		}
+		int i = 0;
+		while (i < formula.length()) {
+			char c = formula.charAt(i);
+			if (c == ' ') {
+				i++;
+				continue;
+			}
+			if (c < 'A' || c > 'Z') {
+				throw new CTKException("Invalid molecular formula " + formula);
+			}
+			int end = i + 1;
+			if (end < formula.length() && formula.charAt(end) >= 'a' && formula.charAt(end) <= 'z') {
+				end++;
+			}
+			int atomicNumber = PeriodicTable.getAtomicNumber(formula.substring(i, end));
+			if (atomicNumber <= 0) {
+				throw new CTKException("Unknown element in molecular formula " + formula);
+			}
+			int count = 0;
+			i = end;
+			while (i < formula.length() && formula.charAt(i) >= '0' && formula.charAt(i) <= '9') {
+				count = count * 10 + (formula.charAt(i) - '0');
+				i++;
+			}
+			counts[atomicNumber] += i == end ? 1 : count;
+		}
+		return counts;
+	}
+
 }
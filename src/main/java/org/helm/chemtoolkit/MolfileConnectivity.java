@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.Arrays;
+
+/**
+ * {@code MolfileConnectivity} counts the connected components of a V2000 or V3000 molfile without building a molecule.
+ * Only the counts line, the atom numbers and the atom pairs of the bond block are read; the components are merged
+ * with union-find, so the time is linear in the size of the molfile. V3000 lines continued with a trailing '-' are
+ * joined, only the root connection table counts, the connection tables of templates are skipped.
+ */
+final class MolfileConnectivity {
+
+  private static final String V30_PREFIX = "M  V30 ";
+
+  private final String molfile;
+
+  /** start of the current line */
+  private int lineStart;
+
+  /** end of the current line, without line separators */
+  private int lineEnd;
+
+  /** start of the next line, molfile length after the last line */
+  private int next;
+
+  /** position of the next token in the current line */
+  private int cursor;
+
+  /** union-find parent of every atom number, -1 for atom numbers without atom */
+  private int[] parent = new int[0];
+
+  private int components;
+
+  private MolfileConnectivity(String molfile) {
+    this.molfile = molfile;
+  }
+
+  /**
+   * @param molfile molfile
+   * @return number of connected components, 0 for a molfile without atoms
+   * @throws CTKException if the counts line, the atom block or the bond block is invalid
+   */
+  static int countComponents(String molfile) throws CTKException {
+    if (molfile == null) {
+      throw new CTKException("Molfile is null");
+    }
+    MolfileConnectivity scanner = new MolfileConnectivity(molfile);
+    for (int i = 0; i < 4; i++) {
+      if (!scanner.nextLine()) {
+        throw new CTKException("Molfile has no counts line");
+      }
+    }
+    if (molfile.substring(scanner.lineStart, scanner.lineEnd).contains("V3000")) {
+      scanner.scanV3000();
+    } else {
+      scanner.scanV2000();
+    }
+    return scanner.components;
+  }
+
+  private void scanV2000() throws CTKException {
+    int atomCount = parseInt(0, 3);
+    int bondCount = parseInt(3, 6);
+    addAtoms(atomCount);
+    for (int i = 0; i < atomCount; i++) {
+      if (!nextLine()) {
+        throw new CTKException("Molfile is truncated in the atom block");
+      }
+    }
+    for (int i = 0; i < bondCount; i++) {
+      if (!nextLine()) {
+        throw new CTKException("Molfile is truncated in the bond block");
+      }
+      union(parseInt(0, 3), parseInt(3, 6));
+    }
+  }
+
+  private void scanV3000() throws CTKException {
+    boolean atomBlock = false;
+    boolean bondBlock = false;
+    boolean template = false;
+    boolean continued = false;
+    while (nextLine()) {
+      if (molfile.startsWith("M  END", lineStart)) {
+        break;
+      }
+      if (!molfile.startsWith(V30_PREFIX, lineStart)) {
+        continue;
+      }
+      int pos = lineStart + V30_PREFIX.length();
+      boolean continuation = continued;
+      cursor = pos;
+      if (continuation) {
+        // rest of a line whose tokens were not needed
+      } else if (molfile.startsWith("BEGIN TEMPLATE", pos)) {
+        template = true;
+      } else if (molfile.startsWith("END TEMPLATE", pos)) {
+        template = false;
+      } else if (template) {
+        // connection tables of templates are not part of the molecule
+      } else if (molfile.startsWith("COUNTS ", pos)) {
+        cursor += 7;
+        ensureCapacity(nextInt() + 1);
+      } else if (molfile.startsWith("BEGIN ATOM", pos)) {
+        atomBlock = true;
+      } else if (molfile.startsWith("END ATOM", pos)) {
+        atomBlock = false;
+      } else if (molfile.startsWith("BEGIN BOND", pos)) {
+        bondBlock = true;
+      } else if (molfile.startsWith("END BOND", pos)) {
+        bondBlock = false;
+      } else if (atomBlock) {
+        addAtom(nextInt());
+      } else if (bondBlock) {
+        // bond number and type precede the atoms
+        nextInt();
+        nextInt();
+        union(nextInt(), nextInt());
+      }
+      continued = isContinued();
+    }
+  }
+
+  /**
+   * @return true if the current line ends with the continuation mark
+   */
+  private boolean isContinued() {
+    int pos = lineStart + V30_PREFIX.length();
+    return lineEnd > pos && molfile.charAt(lineEnd - 1) == '-' && molfile.charAt(lineEnd - 2) == ' ';
+  }
+
+  /**
+   * adds atoms numbered 1 to count
+   */
+  private void addAtoms(int count) {
+    parent = new int[count + 1];
+    parent[0] = -1;
+    for (int i = 1; i <= count; i++) {
+      parent[i] = i;
+    }
+    components = count;
+  }
+
+  private void addAtom(int number) throws CTKException {
+    if (number <= 0) {
+      throw new CTKException("Invalid atom number " + number);
+    }
+    if (number >= parent.length) {
+      ensureCapacity(Math.max(number + 1, parent.length * 2));
+    }
+    if (parent[number] >= 0) {
+      throw new CTKException("Duplicate atom number " + number);
+    }
+    parent[number] = number;
+    components++;
+  }
+
+  private void ensureCapacity(int size) {
+    if (size > parent.length) {
+      int oldSize = parent.length;
+      parent = Arrays.copyOf(parent, size);
+      Arrays.fill(parent, oldSize, size, -1);
+    }
+  }
+
+  private int find(int atom) throws CTKException {
+    if (atom <= 0 || atom >= parent.length || parent[atom] < 0) {
+      throw new CTKException("Bond refers to an unknown atom " + atom);
+    }
+    while (parent[atom] != atom) {
+      parent[atom] = parent[parent[atom]];
+      atom = parent[atom];
+    }
+    return atom;
+  }
+
+  private void union(int atom1, int atom2) throws CTKException {
+    int root1 = find(atom1);
+    int root2 = find(atom2);
+    if (root1 != root2) {
+      if (root1 < root2) {
+        parent[root2] = root1;
+      } else {
+        parent[root1] = root2;
+      }
+      components--;
+    }
+  }
+
+  private boolean nextLine() {
+    if (next >= molfile.length()) {
+      return false;
+    }
+    lineStart = next;
+    int end = molfile.indexOf('\n', lineStart);
+    if (end < 0) {
+      end = molfile.length();
+      next = end;
+    } else {
+      next = end + 1;
+    }
+    if (end > lineStart && molfile.charAt(end - 1) == '\r') {
+      end--;
+    }
+    lineEnd = end;
+    return true;
+  }
+
+  /**
+   * parses the fixed width column [from, to) of the current line, blank columns count as 0
+   */
+  private int parseInt(int from, int to) throws CTKException {
+    int value = 0;
+    boolean negative = false;
+    for (int i = lineStart + from; i < Math.min(lineStart + to, lineEnd); i++) {
+      char c = molfile.charAt(i);
+      if (c >= '0' && c <= '9') {
+        value = value * 10 + (c - '0');
+      } else if (c == '-') {
+        negative = true;
+      } else if (c != ' ') {
+        throw new CTKException("Invalid number in line " + molfile.substring(lineStart, lineEnd));
+      }
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * reads the next whitespace separated non-negative integer of the current V3000 line, continued lines are joined
+   */
+  private int nextInt() throws CTKException {
+    while (cursor < lineEnd && molfile.charAt(cursor) == ' ') {
+      cursor++;
+    }
+    while (cursor == lineEnd - 1 && isContinued()) {
+      if (!nextLine() || !molfile.startsWith(V30_PREFIX, lineStart)) {
+        throw new CTKException("Molfile is truncated in a continued line");
+      }
+      cursor = lineStart + V30_PREFIX.length();
+      while (cursor < lineEnd && molfile.charAt(cursor) == ' ') {
+        cursor++;
+      }
+    }
+    int start = cursor;
+    int value = 0;
+    while (cursor < lineEnd && molfile.charAt(cursor) >= '0' && molfile.charAt(cursor) <= '9') {
+      value = value * 10 + (molfile.charAt(cursor) - '0');
+      cursor++;
+    }
+    if (cursor == start || (cursor < lineEnd && molfile.charAt(cursor) != ' ')) {
+      throw new CTKException("Invalid line " + molfile.substring(lineStart, lineEnd));
+    }
+    return value;
+  }
+
+}
@@ -0,0 +1,412 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code MonomerIndex} maps canonical SMILES to record ids, to find duplicate monomers in large libraries. The index
+ * stores only a 128 bit hash of every canonical SMILES and the record id, in an open addressing hash table, so a
+ * lookup is one hash computation and usually one probe. Two different SMILES are taken as equal only if both 64 bit
+ * halves of their hashes collide, which is negligible even for hundreds of millions of entries.
+ * <p>
+ * The table is kept in one buffer in the same layout as the index file: {@link #save(Path)} writes the buffer and
+ * {@link #open(Path)} memory-maps the file read-only, so a saved index is usable right away without reading or
+ * rehashing it. The first addition to an opened index copies the table into memory; save it again to persist the
+ * change.
+ * <p>
+ * Lookups can run concurrently, additions are exclusive. Canonicalization is done with the manipulator passed by the
+ * caller, which must not be shared between threads.
+ */
+public class MonomerIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MonomerIndex.class);
+
+  /** returned if a SMILES is not in the index */
+  public static final long NOT_FOUND = -1;
+
+  private static final int MAGIC = 0x484d4958;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 16;
+
+  private static final int ENTRY_SIZE = 24;
+
+  private static final int MINIMUM_CAPACITY = 16;
+
+  /** largest capacity whose table fits into one buffer */
+  private static final int MAXIMUM_CAPACITY = 1 << 26;
+
+  /** number of records canonicalized per batch in {@link #addAll(StructureReader, BatchProcessor)} */
+  private static final int BUILD_CHUNK_SIZE = 4096;
+
+  private static final long SEED1 = 0x9e3779b97f4a7c15L;
+
+  private static final long SEED2 = 0xc2b2ae3d27d4eb4fL;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private ByteBuffer table;
+
+  private int capacity;
+
+  private int size;
+
+  private boolean mapped;
+
+  public MonomerIndex() {
+    this(0);
+  }
+
+  /**
+   * @param expectedSize number of entries the index holds without growing
+   */
+  public MonomerIndex(int expectedSize) {
+    capacity = capacityFor(expectedSize);
+    table = allocate(capacity);
+  }
+
+  private MonomerIndex(ByteBuffer table, int capacity, int size) {
+    this.table = table;
+    this.capacity = capacity;
+    this.size = size;
+    this.mapped = true;
+  }
+
+  /**
+   * memory-maps an index file written by {@link #save(Path)}
+   *
+   * @param file index file
+   * @return index backed by the file
+   * @throws CTKException if the file can not be read or is no index file
+   */
+  public static MonomerIndex open(Path file) throws CTKException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long length = channel.size();
+      if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+        throw new CTKException("Invalid monomer index file " + file);
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      int capacity = buffer.getInt(8);
+      int size = buffer.getInt(12);
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || Integer.bitCount(capacity) != 1
+          || capacity > MAXIMUM_CAPACITY || length != HEADER_SIZE + (long) capacity * ENTRY_SIZE || size < 0
+          || size > capacity) {
+        throw new CTKException("Invalid monomer index file " + file);
+      }
+      LOG.debug("Monomer index {} with {} entries mapped", file, size);
+      return new MonomerIndex(buffer, capacity, size);
+    } catch (IOException e) {
+      throw new CTKException("Monomer index file " + file + " can not be read", e);
+    }
+  }
+
+  /**
+   * writes the index to a file, the file is replaced atomically
+   *
+   * @param file index file
+   * @throws CTKException if the file can not be written
+   */
+  public void save(Path file) throws CTKException {
+    lock.readLock().lock();
+    try {
+      Path directory = file.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, "index", ".tmp");
+      try {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+          ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+          header.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(size).flip();
+          channel.write(header);
+          ByteBuffer entries = table.duplicate();
+          entries.position(HEADER_SIZE);
+          while (entries.hasRemaining()) {
+            channel.write(entries);
+          }
+          channel.force(true);
+        }
+        try {
+          Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      throw new CTKException("Monomer index file " + file + " can not be written", e);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param manipulator manipulator used to canonicalize the SMILES
+   * @param smiles SMILES of a monomer
+   * @return record id of the monomer, {@link #NOT_FOUND} if it is not in the index
+   * @throws CTKException if the SMILES can not be canonicalized
+   */
+  public long find(AbstractChemistryManipulator manipulator, String smiles) throws CTKException {
+    return get(manipulator.canonicalize(smiles));
+  }
+
+  /**
+   * adds a monomer unless an equal monomer is already in the index
+   *
+   * @param manipulator manipulator used to canonicalize the SMILES
+   * @param smiles SMILES of the monomer
+   * @param id record id of the monomer, not negative
+   * @return record id of the equal monomer already in the index, {@link #NOT_FOUND} if the monomer was added
+   * @throws CTKException if the SMILES can not be canonicalized
+   */
+  public long add(AbstractChemistryManipulator manipulator, String smiles, long id) throws CTKException {
+    return putIfAbsent(manipulator.canonicalize(smiles), id);
+  }
+
+  /**
+   * @param canonicalSmiles canonical SMILES
+   * @return record id, {@link #NOT_FOUND} if the SMILES is not in the index
+   */
+  public long get(String canonicalSmiles) {
+    long hash1 = hash(canonicalSmiles, SEED1);
+    long hash2 = hash(canonicalSmiles, SEED2);
+    lock.readLock().lock();
+    try {
+      int slot = find(hash1, hash2);
+      return isEmpty(slot) ? NOT_FOUND : table.getLong(offset(slot) + 16);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param canonicalSmiles canonical SMILES
+   * @return true if the SMILES is in the index
+   */
+  public boolean contains(String canonicalSmiles) {
+    return get(canonicalSmiles) != NOT_FOUND;
+  }
+
+  /**
+   * adds a canonical SMILES unless it is already in the index
+   *
+   * @param canonicalSmiles canonical SMILES
+   * @param id record id, not negative
+   * @return record id already stored for the SMILES, {@link #NOT_FOUND} if the SMILES was added
+   * @throws CTKException if the index is full
+   */
+  public long putIfAbsent(String canonicalSmiles, long id) throws CTKException {
+    if (id < 0) {
+      throw new IllegalArgumentException("Record id must not be negative: " + id);
+    }
+    long hash1 = hash(canonicalSmiles, SEED1);
+    long hash2 = hash(canonicalSmiles, SEED2);
+    lock.writeLock().lock();
+    try {
+      int slot = find(hash1, hash2);
+      if (!isEmpty(slot)) {
+        return table.getLong(offset(slot) + 16);
+      }
+      if (mapped || (size + 1) > capacity / 4 * 3) {
+        resize(size + 1 > capacity / 4 * 3 ? capacity * 2 : capacity);
+        slot = find(hash1, hash2);
+      }
+      int offset = offset(slot);
+      table.putLong(offset, hash1);
+      table.putLong(offset + 8, hash2);
+      table.putLong(offset + 16, id);
+      size++;
+      return NOT_FOUND;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * adds the SMILES records of a reader, the record id of each record is its position in the reader starting at 0.
+   * Records are canonicalized in parallel by the processor, records that can not be canonicalized are logged and
+   * skipped, duplicates keep the id of their first occurrence.
+   *
+   * @param reader source of SMILES records
+   * @param processor processor canonicalizing the records
+   * @return number of records added, duplicates and failed records not counted
+   * @throws IOException if the reader fails
+   * @throws CTKException if the batch is interrupted or the index is full
+   */
+  public long addAll(StructureReader reader, BatchProcessor processor) throws IOException, CTKException {
+    long added = 0;
+    long failed = 0;
+    List<String> records = new ArrayList<String>(BUILD_CHUNK_SIZE);
+    boolean more = true;
+    while (more) {
+      long firstId = reader.getRecordCount();
+      records.clear();
+      String record;
+      while (records.size() < BUILD_CHUNK_SIZE && (record = reader.next()) != null) {
+        records.add(record);
+      }
+      more = records.size() == BUILD_CHUNK_SIZE;
+      List<BatchResult<String>> results = processor.canonicalizeAll(records);
+      for (int i = 0; i < results.size(); i++) {
+        BatchResult<String> result = results.get(i);
+        if (!result.isSuccess() || result.getValue() == null) {
+          failed++;
+          LOG.warn("Record {} can not be canonicalized: {}", firstId + i,
+              result.getError() == null ? null : result.getError().getMessage());
+        } else if (putIfAbsent(result.getValue(), firstId + i) == NOT_FOUND) {
+          added++;
+        }
+      }
+    }
+    LOG.debug("{} records added to the monomer index, {} failed", added, failed);
+    return added;
+  }
+
+  /**
+   * @return number of entries
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return true if the index is backed by a memory-mapped file
+   */
+  public boolean isMapped() {
+    lock.readLock().lock();
+    try {
+      return mapped;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return slot holding the hash or the empty slot where it belongs
+   */
+  private int find(long hash1, long hash2) {
+    int mask = capacity - 1;
+    int slot = (int) hash2 & mask;
+    while (true) {
+      int offset = offset(slot);
+      long stored1 = table.getLong(offset);
+      long stored2 = table.getLong(offset + 8);
+      if ((stored1 == hash1 && stored2 == hash2) || (stored1 == 0 && stored2 == 0)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private boolean isEmpty(int slot) {
+    int offset = offset(slot);
+    return table.getLong(offset) == 0 && table.getLong(offset + 8) == 0;
+  }
+
+  private void resize(int newCapacity) throws CTKException {
+    if (newCapacity > MAXIMUM_CAPACITY) {
+      throw new CTKException("Monomer index is full with " + size + " entries");
+    }
+    ByteBuffer oldTable = table;
+    int oldCapacity = capacity;
+    table = allocate(newCapacity);
+    capacity = newCapacity;
+    for (int slot = 0; slot < oldCapacity; slot++) {
+      int offset = offset(slot);
+      long hash1 = oldTable.getLong(offset);
+      long hash2 = oldTable.getLong(offset + 8);
+      if (hash1 != 0 || hash2 != 0) {
+        int target = offset(find(hash1, hash2));
+        table.putLong(target, hash1);
+        table.putLong(target + 8, hash2);
+        table.putLong(target + 16, oldTable.getLong(offset + 16));
+      }
+    }
+    mapped = false;
+  }
+
+  private static ByteBuffer allocate(int capacity) {
+    return ByteBuffer.allocate(HEADER_SIZE + capacity * ENTRY_SIZE);
+  }
+
+  private static int offset(int slot) {
+    return HEADER_SIZE + slot * ENTRY_SIZE;
+  }
+
+  private static int capacityFor(int expectedSize) {
+    long needed = (long) expectedSize * 4 / 3 + 1;
+    if (needed > MAXIMUM_CAPACITY) {
+      throw new IllegalArgumentException("Expected size " + expectedSize + " exceeds the maximum index size");
+    }
+    return Math.max(MINIMUM_CAPACITY, Integer.highestOneBit((int) needed - 1) << 1);
+  }
+
+  /**
+   * 64 bit hash of the characters, four characters are mixed per round as in MurmurHash3. The hash is never 0 for
+   * the second seed, which marks empty slots.
+   */
+  static long hash(CharSequence data, long seed) {
+    int length = data.length();
+    long h = seed ^ length;
+    int i = 0;
+    for (; i + 4 <= length; i += 4) {
+      long k = data.charAt(i) | (long) data.charAt(i + 1) << 16 | (long) data.charAt(i + 2) << 32
+          | (long) data.charAt(i + 3) << 48;
+      h ^= mixKey(k);
+      h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+    }
+    long k = 0;
+    for (int shift = 0; i < length; i++, shift += 16) {
+      k |= (long) data.charAt(i) << shift;
+    }
+    h ^= mixKey(k);
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h == 0 && seed == SEED2 ? 1 : h;
+  }
+
+  private static long mixKey(long k) {
+    k *= 0x87c37b91114253d5L;
+    k = Long.rotateLeft(k, 31);
+    return k * 0x4cf5ad432745937fL;
+  }
+
+}
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code OperationStatistics} running statistics of one {@link ManipulatorOperation}: call and error counts, total and
+ * maximum duration, and power of two histograms of the durations and input sizes. Bucket i of a histogram counts the
+ * values v with 2<sup>i-1</sup> &lt;= v &lt; 2<sup>i</sup>, bucket 0 counts 0.
+ * <p>
+ * Updates are lock free, the getters read the current values, so values read one after the other may be from
+ * slightly different points in time.
+ */
+public final class OperationStatistics {
+
+  /** buckets of the duration histogram, the last one counts everything from 2^62 ns */
+  public static final int DURATION_BUCKETS = 64;
+
+  /** buckets of the input size histogram */
+  public static final int SIZE_BUCKETS = 33;
+
+  private final ManipulatorOperation operation;
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong errorCount = new AtomicLong();
+
+  private final AtomicLong totalNanos = new AtomicLong();
+
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  private final AtomicLongArray durations = new AtomicLongArray(DURATION_BUCKETS);
+
+  private final AtomicLongArray sizes = new AtomicLongArray(SIZE_BUCKETS);
+
+  /** longest summary of the slowest input */
+  static final int MAX_SUMMARY_LENGTH = 200;
+
+  private volatile String slowestInput;
+
+  OperationStatistics(ManipulatorOperation operation) {
+    this.operation = operation;
+  }
+
+  void record(Object input, int inputSize, long nanos, boolean failed) {
+    count.incrementAndGet();
+    if (failed) {
+      errorCount.incrementAndGet();
+    }
+    totalNanos.addAndGet(nanos);
+    durations.incrementAndGet(bucket(nanos, DURATION_BUCKETS));
+    sizes.incrementAndGet(bucket(inputSize, SIZE_BUCKETS));
+    long max = maxNanos.get();
+    while (nanos > max) {
+      if (maxNanos.compareAndSet(max, nanos)) {
+        slowestInput = summary(input);
+        break;
+      }
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * @return short description of an input, so the statistics do not keep molecules or large molfiles alive
+   */
+  static String summary(Object input) {
+    String text;
+    if (input == null) {
+      return null;
+    } else if (input instanceof LazyMolecule) {
+      text = ((LazyMolecule) input).getSmiles();
+    } else if (input instanceof AbstractMolecule) {
+      text = "molecule with " + ((AbstractMolecule) input).getIAtomArray().size() + " atoms";
+    } else if (input instanceof AssemblyPlan) {
+      AssemblyPlan plan = (AssemblyPlan) input;
+      text = "assembly of " + plan.getMonomerCount() + " monomers with " + plan.getConnectionCount()
+          + " connections";
+    } else {
+      text = input.toString();
+    }
+    if (text == null || text.length() <= MAX_SUMMARY_LENGTH) {
+      return text;
+    }
+    return text.substring(0, MAX_SUMMARY_LENGTH - 3) + "...";
+  }
+
+  private static int bucket(long value, int buckets) {
+    if (value <= 0) {
+      return 0;
+    }
+    return Math.min(64 - Long.numberOfLeadingZeros(value), buckets - 1);
+  }
+
+  void reset() {
+    count.set(0);
+    errorCount.set(0);
+    totalNanos.set(0);
+    maxNanos.set(0);
+    slowestInput = null;
+    for (int i = 0; i < DURATION_BUCKETS; i++) {
+      durations.set(i, 0);
+    }
+    for (int i = 0; i < SIZE_BUCKETS; i++) {
+      sizes.set(i, 0);
+    }
+  }
+
+  public ManipulatorOperation getOperation() {
+    return operation;
+  }
+
+  /**
+   * @return number of calls, failed calls included
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return number of calls that threw an exception
+   */
+  public long getErrorCount() {
+    return errorCount.get();
+  }
+
+  /**
+   * @return share of failed calls, 0 if there were no calls
+   */
+  public double getErrorRate() {
+    long calls = count.get();
+    return calls == 0 ? 0 : (double) errorCount.get() / calls;
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+
+  /**
+   * @return mean duration in nanoseconds, 0 if there were no calls
+   */
+  public long getMeanNanos() {
+    long calls = count.get();
+    return calls == 0 ? 0 : totalNanos.get() / calls;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @return summary of the input of the slowest call, at most 200 characters of the SMILES, molfile or sequence or the
+   *         atom count of a molecule, null if there were no calls
+   */
+  public String getSlowestInput() {
+    return slowestInput;
+  }
+
+  /**
+   * @return copy of the duration histogram in nanoseconds
+   */
+  public long[] getDurationHistogram() {
+    return copy(durations);
+  }
+
+  /**
+   * @return copy of the input size histogram
+   */
+  public long[] getInputSizeHistogram() {
+    return copy(sizes);
+  }
+
+  /**
+   * estimates a percentile of the duration from the histogram
+   *
+   * @param percentile percentile between 0 and 100
+   * @return upper bound of the histogram bucket containing the percentile in nanoseconds, 0 if there were no calls
+   */
+  public long getDurationPercentile(double percentile) {
+    long[] histogram = copy(durations);
+    long total = 0;
+    for (long value : histogram) {
+      total += value;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+    long seen = 0;
+    for (int i = 0; i < histogram.length; i++) {
+      seen += histogram[i];
+      if (seen >= Math.max(rank, 1)) {
+        return i == 0 ? 0 : Math.min(maxNanos.get(), (1L << i) - 1);
+      }
+    }
+    return maxNanos.get();
+  }
+
+  private static long[] copy(AtomicLongArray array) {
+    long[] result = new long[array.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = array.get(i);
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return operation + "[count=" + getCount() + ", errors=" + getErrorCount() + ", mean=" + getMeanNanos()
+        + "ns, max=" + getMaxNanos() + "ns]";
+  }
+
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code PeriodicTable} element data used for formula and mass calculations: symbols, standard atomic weights,
+ * monoisotopic masses, the masses of common isotopes and the default valences used to derive implicit hydrogen counts.
+ * Elements are identified by atomic number, 0 stands for a pseudo atom like an R-group.
+ */
+public final class PeriodicTable {
+
+  public static final int HYDROGEN = 1;
+
+  public static final int CARBON = 6;
+
+  private static final String[] SYMBOLS = {"*", "H", "He", "Li", "Be", "B", "C", "N", "O", "F", "Ne", "Na", "Mg",
+      "Al", "Si", "P", "S", "Cl", "Ar", "K", "Ca", "Sc", "Ti", "V", "Cr", "Mn", "Fe", "Co", "Ni", "Cu", "Zn", "Ga",
+      "Ge", "As", "Se", "Br", "Kr", "Rb", "Sr", "Y", "Zr", "Nb", "Mo", "Tc", "Ru", "Rh", "Pd", "Ag", "Cd", "In", "Sn",
+      "Sb", "Te", "I", "Xe", "Cs", "Ba", "La", "Ce", "Pr", "Nd", "Pm", "Sm", "Eu", "Gd", "Tb", "Dy", "Ho", "Er", "Tm",
+      "Yb", "Lu", "Hf", "Ta", "W", "Re", "Os", "Ir", "Pt", "Au", "Hg", "Tl", "Pb", "Bi", "Po", "At", "Rn"};
+
+  private static final double[] ATOMIC_WEIGHTS = {0, 1.00794, 4.002602, 6.941, 9.012182, 10.811, 12.0107, 14.0067,
+      15.9994, 18.9984032, 20.1797, 22.98976928, 24.3050, 26.9815386, 28.0855, 30.973762, 32.065, 35.453, 39.948,
+      39.0983, 40.078, 44.955912, 47.867, 50.9415, 51.9961, 54.938045, 55.845, 58.933195, 58.6934, 63.546, 65.38,
+      69.723, 72.64, 74.92160, 78.96, 79.904, 83.798, 85.4678, 87.62, 88.90585, 91.224, 92.90638, 95.96, 98.0,
+      101.07, 102.90550, 106.42, 107.8682, 112.411, 114.818, 118.710, 121.760, 127.60, 126.90447, 131.293,
+      132.9054519, 137.327, 138.90547, 140.116, 140.90765, 144.242, 145.0, 150.36, 151.964, 157.25, 158.92535, 162.500,
+      164.93032, 167.259, 168.93421, 173.054, 174.9668, 178.49, 180.94788, 183.84, 186.207, 190.23, 192.217, 195.084,
+      196.966569, 200.59, 204.3833, 207.2, 208.98040, 209.0, 210.0, 222.0};
+
+  private static final double[] MONOISOTOPIC_MASSES = {0, 1.0078250321, 4.0026032497, 7.0160040, 9.0121821,
+      11.0093055, 12.0, 14.0030740052, 15.9949146221, 18.99840320, 19.9924401759, 22.98976966, 23.98504187,
+      26.98153841, 27.9769265327, 30.97376151, 31.97207069, 34.96885271, 39.962383123, 38.9637069, 39.9625912,
+      44.9559102, 47.9479471, 50.9439637, 51.9405119, 54.9380496, 55.9349421, 58.9332002, 57.9353479, 62.9296011,
+      63.9291466, 68.925581, 73.9211782, 74.9215964, 79.9165218, 78.9183376, 83.911507, 84.9117893, 87.9056143,
+      88.9058479, 89.9047037, 92.9063775, 97.9054078, 97.907216, 101.9043495, 102.905504, 105.903483, 106.905093,
+      113.9033581, 114.903878, 119.9021966, 120.9038180, 129.9062228, 126.904468, 131.9041545, 132.905447, 137.905241,
+      138.906348, 139.905434, 140.907648, 141.907719, 144.912744, 151.919728, 152.921226, 157.924101, 158.925343,
+      163.929171, 164.930319, 165.930290, 168.934211, 173.938858, 174.940768, 179.946549, 180.947996, 183.950933,
+      186.955751, 191.961479, 192.962924, 194.964774, 196.966552, 201.970626, 204.974412, 207.976636, 208.980383,
+      208.982416, 209.987131, 222.017570};
+
+  /** default valences of the SMILES organic subset, all other elements get no implicit hydrogens */
+  private static final int[][] VALENCES = new int[SYMBOLS.length][];
+
+  private static final Map<String, Integer> ATOMIC_NUMBERS = new HashMap<String, Integer>();
+
+  /** exact masses of the isotopes other than the most abundant one, by atomic number * 1000 + mass number */
+  private static final Map<Integer, Double> ISOTOPE_MASSES = new HashMap<Integer, Double>();
+
+  /** atomic numbers in alphabetical order of the symbols */
+  private static final int[] ALPHABETICAL = new int[SYMBOLS.length - 1];
+
+  static {
+    for (int i = 0; i < SYMBOLS.length; i++) {
+      ATOMIC_NUMBERS.put(SYMBOLS[i], i);
+    }
+    String[] sorted = Arrays.copyOfRange(SYMBOLS, 1, SYMBOLS.length);
+    Arrays.sort(sorted);
+    for (int i = 0; i < sorted.length; i++) {
+      ALPHABETICAL[i] = ATOMIC_NUMBERS.get(sorted[i]);
+    }
+    VALENCES[5] = new int[] {3};
+    VALENCES[6] = new int[] {4};
+    VALENCES[7] = new int[] {3, 5};
+    VALENCES[8] = new int[] {2};
+    VALENCES[9] = new int[] {1};
+    VALENCES[15] = new int[] {3, 5};
+    VALENCES[16] = new int[] {2, 4, 6};
+    VALENCES[17] = new int[] {1};
+    VALENCES[35] = new int[] {1};
+    VALENCES[53] = new int[] {1};
+    addIsotope(1, 2, 2.01410177812);
+    addIsotope(1, 3, 3.0160492779);
+    addIsotope(5, 10, 10.0129369);
+    addIsotope(6, 11, 11.0114336);
+    addIsotope(6, 13, 13.00335483507);
+    addIsotope(6, 14, 14.0032419884);
+    addIsotope(7, 13, 13.00573861);
+    addIsotope(7, 15, 15.00010889888);
+    addIsotope(8, 15, 15.0030656);
+    addIsotope(8, 17, 16.99913175650);
+    addIsotope(8, 18, 17.99915961286);
+    addIsotope(9, 18, 18.0009380);
+    addIsotope(15, 32, 31.97390764);
+    addIsotope(15, 33, 32.9717257);
+    addIsotope(16, 33, 32.9714589098);
+    addIsotope(16, 34, 33.967867004);
+    addIsotope(16, 35, 34.96903231);
+    addIsotope(16, 36, 35.96708071);
+    addIsotope(17, 36, 35.968306809);
+    addIsotope(17, 37, 36.965902602);
+    addIsotope(35, 81, 80.9162897);
+    addIsotope(53, 123, 122.9055898);
+    addIsotope(53, 124, 123.9062091);
+    addIsotope(53, 125, 124.9046294);
+    addIsotope(53, 131, 130.9061263);
+  }
+
+  private static void addIsotope(int atomicNumber, int massNumber, double mass) {
+    ISOTOPE_MASSES.put(atomicNumber * 1000 + massNumber, mass);
+  }
+
+  private PeriodicTable() {
+  }
+
+  /**
+   * @param symbol element symbol with the first letter in upper case, e.g. Cl
+   * @return atomic number, -1 if the symbol is unknown
+   */
+  public static int getAtomicNumber(String symbol) {
+    Integer result = ATOMIC_NUMBERS.get(symbol);
+    return result == null ? -1 : result;
+  }
+
+  /**
+   * @return largest atomic number known to this table
+   */
+  public static int getMaxAtomicNumber() {
+    return SYMBOLS.length - 1;
+  }
+
+  public static String getSymbol(int atomicNumber) {
+    return SYMBOLS[atomicNumber];
+  }
+
+  public static double getAtomicWeight(int atomicNumber) {
+    return ATOMIC_WEIGHTS[atomicNumber];
+  }
+
+  public static double getMonoisotopicMass(int atomicNumber) {
+    return MONOISOTOPIC_MASSES[atomicNumber];
+  }
+
+  /**
+   * @param atomicNumber atomic number
+   * @param massNumber mass number of the isotope
+   * @return exact mass of the isotope, the monoisotopic mass for the most abundant isotope and the mass number for
+   *         isotopes not in this table
+   */
+  public static double getIsotopeMass(int atomicNumber, int massNumber) {
+    Double mass = ISOTOPE_MASSES.get(atomicNumber * 1000 + massNumber);
+    if (mass != null) {
+      return mass;
+    }
+    return Math.round(MONOISOTOPIC_MASSES[atomicNumber]) == massNumber ? MONOISOTOPIC_MASSES[atomicNumber]
+        : massNumber;
+  }
+
+  /**
+   * @param atomicNumber atomic number
+   * @return true if the element belongs to the SMILES organic subset and gets implicit hydrogens
+   */
+  public static boolean isOrganicSubset(int atomicNumber) {
+    return atomicNumber > 0 && atomicNumber < VALENCES.length && VALENCES[atomicNumber] != null;
+  }
+
+  /**
+   * implicit hydrogen count following the SMILES rules: the lowest default valence not below the bond order sum is
+   * filled up with hydrogens, aromatic atoms use one valence for the aromatic system. Charged atoms use the valences of
+   * the isoelectronic neutral atom, e.g. 4 for N+.
+   *
+   * @param atomicNumber atomic number
+   * @param charge formal charge
+   * @param bondOrderSum sum of the bond orders, aromatic bonds counted as 1
+   * @param aromatic true for aromatic atoms
+   * @return number of implicit hydrogens, 0 for elements outside the organic subset
+   */
+  public static int getImplicitHydrogenCount(int atomicNumber, int charge, int bondOrderSum, boolean aromatic) {
+    if (!isOrganicSubset(atomicNumber)) {
+      return 0;
+    }
+    int shift = atomicNumber <= CARBON ? -Math.abs(charge) : charge;
+    for (int valence : VALENCES[atomicNumber]) {
+      int target = valence + shift;
+      if (target >= bondOrderSum + (aromatic ? 1 : 0)) {
+        return target - bondOrderSum - (aromatic ? 1 : 0);
+      }
+      if (aromatic && target >= bondOrderSum) {
+        return 0;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * formats a molecular formula in Hill order: carbon, hydrogen and then the other elements alphabetically, or all
+   * elements alphabetically if there is no carbon
+   *
+   * @param counts number of atoms of every element indexed by atomic number, the pseudo atom count at index 0 is
+   *          ignored
+   * @return molecular formula, e.g. C3H7NO2
+   */
+  public static String getHillFormula(int[] counts) {
+    StringBuilder sb = new StringBuilder();
+    boolean carbon = counts.length > CARBON && counts[CARBON] > 0;
+    if (carbon) {
+      appendElement(sb, CARBON, counts[CARBON]);
+      if (counts.length > HYDROGEN) {
+        appendElement(sb, HYDROGEN, counts[HYDROGEN]);
+      }
+    }
+    for (int atomicNumber : ALPHABETICAL) {
+      if (atomicNumber < counts.length && !(carbon && (atomicNumber == CARBON || atomicNumber == HYDROGEN))) {
+        appendElement(sb, atomicNumber, counts[atomicNumber]);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void appendElement(StringBuilder sb, int atomicNumber, int count) {
+    if (count > 0) {
+      sb.append(SYMBOLS[atomicNumber]);
+      if (count > 1) {
+        sb.append(count);
+      }
+    }
+  }
+
+}
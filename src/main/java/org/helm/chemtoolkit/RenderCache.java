@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator.OutputType;
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code RenderCache} content addressed cache of rendered images. Entries are keyed by the SHA-256 hash of the input
+ * and all render parameters, so the memory cache holds only the hash and the image, not the molfile.
+ * <p>
+ * The memory cache is size bounded. If a directory is given, every image is also written there as
+ * {@code <hash>.<type>} and images missing in memory are read back from it, so the rendered images survive restarts
+ * and memory evictions; the directory is not bounded. The cache is thread safe and can be shared, images are copied
+ * on the way in and out.
+ */
+public class RenderCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RenderCache.class);
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final ResultCache<String, byte[]> memory;
+
+  private final Path directory;
+
+  private final AtomicLong diskHitCount = new AtomicLong();
+
+  /**
+   * @param policy eviction policy of the memory cache
+   * @param maximumSize maximum number of images in memory
+   * @param directory directory for the images, created on the first write, null to keep the images in memory only
+   */
+  public RenderCache(CachePolicy policy, int maximumSize, Path directory) {
+    this.memory = ResultCache.create(policy, maximumSize);
+    this.directory = directory;
+  }
+
+  /**
+   * @param type {@link StType#MOLFILE} for {@code renderMol}, {@link StType#SEQUENCE} for {@code renderSequence}
+   * @param data rendered molfile or sequence
+   * @param outputType image type
+   * @param width image width
+   * @param height image height
+   * @param rgb background color
+   * @return copy of the cached image, null if there is none
+   */
+  public byte[] get(StType type, String data, OutputType outputType, int width, int height, int rgb) {
+    String key = key(type, data, outputType, width, height, rgb);
+    byte[] image = memory.get(key);
+    if (image == null && directory != null) {
+      Path file = file(key, outputType);
+      if (Files.isRegularFile(file)) {
+        try {
+          image = Files.readAllBytes(file);
+          diskHitCount.incrementAndGet();
+          memory.put(key, image);
+        } catch (IOException e) {
+          LOG.warn("Cached image {} can not be read: {}", file, e.getMessage());
+        }
+      }
+    }
+    return image == null ? null : image.clone();
+  }
+
+  /**
+   * adds a rendered image
+   *
+   * @param type {@link StType#MOLFILE} for {@code renderMol}, {@link StType#SEQUENCE} for {@code renderSequence}
+   * @param data rendered molfile or sequence
+   * @param outputType image type
+   * @param width image width
+   * @param height image height
+   * @param rgb background color
+   * @param image rendered image, must not be null
+   */
+  public void put(StType type, String data, OutputType outputType, int width, int height, int rgb, byte[] image) {
+    String key = key(type, data, outputType, width, height, rgb);
+    byte[] copy = image.clone();
+    memory.put(key, copy);
+    if (directory != null) {
+      Path file = file(key, outputType);
+      if (!Files.exists(file)) {
+        write(file, copy);
+      }
+    }
+  }
+
+  /**
+   * writes to a temporary file first, so readers never see a partially written image
+   */
+  private void write(Path file, byte[] image) {
+    Path temp = null;
+    try {
+      Files.createDirectories(directory);
+      temp = Files.createTempFile(directory, "render", ".tmp");
+      Files.write(temp, image);
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      LOG.warn("Image {} can not be written: {}", file, e.getMessage());
+      if (temp != null) {
+        try {
+          Files.deleteIfExists(temp);
+        } catch (IOException ignored) {
+          // the temporary file is left behind
+        }
+      }
+    }
+  }
+
+  /**
+   * @return memory cache with its hit and miss statistics
+   */
+  public ResultCache<String, byte[]> getMemoryCache() {
+    return memory;
+  }
+
+  /**
+   * @return directory of the images, null if the images are kept in memory only
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return number of images read from the directory
+   */
+  public long getDiskHitCount() {
+    return diskHitCount.get();
+  }
+
+  /**
+   * clears the memory cache, the images in the directory are kept
+   */
+  public void clear() {
+    memory.clear();
+  }
+
+  /**
+   * clears the memory cache and deletes the images in the directory
+   *
+   * @throws CTKException if the images can not be deleted
+   */
+  public void clearAll() throws CTKException {
+    memory.clear();
+    if (directory == null || !Files.isDirectory(directory)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        if (isImageFile(file.getFileName().toString())) {
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (IOException e) {
+      throw new CTKException("Render cache directory " + directory + " can not be cleared", e);
+    }
+  }
+
+  private static boolean isImageFile(String name) {
+    int dot = name.indexOf('.');
+    if (dot != 64) {
+      return false;
+    }
+    for (OutputType outputType : OutputType.values()) {
+      if (name.substring(dot + 1).equals(extension(outputType))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Path file(String key, OutputType outputType) {
+    return directory.resolve(key + "." + extension(outputType));
+  }
+
+  private static String extension(OutputType outputType) {
+    return outputType.name().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * @return hex encoded SHA-256 hash of the input and the render parameters
+   */
+  static String key(StType type, String data, OutputType outputType, int width, int height, int rgb) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+    String parameters = type + "\u0000" + outputType + "\u0000" + width + "\u0000" + height + "\u0000" + rgb
+        + "\u0000";
+    digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+    digest.update(String.valueOf(data).getBytes(StandardCharsets.UTF_8));
+    byte[] hash = digest.digest();
+    char[] hex = new char[hash.length * 2];
+    for (int i = 0; i < hash.length; i++) {
+      hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+      hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+    }
+    return new String(hex);
+  }
+
+}
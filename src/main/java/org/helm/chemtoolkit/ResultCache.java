@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * {@code ResultCache} size bounded, thread safe cache with hit and miss statistics
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public abstract class ResultCache<K, V> {
+
+  protected final int maximumSize;
+
+  private long hitCount;
+
+  private long missCount;
+
+  private long evictionCount;
+
+  protected ResultCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximum cache size must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * creates a new cache
+   *
+   * @param policy eviction policy
+   * @param maximumSize maximum number of entries
+   * @param <K> key type
+   * @param <V> value type
+   * @return empty cache
+   */
+  public static <K, V> ResultCache<K, V> create(CachePolicy policy, int maximumSize) {
+    if (policy == CachePolicy.LFU) {
+      return new LfuCache<K, V>(maximumSize);
+    }
+    return new LruCache<K, V>(maximumSize);
+  }
+
+  /**
+   * @param key key to look up
+   * @return cached value, null if there is none
+   */
+  public synchronized V get(K key) {
+    V value = lookup(key);
+    if (value != null) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+    return value;
+  }
+
+  /**
+   * adds a value to the cache, evicting a entry if the cache is full
+   *
+   * @param key key
+   * @param value value, must not be null
+   */
+  public synchronized void put(K key, V value) {
+    if (store(key, value)) {
+      evictionCount++;
+    }
+  }
+
+  public synchronized void clear() {
+    removeAll();
+  }
+
+  public synchronized int size() {
+    return count();
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @return ratio of hits to all lookups, 0 if there was no lookup yet
+   */
+  public synchronized double getHitRate() {
+    long total = hitCount + missCount;
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  public synchronized void resetStatistics() {
+    hitCount = 0;
+    missCount = 0;
+    evictionCount = 0;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getClass().getSimpleName() + "[size=" + count() + ", hits=" + hitCount + ", misses=" + missCount
+        + ", evictions=" + evictionCount + "]";
+  }
+
+  protected abstract V lookup(K key);
+
+  /**
+   * @return true if a entry was evicted
+   */
+  protected abstract boolean store(K key, V value);
+
+  protected abstract void removeAll();
+
+  protected abstract int count();
+
+  private static final class LruCache<K, V> extends ResultCache<K, V> {
+
+    private final LinkedHashMap<K, V> entries;
+
+    LruCache(int maximumSize) {
+      super(maximumSize);
+      this.entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+    }
+
+    @Override
+    protected V lookup(K key) {
+      return entries.get(key);
+    }
+
+    @Override
+    protected boolean store(K key, V value) {
+      entries.put(key, value);
+      if (entries.size() > maximumSize) {
+        Iterator<K> eldest = entries.keySet().iterator();
+        eldest.next();
+        eldest.remove();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    protected void removeAll() {
+      entries.clear();
+    }
+
+    @Override
+    protected int count() {
+      return entries.size();
+    }
+  }
+
+  /**
+   * constant time LFU: every entry knows its use count, and the keys of each count are kept in insertion order
+   */
+  private static final class LfuCache<K, V> extends ResultCache<K, V> {
+
+    private final Map<K, Entry<V>> entries = new HashMap<K, Entry<V>>();
+
+    private final Map<Integer, LinkedHashSet<K>> frequencies = new HashMap<Integer, LinkedHashSet<K>>();
+
+    private int minFrequency;
+
+    LfuCache(int maximumSize) {
+      super(maximumSize);
+    }
+
+    @Override
+    protected V lookup(K key) {
+      Entry<V> entry = entries.get(key);
+      if (entry == null) {
+        return null;
+      }
+      touch(key, entry);
+      return entry.value;
+    }
+
+    @Override
+    protected boolean store(K key, V value) {
+      Entry<V> entry = entries.get(key);
+      if (entry != null) {
+        entry.value = value;
+        touch(key, entry);
+        return false;
+      }
+      boolean evicted = false;
+      if (entries.size() >= maximumSize) {
+        LinkedHashSet<K> keys = frequencies.get(minFrequency);
+        Iterator<K> iterator = keys.iterator();
+        K victim = iterator.next();
+        iterator.remove();
+        if (keys.isEmpty()) {
+          frequencies.remove(minFrequency);
+        }
+        entries.remove(victim);
+        evicted = true;
+      }
+      entries.put(key, new Entry<V>(value));
+      bucket(1).add(key);
+      minFrequency = 1;
+      return evicted;
+    }
+
+    private void touch(K key, Entry<V> entry) {
+      LinkedHashSet<K> keys = frequencies.get(entry.frequency);
+      keys.remove(key);
+      if (keys.isEmpty()) {
+        frequencies.remove(entry.frequency);
+        if (minFrequency == entry.frequency) {
+          minFrequency++;
+        }
+      }
+      entry.frequency++;
+      bucket(entry.frequency).add(key);
+    }
+
+    private LinkedHashSet<K> bucket(int frequency) {
+      LinkedHashSet<K> keys = frequencies.get(frequency);
+      if (keys == null) {
+        keys = new LinkedHashSet<K>();
+        frequencies.put(frequency, keys);
+      }
+      return keys;
+    }
+
+    @Override
+    protected void removeAll() {
+      entries.clear();
+      frequencies.clear();
+      minFrequency = 0;
+    }
+
+    @Override
+    protected int count() {
+      return entries.size();
+    }
+
+    private static final class Entry<V> {
+      V value;
+
+      int frequency = 1;
+
+      Entry(V value) {
+        this.value = value;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+/**
+ * {@code SimilarityHit} entry found by a {@link SimilarityIndex} search
+ */
+public final class SimilarityHit {
+
+  private final long id;
+
+  private final double similarity;
+
+  public SimilarityHit(long id, double similarity) {
+    this.id = id;
+    this.similarity = similarity;
+  }
+
+  /**
+   * @return id of the entry
+   */
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * @return Tanimoto similarity of the entry and the query
+   */
+  public double getSimilarity() {
+    return similarity;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (id ^ (id >>> 32)) * 31 + Double.valueOf(similarity).hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof SimilarityHit)) {
+      return false;
+    }
+    SimilarityHit other = (SimilarityHit) obj;
+    return id == other.id && Double.compare(similarity, other.similarity) == 0;
+  }
+
+  @Override
+  public String toString() {
+    return id + ":" + similarity;
+  }
+
+}
@@ -0,0 +1,491 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code SimilarityIndex} top-K similarity search over a library of structures. Every entry is the path fingerprint
+ * of the canonical form of a structure, see {@link FingerprintGenerator}, stored together with its id and bit count
+ * in direct buffers outside of the Java heap, so libraries of tens of millions of entries add no garbage collection
+ * load. The direct memory limit ({@code -XX:MaxDirectMemorySize}) must hold about (size / 8 + 16) bytes per entry.
+ * <p>
+ * A search splits the entries into ranges scanned by fork-join tasks. Each task collects its best K entries in its
+ * own heap, skipping entries whose bit count alone can not beat the worst entry kept, and the heaps are merged as the
+ * tasks are joined.
+ * <p>
+ * Searches can run concurrently, additions are exclusive. {@link #close()} frees the direct buffers right away instead
+ * of leaving them to the garbage collector.
+ */
+public class SimilarityIndex implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SimilarityIndex.class);
+
+  /** number of entries per direct buffer */
+  private static final int SEGMENT_SIZE = 1 << 16;
+
+  /** largest direct buffer, fewer entries are put into a segment if their fingerprints are large */
+  private static final int MAX_SEGMENT_BYTES = 1 << 24;
+
+  /** number of entries scanned by one task without splitting */
+  private static final int SCAN_SIZE = 1 << 14;
+
+  /** number of records processed per batch in {@link #addAll(StructureReader, BatchProcessor)} */
+  private static final int BUILD_CHUNK_SIZE = 4096;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final ForkJoinPool pool;
+
+  private final int fingerprintSize;
+
+  private final int maxPathLength;
+
+  private final int wordCount;
+
+  /** longs per entry: id, bit count and the fingerprint words */
+  private final int entrySize;
+
+  /** number of entries per segment */
+  private final int segmentSize;
+
+  /** direct buffers holding the segments, kept to free them on {@link #close()} */
+  private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+
+  private final List<LongBuffer> segments = new ArrayList<LongBuffer>();
+
+  private int size;
+
+  private boolean closed;
+
+  /**
+   * @param pool pool running the scans
+   */
+  public SimilarityIndex(ForkJoinPool pool) {
+    this(pool, FingerprintGenerator.DEFAULT_SIZE, FingerprintGenerator.DEFAULT_PATH_LENGTH);
+  }
+
+  /**
+   * @param pool pool running the scans
+   * @param fingerprintSize fingerprint size in bits, a positive multiple of 64
+   * @param maxPathLength maximum path length of the fingerprints in bonds
+   */
+  public SimilarityIndex(ForkJoinPool pool, int fingerprintSize, int maxPathLength) {
+    FingerprintGenerator generator = new FingerprintGenerator(fingerprintSize, maxPathLength);
+    this.pool = pool;
+    this.fingerprintSize = fingerprintSize;
+    this.maxPathLength = maxPathLength;
+    this.wordCount = generator.getWordCount();
+    this.entrySize = wordCount + 2;
+    this.segmentSize = (int) Math.max(1, Math.min(SEGMENT_SIZE, MAX_SEGMENT_BYTES / (entrySize * 8L)));
+  }
+
+  /**
+   * @return new generator for the fingerprints of this index
+   */
+  public FingerprintGenerator createGenerator() {
+    return new FingerprintGenerator(fingerprintSize, maxPathLength);
+  }
+
+  /**
+   * calculates the fingerprint of a structure the way it is indexed, from its canonical SMILES
+   *
+   * @param manipulator manipulator used to canonicalize and parse the SMILES
+   * @param smiles SMILES of the structure
+   * @return fingerprint
+   * @throws CTKException if the SMILES can not be canonicalized or parsed
+   */
+  public long[] fingerprint(AbstractChemistryManipulator manipulator, String smiles) throws CTKException {
+    try {
+      return createGenerator().generate(manipulator.getMolecule(manipulator.canonicalize(smiles), null));
+    } catch (IOException e) {
+      throw new CTKException("Structure can not be read: " + smiles, e);
+    }
+  }
+
+  /**
+   * @param id id of the entry
+   * @param fingerprint fingerprint of the entry, copied into the index
+   */
+  public void add(long id, long[] fingerprint) {
+    if (fingerprint.length != wordCount) {
+      throw new IllegalArgumentException("Fingerprint has " + fingerprint.length + " words instead of " + wordCount);
+    }
+    lock.writeLock().lock();
+    try {
+      checkOpen();
+      if (size == segments.size() * segmentSize) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(segmentSize * entrySize * 8).order(ByteOrder.nativeOrder());
+        buffers.add(buffer);
+        segments.add(buffer.asLongBuffer());
+      }
+      LongBuffer segment = segments.get(size / segmentSize);
+      int offset = (size % segmentSize) * entrySize;
+      segment.put(offset, id);
+      segment.put(offset + 1, FingerprintGenerator.cardinality(fingerprint));
+      for (int i = 0; i < wordCount; i++) {
+        segment.put(offset + 2 + i, fingerprint[i]);
+      }
+      size++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * adds the SMILES records of a reader, the id of each record is its position in the reader starting at 0. Records
+   * are canonicalized and fingerprinted in parallel by the processor, records that fail are logged and skipped.
+   *
+   * @param reader source of SMILES records
+   * @param processor processor fingerprinting the records
+   * @return number of records added
+   * @throws IOException if the reader fails
+   * @throws CTKException if the batch is interrupted
+   */
+  public long addAll(StructureReader reader, BatchProcessor processor) throws IOException, CTKException {
+    BatchProcessor.Operation<String, long[]> operation = new BatchProcessor.Operation<String, long[]>() {
+      @Override
+      public long[] apply(AbstractChemistryManipulator manipulator, String item) throws Exception {
+        return fingerprint(manipulator, item);
+      }
+    };
+    long added = 0;
+    long failed = 0;
+    List<String> records = new ArrayList<String>(BUILD_CHUNK_SIZE);
+    boolean more = true;
+    while (more) {
+      long firstId = reader.getRecordCount();
+      records.clear();
+      String record;
+      while (records.size() < BUILD_CHUNK_SIZE && (record = reader.next()) != null) {
+        records.add(record);
+      }
+      more = records.size() == BUILD_CHUNK_SIZE;
+      List<BatchResult<long[]>> results = processor.processAll(records, operation);
+      for (int i = 0; i < results.size(); i++) {
+        BatchResult<long[]> result = results.get(i);
+        if (result.isSuccess()) {
+          add(firstId + i, result.getValue());
+          added++;
+        } else {
+          failed++;
+          LOG.warn("Record {} can not be fingerprinted: {}", firstId + i, result.getError().getMessage());
+        }
+      }
+    }
+    LOG.debug("{} records added to the similarity index, {} failed", added, failed);
+    return added;
+  }
+
+  /**
+   * @param manipulator manipulator used to canonicalize and parse the query
+   * @param smiles SMILES of the query
+   * @param k maximum number of hits
+   * @return the at most k most similar entries, most similar first, entries of equal similarity by ascending id
+   * @throws CTKException if the query can not be read
+   */
+  public List<SimilarityHit> search(AbstractChemistryManipulator manipulator, String smiles, int k)
+      throws CTKException {
+    return search(fingerprint(manipulator, smiles), k);
+  }
+
+  /**
+   * @param query fingerprint of the query
+   * @param k maximum number of hits
+   * @return the at most k most similar entries, most similar first, entries of equal similarity by ascending id
+   */
+  public List<SimilarityHit> search(long[] query, int k) {
+    if (query.length != wordCount) {
+      throw new IllegalArgumentException("Fingerprint has " + query.length + " words instead of " + wordCount);
+    }
+    if (k <= 0) {
+      return new ArrayList<SimilarityHit>();
+    }
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      TopK top = pool.invoke(new Scan(query, FingerprintGenerator.cardinality(query), k, 0, size));
+      return top.toHits();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * frees the direct buffers of the entries, the index can not be used afterwards. Closing a closed index does
+   * nothing.
+   */
+  @Override
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      segments.clear();
+      for (ByteBuffer buffer : buffers) {
+        free(buffer);
+      }
+      buffers.clear();
+      LOG.debug("Similarity index with {} entries closed", size);
+      size = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Similarity index is closed");
+    }
+  }
+
+  /**
+   * releases the memory of a direct buffer through the cleaner of the JVM, Unsafe.invokeCleaner from Java 9 on and
+   * the cleaner of the buffer before. If neither is accessible the buffer is left to the garbage collector.
+   */
+  private static void free(ByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+      return;
+    } catch (Exception e) {
+      // before Java 9
+    }
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (Exception e) {
+      LOG.debug("Direct buffer can not be freed, it is left to the garbage collector: {}", e.toString());
+    }
+  }
+
+  public int getFingerprintSize() {
+    return fingerprintSize;
+  }
+
+  public int getMaxPathLength() {
+    return maxPathLength;
+  }
+
+  private class Scan extends RecursiveTask<TopK> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[] query;
+
+    private final int queryCardinality;
+
+    private final int k;
+
+    private final int start;
+
+    private final int end;
+
+    Scan(long[] query, int queryCardinality, int k, int start, int end) {
+      this.query = query;
+      this.queryCardinality = queryCardinality;
+      this.k = k;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected TopK compute() {
+      if (end - start <= SCAN_SIZE) {
+        return scan();
+      }
+      int middle = (start + end) >>> 1;
+      Scan right = new Scan(query, queryCardinality, k, middle, end);
+      right.fork();
+      TopK result = new Scan(query, queryCardinality, k, start, middle).compute();
+      result.addAll(right.join());
+      return result;
+    }
+
+    private TopK scan() {
+      TopK top = new TopK(k);
+      int entry = start;
+      while (entry < end) {
+        LongBuffer segment = segments.get(entry / segmentSize);
+        int segmentEnd = Math.min(end, (entry / segmentSize + 1) * segmentSize);
+        for (int offset = (entry % segmentSize) * entrySize; entry < segmentEnd; entry++, offset += entrySize) {
+          int cardinality = (int) segment.get(offset + 1);
+          int max = Math.max(cardinality, queryCardinality);
+          double similarity;
+          if (max == 0) {
+            similarity = 1;
+          } else {
+            if (top.isFull() && (double) Math.min(cardinality, queryCardinality) / max < top.minimum()) {
+              continue;
+            }
+            int common = 0;
+            for (int i = 0; i < wordCount; i++) {
+              common += Long.bitCount(segment.get(offset + 2 + i) & query[i]);
+            }
+            similarity = (double) common / (cardinality + queryCardinality - common);
+          }
+          top.add(segment.get(offset), similarity);
+        }
+      }
+      return top;
+    }
+  }
+
+  /**
+   * bounded min-heap of the best entries, the worst entry kept is at the root
+   */
+  private static final class TopK {
+
+    private final int capacity;
+
+    private long[] ids;
+
+    private double[] similarities;
+
+    private int size;
+
+    TopK(int capacity) {
+      this.capacity = capacity;
+      this.ids = new long[Math.min(capacity, 1024)];
+      this.similarities = new double[ids.length];
+    }
+
+    boolean isFull() {
+      return size == capacity;
+    }
+
+    double minimum() {
+      return similarities[0];
+    }
+
+    void add(long id, double similarity) {
+      if (size < capacity) {
+        ensureCapacity();
+        int i = size++;
+        while (i > 0) {
+          int parent = (i - 1) >>> 1;
+          if (!worse(id, similarity, ids[parent], similarities[parent])) {
+            break;
+          }
+          ids[i] = ids[parent];
+          similarities[i] = similarities[parent];
+          i = parent;
+        }
+        ids[i] = id;
+        similarities[i] = similarity;
+      } else if (worse(ids[0], similarities[0], id, similarity)) {
+        int i = 0;
+        while (true) {
+          int child = i * 2 + 1;
+          if (child >= size) {
+            break;
+          }
+          if (child + 1 < size && worse(ids[child + 1], similarities[child + 1], ids[child], similarities[child])) {
+            child++;
+          }
+          if (!worse(ids[child], similarities[child], id, similarity)) {
+            break;
+          }
+          ids[i] = ids[child];
+          similarities[i] = similarities[child];
+          i = child;
+        }
+        ids[i] = id;
+        similarities[i] = similarity;
+      }
+    }
+
+    void addAll(TopK other) {
+      for (int i = 0; i < other.size; i++) {
+        add(other.ids[i], other.similarities[i]);
+      }
+    }
+
+    /**
+     * the arrays grow on demand, k may be far larger than the number of entries
+     */
+    private void ensureCapacity() {
+      if (size == ids.length) {
+        int length = (int) Math.min(capacity, ids.length * 2L);
+        ids = Arrays.copyOf(ids, length);
+        similarities = Arrays.copyOf(similarities, length);
+      }
+    }
+
+    /**
+     * entries with lower similarity are worse, of equal similarity the one with the higher id
+     */
+    private static boolean worse(long id1, double similarity1, long id2, double similarity2) {
+      return similarity1 < similarity2 || (similarity1 == similarity2 && id1 > id2);
+    }
+
+    List<SimilarityHit> toHits() {
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+          return worse(ids[a], similarities[a], ids[b], similarities[b]) ? 1
+              : worse(ids[b], similarities[b], ids[a], similarities[a]) ? -1 : 0;
+        }
+      });
+      List<SimilarityHit> hits = new ArrayList<SimilarityHit>(size);
+      for (Integer i : order) {
+        hits.add(new SimilarityHit(ids[i], similarities[i]));
+      }
+      return hits;
+    }
+  }
+
+}
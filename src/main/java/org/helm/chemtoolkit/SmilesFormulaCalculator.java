@@ -0,0 +1,466 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.util.Arrays;
+
+/**
+ * {@code SmilesFormulaCalculator} calculates the {@link MoleculeInfo} of a SMILES without building a molecule. The
+ * SMILES is scanned once: atoms are counted per element, bond orders are summed per atom and implicit hydrogens are
+ * derived from the default valences of {@link PeriodicTable}. R-group placeholders like {@code [*:1]} or {@code *} are
+ * bonded but not counted, a HELM extended SMILES extension after the first blank or '|' is ignored. Isotope labeled atoms
+ * are counted as their element in the formula and weighed with the mass of their isotope, stereo marks are skipped.
+ * <p>
+ * The scratch arrays are reused between calls, so an instance is not thread safe; use one per thread.
+ */
+public final class SmilesFormulaCalculator {
+
+  /** atomic numbers by symbol, indexed by (first letter - 'A') * 27 + second letter - 'a' + 1, 0 if unknown */
+  private static final int[] SYMBOL_TABLE = new int[26 * 27];
+
+  private static final int MAX_RING_NUMBER = 100;
+
+  static {
+    for (int atomicNumber = 1; atomicNumber <= PeriodicTable.getMaxAtomicNumber(); atomicNumber++) {
+      String symbol = PeriodicTable.getSymbol(atomicNumber);
+      int key = (symbol.charAt(0) - 'A') * 27 + (symbol.length() > 1 ? symbol.charAt(1) - 'a' + 1 : 0);
+      SYMBOL_TABLE[key] = atomicNumber;
+    }
+  }
+
+  private CharSequence data;
+
+  private int pos;
+
+  private int end;
+
+  private int atomCount;
+
+  private int[] atomicNumbers = new int[64];
+
+  /** hydrogen count of bracket atoms, -1 for organic subset atoms */
+  private int[] hydrogens = new int[64];
+
+  private boolean[] aromatic = new boolean[64];
+
+  /** mass number of bracket atoms, 0 if not given */
+  private int[] isotopes = new int[64];
+
+  private int[] bondOrderSums = new int[64];
+
+  /** atom with an open ring bond for every ring number, -1 if the ring number is not open */
+  private final int[] ringAtoms = new int[MAX_RING_NUMBER];
+
+  private final int[] ringOrders = new int[MAX_RING_NUMBER];
+
+  private int[] branches = new int[16];
+
+  /**
+   * @param smiles SMILES or HELM extended SMILES
+   * @return formula, molecular weight and exact mass, isotope labeled atoms weighed with the mass of their isotope
+   * @throws CTKSmilesException if the SMILES is invalid
+   */
+  public MoleculeInfo calculate(CharSequence smiles) throws CTKSmilesException {
+    int[] counts = new int[PeriodicTable.getMaxAtomicNumber() + 1];
+    addElementCounts(smiles, counts);
+    double weightShift = 0;
+    double massShift = 0;
+    for (int atom = 0; atom < atomCount; atom++) {
+      int atomicNumber = atomicNumbers[atom];
+      if (atomicNumber > 0 && isotopes[atom] > 0) {
+        double mass = PeriodicTable.getIsotopeMass(atomicNumber, isotopes[atom]);
+        weightShift += mass - PeriodicTable.getAtomicWeight(atomicNumber);
+        massShift += mass - PeriodicTable.getMonoisotopicMass(atomicNumber);
+      }
+    }
+    MoleculeInfo info = new MoleculeInfo(counts);
+    if (weightShift != 0 || massShift != 0) {
+      info.setMolecularWeight(info.getMolecularWeight() + weightShift);
+      info.setExactMass(info.getExactMass() + massShift);
+    }
+    return info;
+  }
+
+  /**
+   * adds the atoms of the SMILES, hydrogens included, to the given counts without allocating. Only elements are
+   * counted, isotope labels are ignored; {@link #calculate(CharSequence)} applies their masses.
+   *
+   * @param smiles SMILES or HELM extended SMILES
+   * @param counts atom count per atomic number, at least {@link PeriodicTable#getMaxAtomicNumber()} + 1 long
+   * @throws CTKSmilesException if the SMILES is invalid, the counts are unchanged then
+   */
+  public void addElementCounts(CharSequence smiles, int[] counts) throws CTKSmilesException {
+    if (smiles == null) {
+      throw new CTKSmilesException("SMILES is null");
+    }
+    if (counts.length <= PeriodicTable.getMaxAtomicNumber()) {
+      throw new IllegalArgumentException("Counts must have room for atomic number "
+          + PeriodicTable.getMaxAtomicNumber());
+    }
+    data = smiles;
+    pos = 0;
+    end = smiles.length();
+    atomCount = 0;
+    Arrays.fill(ringAtoms, -1);
+    try {
+      scan();
+      for (int atom = 0; atom < atomCount; atom++) {
+        int atomicNumber = atomicNumbers[atom];
+        if (atomicNumber > 0) {
+          counts[atomicNumber]++;
+        }
+        counts[PeriodicTable.HYDROGEN] += hydrogens[atom] >= 0 ? hydrogens[atom]
+            : PeriodicTable.getImplicitHydrogenCount(atomicNumber, 0, bondOrderSums[atom], aromatic[atom]);
+      }
+    } finally {
+      data = null;
+    }
+  }
+
+  private void scan() throws CTKSmilesException {
+    int previous = -1;
+    int pendingOrder = 0;
+    int depth = 0;
+    while (pos < end) {
+      char c = data.charAt(pos);
+      if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '|') {
+        break;
+      }
+      switch (c) {
+      case '(':
+        if (previous < 0) {
+          throw error("Branch without atom");
+        }
+        if (depth == branches.length) {
+          branches = Arrays.copyOf(branches, depth * 2);
+        }
+        branches[depth++] = previous;
+        pos++;
+        break;
+      case ')':
+        if (depth == 0 || pendingOrder != 0) {
+          throw error("Unbalanced branch");
+        }
+        previous = branches[--depth];
+        pos++;
+        break;
+      case '-':
+      case '/':
+      case '\\':
+      case ':':
+        pendingOrder = checkBond(pendingOrder, 1);
+        break;
+      case '=':
+        pendingOrder = checkBond(pendingOrder, 2);
+        break;
+      case '#':
+        pendingOrder = checkBond(pendingOrder, 3);
+        break;
+      case '$':
+        pendingOrder = checkBond(pendingOrder, 4);
+        break;
+      case '.':
+        if (pendingOrder != 0 || depth != 0) {
+          throw error("Unexpected '.'");
+        }
+        previous = -1;
+        pos++;
+        break;
+      case '%':
+      case '0':
+      case '1':
+      case '2':
+      case '3':
+      case '4':
+      case '5':
+      case '6':
+      case '7':
+      case '8':
+      case '9':
+        if (previous < 0) {
+          throw error("Ring bond without atom");
+        }
+        ringBond(previous, readRingNumber(), pendingOrder);
+        pendingOrder = 0;
+        break;
+      case '[':
+        previous = connect(previous, scanBracketAtom(), pendingOrder);
+        pendingOrder = 0;
+        break;
+      default:
+        previous = connect(previous, scanOrganicAtom(), pendingOrder);
+        pendingOrder = 0;
+        break;
+      }
+    }
+    if (depth != 0 || pendingOrder != 0) {
+      throw error("Unexpected end of SMILES");
+    }
+    for (int i = 0; i < MAX_RING_NUMBER; i++) {
+      if (ringAtoms[i] >= 0) {
+        throw error("Ring bond " + i + " is not closed");
+      }
+    }
+    if (atomCount == 0) {
+      throw error("SMILES contains no atoms");
+    }
+  }
+
+  private int checkBond(int pendingOrder, int order) throws CTKSmilesException {
+    if (pendingOrder != 0) {
+      throw error("Two consecutive bonds");
+    }
+    pos++;
+    return order;
+  }
+
+  /**
+   * adds the bond to the previous atom, aromatic bonds count as 1 like single bonds
+   */
+  private int connect(int previous, int atom, int order) {
+    if (previous >= 0) {
+      addBond(previous, atom, order != 0 ? order : 1);
+    }
+    return atom;
+  }
+
+  private void addBond(int atom1, int atom2, int order) {
+    bondOrderSums[atom1] += order;
+    bondOrderSums[atom2] += order;
+  }
+
+  private int readRingNumber() throws CTKSmilesException {
+    char c = data.charAt(pos);
+    if (c != '%') {
+      pos++;
+      return c - '0';
+    }
+    if (pos + 2 >= end || !isDigit(data.charAt(pos + 1)) || !isDigit(data.charAt(pos + 2))) {
+      throw error("Invalid ring number");
+    }
+    int result = (data.charAt(pos + 1) - '0') * 10 + data.charAt(pos + 2) - '0';
+    pos += 3;
+    return result;
+  }
+
+  private void ringBond(int atom, int number, int order) throws CTKSmilesException {
+    int partner = ringAtoms[number];
+    if (partner < 0) {
+      ringAtoms[number] = atom;
+      ringOrders[number] = order;
+      return;
+    }
+    if (partner == atom) {
+      throw error("Ring bond to itself");
+    }
+    int openOrder = ringOrders[number];
+    if (order != 0 && openOrder != 0 && order != openOrder) {
+      throw error("Conflicting ring bond orders");
+    }
+    addBond(partner, atom, order != 0 ? order : openOrder != 0 ? openOrder : 1);
+    ringAtoms[number] = -1;
+  }
+
+  private int scanOrganicAtom() throws CTKSmilesException {
+    char c = data.charAt(pos);
+    int atomicNumber;
+    boolean isAromatic = false;
+    switch (c) {
+    case '*':
+      atomicNumber = 0;
+      break;
+    case 'B':
+      atomicNumber = next('r') ? 35 : 5;
+      break;
+    case 'C':
+      atomicNumber = next('l') ? 17 : 6;
+      break;
+    case 'N':
+      atomicNumber = 7;
+      break;
+    case 'O':
+      atomicNumber = 8;
+      break;
+    case 'P':
+      atomicNumber = 15;
+      break;
+    case 'S':
+      atomicNumber = 16;
+      break;
+    case 'F':
+      atomicNumber = 9;
+      break;
+    case 'I':
+      atomicNumber = 53;
+      break;
+    case 'b':
+    case 'c':
+    case 'n':
+    case 'o':
+    case 'p':
+    case 's':
+      atomicNumber = SYMBOL_TABLE[(c - 'a') * 27];
+      isAromatic = true;
+      break;
+    default:
+      throw error("Unexpected character '" + c + "'");
+    }
+    pos++;
+    return addAtom(atomicNumber, -1, isAromatic, 0);
+  }
+
+  private boolean next(char c) {
+    if (pos + 1 < end && data.charAt(pos + 1) == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private int scanBracketAtom() throws CTKSmilesException {
+    pos++;
+    int isotope = readNumber();
+    if (pos >= end) {
+      throw error("Unterminated bracket atom");
+    }
+    char c = data.charAt(pos);
+    int atomicNumber;
+    boolean isAromatic = false;
+    if (c == '*') {
+      atomicNumber = 0;
+      pos++;
+    } else if (c >= 'A' && c <= 'Z') {
+      atomicNumber = lookupSymbol(c);
+    } else if (c == 'b' || c == 'c' || c == 'n' || c == 'o' || c == 'p' || c == 's' || c == 'a') {
+      isAromatic = true;
+      atomicNumber = lookupSymbol(Character.toUpperCase(c));
+      if (atomicNumber != 5 && atomicNumber != 6 && atomicNumber != 7 && atomicNumber != 8 && atomicNumber != 15
+          && atomicNumber != 16 && atomicNumber != 33 && atomicNumber != 34) {
+        throw error("Invalid aromatic symbol");
+      }
+    } else {
+      throw error("Invalid bracket atom");
+    }
+    while (pos < end && data.charAt(pos) == '@') {
+      pos++;
+    }
+    if (pos + 1 < end && isChiralityClass(data.charAt(pos), data.charAt(pos + 1))) {
+      pos += 2;
+      skipDigits();
+    }
+    int hydrogenCount = 0;
+    if (pos < end && data.charAt(pos) == 'H') {
+      pos++;
+      hydrogenCount = pos < end && isDigit(data.charAt(pos)) ? readNumber() : 1;
+    }
+    if (pos < end && (data.charAt(pos) == '+' || data.charAt(pos) == '-')) {
+      skipCharge();
+    }
+    if (pos < end && data.charAt(pos) == ':') {
+      pos++;
+      if (pos >= end || !isDigit(data.charAt(pos))) {
+        throw error("Invalid atom class");
+      }
+      skipDigits();
+    }
+    if (pos >= end || data.charAt(pos) != ']') {
+      throw error("Unterminated bracket atom");
+    }
+    pos++;
+    return addAtom(atomicNumber, hydrogenCount, isAromatic, isotope);
+  }
+
+  /**
+   * looks up the symbol starting at pos with the given first letter, two letter symbols first
+   */
+  private int lookupSymbol(char first) throws CTKSmilesException {
+    int key = (first - 'A') * 27;
+    if (pos + 1 < end) {
+      char second = data.charAt(pos + 1);
+      if (second >= 'a' && second <= 'z' && SYMBOL_TABLE[key + second - 'a' + 1] > 0) {
+        pos += 2;
+        return SYMBOL_TABLE[key + second - 'a' + 1];
+      }
+    }
+    if (SYMBOL_TABLE[key] == 0) {
+      throw error("Unknown element");
+    }
+    pos++;
+    return SYMBOL_TABLE[key];
+  }
+
+  private static boolean isChiralityClass(char c1, char c2) {
+    return (c1 == 'T' && (c2 == 'H' || c2 == 'B')) || (c1 == 'A' && c2 == 'L') || (c1 == 'S' && c2 == 'P')
+        || (c1 == 'O' && c2 == 'H');
+  }
+
+  /**
+   * skips the charge of a bracket atom, charges do not change the formula and bracket atoms have explicit hydrogens
+   */
+  private void skipCharge() {
+    char sign = data.charAt(pos++);
+    if (pos < end && isDigit(data.charAt(pos))) {
+      skipDigits();
+    } else {
+      while (pos < end && data.charAt(pos) == sign) {
+        pos++;
+      }
+    }
+  }
+
+  private int readNumber() {
+    int value = 0;
+    while (pos < end && isDigit(data.charAt(pos))) {
+      value = value * 10 + data.charAt(pos) - '0';
+      pos++;
+    }
+    return value;
+  }
+
+  private void skipDigits() {
+    while (pos < end && isDigit(data.charAt(pos))) {
+      pos++;
+    }
+  }
+
+  private int addAtom(int atomicNumber, int hydrogenCount, boolean isAromatic, int isotope) {
+    if (atomCount == atomicNumbers.length) {
+      int capacity = atomCount * 2;
+      atomicNumbers = Arrays.copyOf(atomicNumbers, capacity);
+      hydrogens = Arrays.copyOf(hydrogens, capacity);
+      aromatic = Arrays.copyOf(aromatic, capacity);
+      isotopes = Arrays.copyOf(isotopes, capacity);
+      bondOrderSums = Arrays.copyOf(bondOrderSums, capacity);
+    }
+    int atom = atomCount++;
+    atomicNumbers[atom] = atomicNumber;
+    hydrogens[atom] = hydrogenCount;
+    aromatic[atom] = isAromatic;
+    isotopes[atom] = isotope;
+    bondOrderSums[atom] = 0;
+    return atom;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private CTKSmilesException error(String message) {
+    return new CTKSmilesException(message + " at position " + pos + " of SMILES " + data);
+  }
+
+}
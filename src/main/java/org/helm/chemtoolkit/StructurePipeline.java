@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+import org.helm.chemtoolkit.BatchProcessor.Operation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code StructurePipeline} streams the records of a {@link StructureReader} through a manipulator operation into a
+ * {@link StructureWriter}.
+ * <p>
+ * A reader thread submits every record to the executor and queues the pending result; the calling thread writes the
+ * results in input order. The queue is bounded, so the reader blocks while the workers or the writer are behind and
+ * memory stays flat regardless of the file size. Records that fail are logged, counted and skipped.
+ * <p>
+ * A pipeline keeps no state between runs, several runs may share it.
+ */
+public class StructurePipeline {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StructurePipeline.class);
+
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final ManipulatorPool pool;
+
+  private final ExecutorService executor;
+
+  private final int capacity;
+
+  public StructurePipeline(ManipulatorPool pool, ExecutorService executor) {
+    this(pool, executor, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param pool manipulators used by the workers
+   * @param executor executor running the operation on each record
+   * @param capacity maximum number of records in flight between reader and writer
+   */
+  public StructurePipeline(ManipulatorPool pool, ExecutorService executor, int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.pool = pool;
+    this.executor = executor;
+    this.capacity = capacity;
+  }
+
+  /**
+   * @param type type of the input records
+   * @return operation converting each record, see {@link AbstractChemistryManipulator#convert(String, StType)}
+   */
+  public static Operation<String, String> convert(final StType type) {
+    return new Operation<String, String>() {
+      @Override
+      public String apply(AbstractChemistryManipulator manipulator, String item) throws Exception {
+        return manipulator.convert(item, type);
+      }
+    };
+  }
+
+  /**
+   * @return operation canonicalizing each smiles record
+   */
+  public static Operation<String, String> canonicalize() {
+    return new Operation<String, String>() {
+      @Override
+      public String apply(AbstractChemistryManipulator manipulator, String item) throws Exception {
+        return manipulator.canonicalize(item);
+      }
+    };
+  }
+
+  /**
+   * @param type type of the input records
+   * @return operation producing a tab separated line of molecular formula, molecular weight and exact mass for each
+   *         record
+   */
+  public static Operation<String, String> moleculeInfo(final StType type) {
+    return new Operation<String, String>() {
+      @Override
+      public String apply(AbstractChemistryManipulator manipulator, String item) throws Exception {
+        String smiles = type == StType.SMILES ? item : manipulator.convert(item, type);
+        MoleculeInfo info = manipulator.getMoleculeInfo(manipulator.getMolecule(smiles, new AttachmentList()));
+        return info.getMolecularFormula() + "\t" + info.getMolecularWeight() + "\t" + info.getExactMass();
+      }
+    };
+  }
+
+  /**
+   * runs the pipeline until the reader is exhausted, neither the reader nor the writer are closed. If the reader
+   * fails, the records read so far are written and the error of the reader is rethrown. If writing fails, the pending
+   * records are cancelled.
+   *
+   * @param reader source of the records
+   * @param operation operation applied to each record
+   * @param writer destination of the results
+   * @return numbers of written and failed records
+   * @throws IOException if reading or writing fails
+   * @throws CTKException if the pipeline is interrupted
+   */
+  public Result run(final StructureReader reader, final Operation<String, String> operation, StructureWriter writer)
+      throws IOException, CTKException {
+    final BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<Future<String>>(capacity);
+    final FutureTask<String> endOfInput = new FutureTask<String>(new Callable<String>() {
+      @Override
+      public String call() {
+        return null;
+      }
+    });
+    final Throwable[] readError = new Throwable[1];
+
+    Thread readerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        boolean interrupted = false;
+        try {
+          String record;
+          while ((record = reader.next()) != null) {
+            Future<String> future = executor.submit(new Task(record, operation));
+            try {
+              pending.put(future);
+            } catch (InterruptedException e) {
+              future.cancel(true);
+              throw e;
+            }
+          }
+        } catch (InterruptedException e) {
+          // writer is gone
+          interrupted = true;
+        } catch (Throwable e) {
+          readError[0] = e;
+        } finally {
+          if (!interrupted) {
+            try {
+              pending.put(endOfInput);
+            } catch (InterruptedException e) {
+              // writer is gone
+            }
+          }
+        }
+      }
+    }, "structure-pipeline-reader");
+    readerThread.setDaemon(true);
+    readerThread.start();
+
+    long written = 0;
+    long failed = 0;
+    long recordNumber = 0;
+    boolean completed = false;
+    try {
+      Future<String> next;
+      while ((next = pending.take()) != endOfInput) {
+        recordNumber++;
+        try {
+          String result = next.get();
+          if (result != null) {
+            writer.write(result);
+            written++;
+          }
+        } catch (ExecutionException e) {
+          failed++;
+          LOG.warn("Record {} failed: {}", recordNumber, e.getCause().getMessage());
+        }
+      }
+      readerThread.join();
+      completed = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CTKException("Pipeline interrupted", e);
+    } finally {
+      if (!completed) {
+        readerThread.interrupt();
+        for (Future<String> future : pending) {
+          future.cancel(true);
+        }
+      }
+      writer.flush();
+    }
+    Throwable error = readError[0];
+    if (error instanceof IOException) {
+      throw (IOException) error;
+    } else if (error instanceof RuntimeException) {
+      throw (RuntimeException) error;
+    } else if (error instanceof Error) {
+      throw (Error) error;
+    } else if (error != null) {
+      throw new CTKException("Reading failed", error);
+    }
+    return new Result(written, failed);
+  }
+
+  /**
+   * {@code Result} numbers of written and failed records of one run
+   */
+  public static final class Result {
+
+    private final long writtenCount;
+
+    private final long failureCount;
+
+    Result(long writtenCount, long failureCount) {
+      this.writtenCount = writtenCount;
+      this.failureCount = failureCount;
+    }
+
+    /**
+     * @return number of records written
+     */
+    public long getWrittenCount() {
+      return writtenCount;
+    }
+
+    /**
+     * @return number of records that failed and were skipped
+     */
+    public long getFailureCount() {
+      return failureCount;
+    }
+
+    @Override
+    public String toString() {
+      return "written=" + writtenCount + ", failed=" + failureCount;
+    }
+  }
+
+  private class Task implements Callable<String> {
+
+    private final String record;
+
+    private final Operation<String, String> operation;
+
+    Task(String record, Operation<String, String> operation) {
+      this.record = record;
+      this.operation = operation;
+    }
+
+    @Override
+    public String call() throws Exception {
+      AbstractChemistryManipulator manipulator = pool.borrow();
+      try {
+        return operation.apply(manipulator, record);
+      } finally {
+        pool.release(manipulator);
+      }
+    }
+  }
+
+}
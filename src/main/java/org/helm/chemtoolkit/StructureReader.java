@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+
+/**
+ * {@code StructureReader} reads a structure file one record at a time. SMILES files hold one record per line, blank
+ * lines are skipped. SD files hold molfile records separated by {@code $$$$} lines. Only the current record is kept in
+ * memory.
+ */
+public class StructureReader implements Closeable {
+
+  public static final String SDF_RECORD_SEPARATOR = "$$$$";
+
+  private final BufferedReader reader;
+
+  private final StType type;
+
+  private final StringBuilder record = new StringBuilder();
+
+  private long recordCount;
+
+  /**
+   * @param reader source of the records
+   * @param type record type, {@link StType#SMILES} for line based files or {@link StType#MOLFILE} for SD files
+   */
+  public StructureReader(Reader reader, StType type) {
+    this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+    this.type = type;
+  }
+
+  /**
+   * opens a UTF-8 encoded structure file
+   *
+   * @param file file to read
+   * @param type record type
+   * @return reader positioned at the first record
+   * @throws IOException if the file can not be opened
+   */
+  public static StructureReader open(Path file, StType type) throws IOException {
+    return new StructureReader(Files.newBufferedReader(file, StandardCharsets.UTF_8), type);
+  }
+
+  /**
+   * @return the next record, null at the end of the input
+   * @throws IOException if the input can not be read
+   */
+  public String next() throws IOException {
+    String result = type == StType.MOLFILE ? nextMolfile() : nextLine();
+    if (result != null) {
+      recordCount++;
+    }
+    return result;
+  }
+
+  private String nextLine() throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (!line.isEmpty()) {
+        return line;
+      }
+    }
+    return null;
+  }
+
+  private String nextMolfile() throws IOException {
+    record.setLength(0);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.startsWith(SDF_RECORD_SEPARATOR)) {
+        if (!isBlank(record)) {
+          return record.toString();
+        }
+        record.setLength(0);
+      } else {
+        record.append(line).append('\n');
+      }
+    }
+    return isBlank(record) ? null : record.toString();
+  }
+
+  private static boolean isBlank(CharSequence sequence) {
+    for (int i = 0; i < sequence.length(); i++) {
+      if (!Character.isWhitespace(sequence.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public StType getType() {
+    return type;
+  }
+
+  /**
+   * @return number of records read so far
+   */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+
+/**
+ * {@code StructureWriter} writes records one at a time, the counterpart of {@link StructureReader}. Molfile records
+ * are terminated by a {@code $$$$} line, any other record is written as one line.
+ */
+public class StructureWriter implements Closeable, Flushable {
+
+  private final Writer writer;
+
+  private final StType type;
+
+  private long recordCount;
+
+  public StructureWriter(Writer writer, StType type) {
+    this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 1 << 16);
+    this.type = type;
+  }
+
+  /**
+   * creates or truncates a UTF-8 encoded structure file
+   *
+   * @param file file to write
+   * @param type record type
+   * @return writer
+   * @throws IOException if the file can not be opened
+   */
+  public static StructureWriter open(Path file, StType type) throws IOException {
+    return new StructureWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), type);
+  }
+
+  /**
+   * @param record record to write
+   * @throws IOException if the record can not be written
+   */
+  public void write(String record) throws IOException {
+    writer.write(record);
+    if (type == StType.MOLFILE) {
+      if (!record.endsWith("\n")) {
+        writer.write('\n');
+      }
+      writer.write(StructureReader.SDF_RECORD_SEPARATOR);
+    }
+    writer.write('\n');
+    recordCount++;
+  }
+
+  public StType getType() {
+    return type;
+  }
+
+  /**
+   * @return number of records written so far
+   */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+
+}
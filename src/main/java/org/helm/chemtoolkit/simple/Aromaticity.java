@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.helm.chemtoolkit.CTKException;
+
+/**
+ * {@code Aromaticity} perceives aromatic rings of a {@link SimpleMolecule}, so aromatic and Kekule input of the same
+ * structure end up with the same aromatic atoms and bonds. The molecule is kekulized first, then every smallest ring
+ * through a bond of the conjugated atoms is checked by the Hueckel rule: a ring is aromatic if its atoms contribute
+ * 4n+2 pi electrons. An atom with a double bond inside the ring, or to an atom of an already aromatic fused ring,
+ * contributes one electron, an atom with an exocyclic double bond to N, O or S none, an atom with a lone pair (NH,
+ * O, S, anions) two and a cation or a boron atom none. Pairs of fused rings are checked as a whole if the single rings
+ * are not aromatic, which covers azulene.
+ */
+final class Aromaticity {
+
+  private final SimpleMolecule molecule;
+
+  private final int atomCount;
+
+  private final int bondCount;
+
+  private final byte[] orders;
+
+  /** bond of the double bond of every atom, -1 if the atom has none */
+  private final int[] doubleBonds;
+
+  /** true for atoms that can take part in an aromatic ring */
+  private final boolean[] candidates;
+
+  private final List<int[]> rings = new ArrayList<int[]>();
+
+  private final boolean[] ringBonds;
+
+  private final boolean[] aromaticAtoms;
+
+  private final boolean[] aromaticBonds;
+
+  private Aromaticity(SimpleMolecule molecule, byte[] orders) {
+    this.molecule = molecule;
+    this.atomCount = molecule.getAtomCount();
+    this.bondCount = molecule.getBondCount();
+    this.orders = orders;
+    doubleBonds = new int[atomCount];
+    candidates = new boolean[atomCount];
+    ringBonds = new boolean[bondCount];
+    aromaticAtoms = new boolean[atomCount];
+    aromaticBonds = new boolean[bondCount];
+  }
+
+  /**
+   * replaces the aromatic flags and bonds of the molecule by the perceived ones. Hydrogen counts are fixed before, so
+   * they do not change with the aromatic flags. A molecule whose aromatic input can not be kekulized is left as it is.
+   *
+   * @param molecule molecule to perceive
+   */
+  static void perceive(SimpleMolecule molecule) {
+    byte[] orders;
+    try {
+      orders = molecule.getKekuleOrders();
+    } catch (CTKException e) {
+      return;
+    }
+    Aromaticity aromaticity = new Aromaticity(molecule, orders);
+    aromaticity.findCandidates();
+    aromaticity.findRings();
+    aromaticity.markRings();
+    aromaticity.apply();
+  }
+
+  private void findCandidates() {
+    Arrays.fill(doubleBonds, -1);
+    for (int atom = 0; atom < atomCount; atom++) {
+      boolean candidate = isAromaticElement(molecule.getAtomicNumber(atom))
+          && molecule.getDegree(atom) + molecule.getHydrogenCount(atom) <= 3;
+      for (int i = 0; i < molecule.getDegree(atom) && candidate; i++) {
+        int bond = molecule.getAtomBond(atom, i);
+        if (orders[bond] == SimpleMolecule.DOUBLE) {
+          candidate = doubleBonds[atom] < 0;
+          doubleBonds[atom] = bond;
+        } else if (orders[bond] != SimpleMolecule.SINGLE) {
+          candidate = false;
+        }
+      }
+      candidates[atom] = candidate;
+    }
+  }
+
+  private static boolean isAromaticElement(int atomicNumber) {
+    switch (atomicNumber) {
+    case 5:
+    case 6:
+    case 7:
+    case 8:
+    case 15:
+    case 16:
+    case 33:
+    case 34:
+    case 52:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * collects the smallest ring through every bond between candidate atoms, each ring once
+   */
+  private void findRings() {
+    Set<BitSet> found = new HashSet<BitSet>();
+    int[] previousBond = new int[atomCount];
+    int[] queue = new int[atomCount];
+    for (int bond = 0; bond < bondCount; bond++) {
+      int start = molecule.getBondAtom1(bond);
+      int target = molecule.getBondAtom2(bond);
+      if (!candidates[start] || !candidates[target]) {
+        continue;
+      }
+      Arrays.fill(previousBond, -2);
+      previousBond[start] = -1;
+      int head = 0;
+      int tail = 0;
+      queue[tail++] = start;
+      while (head < tail && previousBond[target] == -2) {
+        int atom = queue[head++];
+        for (int i = 0; i < molecule.getDegree(atom); i++) {
+          int next = molecule.getAtomBond(atom, i);
+          int neighbor = molecule.getOtherAtom(next, atom);
+          if (next != bond && candidates[neighbor] && previousBond[neighbor] == -2) {
+            previousBond[neighbor] = next;
+            queue[tail++] = neighbor;
+          }
+        }
+      }
+      if (previousBond[target] == -2) {
+        continue;
+      }
+      BitSet key = new BitSet(bondCount);
+      key.set(bond);
+      for (int atom = target; atom != start;) {
+        key.set(previousBond[atom]);
+        atom = molecule.getOtherAtom(previousBond[atom], atom);
+      }
+      if (found.add(key)) {
+        int[] ring = new int[key.cardinality()];
+        int k = 0;
+        for (int b = key.nextSetBit(0); b >= 0; b = key.nextSetBit(b + 1)) {
+          ring[k++] = b;
+          ringBonds[b] = true;
+        }
+        rings.add(ring);
+      }
+    }
+  }
+
+  /**
+   * marks aromatic rings until no more ring becomes aromatic, a ring may depend on a fused ring marked before
+   */
+  private void markRings() {
+    boolean[] done = new boolean[rings.size()];
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int r = 0; r < rings.size(); r++) {
+        if (!done[r] && isAromatic(rings.get(r), null)) {
+          mark(rings.get(r), null);
+          done[r] = true;
+          changed = true;
+        }
+      }
+      for (int r = 0; r < rings.size() && !changed; r++) {
+        for (int s = r + 1; s < rings.size() && !changed; s++) {
+          if (!done[r] && !done[s] && isFused(rings.get(r), rings.get(s))
+              && isAromatic(rings.get(r), rings.get(s))) {
+            mark(rings.get(r), rings.get(s));
+            done[r] = true;
+            done[s] = true;
+            changed = true;
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isFused(int[] ring1, int[] ring2) {
+    for (int bond : ring1) {
+      if (Arrays.binarySearch(ring2, bond) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the atoms of the ring, or of both rings, contribute 4n+2 pi electrons
+   */
+  private boolean isAromatic(int[] ring, int[] fused) {
+    boolean[] members = new boolean[atomCount];
+    addAtoms(ring, members);
+    addAtoms(fused, members);
+    int electrons = 0;
+    for (int atom = 0; atom < atomCount; atom++) {
+      if (members[atom]) {
+        int contribution = getElectrons(atom, members);
+        if (contribution < 0) {
+          return false;
+        }
+        electrons += contribution;
+      }
+    }
+    return electrons % 4 == 2;
+  }
+
+  private void addAtoms(int[] ring, boolean[] members) {
+    if (ring != null) {
+      for (int bond : ring) {
+        members[molecule.getBondAtom1(bond)] = true;
+        members[molecule.getBondAtom2(bond)] = true;
+      }
+    }
+  }
+
+  /**
+   * @return number of pi electrons the atom contributes to the ring of the given atoms, -1 if it breaks the
+   *         conjugation
+   */
+  private int getElectrons(int atom, boolean[] members) {
+    int bond = doubleBonds[atom];
+    if (bond >= 0) {
+      int partner = molecule.getOtherAtom(bond, atom);
+      if (members[partner] || (aromaticAtoms[partner] && ringBonds[bond])) {
+        return 1;
+      }
+      int atomicNumber = molecule.getAtomicNumber(partner);
+      return atomicNumber == 7 || atomicNumber == 8 || atomicNumber == 16 ? 0 : -1;
+    }
+    int connections = molecule.getDegree(atom) + molecule.getHydrogenCount(atom);
+    int charge = molecule.getCharge(atom);
+    switch (molecule.getAtomicNumber(atom)) {
+    case 5:
+      return charge == 0 && connections == 3 ? 0 : -1;
+    case 6:
+      return connections != 3 ? -1 : charge == -1 ? 2 : charge == 1 ? 0 : -1;
+    case 7:
+    case 15:
+    case 33:
+      return (charge == 0 && connections == 3) || (charge == -1 && connections == 2) ? 2 : -1;
+    default:
+      return charge == 0 && connections == 2 ? 2 : -1;
+    }
+  }
+
+  private void mark(int[] ring, int[] fused) {
+    for (int[] bonds : new int[][] {ring, fused}) {
+      if (bonds != null) {
+        for (int bond : bonds) {
+          aromaticBonds[bond] = true;
+          aromaticAtoms[molecule.getBondAtom1(bond)] = true;
+          aromaticAtoms[molecule.getBondAtom2(bond)] = true;
+        }
+      }
+    }
+  }
+
+  private void apply() {
+    for (int atom = 0; atom < atomCount; atom++) {
+      if (!molecule.hasExplicitHydrogens(atom)) {
+        molecule.setHydrogenCount(atom, molecule.getHydrogenCount(atom));
+      }
+    }
+    for (int bond = 0; bond < bondCount; bond++) {
+      int order = aromaticBonds[bond] ? SimpleMolecule.AROMATIC : orders[bond];
+      if (molecule.getBondOrder(bond) != order) {
+        molecule.setBondOrder(bond, order);
+      }
+    }
+    for (int atom = 0; atom < atomCount; atom++) {
+      if (molecule.isAromatic(atom) != aromaticAtoms[atom]) {
+        molecule.setAromatic(atom, aromaticAtoms[atom]);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import org.helm.chemtoolkit.CTKException;
+import org.helm.chemtoolkit.PeriodicTable;
+
+/**
+ * {@code MolfileReader} reads V2000 and V3000 molfiles into a {@link SimpleMolecule}. R-group atoms ({@code R#}) get
+ * their numbers from {@code M  RGP} lines or {@code RGROUPS} properties, atoms with aromatic bonds are flagged
+ * aromatic. Hydrogen counts are derived from the default valences, wedge bonds and atom parities are not read.
+ */
+final class MolfileReader {
+
+  private final String[] lines;
+
+  private MolfileReader(String molfile) {
+    this.lines = molfile.split("\r?\n", -1);
+  }
+
+  /**
+   * @param molfile molfile
+   * @return parsed molecule without attachments
+   * @throws CTKException if the molfile is invalid
+   */
+  static SimpleMolecule read(String molfile) throws CTKException {
+    if (molfile == null) {
+      throw new CTKException("Molfile is null");
+    }
+    MolfileReader reader = new MolfileReader(molfile);
+    if (reader.lines.length < 4) {
+      throw new CTKException("Molfile has no counts line");
+    }
+    String counts = reader.lines[3];
+    try {
+      if (counts.contains("V3000")) {
+        return reader.readV3000();
+      }
+      return reader.readV2000();
+    } catch (RuntimeException e) {
+      throw new CTKException("Invalid molfile: " + e.getMessage(), e);
+    }
+  }
+
+  private SimpleMolecule readV2000() throws CTKException {
+    String counts = lines[3];
+    int atomCount = parseInt(counts, 0, 3);
+    int bondCount = parseInt(counts, 3, 6);
+    if (lines.length < 4 + atomCount + bondCount) {
+      throw new CTKException("Molfile is truncated");
+    }
+    SimpleMolecule molecule = new SimpleMolecule(atomCount, bondCount);
+    for (int i = 0; i < atomCount; i++) {
+      String line = lines[4 + i];
+      String symbol = field(line, 31, 34);
+      int charge = 0;
+      switch (parseInt(line, 36, 39)) {
+      case 1:
+        charge = 3;
+        break;
+      case 2:
+        charge = 2;
+        break;
+      case 3:
+        charge = 1;
+        break;
+      case 5:
+        charge = -1;
+        break;
+      case 6:
+        charge = -2;
+        break;
+      case 7:
+        charge = -3;
+        break;
+      default:
+        break;
+      }
+      int atom = addAtom(molecule, symbol, charge);
+      molecule.setCoordinates(atom, parseDouble(line, 0, 10), parseDouble(line, 10, 20), parseDouble(line, 20, 30));
+    }
+    for (int i = 0; i < bondCount; i++) {
+      String line = lines[4 + atomCount + i];
+      addBond(molecule, parseInt(line, 0, 3) - 1, parseInt(line, 3, 6) - 1, parseInt(line, 6, 9));
+    }
+    boolean chargeLines = false;
+    for (int i = 4 + atomCount + bondCount; i < lines.length; i++) {
+      String line = lines[i];
+      if (line.startsWith("M  END")) {
+        break;
+      }
+      boolean charge = line.startsWith("M  CHG");
+      boolean isotope = line.startsWith("M  ISO");
+      boolean rgroup = line.startsWith("M  RGP");
+      if (!charge && !isotope && !rgroup) {
+        continue;
+      }
+      if (charge && !chargeLines) {
+        // charge lines supersede the charges of the atom block
+        chargeLines = true;
+        for (int atom = 0; atom < atomCount; atom++) {
+          molecule.setCharge(atom, 0);
+        }
+      }
+      int entries = parseInt(line, 6, 9);
+      for (int k = 0; k < entries; k++) {
+        int atom = parseInt(line, 9 + k * 8, 13 + k * 8) - 1;
+        int value = parseInt(line, 13 + k * 8, 17 + k * 8);
+        if (atom < 0 || atom >= atomCount) {
+          throw new CTKException("Invalid atom number in line " + line);
+        }
+        if (charge) {
+          molecule.setCharge(atom, value);
+        } else if (isotope) {
+          molecule.setIsotope(atom, value);
+        } else if (molecule.getAtomicNumber(atom) == 0) {
+          molecule.setRgroup(atom, value);
+        }
+      }
+    }
+    return molecule;
+  }
+
+  private SimpleMolecule readV3000() throws CTKException {
+    SimpleMolecule molecule = new SimpleMolecule();
+    String block = null;
+    StringBuilder logical = new StringBuilder();
+    for (int i = 4; i < lines.length; i++) {
+      String line = lines[i];
+      if (line.startsWith("M  END")) {
+        break;
+      }
+      if (!line.startsWith("M  V30 ")) {
+        continue;
+      }
+      logical.append(line.substring(7));
+      if (logical.length() > 0 && logical.charAt(logical.length() - 1) == '-') {
+        logical.setLength(logical.length() - 1);
+        continue;
+      }
+      String content = logical.toString().trim();
+      logical.setLength(0);
+      if (content.startsWith("BEGIN ")) {
+        block = content.substring(6).trim();
+      } else if (content.startsWith("END ")) {
+        block = null;
+      } else if ("ATOM".equals(block)) {
+        readV3000Atom(molecule, content);
+      } else if ("BOND".equals(block)) {
+        String[] tokens = content.split("\\s+");
+        addBond(molecule, Integer.parseInt(tokens[2]) - 1, Integer.parseInt(tokens[3]) - 1,
+            Integer.parseInt(tokens[1]));
+      }
+    }
+    return molecule;
+  }
+
+  private void readV3000Atom(SimpleMolecule molecule, String content) throws CTKException {
+    String[] tokens = content.split("\\s+");
+    if (Integer.parseInt(tokens[0]) != molecule.getAtomCount() + 1) {
+      throw new CTKException("Atoms are not numbered consecutively");
+    }
+    int atom = addAtom(molecule, tokens[1], 0);
+    molecule.setCoordinates(atom, Double.parseDouble(tokens[2]), Double.parseDouble(tokens[3]),
+        Double.parseDouble(tokens[4]));
+    for (int i = 6; i < tokens.length; i++) {
+      String token = tokens[i];
+      if (token.startsWith("CHG=")) {
+        molecule.setCharge(atom, Integer.parseInt(token.substring(4)));
+      } else if (token.startsWith("MASS=")) {
+        molecule.setIsotope(atom, Integer.parseInt(token.substring(5)));
+      } else if (token.startsWith("RGROUPS=(") && i + 1 < tokens.length && molecule.getAtomicNumber(atom) == 0) {
+        molecule.setRgroup(atom, Integer.parseInt(tokens[i + 1].replace(")", "")));
+      }
+    }
+  }
+
+  private static int addAtom(SimpleMolecule molecule, String symbol, int charge) throws CTKException {
+    int rgroup = 0;
+    int isotope = 0;
+    int atomicNumber;
+    if (symbol.startsWith("R")
+        && (symbol.length() == 1 || symbol.charAt(1) == '#' || Character.isDigit(symbol.charAt(1)))) {
+      atomicNumber = 0;
+      if (symbol.length() > 1 && Character.isDigit(symbol.charAt(1))) {
+        rgroup = Integer.parseInt(symbol.substring(1));
+      }
+    } else if ("*".equals(symbol) || "A".equals(symbol) || "Q".equals(symbol) || "L".equals(symbol)) {
+      atomicNumber = 0;
+    } else if ("D".equals(symbol) || "T".equals(symbol)) {
+      atomicNumber = PeriodicTable.HYDROGEN;
+      isotope = "D".equals(symbol) ? 2 : 3;
+    } else {
+      atomicNumber = PeriodicTable.getAtomicNumber(symbol);
+      if (atomicNumber < 0) {
+        throw new CTKException("Unknown atom symbol " + symbol);
+      }
+    }
+    return molecule.addAtom(atomicNumber, charge, isotope, -1, false, rgroup);
+  }
+
+  private static void addBond(SimpleMolecule molecule, int atom1, int atom2, int type) throws CTKException {
+    if (atom1 < 0 || atom2 < 0 || atom1 >= molecule.getAtomCount() || atom2 >= molecule.getAtomCount()) {
+      throw new CTKException("Bond refers to an unknown atom");
+    }
+    int order;
+    if (type >= SimpleMolecule.SINGLE && type <= SimpleMolecule.TRIPLE) {
+      order = type;
+    } else if (type == SimpleMolecule.AROMATIC) {
+      order = SimpleMolecule.AROMATIC;
+      molecule.setAromatic(atom1, true);
+      molecule.setAromatic(atom2, true);
+    } else {
+      order = SimpleMolecule.SINGLE;
+    }
+    molecule.addBond(atom1, atom2, order);
+  }
+
+  private static String field(String line, int start, int end) {
+    if (start >= line.length()) {
+      return "";
+    }
+    return line.substring(start, Math.min(end, line.length())).trim();
+  }
+
+  private static int parseInt(String line, int start, int end) {
+    String value = field(line, start, end);
+    return value.isEmpty() ? 0 : Integer.parseInt(value);
+  }
+
+  private static double parseDouble(String line, int start, int end) {
+    String value = field(line, start, end);
+    return value.isEmpty() ? 0 : Double.parseDouble(value);
+  }
+
+}
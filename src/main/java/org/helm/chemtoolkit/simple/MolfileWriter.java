@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import org.helm.chemtoolkit.CTKException;
+import org.helm.chemtoolkit.PeriodicTable;
+
+/**
+ * {@code MolfileWriter} writes a {@link SimpleMolecule} as molfile, V2000 up to 999 atoms and bonds and V3000 above.
+ * Aromatic bonds are written as Kekule structure where possible, R-group atoms as {@code R#} with their numbers.
+ */
+final class MolfileWriter {
+
+  private static final int V2000_LIMIT = 999;
+
+  private static final String HEADER = "\n  HELM2CTK\n\n";
+
+  private MolfileWriter() {
+  }
+
+  /**
+   * @param molecule molecule to write
+   * @return molfile
+   */
+  static String write(SimpleMolecule molecule) {
+    byte[] orders;
+    try {
+      orders = molecule.getKekuleOrders();
+    } catch (CTKException e) {
+      orders = new byte[molecule.getBondCount()];
+      for (int b = 0; b < orders.length; b++) {
+        orders[b] = (byte) molecule.getBondOrder(b);
+      }
+    }
+    StringBuilder sb = new StringBuilder(HEADER);
+    if (molecule.getAtomCount() > V2000_LIMIT || molecule.getBondCount() > V2000_LIMIT) {
+      writeV3000(molecule, orders, sb);
+    } else {
+      writeV2000(molecule, orders, sb);
+    }
+    return sb.toString();
+  }
+
+  private static void writeV2000(SimpleMolecule molecule, byte[] orders, StringBuilder sb) {
+    int atomCount = molecule.getAtomCount();
+    int bondCount = molecule.getBondCount();
+    appendInt(sb, atomCount, 3);
+    appendInt(sb, bondCount, 3);
+    sb.append("  0  0  0  0  0  0  0  0999 V2000\n");
+    int charges = 0;
+    int isotopes = 0;
+    int rgroups = 0;
+    for (int i = 0; i < atomCount; i++) {
+      int charge = molecule.getCharge(i);
+      int chargeCode = charge >= -3 && charge <= 3 && charge != 0 ? 4 - charge : 0;
+      appendCoordinate(sb, molecule.getX(i), 10);
+      appendCoordinate(sb, molecule.getY(i), 10);
+      appendCoordinate(sb, molecule.getZ(i), 10);
+      String symbol = getSymbol(molecule, i);
+      sb.append(' ').append(symbol);
+      for (int k = symbol.length(); k < 3; k++) {
+        sb.append(' ');
+      }
+      sb.append(" 0");
+      appendInt(sb, chargeCode, 3);
+      sb.append("  0  0  0  0  0  0  0  0  0  0\n");
+      charges += charge != 0 ? 1 : 0;
+      isotopes += molecule.getIsotope(i) != 0 ? 1 : 0;
+      rgroups += molecule.getAtomicNumber(i) == 0 && molecule.getRgroup(i) > 0 ? 1 : 0;
+    }
+    for (int b = 0; b < bondCount; b++) {
+      appendInt(sb, molecule.getBondAtom1(b) + 1, 3);
+      appendInt(sb, molecule.getBondAtom2(b) + 1, 3);
+      appendInt(sb, orders[b], 3);
+      sb.append("  0\n");
+    }
+    writeProperty(molecule, "M  CHG", charges, 0, sb);
+    writeProperty(molecule, "M  ISO", isotopes, 1, sb);
+    writeProperty(molecule, "M  RGP", rgroups, 2, sb);
+    sb.append("M  END\n");
+  }
+
+  private static void writeProperty(SimpleMolecule molecule, String name, int count, int kind, StringBuilder sb) {
+    int written = 0;
+    for (int i = 0; i < molecule.getAtomCount(); i++) {
+      int value = kind == 0 ? molecule.getCharge(i) : kind == 1 ? molecule.getIsotope(i)
+          : molecule.getAtomicNumber(i) == 0 ? molecule.getRgroup(i) : 0;
+      if (value == 0) {
+        continue;
+      }
+      if (written % 8 == 0) {
+        if (written > 0) {
+          sb.append('\n');
+        }
+        sb.append(name);
+        appendInt(sb, Math.min(8, count - written), 3);
+      }
+      appendInt(sb, i + 1, 4);
+      appendInt(sb, value, 4);
+      written++;
+    }
+    if (written > 0) {
+      sb.append('\n');
+    }
+  }
+
+  private static void writeV3000(SimpleMolecule molecule, byte[] orders, StringBuilder sb) {
+    int atomCount = molecule.getAtomCount();
+    int bondCount = molecule.getBondCount();
+    sb.append("  0  0  0     0  0            999 V3000\n");
+    sb.append("M  V30 BEGIN CTAB\n");
+    sb.append("M  V30 COUNTS ").append(atomCount).append(' ').append(bondCount).append(" 0 0 0\n");
+    sb.append("M  V30 BEGIN ATOM\n");
+    for (int i = 0; i < atomCount; i++) {
+      sb.append("M  V30 ").append(i + 1).append(' ').append(getSymbol(molecule, i)).append(' ');
+      appendCoordinate(sb, molecule.getX(i), 0);
+      sb.append(' ');
+      appendCoordinate(sb, molecule.getY(i), 0);
+      sb.append(' ');
+      appendCoordinate(sb, molecule.getZ(i), 0);
+      sb.append(" 0");
+      if (molecule.getCharge(i) != 0) {
+        sb.append(" CHG=").append(molecule.getCharge(i));
+      }
+      if (molecule.getIsotope(i) != 0) {
+        sb.append(" MASS=").append(molecule.getIsotope(i));
+      }
+      if (molecule.getAtomicNumber(i) == 0 && molecule.getRgroup(i) > 0) {
+        sb.append(" RGROUPS=(1 ").append(molecule.getRgroup(i)).append(')');
+      }
+      sb.append('\n');
+    }
+    sb.append("M  V30 END ATOM\n");
+    sb.append("M  V30 BEGIN BOND\n");
+    for (int b = 0; b < bondCount; b++) {
+      sb.append("M  V30 ").append(b + 1).append(' ').append(orders[b]).append(' ')
+          .append(molecule.getBondAtom1(b) + 1).append(' ').append(molecule.getBondAtom2(b) + 1).append('\n');
+    }
+    sb.append("M  V30 END BOND\n");
+    sb.append("M  V30 END CTAB\n");
+    sb.append("M  END\n");
+  }
+
+  /**
+   * appends the value right aligned in a field of the given width
+   */
+  private static void appendInt(StringBuilder sb, int value, int width) {
+    String text = Integer.toString(value);
+    for (int k = text.length(); k < width; k++) {
+      sb.append(' ');
+    }
+    sb.append(text);
+  }
+
+  /**
+   * appends the value with four decimals right aligned in a field of the given width, as {@code %10.4f} would
+   */
+  private static void appendCoordinate(StringBuilder sb, double value, int width) {
+    long scaled = Math.round(Math.abs(value) * 10000);
+    boolean negative = value < 0 && scaled != 0;
+    String fraction = Long.toString(scaled % 10000);
+    int length = Long.toString(scaled / 10000).length() + 5 + (negative ? 1 : 0);
+    for (int k = length; k < width; k++) {
+      sb.append(' ');
+    }
+    if (negative) {
+      sb.append('-');
+    }
+    sb.append(scaled / 10000).append('.');
+    for (int k = fraction.length(); k < 4; k++) {
+      sb.append('0');
+    }
+    sb.append(fraction);
+  }
+
+  private static String getSymbol(SimpleMolecule molecule, int atom) {
+    int atomicNumber = molecule.getAtomicNumber(atom);
+    if (atomicNumber == 0) {
+      return molecule.getRgroup(atom) > 0 ? "R#" : "*";
+    }
+    return PeriodicTable.getSymbol(atomicNumber);
+  }
+
+}
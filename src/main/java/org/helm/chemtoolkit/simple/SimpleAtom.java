@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import org.helm.chemtoolkit.CTKException;
+import org.helm.chemtoolkit.IAtomBase;
+import org.helm.chemtoolkit.IBondBase;
+
+/**
+ * {@code SimpleAtom} handle of an atom of a {@link SimpleMolecule}. A handle of a removed atom is detached, it has no
+ * bonds and no R-group.
+ */
+public class SimpleAtom extends IAtomBase {
+
+  SimpleMolecule molecule;
+
+  int index;
+
+  SimpleAtom(SimpleMolecule molecule, int index) {
+    this.molecule = molecule;
+    this.index = index;
+  }
+
+  void detach() {
+    molecule = null;
+    index = -1;
+  }
+
+  /**
+   * @return molecule the atom belongs to, null if the atom was removed
+   */
+  public SimpleMolecule getSimpleMolecule() {
+    return molecule;
+  }
+
+  /**
+   * @return index of the atom in its molecule, -1 if the atom was removed
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  @Override
+  public int getIBondCount() {
+    return molecule == null ? 0 : molecule.getDegree(index);
+  }
+
+  @Override
+  public IBondBase getIBond(int arg0) throws CTKException {
+    if (arg0 < 0 || arg0 >= getIBondCount()) {
+      throw new CTKException("Atom has no bond " + arg0);
+    }
+    return molecule.getBondHandle(molecule.getAtomBond(index, arg0));
+  }
+
+  @Override
+  public int getRgroup() {
+    return molecule == null ? 0 : molecule.getRgroup(index);
+  }
+
+  @Override
+  public int getIAtno() {
+    return molecule == null ? 0 : molecule.getAtomicNumber(index);
+  }
+
+  @Override
+  public void setRgroup(int rGroup) throws CTKException {
+    if (molecule == null) {
+      throw new CTKException("Atom was removed from its molecule");
+    }
+    molecule.setRgroup(index, rGroup);
+  }
+
+  @Override
+  public Object getMolAtom() {
+    return this;
+  }
+
+  @Override
+  public boolean compare(Object obj) {
+    return obj == this;
+  }
+
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import org.helm.chemtoolkit.IAtomBase;
+import org.helm.chemtoolkit.IBondBase;
+import org.helm.chemtoolkit.IStereoElementBase;
+
+/**
+ * {@code SimpleBond} handle of a bond of a {@link SimpleMolecule}. Bonds created by
+ * {@link SimpleManipulator#bindAtoms(IAtomBase, IAtomBase)} and bonds removed from their molecule are detached and
+ * keep their atoms and order themselves.
+ */
+public class SimpleBond implements IBondBase {
+
+  SimpleMolecule molecule;
+
+  int index;
+
+  private SimpleAtom atom1;
+
+  private SimpleAtom atom2;
+
+  private int order;
+
+  SimpleBond(SimpleMolecule molecule, int index) {
+    this.molecule = molecule;
+    this.index = index;
+  }
+
+  SimpleBond(SimpleAtom atom1, SimpleAtom atom2, int order) {
+    this.atom1 = atom1;
+    this.atom2 = atom2;
+    this.order = order;
+    this.index = -1;
+  }
+
+  void attach(SimpleMolecule owner, int bondIndex) {
+    molecule = owner;
+    index = bondIndex;
+    atom1 = null;
+    atom2 = null;
+  }
+
+  void detach() {
+    atom1 = molecule.getAtom(molecule.getBondAtom1(index));
+    atom2 = molecule.getAtom(molecule.getBondAtom2(index));
+    order = molecule.getBondOrder(index);
+    molecule = null;
+    index = -1;
+  }
+
+  /**
+   * @return molecule the bond belongs to, null if the bond is detached
+   */
+  public SimpleMolecule getSimpleMolecule() {
+    return molecule;
+  }
+
+  /**
+   * @return index of the bond in its molecule, -1 if the bond is detached
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  @Override
+  public IAtomBase getIAtom1() {
+    return molecule == null ? atom1 : molecule.getAtom(molecule.getBondAtom1(index));
+  }
+
+  @Override
+  public IAtomBase getIAtom2() {
+    return molecule == null ? atom2 : molecule.getAtom(molecule.getBondAtom2(index));
+  }
+
+  /**
+   * @return double bond stereo of this bond, null if the bond has none or is detached
+   */
+  @Override
+  public IStereoElementBase getStereoElement() {
+    if (molecule == null) {
+      return null;
+    }
+    return molecule.getBondStereoElement(molecule.getAtom(molecule.getBondAtom1(index)), molecule.getAtom(molecule
+        .getBondAtom2(index)));
+  }
+
+  /**
+   * @return bond order, {@link SimpleMolecule#AROMATIC} for aromatic bonds
+   */
+  @Override
+  public int getType() {
+    return molecule == null ? order : molecule.getBondOrder(index);
+  }
+
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import org.helm.chemtoolkit.IAtomBase;
+import org.helm.chemtoolkit.IStereoElementBase;
+
+/**
+ * {@code SimpleBondStereoElement} double bond stereo. One reference neighbor of each double bond atom is kept, the
+ * two references lie on opposite sides of the double bond if {@link #isOpposite()}, like {@code F/C=C/F}, or on the
+ * same side, like {@code F/C=C\F}. A null reference stands for the implicit hydrogen of its double bond atom.
+ */
+public class SimpleBondStereoElement implements IStereoElementBase {
+
+  private final SimpleAtom begin;
+
+  private final SimpleAtom end;
+
+  private final SimpleAtom beginNeighbor;
+
+  private final SimpleAtom endNeighbor;
+
+  private final boolean opposite;
+
+  /**
+   * @param begin first atom of the double bond
+   * @param end second atom of the double bond
+   * @param beginNeighbor reference neighbor of the first atom, null for an implicit hydrogen
+   * @param endNeighbor reference neighbor of the second atom, null for an implicit hydrogen
+   * @param opposite true if the reference neighbors lie on opposite sides of the double bond
+   */
+  public SimpleBondStereoElement(SimpleAtom begin, SimpleAtom end, SimpleAtom beginNeighbor, SimpleAtom endNeighbor,
+      boolean opposite) {
+    this.begin = begin;
+    this.end = end;
+    this.beginNeighbor = beginNeighbor;
+    this.endNeighbor = endNeighbor;
+    this.opposite = opposite;
+  }
+
+  public SimpleAtom getBegin() {
+    return begin;
+  }
+
+  public SimpleAtom getEnd() {
+    return end;
+  }
+
+  public SimpleAtom getBeginNeighbor() {
+    return beginNeighbor;
+  }
+
+  public SimpleAtom getEndNeighbor() {
+    return endNeighbor;
+  }
+
+  public boolean isOpposite() {
+    return opposite;
+  }
+
+  /**
+   * @param atom1 one atom of a bond
+   * @param atom2 other atom of the bond
+   * @return true if this element describes the bond between the given atoms
+   */
+  public boolean isBond(IAtomBase atom1, IAtomBase atom2) {
+    return (atom1 == begin && atom2 == end) || (atom1 == end && atom2 == begin);
+  }
+
+  /**
+   * @param atom atom
+   * @return true if the atom is a double bond atom or one of the reference neighbors
+   */
+  public boolean contains(IAtomBase atom) {
+    return atom == begin || atom == end || (atom != null && (atom == beginNeighbor || atom == endNeighbor));
+  }
+
+  /**
+   * @param source molecule the atoms of this element belong to
+   * @param target copy of the source molecule with the same atom order
+   * @return this element with the atoms of the copy, null if an atom does not belong to the source molecule
+   */
+  SimpleBondStereoElement copyTo(SimpleMolecule source, SimpleMolecule target) {
+    SimpleAtom[] atoms = {begin, end, beginNeighbor, endNeighbor};
+    for (int i = 0; i < atoms.length; i++) {
+      if (atoms[i] != null) {
+        if (atoms[i].molecule != source) {
+          return null;
+        }
+        atoms[i] = target.getAtom(atoms[i].index);
+      }
+    }
+    return new SimpleBondStereoElement(atoms[0], atoms[1], atoms[2], atoms[3], opposite);
+  }
+
+  @Override
+  public Object getStereoElement() {
+    return this;
+  }
+
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import java.io.IOException;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator;
+import org.helm.chemtoolkit.AbstractMolecule;
+import org.helm.chemtoolkit.AttachmentList;
+import org.helm.chemtoolkit.CTKException;
+import org.helm.chemtoolkit.CTKSmilesException;
+import org.helm.chemtoolkit.IAtomBase;
+import org.helm.chemtoolkit.IBondBase;
+import org.helm.chemtoolkit.IStereoElementBase;
+import org.helm.chemtoolkit.MoleculeInfo;
+import org.helm.chemtoolkit.PeriodicTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code SimpleManipulator} pure Java reference implementation of {@link AbstractChemistryManipulator} without an
+ * external chemistry toolkit. It reads and writes SMILES, HELM extended SMILES and molfiles, merges and assembles
+ * monomers and calculates {@link MoleculeInfo}, which covers the monomer assembly path of the HELM toolkit and gives
+ * a baseline for benchmarks. Images can not be rendered and no coordinates are generated.
+ * <p>
+ * Can be selected by class name through {@link org.helm.chemtoolkit.ManipulatorFactory}.
+ */
+public class SimpleManipulator extends AbstractChemistryManipulator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SimpleManipulator.class);
+
+  @Override
+  public String convertMolecule(AbstractMolecule container, StType type) throws CTKException {
+    SimpleMolecule molecule = getSimpleMolecule(container);
+    switch (type) {
+    case SMILES:
+      return SmilesWriter.write(molecule, false);
+    case MOLFILE:
+      return MolfileWriter.write(molecule);
+    default:
+      throw new CTKException("Unsupported notation type " + type);
+    }
+  }
+
+  @Override
+  public String convertMolIntoSmilesWithAtomMapping(String molfile) throws CTKException {
+    return SmilesWriter.write(MolfileReader.read(molfile), false);
+  }
+
+  @Override
+  public String convert(String data, StType type) throws CTKException {
+    switch (type) {
+    case SMILES:
+      return MolfileWriter.write(SmilesParser.parse(data));
+    case MOLFILE:
+      return SmilesWriter.write(MolfileReader.read(data), false);
+    default:
+      throw new CTKException("Unsupported notation type " + type);
+    }
+  }
+
+  @Override
+  public boolean validateSMILES(String smiles) {
+    try {
+      SmilesParser.parse(smiles);
+      return true;
+    } catch (CTKSmilesException e) {
+      LOG.debug("Invalid SMILES {}: {}", smiles, e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * calculates formula and masses from the atoms and their implicit hydrogens, R-group atoms are not counted. Isotope
+   * labeled atoms are weighed with the mass of their isotope and counted as their element in the formula.
+   */
+  @Override
+  public MoleculeInfo getMoleculeInfo(AbstractMolecule container) throws CTKException {
+    SimpleMolecule molecule = getSimpleMolecule(container);
+    int[] counts = new int[PeriodicTable.getMaxAtomicNumber() + 1];
+    double weightShift = 0;
+    double massShift = 0;
+    for (int i = 0; i < molecule.getAtomCount(); i++) {
+      int atomicNumber = molecule.getAtomicNumber(i);
+      if (atomicNumber > 0) {
+        counts[atomicNumber]++;
+        counts[PeriodicTable.HYDROGEN] += molecule.getHydrogenCount(i);
+        if (molecule.getIsotope(i) > 0) {
+          double mass = PeriodicTable.getIsotopeMass(atomicNumber, molecule.getIsotope(i));
+          weightShift += mass - PeriodicTable.getAtomicWeight(atomicNumber);
+          massShift += mass - PeriodicTable.getMonoisotopicMass(atomicNumber);
+        }
+      }
+    }
+    MoleculeInfo info = new MoleculeInfo(counts);
+    if (weightShift != 0 || massShift != 0) {
+      info.setMolecularWeight(info.getMolecularWeight() + weightShift);
+      info.setExactMass(info.getExactMass() + massShift);
+    }
+    return info;
+  }
+
+  /**
+   * writes canonical SMILES after aromaticity perception, so aromatic and Kekule input give the same result
+   */
+  @Override
+  public String canonicalize(String data) throws CTKException, CTKSmilesException {
+    SimpleMolecule molecule = SmilesParser.parse(data);
+    Aromaticity.perceive(molecule);
+    return SmilesWriter.write(molecule, true);
+  }
+
+  @Override
+  public byte[] renderMol(String molFile, OutputType outputType, int width, int height, int rgb)
+      throws CTKException {
+    throw new CTKException("Rendering is not supported by " + getClass().getSimpleName());
+  }
+
+  @Override
+  public byte[] renderSequence(String sequence, OutputType outputType, int width, int height, int rgb)
+      throws CTKException {
+    throw new CTKException("Rendering is not supported by " + getClass().getSimpleName());
+  }
+
+  @Override
+  public AbstractMolecule getMolecule(String smiles, AttachmentList attachments) throws IOException, CTKException {
+    SimpleMolecule molecule = SmilesParser.parse(smiles);
+    if (attachments != null) {
+      molecule.setAttachments(attachments);
+    }
+    return molecule;
+  }
+
+  /**
+   * merges as {@link AbstractChemistryManipulator#merge} and binds the neighbors of the removed R-group atoms
+   */
+  @Override
+  public AbstractMolecule merge(AbstractMolecule firstContainer, IAtomBase firstRgroup,
+      AbstractMolecule secondContainer, IAtomBase secondRgroup) throws CTKException {
+    IAtomBase atom1 = getNeighborAtom(firstRgroup);
+    IAtomBase atom2 = getNeighborAtom(secondRgroup);
+    if (atom1 == null || atom2 == null) {
+      throw new CTKException("R-group atoms must have exactly one bond");
+    }
+    AbstractMolecule result = super.merge(firstContainer, firstRgroup, secondContainer, secondRgroup);
+    bindMergedAtoms(result, atom1, atom2);
+    return result;
+  }
+
+  @Override
+  protected IBondBase bindAtoms(IAtomBase atom1, IAtomBase atom2) throws CTKException {
+    if (!(atom1 instanceof SimpleAtom) || !(atom2 instanceof SimpleAtom)) {
+      throw new CTKException("Atoms do not belong to a simple molecule");
+    }
+    return new SimpleBond((SimpleAtom) atom1, (SimpleAtom) atom2, SimpleMolecule.SINGLE);
+  }
+
+  /**
+   * @return the stereo center the R-group atom is bonded to, with the R-group atom replaced by atom1
+   */
+  @Override
+  protected IStereoElementBase getStereoInformation(AbstractMolecule container, IAtomBase rGroup, IAtomBase atom1,
+      IAtomBase atom2) throws CTKException {
+    SimpleMolecule molecule = getSimpleMolecule(container);
+    if (!(atom1 instanceof SimpleAtom)) {
+      throw new CTKException("Atom does not belong to a simple molecule");
+    }
+    for (SimpleStereoElement element : molecule.getStereoElements()) {
+      if (element.getCenter() != rGroup && element.contains(rGroup)) {
+        return element.replace((SimpleAtom) rGroup, (SimpleAtom) atom1);
+      }
+    }
+    return null;
+  }
+
+  private static SimpleMolecule getSimpleMolecule(AbstractMolecule container) throws CTKException {
+    container = resolve(container);
+    if (!(container instanceof SimpleMolecule)) {
+      throw new CTKException("Molecule was not created by " + SimpleManipulator.class.getSimpleName());
+    }
+    return (SimpleMolecule) container;
+  }
+
+}
@@ -0,0 +1,1002 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.helm.chemtoolkit.AbstractMolecule;
+import org.helm.chemtoolkit.AttachmentList;
+import org.helm.chemtoolkit.CTKException;
+import org.helm.chemtoolkit.IAtomBase;
+import org.helm.chemtoolkit.IBondBase;
+import org.helm.chemtoolkit.IChemObjectBase;
+import org.helm.chemtoolkit.MoleculeGraph;
+import org.helm.chemtoolkit.PeriodicTable;
+
+/**
+ * {@code SimpleMolecule} molecule of the reference backend, stored in primitive arrays: an atom table (atomic number,
+ * charge, isotope, explicit hydrogen count, aromaticity, R-group number, coordinates), a bond table (atom pairs and
+ * orders) and a CSR adjacency built from the bond table on demand.
+ * <p>
+ * The {@link SimpleAtom} and {@link SimpleBond} instances handed out through the {@link AbstractMolecule} API are
+ * handles created on first use. They follow their atom or bond when atoms are removed or when the molecule is added to
+ * another molecule, so they stay valid during a merge.
+ * <p>
+ * {@link #cloneMolecule()} shares the atom table, the R-group numbers and the bond table with the copy instead of
+ * copying them; each molecule copies a shared table only when it modifies it. Handles are never shared, the copy
+ * creates its own on first use.
+ */
+public class SimpleMolecule extends AbstractMolecule {
+
+  public static final int SINGLE = 1;
+
+  public static final int DOUBLE = 2;
+
+  public static final int TRIPLE = 3;
+
+  public static final int AROMATIC = 4;
+
+  private int atomCount;
+
+  private int[] atomicNumbers;
+
+  private int[] charges;
+
+  private int[] isotopes;
+
+  /** explicit hydrogen count, -1 if the count is derived from the default valence */
+  private int[] hydrogens;
+
+  private boolean[] aromatic;
+
+  private int[] rgroups;
+
+  /** x, y and z of every atom */
+  private double[] coordinates;
+
+  private SimpleAtom[] atomHandles;
+
+  private int bondCount;
+
+  /** both atoms of every bond */
+  private int[] bondAtoms;
+
+  private byte[] bondOrders;
+
+  private SimpleBond[] bondHandles;
+
+  /** CSR adjacency, the bonds of atom i are adjacencyBonds[adjacencyStart[i] .. adjacencyStart[i + 1]) */
+  private int[] adjacencyStart;
+
+  private int[] adjacencyBonds;
+
+  /** the atom table except the R-group numbers is shared with another molecule */
+  private boolean sharedAtoms;
+
+  /** the R-group numbers are shared with another molecule */
+  private boolean sharedRgroups;
+
+  /** the bond table is shared with another molecule */
+  private boolean sharedBonds;
+
+  private final List<SimpleStereoElement> stereoElements = new ArrayList<SimpleStereoElement>();
+
+  private final List<SimpleBondStereoElement> bondStereoElements = new ArrayList<SimpleBondStereoElement>();
+
+  public SimpleMolecule() {
+    this(16, 16);
+  }
+
+  /**
+   * @param atomCapacity expected number of atoms
+   * @param bondCapacity expected number of bonds
+   */
+  public SimpleMolecule(int atomCapacity, int bondCapacity) {
+    atomCapacity = Math.max(atomCapacity, 1);
+    bondCapacity = Math.max(bondCapacity, 1);
+    atomicNumbers = new int[atomCapacity];
+    charges = new int[atomCapacity];
+    isotopes = new int[atomCapacity];
+    hydrogens = new int[atomCapacity];
+    aromatic = new boolean[atomCapacity];
+    rgroups = new int[atomCapacity];
+    coordinates = new double[atomCapacity * 3];
+    atomHandles = new SimpleAtom[atomCapacity];
+    bondAtoms = new int[bondCapacity * 2];
+    bondOrders = new byte[bondCapacity];
+    bondHandles = new SimpleBond[bondCapacity];
+    atoms = new AtomList();
+    attachments = new AttachmentList();
+  }
+
+  /**
+   * copy sharing the atom and bond tables and the adjacency of the source, without handles and stereo elements
+   */
+  private SimpleMolecule(SimpleMolecule source) {
+    atomCount = source.atomCount;
+    atomicNumbers = source.atomicNumbers;
+    charges = source.charges;
+    isotopes = source.isotopes;
+    hydrogens = source.hydrogens;
+    aromatic = source.aromatic;
+    rgroups = source.rgroups;
+    coordinates = source.coordinates;
+    atomHandles = new SimpleAtom[atomicNumbers.length];
+    bondCount = source.bondCount;
+    bondAtoms = source.bondAtoms;
+    bondOrders = source.bondOrders;
+    bondHandles = new SimpleBond[bondOrders.length];
+    // the adjacency arrays are replaced, never modified
+    adjacencyStart = source.adjacencyStart;
+    adjacencyBonds = source.adjacencyBonds;
+    sharedAtoms = true;
+    sharedRgroups = true;
+    sharedBonds = true;
+    source.sharedAtoms = true;
+    source.sharedRgroups = true;
+    source.sharedBonds = true;
+    atoms = new AtomList();
+  }
+
+  /**
+   * adds an atom
+   *
+   * @param atomicNumber atomic number, 0 for R-group and other pseudo atoms
+   * @param charge formal charge
+   * @param isotope mass number, 0 for the natural isotope mixture
+   * @param hydrogenCount explicit hydrogen count, -1 to derive it from the default valence
+   * @param isAromatic true for aromatic atoms
+   * @param rgroup R-group number, 0 for atoms that are no R-group
+   * @return index of the new atom
+   */
+  int addAtom(int atomicNumber, int charge, int isotope, int hydrogenCount, boolean isAromatic, int rgroup) {
+    if (atomCount == atomicNumbers.length) {
+      growAtoms(atomCount * 2);
+    } else {
+      ownAtoms();
+      ownRgroups();
+    }
+    int index = atomCount++;
+    atomicNumbers[index] = atomicNumber;
+    charges[index] = charge;
+    isotopes[index] = isotope;
+    hydrogens[index] = hydrogenCount;
+    aromatic[index] = isAromatic;
+    rgroups[index] = rgroup;
+    atomHandles[index] = null;
+    structureChanged();
+    return index;
+  }
+
+  /**
+   * adds a bond
+   *
+   * @param atom1 index of the first atom
+   * @param atom2 index of the second atom
+   * @param order bond order, {@link #AROMATIC} for aromatic bonds
+   * @return index of the new bond
+   */
+  int addBond(int atom1, int atom2, int order) {
+    if (bondCount == bondOrders.length) {
+      growBonds(bondCount * 2);
+    } else {
+      ownBonds();
+    }
+    int index = bondCount++;
+    bondAtoms[index * 2] = atom1;
+    bondAtoms[index * 2 + 1] = atom2;
+    bondOrders[index] = (byte) order;
+    bondHandles[index] = null;
+    structureChanged();
+    return index;
+  }
+
+  private void growAtoms(int capacity) {
+    atomicNumbers = Arrays.copyOf(atomicNumbers, capacity);
+    charges = Arrays.copyOf(charges, capacity);
+    isotopes = Arrays.copyOf(isotopes, capacity);
+    hydrogens = Arrays.copyOf(hydrogens, capacity);
+    aromatic = Arrays.copyOf(aromatic, capacity);
+    rgroups = Arrays.copyOf(rgroups, capacity);
+    coordinates = Arrays.copyOf(coordinates, capacity * 3);
+    atomHandles = Arrays.copyOf(atomHandles, capacity);
+    sharedAtoms = false;
+    sharedRgroups = false;
+  }
+
+  private void growBonds(int capacity) {
+    bondAtoms = Arrays.copyOf(bondAtoms, capacity * 2);
+    bondOrders = Arrays.copyOf(bondOrders, capacity);
+    bondHandles = Arrays.copyOf(bondHandles, capacity);
+    sharedBonds = false;
+  }
+
+  private void ownAtoms() {
+    if (sharedAtoms) {
+      int capacity = atomicNumbers.length;
+      atomicNumbers = Arrays.copyOf(atomicNumbers, capacity);
+      charges = Arrays.copyOf(charges, capacity);
+      isotopes = Arrays.copyOf(isotopes, capacity);
+      hydrogens = Arrays.copyOf(hydrogens, capacity);
+      aromatic = Arrays.copyOf(aromatic, capacity);
+      coordinates = Arrays.copyOf(coordinates, capacity * 3);
+      sharedAtoms = false;
+    }
+  }
+
+  private void ownRgroups() {
+    if (sharedRgroups) {
+      rgroups = Arrays.copyOf(rgroups, rgroups.length);
+      sharedRgroups = false;
+    }
+  }
+
+  private void ownBonds() {
+    if (sharedBonds) {
+      bondAtoms = Arrays.copyOf(bondAtoms, bondAtoms.length);
+      bondOrders = Arrays.copyOf(bondOrders, bondOrders.length);
+      sharedBonds = false;
+    }
+  }
+
+  public int getAtomCount() {
+    return atomCount;
+  }
+
+  public int getBondCount() {
+    return bondCount;
+  }
+
+  public int getAtomicNumber(int atom) {
+    return atomicNumbers[atom];
+  }
+
+  public int getCharge(int atom) {
+    return charges[atom];
+  }
+
+  void setCharge(int atom, int charge) {
+    ownAtoms();
+    charges[atom] = charge;
+  }
+
+  public int getIsotope(int atom) {
+    return isotopes[atom];
+  }
+
+  void setIsotope(int atom, int isotope) {
+    ownAtoms();
+    isotopes[atom] = isotope;
+  }
+
+  public boolean isAromatic(int atom) {
+    return aromatic[atom];
+  }
+
+  void setAromatic(int atom, boolean isAromatic) {
+    ownAtoms();
+    aromatic[atom] = isAromatic;
+  }
+
+  public int getRgroup(int atom) {
+    return rgroups[atom];
+  }
+
+  void setRgroup(int atom, int rgroup) {
+    ownRgroups();
+    rgroups[atom] = rgroup;
+    invalidateStructure();
+  }
+
+  /**
+   * @param atom atom index
+   * @return true if the hydrogen count of the atom is given explicitly rather than derived from the default valence
+   */
+  public boolean hasExplicitHydrogens(int atom) {
+    return hydrogens[atom] >= 0;
+  }
+
+  /**
+   * @param atom atom index
+   * @param hydrogenCount explicit hydrogen count, -1 to derive it from the default valence
+   */
+  void setHydrogenCount(int atom, int hydrogenCount) {
+    ownAtoms();
+    hydrogens[atom] = hydrogenCount;
+  }
+
+  /**
+   * @param atom atom index
+   * @return number of hydrogens attached to the atom that are not represented as atoms
+   */
+  public int getHydrogenCount(int atom) {
+    if (hydrogens[atom] >= 0) {
+      return hydrogens[atom];
+    }
+    return PeriodicTable.getImplicitHydrogenCount(atomicNumbers[atom], charges[atom], getBondOrderSum(atom),
+        aromatic[atom]);
+  }
+
+  /**
+   * @param atom atom index
+   * @return sum of the orders of the bonds of the atom, aromatic bonds counted as 1
+   */
+  public int getBondOrderSum(int atom) {
+    int[] start = getAdjacencyStart();
+    int sum = 0;
+    for (int i = start[atom]; i < start[atom + 1]; i++) {
+      int order = bondOrders[adjacencyBonds[i]];
+      sum += order == AROMATIC ? 1 : order;
+    }
+    return sum;
+  }
+
+  public double getX(int atom) {
+    return coordinates[atom * 3];
+  }
+
+  public double getY(int atom) {
+    return coordinates[atom * 3 + 1];
+  }
+
+  public double getZ(int atom) {
+    return coordinates[atom * 3 + 2];
+  }
+
+  void setCoordinates(int atom, double x, double y, double z) {
+    ownAtoms();
+    coordinates[atom * 3] = x;
+    coordinates[atom * 3 + 1] = y;
+    coordinates[atom * 3 + 2] = z;
+  }
+
+  public int getBondAtom1(int bond) {
+    return bondAtoms[bond * 2];
+  }
+
+  public int getBondAtom2(int bond) {
+    return bondAtoms[bond * 2 + 1];
+  }
+
+  /**
+   * @param bond bond index
+   * @param atom index of one atom of the bond
+   * @return index of the other atom of the bond
+   */
+  public int getOtherAtom(int bond, int atom) {
+    int first = bondAtoms[bond * 2];
+    return first == atom ? bondAtoms[bond * 2 + 1] : first;
+  }
+
+  public int getBondOrder(int bond) {
+    return bondOrders[bond];
+  }
+
+  void setBondOrder(int bond, int order) {
+    ownBonds();
+    bondOrders[bond] = (byte) order;
+    invalidateStructure();
+  }
+
+  /**
+   * @param atom atom index
+   * @return number of bonds of the atom
+   */
+  public int getDegree(int atom) {
+    int[] start = getAdjacencyStart();
+    return start[atom + 1] - start[atom];
+  }
+
+  /**
+   * @param atom atom index
+   * @param i position in the bond list of the atom, less than {@link #getDegree(int)}
+   * @return index of the i-th bond of the atom
+   */
+  public int getAtomBond(int atom, int i) {
+    return adjacencyBonds[getAdjacencyStart()[atom] + i];
+  }
+
+  /**
+   * @param atom atom index
+   * @param i position in the bond list of the atom, less than {@link #getDegree(int)}
+   * @return index of the atom at the other end of the i-th bond
+   */
+  public int getNeighbor(int atom, int i) {
+    return getOtherAtom(getAtomBond(atom, i), atom);
+  }
+
+  /**
+   * @param atom1 first atom
+   * @param atom2 second atom
+   * @return index of the bond between the given atoms, -1 if they are not bonded
+   */
+  public int getBond(int atom1, int atom2) {
+    int[] start = getAdjacencyStart();
+    for (int i = start[atom1]; i < start[atom1 + 1]; i++) {
+      if (getOtherAtom(adjacencyBonds[i], atom1) == atom2) {
+        return adjacencyBonds[i];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * drops the adjacency and the caches of {@link AbstractMolecule} after atoms or bonds were added or removed
+   */
+  private void structureChanged() {
+    adjacencyStart = null;
+    invalidateStructure();
+  }
+
+  /**
+   * every change of atoms, bonds, bond orders and R-group numbers goes through {@link #invalidateStructure()}
+   */
+  @Override
+  protected boolean reportsStructureChanges() {
+    return true;
+  }
+
+  private int[] getAdjacencyStart() {
+    if (adjacencyStart == null) {
+      int[] start = new int[atomCount + 1];
+      for (int i = 0; i < bondCount * 2; i++) {
+        start[bondAtoms[i] + 1]++;
+      }
+      for (int i = 0; i < atomCount; i++) {
+        start[i + 1] += start[i];
+      }
+      int[] fill = Arrays.copyOf(start, atomCount);
+      int[] bonds = new int[bondCount * 2];
+      for (int b = 0; b < bondCount; b++) {
+        bonds[fill[bondAtoms[b * 2]]++] = b;
+        bonds[fill[bondAtoms[b * 2 + 1]]++] = b;
+      }
+      adjacencyBonds = bonds;
+      adjacencyStart = start;
+    }
+    return adjacencyStart;
+  }
+
+  /**
+   * @param atom atom index
+   * @return handle of the atom
+   */
+  public SimpleAtom getAtom(int atom) {
+    SimpleAtom handle = atomHandles[atom];
+    if (handle == null) {
+      handle = new SimpleAtom(this, atom);
+      atomHandles[atom] = handle;
+    }
+    return handle;
+  }
+
+  /**
+   * @param bond bond index
+   * @return handle of the bond
+   */
+  public SimpleBond getBondHandle(int bond) {
+    SimpleBond handle = bondHandles[bond];
+    if (handle == null) {
+      handle = new SimpleBond(this, bond);
+      bondHandles[bond] = handle;
+    }
+    return handle;
+  }
+
+  /**
+   * @return tetrahedral stereo centers of this molecule
+   */
+  public List<SimpleStereoElement> getStereoElements() {
+    return stereoElements;
+  }
+
+  /**
+   * @return double bond stereo elements of this molecule
+   */
+  public List<SimpleBondStereoElement> getBondStereoElements() {
+    return bondStereoElements;
+  }
+
+  /**
+   * @param atom1 one atom of the bond
+   * @param atom2 other atom of the bond
+   * @return stereo element of the bond between the given atoms, null if the bond has no stereo
+   */
+  public SimpleBondStereoElement getBondStereoElement(SimpleAtom atom1, SimpleAtom atom2) {
+    for (SimpleBondStereoElement element : bondStereoElements) {
+      if (element.isBond(atom1, atom2)) {
+        return element;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param center center atom
+   * @return stereo element of the given center, null if the atom is no stereo center
+   */
+  public SimpleStereoElement getStereoElement(SimpleAtom center) {
+    for (SimpleStereoElement element : stereoElements) {
+      if (element.getCenter() == center) {
+        return element;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * removes an atom with its bonds and the stereo elements it takes part in
+   *
+   * @param atom index of the atom to remove
+   */
+  void removeAtom(int atom) {
+    SimpleAtom removed = atomHandles[atom];
+    if (removed != null) {
+      for (int i = stereoElements.size() - 1; i >= 0; i--) {
+        if (stereoElements.get(i).contains(removed)) {
+          stereoElements.remove(i);
+        }
+      }
+      for (int i = bondStereoElements.size() - 1; i >= 0; i--) {
+        if (bondStereoElements.get(i).contains(removed)) {
+          bondStereoElements.remove(i);
+        }
+      }
+    }
+
+    ownBonds();
+    int kept = 0;
+    for (int b = 0; b < bondCount; b++) {
+      int a1 = bondAtoms[b * 2];
+      int a2 = bondAtoms[b * 2 + 1];
+      if (a1 == atom || a2 == atom) {
+        if (bondHandles[b] != null) {
+          bondHandles[b].detach();
+        }
+        continue;
+      }
+      bondAtoms[kept * 2] = a1 > atom ? a1 - 1 : a1;
+      bondAtoms[kept * 2 + 1] = a2 > atom ? a2 - 1 : a2;
+      bondOrders[kept] = bondOrders[b];
+      bondHandles[kept] = bondHandles[b];
+      if (bondHandles[kept] != null) {
+        bondHandles[kept].index = kept;
+      }
+      kept++;
+    }
+    Arrays.fill(bondHandles, kept, bondCount, null);
+    bondCount = kept;
+
+    removed = atomHandles[atom];
+    if (removed != null) {
+      removed.detach();
+    }
+    ownAtoms();
+    ownRgroups();
+    int moved = atomCount - atom - 1;
+    System.arraycopy(atomicNumbers, atom + 1, atomicNumbers, atom, moved);
+    System.arraycopy(charges, atom + 1, charges, atom, moved);
+    System.arraycopy(isotopes, atom + 1, isotopes, atom, moved);
+    System.arraycopy(hydrogens, atom + 1, hydrogens, atom, moved);
+    System.arraycopy(aromatic, atom + 1, aromatic, atom, moved);
+    System.arraycopy(rgroups, atom + 1, rgroups, atom, moved);
+    System.arraycopy(coordinates, (atom + 1) * 3, coordinates, atom * 3, moved * 3);
+    System.arraycopy(atomHandles, atom + 1, atomHandles, atom, moved);
+    atomCount--;
+    atomHandles[atomCount] = null;
+    for (int i = atom; i < atomCount; i++) {
+      if (atomHandles[i] != null) {
+        atomHandles[i].index = i;
+      }
+    }
+    structureChanged();
+  }
+
+  /**
+   * removes a bond
+   *
+   * @param bond index of the bond to remove
+   */
+  void removeBond(int bond) {
+    if (bondHandles[bond] != null) {
+      bondHandles[bond].detach();
+    }
+    ownBonds();
+    int moved = bondCount - bond - 1;
+    System.arraycopy(bondAtoms, (bond + 1) * 2, bondAtoms, bond * 2, moved * 2);
+    System.arraycopy(bondOrders, bond + 1, bondOrders, bond, moved);
+    System.arraycopy(bondHandles, bond + 1, bondHandles, bond, moved);
+    bondCount--;
+    bondHandles[bondCount] = null;
+    for (int i = bond; i < bondCount; i++) {
+      if (bondHandles[i] != null) {
+        bondHandles[i].index = i;
+      }
+    }
+    structureChanged();
+  }
+
+  /**
+   * moves all atoms, bonds and stereo elements of the given molecule to this molecule, the given molecule is empty
+   * afterwards. Handles of the moved atoms and bonds refer to this molecule. The tables of the given molecule are only
+   * read, so they may be shared.
+   *
+   * @param other molecule to add
+   */
+  void append(SimpleMolecule other) {
+    int atomOffset = atomCount;
+    int bondOffset = bondCount;
+    if (atomCount + other.atomCount > atomicNumbers.length) {
+      growAtoms(Math.max(atomicNumbers.length * 2, atomCount + other.atomCount));
+    } else {
+      ownAtoms();
+      ownRgroups();
+    }
+    if (bondCount + other.bondCount > bondOrders.length) {
+      growBonds(Math.max(bondOrders.length * 2, bondCount + other.bondCount));
+    } else {
+      ownBonds();
+    }
+    int n = other.atomCount;
+    System.arraycopy(other.atomicNumbers, 0, atomicNumbers, atomOffset, n);
+    System.arraycopy(other.charges, 0, charges, atomOffset, n);
+    System.arraycopy(other.isotopes, 0, isotopes, atomOffset, n);
+    System.arraycopy(other.hydrogens, 0, hydrogens, atomOffset, n);
+    System.arraycopy(other.aromatic, 0, aromatic, atomOffset, n);
+    System.arraycopy(other.rgroups, 0, rgroups, atomOffset, n);
+    System.arraycopy(other.coordinates, 0, coordinates, atomOffset * 3, n * 3);
+    for (int i = 0; i < n; i++) {
+      SimpleAtom handle = other.atomHandles[i];
+      if (handle != null) {
+        handle.molecule = this;
+        handle.index = atomOffset + i;
+      }
+      atomHandles[atomOffset + i] = handle;
+    }
+    atomCount += n;
+
+    int m = other.bondCount;
+    for (int i = 0; i < m * 2; i++) {
+      bondAtoms[bondOffset * 2 + i] = other.bondAtoms[i] + atomOffset;
+    }
+    System.arraycopy(other.bondOrders, 0, bondOrders, bondOffset, m);
+    for (int i = 0; i < m; i++) {
+      SimpleBond handle = other.bondHandles[i];
+      if (handle != null) {
+        handle.molecule = this;
+        handle.index = bondOffset + i;
+      }
+      bondHandles[bondOffset + i] = handle;
+    }
+    bondCount += m;
+    stereoElements.addAll(other.stereoElements);
+    bondStereoElements.addAll(other.bondStereoElements);
+
+    other.clear();
+    structureChanged();
+  }
+
+  private void clear() {
+    Arrays.fill(atomHandles, 0, atomCount, null);
+    Arrays.fill(bondHandles, 0, bondCount, null);
+    atomCount = 0;
+    bondCount = 0;
+    stereoElements.clear();
+    bondStereoElements.clear();
+    structureChanged();
+  }
+
+  /**
+   * computes a Kekule structure of the aromatic bonds without changing the molecule
+   *
+   * @return order of every bond with the aromatic bonds replaced by single and double bonds
+   * @throws CTKException if no Kekule structure exists
+   */
+  byte[] getKekuleOrders() throws CTKException {
+    byte[] orders = Arrays.copyOf(bondOrders, bondCount);
+    boolean hasAromatic = false;
+    for (int b = 0; b < bondCount; b++) {
+      if (orders[b] == AROMATIC) {
+        hasAromatic = true;
+        break;
+      }
+    }
+    if (!hasAromatic) {
+      return orders;
+    }
+
+    // atoms of the aromatic system that still need a double bond
+    boolean[] pending = new boolean[atomCount];
+    int pendingCount = 0;
+    for (int i = 0; i < atomCount; i++) {
+      if (aromatic[i] && PeriodicTable.getImplicitHydrogenCount(atomicNumbers[i], charges[i],
+          getBondOrderSum(i) + getHydrogenCount(i), false) > 0) {
+        pending[i] = true;
+        pendingCount++;
+      }
+    }
+    int[] partner = new int[atomCount];
+    Arrays.fill(partner, -1);
+    if (!match(pending, pendingCount, partner, orders)) {
+      throw new CTKException("Aromatic system can not be kekulized");
+    }
+    for (int b = 0; b < bondCount; b++) {
+      if (orders[b] == AROMATIC) {
+        int a1 = bondAtoms[b * 2];
+        orders[b] = (byte) (partner[a1] == bondAtoms[b * 2 + 1] ? DOUBLE : SINGLE);
+      }
+    }
+    return orders;
+  }
+
+  /**
+   * perfect matching of the pending atoms over aromatic bonds, the most constrained atom is matched first
+   */
+  private boolean match(boolean[] pending, int pendingCount, int[] partner, byte[] orders) {
+    if (pendingCount == 0) {
+      return true;
+    }
+    int[] start = getAdjacencyStart();
+    int best = -1;
+    int bestOptions = Integer.MAX_VALUE;
+    for (int i = 0; i < atomCount && bestOptions > 1; i++) {
+      if (pending[i]) {
+        int options = 0;
+        for (int k = start[i]; k < start[i + 1]; k++) {
+          int bond = adjacencyBonds[k];
+          if (orders[bond] == AROMATIC && pending[getOtherAtom(bond, i)]) {
+            options++;
+          }
+        }
+        if (options < bestOptions) {
+          best = i;
+          bestOptions = options;
+        }
+      }
+    }
+    if (bestOptions == 0) {
+      return false;
+    }
+    pending[best] = false;
+    for (int k = start[best]; k < start[best + 1]; k++) {
+      int bond = adjacencyBonds[k];
+      int other = getOtherAtom(bond, best);
+      if (orders[bond] == AROMATIC && pending[other]) {
+        pending[other] = false;
+        partner[best] = other;
+        partner[other] = best;
+        if (match(pending, pendingCount - 2, partner, orders)) {
+          return true;
+        }
+        partner[best] = -1;
+        partner[other] = -1;
+        pending[other] = true;
+      }
+    }
+    pending[best] = true;
+    return false;
+  }
+
+  /**
+   * builds the graph from the atom and bond tables
+   */
+  @Override
+  protected MoleculeGraph createGraph() throws CTKException {
+    return new MoleculeGraph(atomCount, atomicNumbers, rgroups, bondCount, bondAtoms, bondOrders);
+  }
+
+  @Override
+  public Object getMolecule() {
+    return this;
+  }
+
+  /**
+   * replaces the aromatic bonds by a Kekule structure and clears the aromatic flags, a molecule without aromatic
+   * atoms and bonds is left untouched
+   */
+  @Override
+  public void dearomatize() throws CTKException {
+    byte[] orders = getKekuleOrders();
+    if (!Arrays.equals(orders, Arrays.copyOf(bondOrders, bondCount))) {
+      ownBonds();
+      System.arraycopy(orders, 0, bondOrders, 0, bondCount);
+    }
+    for (int i = 0; i < atomCount; i++) {
+      if (aromatic[i]) {
+        ownAtoms();
+        Arrays.fill(aromatic, i, atomCount, false);
+        break;
+      }
+    }
+    invalidateStructure();
+  }
+
+  /**
+   * the reference backend has no layout, existing coordinates are kept and atoms parsed from SMILES stay at the origin
+   */
+  @Override
+  public void generateCoordinates(int dem) throws CTKException {
+  }
+
+  @Override
+  public void removeINode(IAtomBase node) throws CTKException {
+    removeAtom(ownIndex(node));
+  }
+
+  @Override
+  public void addIBase(IChemObjectBase object) {
+    if (object instanceof SimpleMolecule) {
+      if (object != this) {
+        append((SimpleMolecule) object);
+      }
+    } else if (object instanceof SimpleBond) {
+      SimpleBond bond = (SimpleBond) object;
+      if (bond.molecule != null) {
+        throw new IllegalArgumentException("Bond already belongs to a molecule");
+      }
+      SimpleAtom atom1 = (SimpleAtom) bond.getIAtom1();
+      SimpleAtom atom2 = (SimpleAtom) bond.getIAtom2();
+      if (atom1.molecule != this || atom2.molecule != this) {
+        throw new IllegalArgumentException("Bond atoms do not belong to this molecule");
+      }
+      int index = addBond(atom1.index, atom2.index, bond.getType());
+      bond.attach(this, index);
+      bondHandles[index] = bond;
+    } else if (object instanceof SimpleStereoElement) {
+      SimpleStereoElement element = (SimpleStereoElement) object;
+      SimpleStereoElement existing = getStereoElement(element.getCenter());
+      if (existing != null) {
+        stereoElements.remove(existing);
+      }
+      stereoElements.add(element);
+    } else if (object instanceof SimpleBondStereoElement) {
+      SimpleBondStereoElement element = (SimpleBondStereoElement) object;
+      SimpleBondStereoElement existing = getBondStereoElement(element.getBegin(), element.getEnd());
+      if (existing != null) {
+        bondStereoElements.remove(existing);
+      }
+      bondStereoElements.add(element);
+    } else {
+      throw new IllegalArgumentException("Unsupported object: " + object);
+    }
+  }
+
+  @Override
+  public void removeIBase(IChemObjectBase object) {
+    if (object instanceof SimpleAtom) {
+      SimpleAtom atom = (SimpleAtom) object;
+      if (atom.molecule == this) {
+        removeAtom(atom.index);
+      }
+    } else if (object instanceof SimpleBond) {
+      SimpleBond bond = (SimpleBond) object;
+      if (bond.molecule == this) {
+        removeBond(bond.index);
+      }
+    } else if (object instanceof SimpleStereoElement) {
+      stereoElements.remove(object);
+    } else if (object instanceof SimpleBondStereoElement) {
+      bondStereoElements.remove(object);
+    } else {
+      throw new IllegalArgumentException("Unsupported object: " + object);
+    }
+  }
+
+  @Override
+  public List<IBondBase> getIBondArray() {
+    return new BondList();
+  }
+
+  /**
+   * copy-on-write copy, the atom and bond tables are shared until one of the molecules modifies them. Only the stereo
+   * elements are copied eagerly, they refer to the atom handles of their molecule.
+   */
+  @Override
+  public AbstractMolecule cloneMolecule() throws CTKException {
+    SimpleMolecule result = new SimpleMolecule(this);
+    for (SimpleStereoElement element : stereoElements) {
+      SimpleStereoElement copy = element.copyTo(this, result);
+      if (copy != null) {
+        result.stereoElements.add(copy);
+      }
+    }
+    for (SimpleBondStereoElement element : bondStereoElements) {
+      SimpleBondStereoElement copy = element.copyTo(this, result);
+      if (copy != null) {
+        result.bondStereoElements.add(copy);
+      }
+    }
+    result.attachments = attachments.cloneList();
+    result.moleculeInfo = moleculeInfo;
+    return result;
+  }
+
+  /**
+   * changes the R-group number of the first atom carrying the given number that was not relabeled since the flags
+   * were cleared
+   */
+  @Override
+  public void changeAtomLabel(int index, int toIndex) throws CTKException {
+    for (int i = 0; i < atomCount; i++) {
+      if (rgroups[i] == index) {
+        SimpleAtom atom = getAtom(i);
+        if (atom.getFlag() != Flag.PROCESSED) {
+          setRgroup(i, toIndex);
+          atom.setFlag(Flag.PROCESSED);
+          break;
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean isSingleStereo(IAtomBase atom) throws CTKException {
+    for (SimpleStereoElement element : stereoElements) {
+      if (element.getCenter() != atom && element.contains(atom)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return index of the given atom, which has to belong to this molecule
+   */
+  int ownIndex(IAtomBase atom) throws CTKException {
+    if (!(atom instanceof SimpleAtom) || ((SimpleAtom) atom).molecule != this) {
+      throw new CTKException("Atom does not belong to this molecule");
+    }
+    return ((SimpleAtom) atom).index;
+  }
+
+  private class AtomList extends AbstractList<IAtomBase> implements RandomAccess {
+
+    @Override
+    public IAtomBase get(int index) {
+      if (index >= atomCount) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + atomCount);
+      }
+      return getAtom(index);
+    }
+
+    @Override
+    public int size() {
+      return atomCount;
+    }
+  }
+
+  private class BondList extends AbstractList<IBondBase> implements RandomAccess {
+
+    @Override
+    public IBondBase get(int index) {
+      if (index >= bondCount) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + bondCount);
+      }
+      return getBondHandle(index);
+    }
+
+    @Override
+    public int size() {
+      return bondCount;
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import org.helm.chemtoolkit.IAtomBase;
+import org.helm.chemtoolkit.IStereoElementBase;
+
+/**
+ * {@code SimpleStereoElement} tetrahedral stereo center. Looking from the first neighbor, the other three neighbors
+ * are arranged anticlockwise, or clockwise if {@link #isClockwise()}, like {@code @} and {@code @@} in SMILES. A null
+ * neighbor stands for the implicit hydrogen of the center.
+ */
+public class SimpleStereoElement implements IStereoElementBase {
+
+  private final SimpleAtom center;
+
+  private final SimpleAtom[] neighbors;
+
+  private final boolean clockwise;
+
+  /**
+   * @param center center atom
+   * @param neighbors the four neighbors in reference order, null for an implicit hydrogen
+   * @param clockwise true if the last three neighbors are arranged clockwise
+   */
+  public SimpleStereoElement(SimpleAtom center, SimpleAtom[] neighbors, boolean clockwise) {
+    if (neighbors.length != 4) {
+      throw new IllegalArgumentException("Tetrahedral center needs four neighbors");
+    }
+    this.center = center;
+    this.neighbors = neighbors.clone();
+    this.clockwise = clockwise;
+  }
+
+  public SimpleAtom getCenter() {
+    return center;
+  }
+
+  /**
+   * @return copy of the neighbors in reference order
+   */
+  public SimpleAtom[] getNeighbors() {
+    return neighbors.clone();
+  }
+
+  public boolean isClockwise() {
+    return clockwise;
+  }
+
+  /**
+   * @param atom atom
+   * @return true if the atom is the center or one of the neighbors
+   */
+  public boolean contains(IAtomBase atom) {
+    if (atom == center) {
+      return true;
+    }
+    for (SimpleAtom neighbor : neighbors) {
+      if (neighbor != null && neighbor == atom) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param replaced neighbor to replace
+   * @param replacement new neighbor at the same position
+   * @return stereo element with the same configuration and the given neighbor replaced
+   */
+  public SimpleStereoElement replace(SimpleAtom replaced, SimpleAtom replacement) {
+    SimpleAtom[] result = neighbors.clone();
+    for (int i = 0; i < result.length; i++) {
+      if (result[i] == replaced) {
+        result[i] = replacement;
+      }
+    }
+    return new SimpleStereoElement(center, result, clockwise);
+  }
+
+  /**
+   * @param source molecule the atoms of this element belong to
+   * @param target copy of the source molecule with the same atom order
+   * @return this element with the atoms of the copy, null if an atom does not belong to the source molecule
+   */
+  SimpleStereoElement copyTo(SimpleMolecule source, SimpleMolecule target) {
+    if (center.molecule != source) {
+      return null;
+    }
+    SimpleAtom[] result = new SimpleAtom[neighbors.length];
+    for (int i = 0; i < neighbors.length; i++) {
+      if (neighbors[i] != null) {
+        if (neighbors[i].molecule != source) {
+          return null;
+        }
+        result[i] = target.getAtom(neighbors[i].index);
+      }
+    }
+    return new SimpleStereoElement(target.getAtom(center.index), result, clockwise);
+  }
+
+  @Override
+  public Object getStereoElement() {
+    return this;
+  }
+
+}
@@ -0,0 +1,575 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import java.util.Arrays;
+
+import org.helm.chemtoolkit.CTKSmilesException;
+import org.helm.chemtoolkit.ExtendedSmilesTokenizer;
+import org.helm.chemtoolkit.ExtendedSmilesTokenizer.TokenType;
+import org.helm.chemtoolkit.PeriodicTable;
+
+/**
+ * {@code SmilesParser} reads SMILES and HELM extended SMILES into a {@link SimpleMolecule}. R-groups are taken from
+ * {@code _Rn} atom labels of the extension block, from {@code [*:n]} atom classes and from {@code [n*]} isotopes.
+ * Tetrahedral stereo ({@code @}, {@code @@}) and double bond stereo ({@code /}, {@code \}) are kept as
+ * {@link SimpleStereoElement} and {@link SimpleBondStereoElement}.
+ */
+final class SmilesParser {
+
+  private static final int MAX_RING_NUMBER = 100;
+
+  /** placeholder of a ring bond neighbor that is not closed yet */
+  private static final int OPEN_RING = -2;
+
+  /** neighbor entry of the implicit hydrogen of a stereo center */
+  private static final int IMPLICIT_HYDROGEN = -1;
+
+  private final String data;
+
+  private final int end;
+
+  private int pos;
+
+  private final SimpleMolecule molecule;
+
+  private final int[] ringAtoms = new int[MAX_RING_NUMBER];
+
+  private final int[] ringOrders = new int[MAX_RING_NUMBER];
+
+  private final int[] ringSlots = new int[MAX_RING_NUMBER];
+
+  private final int[] ringDirections = new int[MAX_RING_NUMBER];
+
+  /** direction of every bond from its first to its second atom, 1 for {@code /}, -1 for {@code \}, 0 if none */
+  private byte[] bondDirections = new byte[16];
+
+  /** chirality of every atom, 0 none, 1 anticlockwise, 2 clockwise */
+  private int[] chirality = new int[16];
+
+  /** neighbors of the stereo centers in SMILES order */
+  private int[][] stereoNeighbors = new int[16][];
+
+  private int[] stereoNeighborCounts = new int[16];
+
+  /** hydrogen count of the last bracket atom */
+  private int bracketHydrogens;
+
+  private SmilesParser(String data, int end) {
+    this.data = data;
+    this.end = end;
+    this.molecule = new SimpleMolecule(Math.max(end / 2, 4), Math.max(end / 2, 4));
+    Arrays.fill(ringAtoms, -1);
+  }
+
+  /**
+   * @param smiles SMILES or extended SMILES
+   * @return parsed molecule without attachments
+   * @throws CTKSmilesException if the SMILES is invalid
+   */
+  static SimpleMolecule parse(String smiles) throws CTKSmilesException {
+    if (smiles == null) {
+      throw new CTKSmilesException("SMILES is null");
+    }
+    ExtendedSmilesTokenizer tokenizer = new ExtendedSmilesTokenizer(smiles);
+    SmilesParser parser = new SmilesParser(smiles, tokenizer.getSmilesEnd());
+    parser.parseSmiles();
+    if (tokenizer.hasExtension()) {
+      while (tokenizer.next()) {
+        if (tokenizer.getType() == TokenType.ATOM_LABEL && tokenizer.isRgroup()
+            && tokenizer.getAtomIndex() < parser.molecule.getAtomCount()
+            && parser.molecule.getAtomicNumber(tokenizer.getAtomIndex()) == 0) {
+          parser.molecule.setRgroup(tokenizer.getAtomIndex(), tokenizer.getRgroup());
+        }
+      }
+    }
+    parser.createStereoElements();
+    parser.createBondStereoElements();
+    return parser.molecule;
+  }
+
+  private void parseSmiles() throws CTKSmilesException {
+    int previous = -1;
+    int pendingOrder = 0;
+    int pendingDirection = 0;
+    int[] branches = new int[8];
+    int depth = 0;
+    while (pos < end) {
+      char c = data.charAt(pos);
+      if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+        break;
+      }
+      switch (c) {
+      case '(':
+        if (previous < 0) {
+          throw error("Branch without atom");
+        }
+        if (depth == branches.length) {
+          branches = Arrays.copyOf(branches, depth * 2);
+        }
+        branches[depth++] = previous;
+        pos++;
+        break;
+      case ')':
+        if (depth == 0 || pendingOrder != 0) {
+          throw error("Unbalanced branch");
+        }
+        previous = branches[--depth];
+        pos++;
+        break;
+      case '-':
+        pendingOrder = checkBond(pendingOrder, SimpleMolecule.SINGLE);
+        break;
+      case '/':
+      case '\\':
+        pendingOrder = checkBond(pendingOrder, SimpleMolecule.SINGLE);
+        pendingDirection = c == '/' ? 1 : -1;
+        break;
+      case '=':
+        pendingOrder = checkBond(pendingOrder, SimpleMolecule.DOUBLE);
+        break;
+      case '#':
+        pendingOrder = checkBond(pendingOrder, SimpleMolecule.TRIPLE);
+        break;
+      case ':':
+        pendingOrder = checkBond(pendingOrder, SimpleMolecule.AROMATIC);
+        break;
+      case '.':
+        if (pendingOrder != 0 || depth != 0) {
+          throw error("Unexpected '.'");
+        }
+        previous = -1;
+        pos++;
+        break;
+      case '%':
+      case '0':
+      case '1':
+      case '2':
+      case '3':
+      case '4':
+      case '5':
+      case '6':
+      case '7':
+      case '8':
+      case '9':
+        if (previous < 0) {
+          throw error("Ring bond without atom");
+        }
+        ringBond(previous, readRingNumber(), pendingOrder, pendingDirection);
+        pendingOrder = 0;
+        pendingDirection = 0;
+        break;
+      case '[':
+        previous = connect(previous, parseBracketAtom(), pendingOrder, pendingDirection, bracketHydrogens);
+        pendingOrder = 0;
+        pendingDirection = 0;
+        break;
+      default:
+        previous = connect(previous, parseOrganicAtom(), pendingOrder, pendingDirection, 0);
+        pendingOrder = 0;
+        pendingDirection = 0;
+        break;
+      }
+    }
+    if (depth != 0 || pendingOrder != 0) {
+      throw error("Unexpected end of SMILES");
+    }
+    for (int i = 0; i < MAX_RING_NUMBER; i++) {
+      if (ringAtoms[i] >= 0) {
+        throw error("Ring bond " + i + " is not closed");
+      }
+    }
+    if (molecule.getAtomCount() == 0) {
+      throw error("SMILES contains no atoms");
+    }
+  }
+
+  private int checkBond(int pendingOrder, int order) throws CTKSmilesException {
+    if (pendingOrder != 0) {
+      throw error("Two consecutive bonds");
+    }
+    pos++;
+    return order;
+  }
+
+  private int connect(int previous, int atom, int pendingOrder, int direction, int hydrogenCount) {
+    if (previous >= 0) {
+      int order = pendingOrder != 0 ? pendingOrder : defaultOrder(previous, atom);
+      setDirection(molecule.addBond(previous, atom, order), direction);
+      addStereoNeighbor(atom, previous);
+      addStereoNeighbor(previous, atom);
+    }
+    if (hydrogenCount > 0) {
+      addStereoNeighbor(atom, IMPLICIT_HYDROGEN);
+    }
+    return atom;
+  }
+
+  private void setDirection(int bond, int direction) {
+    if (direction == 0) {
+      return;
+    }
+    if (bond >= bondDirections.length) {
+      bondDirections = Arrays.copyOf(bondDirections, Math.max(bond + 1, bondDirections.length * 2));
+    }
+    bondDirections[bond] = (byte) direction;
+  }
+
+  private int defaultOrder(int atom1, int atom2) {
+    return molecule.isAromatic(atom1) && molecule.isAromatic(atom2) ? SimpleMolecule.AROMATIC
+        : SimpleMolecule.SINGLE;
+  }
+
+  private int readRingNumber() throws CTKSmilesException {
+    char c = data.charAt(pos);
+    if (c != '%') {
+      pos++;
+      return c - '0';
+    }
+    if (pos + 2 >= end || !isDigit(data.charAt(pos + 1)) || !isDigit(data.charAt(pos + 2))) {
+      throw error("Invalid ring number");
+    }
+    int result = (data.charAt(pos + 1) - '0') * 10 + data.charAt(pos + 2) - '0';
+    pos += 3;
+    return result;
+  }
+
+  /**
+   * opens or closes a ring bond, a direction mark is read from the atom it follows towards its ring partner
+   */
+  private void ringBond(int atom, int number, int order, int direction) throws CTKSmilesException {
+    int partner = ringAtoms[number];
+    if (partner < 0) {
+      ringAtoms[number] = atom;
+      ringOrders[number] = order;
+      ringDirections[number] = direction;
+      ringSlots[number] = addStereoNeighbor(atom, OPEN_RING);
+      return;
+    }
+    if (partner == atom) {
+      throw error("Ring bond to itself");
+    }
+    int openOrder = ringOrders[number];
+    if (order != 0 && openOrder != 0 && order != openOrder) {
+      throw error("Conflicting ring bond orders");
+    }
+    int bondOrder = order != 0 ? order : openOrder != 0 ? openOrder : defaultOrder(partner, atom);
+    int bond = molecule.addBond(partner, atom, bondOrder);
+    setDirection(bond, ringDirections[number] != 0 ? ringDirections[number] : -direction);
+    if (ringSlots[number] >= 0) {
+      stereoNeighbors[partner][ringSlots[number]] = atom;
+    }
+    addStereoNeighbor(atom, partner);
+    ringAtoms[number] = -1;
+  }
+
+  /**
+   * records the neighbor of a stereo center in SMILES order
+   *
+   * @return position of the neighbor, -1 if the atom is no stereo center
+   */
+  private int addStereoNeighbor(int atom, int neighbor) {
+    if (atom >= chirality.length || chirality[atom] == 0) {
+      return -1;
+    }
+    int[] neighbors = stereoNeighbors[atom];
+    int count = stereoNeighborCounts[atom];
+    if (count == neighbors.length) {
+      neighbors = Arrays.copyOf(neighbors, count * 2);
+      stereoNeighbors[atom] = neighbors;
+    }
+    neighbors[count] = neighbor;
+    stereoNeighborCounts[atom] = count + 1;
+    return count;
+  }
+
+  private int parseOrganicAtom() throws CTKSmilesException {
+    char c = data.charAt(pos);
+    int atomicNumber;
+    boolean aromatic = false;
+    switch (c) {
+    case '*':
+      atomicNumber = 0;
+      break;
+    case 'B':
+      atomicNumber = next('r') ? 35 : 5;
+      break;
+    case 'C':
+      atomicNumber = next('l') ? 17 : 6;
+      break;
+    case 'N':
+      atomicNumber = 7;
+      break;
+    case 'O':
+      atomicNumber = 8;
+      break;
+    case 'P':
+      atomicNumber = 15;
+      break;
+    case 'S':
+      atomicNumber = 16;
+      break;
+    case 'F':
+      atomicNumber = 9;
+      break;
+    case 'I':
+      atomicNumber = 53;
+      break;
+    case 'b':
+    case 'c':
+    case 'n':
+    case 'o':
+    case 'p':
+    case 's':
+      atomicNumber = PeriodicTable.getAtomicNumber(String.valueOf(Character.toUpperCase(c)));
+      aromatic = true;
+      break;
+    default:
+      throw error("Unexpected character '" + c + "'");
+    }
+    pos++;
+    return molecule.addAtom(atomicNumber, 0, 0, -1, aromatic, 0);
+  }
+
+  private boolean next(char c) {
+    if (pos + 1 < end && data.charAt(pos + 1) == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private int parseBracketAtom() throws CTKSmilesException {
+    pos++;
+    int isotope = readNumber(0);
+
+    int atomicNumber;
+    boolean aromatic = false;
+    if (pos >= end) {
+      throw error("Unterminated bracket atom");
+    }
+    char c = data.charAt(pos);
+    if (c == '*') {
+      atomicNumber = 0;
+      pos++;
+    } else if (c >= 'a' && c <= 'z') {
+      aromatic = true;
+      String symbol = null;
+      if (pos + 1 < end) {
+        String two = data.substring(pos, pos + 2);
+        if ("se".equals(two) || "as".equals(two) || "te".equals(two)) {
+          symbol = two;
+        }
+      }
+      if (symbol == null) {
+        symbol = String.valueOf(c);
+        if ("bcnops".indexOf(c) < 0) {
+          throw error("Invalid aromatic symbol '" + c + "'");
+        }
+      }
+      atomicNumber = PeriodicTable.getAtomicNumber(Character.toUpperCase(symbol.charAt(0)) + symbol.substring(1));
+      pos += symbol.length();
+    } else if (c >= 'A' && c <= 'Z') {
+      atomicNumber = -1;
+      if (pos + 1 < end && Character.isLowerCase(data.charAt(pos + 1))) {
+        atomicNumber = PeriodicTable.getAtomicNumber(data.substring(pos, pos + 2));
+        if (atomicNumber > 0) {
+          pos += 2;
+        }
+      }
+      if (atomicNumber <= 0) {
+        atomicNumber = PeriodicTable.getAtomicNumber(String.valueOf(c));
+        pos++;
+      }
+      if (atomicNumber <= 0) {
+        throw error("Unknown element");
+      }
+    } else {
+      throw error("Invalid bracket atom");
+    }
+
+    int stereo = 0;
+    if (pos < end && data.charAt(pos) == '@') {
+      pos++;
+      stereo = 1;
+      if (pos < end && data.charAt(pos) == '@') {
+        pos++;
+        stereo = 2;
+      } else if (data.startsWith("TH", pos) && pos + 2 < end) {
+        stereo = data.charAt(pos + 2) == '2' ? 2 : 1;
+        pos += 3;
+      } else if (data.startsWith("AL", pos) || data.startsWith("SP", pos) || data.startsWith("TB", pos)
+          || data.startsWith("OH", pos)) {
+        throw error("Unsupported chirality class");
+      }
+    }
+
+    int hydrogenCount = 0;
+    if (pos < end && data.charAt(pos) == 'H') {
+      pos++;
+      hydrogenCount = readNumber(1);
+    }
+
+    int charge = 0;
+    if (pos < end && (data.charAt(pos) == '+' || data.charAt(pos) == '-')) {
+      char sign = data.charAt(pos);
+      pos++;
+      int value = 1;
+      if (pos < end && isDigit(data.charAt(pos))) {
+        value = readNumber(1);
+      } else {
+        while (pos < end && data.charAt(pos) == sign) {
+          value++;
+          pos++;
+        }
+      }
+      charge = sign == '+' ? value : -value;
+    }
+
+    int atomClass = 0;
+    if (pos < end && data.charAt(pos) == ':') {
+      pos++;
+      atomClass = readNumber(0);
+    }
+    if (pos >= end || data.charAt(pos) != ']') {
+      throw error("Unterminated bracket atom");
+    }
+    pos++;
+
+    int rgroup = 0;
+    if (atomicNumber == 0) {
+      rgroup = atomClass > 0 ? atomClass : isotope;
+      isotope = 0;
+    }
+    int atom = molecule.addAtom(atomicNumber, charge, isotope, hydrogenCount, aromatic, rgroup);
+    if (stereo != 0) {
+      if (atom >= chirality.length) {
+        int capacity = Math.max(atom + 1, chirality.length * 2);
+        chirality = Arrays.copyOf(chirality, capacity);
+        stereoNeighbors = Arrays.copyOf(stereoNeighbors, capacity);
+        stereoNeighborCounts = Arrays.copyOf(stereoNeighborCounts, capacity);
+      }
+      chirality[atom] = stereo;
+      stereoNeighbors[atom] = new int[4];
+    }
+    bracketHydrogens = hydrogenCount;
+    return atom;
+  }
+
+  private int readNumber(int defaultValue) {
+    if (pos >= end || !isDigit(data.charAt(pos))) {
+      return defaultValue;
+    }
+    int result = 0;
+    while (pos < end && isDigit(data.charAt(pos))) {
+      result = result * 10 + data.charAt(pos) - '0';
+      pos++;
+    }
+    return result;
+  }
+
+  private void createStereoElements() {
+    for (int atom = 0; atom < Math.min(chirality.length, molecule.getAtomCount()); atom++) {
+      if (chirality[atom] == 0 || stereoNeighborCounts[atom] != 4) {
+        continue;
+      }
+      SimpleAtom[] neighbors = new SimpleAtom[4];
+      for (int i = 0; i < 4; i++) {
+        int neighbor = stereoNeighbors[atom][i];
+        neighbors[i] = neighbor == IMPLICIT_HYDROGEN ? null : molecule.getAtom(neighbor);
+      }
+      molecule.addIBase(new SimpleStereoElement(molecule.getAtom(atom), neighbors, chirality[atom] == 2));
+    }
+  }
+
+  /**
+   * creates the stereo elements of the double bonds with a direction mark on both sides. A reference neighbor that is
+   * an R-group atom is replaced by the other neighbor or the implicit hydrogen, so the stereo survives the removal of
+   * the R-group atom when monomers are merged.
+   */
+  private void createBondStereoElements() {
+    for (int bond = 0; bond < molecule.getBondCount(); bond++) {
+      if (molecule.getBondOrder(bond) != SimpleMolecule.DOUBLE) {
+        continue;
+      }
+      int atom1 = molecule.getBondAtom1(bond);
+      int atom2 = molecule.getBondAtom2(bond);
+      int marked1 = getMarkedBond(atom1, bond);
+      int marked2 = getMarkedBond(atom2, bond);
+      if (marked1 < 0 || marked2 < 0) {
+        continue;
+      }
+      int neighbor1 = molecule.getOtherAtom(marked1, atom1);
+      int neighbor2 = molecule.getOtherAtom(marked2, atom2);
+      boolean opposite = getSide(marked1, atom1) != getSide(marked2, atom2);
+      int reference1 = getReference(atom1, atom2, neighbor1);
+      int reference2 = getReference(atom2, atom1, neighbor2);
+      opposite ^= reference1 != neighbor1;
+      opposite ^= reference2 != neighbor2;
+      molecule.addIBase(new SimpleBondStereoElement(molecule.getAtom(atom1), molecule.getAtom(atom2),
+          reference1 < 0 ? null : molecule.getAtom(reference1), reference2 < 0 ? null : molecule.getAtom(reference2),
+          opposite));
+    }
+  }
+
+  /**
+   * @return a bond of the atom other than the given double bond that has a direction mark, -1 if there is none
+   */
+  private int getMarkedBond(int atom, int doubleBond) {
+    for (int i = 0; i < molecule.getDegree(atom); i++) {
+      int bond = molecule.getAtomBond(atom, i);
+      if (bond != doubleBond && bond < bondDirections.length && bondDirections[bond] != 0) {
+        return bond;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return side of the bond at the given double bond atom, bonds with the same side are on the same side of the
+   *         double bond
+   */
+  private int getSide(int bond, int atom) {
+    return molecule.getBondAtom2(bond) == atom ? bondDirections[bond] : -bondDirections[bond];
+  }
+
+  /**
+   * @return the given neighbor, or if it is an R-group atom the other neighbor of the double bond atom, -1 for its
+   *         implicit hydrogen, the R-group atom itself if there is no replacement
+   */
+  private int getReference(int atom, int partner, int neighbor) {
+    if (molecule.getRgroup(neighbor) == 0) {
+      return neighbor;
+    }
+    for (int i = 0; i < molecule.getDegree(atom); i++) {
+      int other = molecule.getNeighbor(atom, i);
+      if (other != partner && other != neighbor) {
+        return other;
+      }
+    }
+    return molecule.getHydrogenCount(atom) == 1 ? IMPLICIT_HYDROGEN : neighbor;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private CTKSmilesException error(String message) {
+    return new CTKSmilesException(message + " at position " + pos + " of SMILES " + data);
+  }
+
+}
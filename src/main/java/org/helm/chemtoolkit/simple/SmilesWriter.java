@@ -0,0 +1,849 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.helm.chemtoolkit.PeriodicTable;
+
+/**
+ * {@code SmilesWriter} writes a {@link SimpleMolecule} as SMILES. R-group atoms are written as {@code [*:n]}. The
+ * atoms are visited depth first in the order of their ranks, either the atom order of the molecule or canonical ranks
+ * computed from atom invariants and iterative neighbor refinement, which makes the output independent of the input
+ * atom order. Tetrahedral centers get the parity matching the written neighbor order and stereo double bonds get
+ * {@code /} and {@code \} marks on one single bond of each side. Canonical ranks take the stereo configuration into
+ * account, so mirror images of a symmetric structure get the same SMILES.
+ */
+final class SmilesWriter {
+
+  private final SimpleMolecule molecule;
+
+  private final int atomCount;
+
+  private final int[] ranks;
+
+  /** bonds of every atom sorted by the rank of the neighbor */
+  private final int[][] sortedBonds;
+
+  private final int[] parentBond;
+
+  private final int[][] children;
+
+  private final int[] childCounts;
+
+  /** ring bonds opened at every atom */
+  private final int[][] openings;
+
+  private final int[] openingCounts;
+
+  /** ring bonds closed at every atom */
+  private final int[][] closings;
+
+  private final int[] closingCounts;
+
+  private final int[] ringDigits;
+
+  private final boolean[] usedDigits = new boolean[100];
+
+  private final SimpleStereoElement[] stereoCenters;
+
+  /** direction mark of every bond as written, {@code /}, {@code \} or 0 */
+  private final char[] bondMarks;
+
+  /** atom a bond is written from, the parent of tree bonds and the opening atom of ring bonds */
+  private final int[] bondStarts;
+
+  /** position of every atom in the output */
+  private final int[] positions;
+
+  private final StringBuilder sb = new StringBuilder();
+
+  private SmilesWriter(SimpleMolecule molecule, int[] ranks) {
+    this.molecule = molecule;
+    this.atomCount = molecule.getAtomCount();
+    this.ranks = ranks;
+    sortedBonds = new int[atomCount][];
+    children = new int[atomCount][];
+    childCounts = new int[atomCount];
+    openings = new int[atomCount][];
+    openingCounts = new int[atomCount];
+    closings = new int[atomCount][];
+    closingCounts = new int[atomCount];
+    parentBond = new int[atomCount];
+    ringDigits = new int[molecule.getBondCount()];
+    stereoCenters = new SimpleStereoElement[atomCount];
+    bondMarks = new char[molecule.getBondCount()];
+    bondStarts = new int[molecule.getBondCount()];
+    positions = new int[atomCount];
+    for (SimpleStereoElement element : molecule.getStereoElements()) {
+      if (element.getCenter().getSimpleMolecule() == molecule) {
+        stereoCenters[element.getCenter().getIndex()] = element;
+      }
+    }
+  }
+
+  /**
+   * @param molecule molecule to write
+   * @param canonical true to write canonical SMILES, false to follow the atom order of the molecule
+   * @return SMILES
+   */
+  static String write(SimpleMolecule molecule, boolean canonical) {
+    int[] ranks = canonical ? rank(molecule) : null;
+    if (ranks == null) {
+      ranks = new int[molecule.getAtomCount()];
+      for (int i = 0; i < ranks.length; i++) {
+        ranks[i] = i;
+      }
+    }
+    SmilesWriter writer = new SmilesWriter(molecule, ranks);
+    return writer.write();
+  }
+
+  private String write() {
+    Integer[] order = new Integer[atomCount];
+    for (int i = 0; i < atomCount; i++) {
+      order[i] = i;
+      final int atom = i;
+      int degree = molecule.getDegree(atom);
+      Integer[] bonds = new Integer[degree];
+      for (int k = 0; k < degree; k++) {
+        bonds[k] = molecule.getAtomBond(atom, k);
+      }
+      Arrays.sort(bonds, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          return compareInts(ranks[molecule.getOtherAtom(o1, atom)], ranks[molecule.getOtherAtom(o2, atom)]);
+        }
+      });
+      sortedBonds[i] = new int[degree];
+      for (int k = 0; k < degree; k++) {
+        sortedBonds[i][k] = bonds[k];
+      }
+      children[i] = new int[degree];
+      openings[i] = new int[degree];
+      closings[i] = new int[degree];
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return compareInts(ranks[o1], ranks[o2]);
+      }
+    });
+
+    boolean[] visited = new boolean[atomCount];
+    boolean[] ringBonds = new boolean[molecule.getBondCount()];
+    int[] cursors = new int[atomCount];
+    int[] stack = new int[atomCount];
+    Arrays.fill(parentBond, -1);
+    int position = 0;
+    int[] roots = new int[atomCount];
+    int rootCount = 0;
+    for (Integer root : order) {
+      if (visited[root]) {
+        continue;
+      }
+      roots[rootCount++] = root;
+      int top = 0;
+      stack[0] = root;
+      visited[root] = true;
+      positions[root] = position++;
+      while (top >= 0) {
+        int atom = stack[top];
+        if (cursors[atom] == sortedBonds[atom].length) {
+          top--;
+          continue;
+        }
+        int bond = sortedBonds[atom][cursors[atom]++];
+        if (bond == parentBond[atom] || ringBonds[bond]) {
+          continue;
+        }
+        int neighbor = molecule.getOtherAtom(bond, atom);
+        if (!visited[neighbor]) {
+          visited[neighbor] = true;
+          positions[neighbor] = position++;
+          parentBond[neighbor] = bond;
+          bondStarts[bond] = atom;
+          children[atom][childCounts[atom]++] = neighbor;
+          stack[++top] = neighbor;
+        } else {
+          ringBonds[bond] = true;
+          openings[neighbor][openingCounts[neighbor]++] = bond;
+          closings[atom][closingCounts[atom]++] = bond;
+          bondStarts[bond] = neighbor;
+        }
+      }
+    }
+
+    markDoubleBonds();
+    for (int i = 0; i < rootCount; i++) {
+      if (i > 0) {
+        sb.append('.');
+      }
+      writeTree(roots[i], stack);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * sets the direction marks of the stereo double bonds in output order. A single bond next to two stereo double
+   * bonds keeps the mark of the first one, a double bond whose configuration contradicts it, or that closes a ring,
+   * is written without stereo.
+   */
+  private void markDoubleBonds() {
+    List<SimpleBondStereoElement> elements = new ArrayList<SimpleBondStereoElement>();
+    for (SimpleBondStereoElement element : molecule.getBondStereoElements()) {
+      if (element.getBegin().getSimpleMolecule() == molecule && element.getEnd().getSimpleMolecule() == molecule) {
+        elements.add(element);
+      }
+    }
+    Collections.sort(elements, new Comparator<SimpleBondStereoElement>() {
+      @Override
+      public int compare(SimpleBondStereoElement o1, SimpleBondStereoElement o2) {
+        return compareInts(getPosition(o1), getPosition(o2));
+      }
+    });
+    for (SimpleBondStereoElement element : elements) {
+      markDoubleBond(element);
+    }
+  }
+
+  private int getPosition(SimpleBondStereoElement element) {
+    return Math.min(positions[element.getBegin().getIndex()], positions[element.getEnd().getIndex()]);
+  }
+
+  private void markDoubleBond(SimpleBondStereoElement element) {
+    int begin = element.getBegin().getIndex();
+    int end = element.getEnd().getIndex();
+    int bond = molecule.getBond(begin, end);
+    if (bond < 0 || molecule.getBondOrder(bond) != SimpleMolecule.DOUBLE
+        || (parentBond[begin] != bond && parentBond[end] != bond)) {
+      return;
+    }
+    boolean reversed = parentBond[begin] == bond;
+    int first = reversed ? end : begin;
+    int second = reversed ? begin : end;
+    int firstBond = getMarkableBond(first, bond);
+    int secondBond = getMarkableBond(second, bond);
+    if (firstBond < 0 || secondBond < 0) {
+      return;
+    }
+    int firstFlip = getFlip(first, second, firstBond, reversed ? element.getEndNeighbor() : element
+        .getBeginNeighbor());
+    int secondFlip = getFlip(second, first, secondBond, reversed ? element.getBeginNeighbor() : element
+        .getEndNeighbor());
+    if (firstFlip < 0 || secondFlip < 0) {
+      return;
+    }
+    boolean opposite = element.isOpposite() ^ (firstFlip == 1) ^ (secondFlip == 1);
+    int firstSide = bondMarks[firstBond] == 0 ? 1 : getSide(firstBond, first);
+    int secondSide = opposite ? -firstSide : firstSide;
+    if (bondMarks[secondBond] != 0 && getSide(secondBond, second) != secondSide) {
+      return;
+    }
+    setSide(firstBond, first, firstSide);
+    setSide(secondBond, second, secondSide);
+  }
+
+  /**
+   * @return a single bond of the double bond atom that can carry a direction mark, -1 if there is none
+   */
+  private int getMarkableBond(int atom, int doubleBond) {
+    if (parentBond[atom] >= 0 && parentBond[atom] != doubleBond && isSingle(parentBond[atom])) {
+      return parentBond[atom];
+    }
+    for (int i = 0; i < closingCounts[atom]; i++) {
+      if (isSingle(closings[atom][i])) {
+        return closings[atom][i];
+      }
+    }
+    for (int i = 0; i < openingCounts[atom]; i++) {
+      if (isSingle(openings[atom][i])) {
+        return openings[atom][i];
+      }
+    }
+    for (int i = 0; i < childCounts[atom]; i++) {
+      int bond = parentBond[children[atom][i]];
+      if (bond != doubleBond && isSingle(bond)) {
+        return bond;
+      }
+    }
+    return -1;
+  }
+
+  private boolean isSingle(int bond) {
+    return molecule.getBondOrder(bond) == SimpleMolecule.SINGLE;
+  }
+
+  /**
+   * @return 0 if the neighbor of the marked bond is the reference neighbor, 1 if it is on the other side of the
+   *         reference, -1 if the reference is no neighbor of the double bond atom
+   */
+  private int getFlip(int atom, int partner, int markedBond, SimpleAtom reference) {
+    int neighbor = molecule.getOtherAtom(markedBond, atom);
+    if (reference == null) {
+      return molecule.getDegree(atom) == 2 && molecule.getHydrogenCount(atom) == 1 ? 1 : -1;
+    }
+    if (reference.getSimpleMolecule() != molecule) {
+      return -1;
+    }
+    int index = reference.getIndex();
+    if (index == neighbor) {
+      return 0;
+    }
+    return index != partner && molecule.getBond(atom, index) >= 0 ? 1 : -1;
+  }
+
+  /**
+   * @return 1 or -1, bonds with the same side are on the same side of their double bonds
+   */
+  private int getSide(int bond, int atom) {
+    int direction = bondMarks[bond] == '/' ? 1 : -1;
+    return bondStarts[bond] == atom ? -direction : direction;
+  }
+
+  private void setSide(int bond, int atom, int side) {
+    int direction = bondStarts[bond] == atom ? -side : side;
+    bondMarks[bond] = direction > 0 ? '/' : '\\';
+  }
+
+  private void writeTree(int root, int[] stack) {
+    int[] nextChild = new int[atomCount];
+    int top = 0;
+    stack[0] = root;
+    writeAtom(root);
+    while (top >= 0) {
+      int atom = stack[top];
+      if (nextChild[atom] == childCounts[atom]) {
+        top--;
+        if (top >= 0 && nextChild[stack[top]] < childCounts[stack[top]]) {
+          sb.append(')');
+        }
+        continue;
+      }
+      int child = children[atom][nextChild[atom]++];
+      if (nextChild[atom] < childCounts[atom]) {
+        sb.append('(');
+      }
+      stack[++top] = child;
+      writeAtom(child);
+    }
+  }
+
+  private void writeAtom(int atom) {
+    int parent = -1;
+    if (parentBond[atom] >= 0) {
+      parent = molecule.getOtherAtom(parentBond[atom], atom);
+      writeBond(parentBond[atom]);
+    }
+    writeAtomToken(atom, parent);
+    for (int i = 0; i < closingCounts[atom]; i++) {
+      writeRingDigit(ringDigits[closings[atom][i]]);
+    }
+    for (int i = 0; i < openingCounts[atom]; i++) {
+      int bond = openings[atom][i];
+      int digit = 1;
+      while (usedDigits[digit]) {
+        digit++;
+      }
+      usedDigits[digit] = true;
+      ringDigits[bond] = digit;
+      writeBond(bond);
+      writeRingDigit(digit);
+    }
+    for (int i = 0; i < closingCounts[atom]; i++) {
+      usedDigits[ringDigits[closings[atom][i]]] = false;
+    }
+  }
+
+  private void writeRingDigit(int digit) {
+    if (digit > 9) {
+      sb.append('%');
+    }
+    sb.append(digit);
+  }
+
+  private void writeBond(int bond) {
+    boolean aromatic = molecule.isAromatic(molecule.getBondAtom1(bond)) && molecule.isAromatic(molecule.getBondAtom2(
+        bond));
+    switch (molecule.getBondOrder(bond)) {
+    case SimpleMolecule.SINGLE:
+      if (bondMarks[bond] != 0) {
+        sb.append(bondMarks[bond]);
+      } else if (aromatic) {
+        sb.append('-');
+      }
+      break;
+    case SimpleMolecule.DOUBLE:
+      sb.append('=');
+      break;
+    case SimpleMolecule.TRIPLE:
+      sb.append('#');
+      break;
+    default:
+      if (!aromatic) {
+        sb.append(':');
+      }
+      break;
+    }
+  }
+
+  private void writeAtomToken(int atom, int parent) {
+    int atomicNumber = molecule.getAtomicNumber(atom);
+    int charge = molecule.getCharge(atom);
+    int isotope = molecule.getIsotope(atom);
+    int hydrogens = molecule.getHydrogenCount(atom);
+    boolean aromatic = molecule.isAromatic(atom);
+    String chirality = getChirality(atom, parent, hydrogens);
+
+    if (atomicNumber == 0) {
+      int rgroup = molecule.getRgroup(atom);
+      if (rgroup > 0) {
+        sb.append("[*:").append(rgroup).append(']');
+        return;
+      }
+      if (charge == 0 && hydrogens == 0) {
+        sb.append('*');
+        return;
+      }
+    }
+
+    String symbol = PeriodicTable.getSymbol(atomicNumber);
+    if (aromatic && isAromaticSymbol(atomicNumber)) {
+      symbol = symbol.toLowerCase();
+    }
+    if (PeriodicTable.isOrganicSubset(atomicNumber) && charge == 0 && isotope == 0 && chirality == null
+        && (!aromatic || symbol.length() == 1)
+        && hydrogens == PeriodicTable.getImplicitHydrogenCount(atomicNumber, 0, molecule.getBondOrderSum(atom),
+            aromatic)) {
+      sb.append(symbol);
+      return;
+    }
+    sb.append('[');
+    if (isotope > 0) {
+      sb.append(isotope);
+    }
+    sb.append(symbol);
+    if (chirality != null) {
+      sb.append(chirality);
+    }
+    if (hydrogens > 0) {
+      sb.append('H');
+      if (hydrogens > 1) {
+        sb.append(hydrogens);
+      }
+    }
+    if (charge != 0) {
+      sb.append(charge > 0 ? '+' : '-');
+      if (Math.abs(charge) > 1) {
+        sb.append(Math.abs(charge));
+      }
+    }
+    sb.append(']');
+  }
+
+  private static boolean isAromaticSymbol(int atomicNumber) {
+    switch (atomicNumber) {
+    case 5:
+    case 6:
+    case 7:
+    case 8:
+    case 15:
+    case 16:
+    case 33:
+    case 34:
+    case 52:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * @return {@code @} or {@code @@} for the neighbor order of the written atom, null if the atom is no stereo center
+   */
+  private String getChirality(int atom, int parent, int hydrogens) {
+    SimpleStereoElement element = stereoCenters[atom];
+    if (element == null || hydrogens > 1) {
+      return null;
+    }
+    int[] written = new int[4];
+    int count = 0;
+    if (parent >= 0) {
+      written[count++] = parent;
+    }
+    if (hydrogens == 1) {
+      written[count++] = -1;
+    }
+    for (int i = 0; i < closingCounts[atom] && count < 4; i++) {
+      written[count++] = molecule.getOtherAtom(closings[atom][i], atom);
+    }
+    for (int i = 0; i < openingCounts[atom] && count < 4; i++) {
+      written[count++] = molecule.getOtherAtom(openings[atom][i], atom);
+    }
+    for (int i = 0; i < childCounts[atom] && count < 4; i++) {
+      written[count++] = children[atom][i];
+    }
+    if (count != 4 || molecule.getDegree(atom) + hydrogens != 4) {
+      return null;
+    }
+
+    SimpleAtom[] reference = element.getNeighbors();
+    int[] positions = new int[4];
+    for (int i = 0; i < 4; i++) {
+      positions[i] = -1;
+      for (int k = 0; k < 4; k++) {
+        SimpleAtom neighbor = reference[k];
+        int index = neighbor == null ? -1 : neighbor.getSimpleMolecule() == molecule ? neighbor.getIndex() : -2;
+        if (index == written[i]) {
+          positions[i] = k;
+        }
+      }
+      if (positions[i] < 0) {
+        return null;
+      }
+    }
+    int inversions = 0;
+    for (int i = 0; i < 4; i++) {
+      for (int k = i + 1; k < 4; k++) {
+        if (positions[i] > positions[k]) {
+          inversions++;
+        }
+      }
+    }
+    boolean clockwise = element.isClockwise() ^ (inversions % 2 == 1);
+    return clockwise ? "@@" : "@";
+  }
+
+  /**
+   * canonical ranks: atoms are ordered by invariants (element, isotope, charge, hydrogens, degree, aromaticity,
+   * R-group), the order is refined by the ranks of the neighbors until it is stable, and remaining ties are broken one
+   * at a time. With stereo elements the configurations seen from the ranks take part in the refinement, and a tie is
+   * broken at the atom that gives the smallest configurations, so the choice does not depend on the atom order.
+   */
+  static int[] rank(final SimpleMolecule molecule) {
+    int n = molecule.getAtomCount();
+    long[] invariants = new long[n];
+    for (int i = 0; i < n; i++) {
+      long value = molecule.getAtomicNumber(i);
+      value = value * 256 + Math.min(molecule.getIsotope(i), 255);
+      value = value * 16 + Math.max(Math.min(molecule.getCharge(i) + 8, 15), 0);
+      value = value * 8 + Math.min(molecule.getHydrogenCount(i), 7);
+      value = value * 16 + Math.min(molecule.getDegree(i), 15);
+      value = value * 2 + (molecule.isAromatic(i) ? 1 : 0);
+      value = value * 1024 + Math.min(molecule.getRgroup(i), 1023);
+      invariants[i] = value;
+    }
+    int[] ranks = new int[n];
+    int classes = rankByValue(invariants, ranks);
+    boolean stereo = !molecule.getStereoElements().isEmpty() || !molecule.getBondStereoElements().isEmpty();
+    while (true) {
+      classes = refine(molecule, ranks, classes);
+      if (stereo) {
+        classes = refineStereo(molecule, ranks, classes);
+      }
+      if (classes == n) {
+        return ranks;
+      }
+      int tied = -1;
+      int[] counts = new int[n];
+      for (int i = 0; i < n; i++) {
+        counts[ranks[i]]++;
+      }
+      for (int r = 0; r < n && tied < 0; r++) {
+        if (counts[r] > 1) {
+          tied = r;
+        }
+      }
+      if (!stereo) {
+        int atom = 0;
+        while (ranks[atom] != tied) {
+          atom++;
+        }
+        classes = breakTie(ranks, atom, invariants);
+        continue;
+      }
+      int defined = countConfigurations(molecule, ranks);
+      int[] best = null;
+      long[] bestSignature = null;
+      for (int atom = 0; atom < n; atom++) {
+        if (ranks[atom] != tied) {
+          continue;
+        }
+        int[] candidate = ranks.clone();
+        int candidateClasses = refineStereo(molecule, candidate, refine(molecule, candidate, breakTie(candidate, atom,
+            invariants)));
+        if (best == null && countConfigurations(molecule, candidate) == defined) {
+          // no configuration depends on this tie, so all choices are equivalent
+          best = candidate;
+          classes = candidateClasses;
+          break;
+        }
+        long[] signature = getSignature(molecule, candidate);
+        if (best == null || compareSignatures(signature, bestSignature) < 0) {
+          best = candidate;
+          bestSignature = signature;
+          classes = candidateClasses;
+        }
+      }
+      System.arraycopy(best, 0, ranks, 0, n);
+    }
+  }
+
+  private static int countConfigurations(SimpleMolecule molecule, int[] ranks) {
+    int count = 0;
+    for (int configuration : getConfigurations(molecule, ranks)) {
+      if (configuration != 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * gives the atom a lower rank than the other atoms of its class
+   *
+   * @return number of classes
+   */
+  private static int breakTie(int[] ranks, int atom, long[] values) {
+    for (int i = 0; i < ranks.length; i++) {
+      values[i] = ranks[i] * 2L + (ranks[i] == ranks[atom] && i != atom ? 1 : 0);
+    }
+    return rankByValue(values, ranks);
+  }
+
+  /**
+   * refines the ranks by the stereo configurations seen from the ranks until no class is split anymore
+   */
+  private static int refineStereo(SimpleMolecule molecule, int[] ranks, int classes) {
+    long[] values = new long[ranks.length];
+    int[] classConfigurations = new int[ranks.length];
+    while (true) {
+      int[] configurations = getConfigurations(molecule, ranks);
+      Arrays.fill(classConfigurations, -1);
+      boolean split = false;
+      for (int i = 0; i < ranks.length && !split; i++) {
+        if (classConfigurations[ranks[i]] < 0) {
+          classConfigurations[ranks[i]] = configurations[i];
+        } else {
+          split = classConfigurations[ranks[i]] != configurations[i];
+        }
+      }
+      if (!split) {
+        return classes;
+      }
+      for (int i = 0; i < ranks.length; i++) {
+        values[i] = ranks[i] * 16L + configurations[i];
+      }
+      int refined = rankByValue(values, ranks);
+      if (refined == classes) {
+        return classes;
+      }
+      classes = refine(molecule, ranks, refined);
+    }
+  }
+
+  /**
+   * @return configuration of every atom relative to the ranks, 0 if the atom has no stereo or the ranks of its
+   *         neighbors are tied, 1 or 2 for a tetrahedral center and 3 or 6 added for a double bond atom
+   */
+  private static int[] getConfigurations(SimpleMolecule molecule, int[] ranks) {
+    int[] result = new int[ranks.length];
+    for (SimpleStereoElement element : molecule.getStereoElements()) {
+      if (element.getCenter().getSimpleMolecule() != molecule) {
+        continue;
+      }
+      SimpleAtom[] neighbors = element.getNeighbors();
+      int[] keys = new int[4];
+      boolean valid = true;
+      for (int i = 0; i < 4 && valid; i++) {
+        if (neighbors[i] == null) {
+          keys[i] = -1;
+        } else {
+          valid = neighbors[i].getSimpleMolecule() == molecule;
+          keys[i] = valid ? ranks[neighbors[i].getIndex()] : 0;
+        }
+      }
+      int inversions = 0;
+      for (int i = 0; i < 4 && valid; i++) {
+        for (int k = i + 1; k < 4; k++) {
+          valid &= keys[i] != keys[k];
+          if (keys[i] > keys[k]) {
+            inversions++;
+          }
+        }
+      }
+      if (valid) {
+        result[element.getCenter().getIndex()] += element.isClockwise() ^ (inversions % 2 == 1) ? 2 : 1;
+      }
+    }
+    for (SimpleBondStereoElement element : molecule.getBondStereoElements()) {
+      if (element.getBegin().getSimpleMolecule() != molecule || element.getEnd().getSimpleMolecule() != molecule) {
+        continue;
+      }
+      int begin = element.getBegin().getIndex();
+      int end = element.getEnd().getIndex();
+      int bond = molecule.getBond(begin, end);
+      if (bond < 0 || molecule.getBondOrder(bond) != SimpleMolecule.DOUBLE) {
+        continue;
+      }
+      int beginFlip = getRankedFlip(molecule, ranks, begin, end, element.getBeginNeighbor());
+      int endFlip = getRankedFlip(molecule, ranks, end, begin, element.getEndNeighbor());
+      if (beginFlip >= 0 && endFlip >= 0) {
+        int configuration = element.isOpposite() ^ (beginFlip == 1) ^ (endFlip == 1) ? 6 : 3;
+        result[begin] += configuration;
+        result[end] += configuration;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return 0 if the reference is the neighbor of the double bond atom with the lowest rank, 1 if it is on the other
+   *         side, -1 if the neighbors are tied or the reference is no neighbor
+   */
+  private static int getRankedFlip(SimpleMolecule molecule, int[] ranks, int atom, int partner,
+      SimpleAtom reference) {
+    int lowest = -1;
+    boolean tied = false;
+    for (int i = 0; i < molecule.getDegree(atom); i++) {
+      int neighbor = molecule.getNeighbor(atom, i);
+      if (neighbor == partner) {
+        continue;
+      }
+      if (lowest < 0 || ranks[neighbor] < ranks[lowest]) {
+        tied = false;
+        lowest = neighbor;
+      } else if (ranks[neighbor] == ranks[lowest]) {
+        tied = true;
+      }
+    }
+    if (lowest < 0 || tied) {
+      return -1;
+    }
+    if (reference == null) {
+      return molecule.getHydrogenCount(atom) == 1 ? 1 : -1;
+    }
+    if (reference.getSimpleMolecule() != molecule || molecule.getBond(atom, reference.getIndex()) < 0) {
+      return -1;
+    }
+    return reference.getIndex() == lowest ? 0 : 1;
+  }
+
+  /**
+   * @return ranks combined with the configurations in ascending order, independent of the atom order
+   */
+  private static long[] getSignature(SimpleMolecule molecule, int[] ranks) {
+    int[] configurations = getConfigurations(molecule, ranks);
+    long[] result = new long[ranks.length];
+    for (int i = 0; i < ranks.length; i++) {
+      result[i] = ranks[i] * 16L + configurations[i];
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  private static int compareSignatures(long[] signature1, long[] signature2) {
+    for (int i = 0; i < signature1.length; i++) {
+      if (signature1[i] != signature2[i]) {
+        return signature1[i] < signature2[i] ? -1 : 1;
+      }
+    }
+    return 0;
+  }
+
+  private static int rankByValue(final long[] values, int[] ranks) {
+    Integer[] order = new Integer[values.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return values[o1] < values[o2] ? -1 : values[o1] > values[o2] ? 1 : 0;
+      }
+    });
+    int rank = -1;
+    for (int i = 0; i < order.length; i++) {
+      if (i == 0 || values[order[i]] != values[order[i - 1]]) {
+        rank++;
+      }
+      ranks[order[i]] = rank;
+    }
+    return rank + 1;
+  }
+
+  private static int refine(SimpleMolecule molecule, final int[] ranks, int classes) {
+    int n = ranks.length;
+    final int[][] keys = new int[n][];
+    while (true) {
+      for (int i = 0; i < n; i++) {
+        int degree = molecule.getDegree(i);
+        int[] key = new int[degree];
+        for (int k = 0; k < degree; k++) {
+          int bond = molecule.getAtomBond(i, k);
+          key[k] = ranks[molecule.getOtherAtom(bond, i)] * 8 + molecule.getBondOrder(bond);
+        }
+        Arrays.sort(key);
+        keys[i] = key;
+      }
+      Integer[] order = new Integer[n];
+      for (int i = 0; i < n; i++) {
+        order[i] = i;
+      }
+      Comparator<Integer> comparator = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          int result = compareInts(ranks[o1], ranks[o2]);
+          if (result != 0) {
+            return result;
+          }
+          int[] k1 = keys[o1];
+          int[] k2 = keys[o2];
+          for (int i = 0; i < Math.min(k1.length, k2.length); i++) {
+            if (k1[i] != k2[i]) {
+              return compareInts(k1[i], k2[i]);
+            }
+          }
+          return compareInts(k1.length, k2.length);
+        }
+      };
+      Arrays.sort(order, comparator);
+      int[] refined = new int[n];
+      int rank = -1;
+      for (int i = 0; i < n; i++) {
+        if (i == 0 || comparator.compare(order[i], order[i - 1]) != 0) {
+          rank++;
+        }
+        refined[order[i]] = rank;
+      }
+      System.arraycopy(refined, 0, ranks, 0, n);
+      if (rank + 1 == classes) {
+        return classes;
+      }
+      classes = rank + 1;
+    }
+  }
+
+  private static int compareInts(int x, int y) {
+    return x < y ? -1 : x == y ? 0 : 1;
+  }
+
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.helm.chemtoolkit.simple.SimpleManipulator;
+import org.helm.chemtoolkit.simple.SimpleMolecule;
+import org.testng.annotations.Test;
+
+public class AbstractMoleculeTest {
+
+  private final SimpleManipulator manipulator = new SimpleManipulator();
+
+  /**
+   * molecule of a backend that does not report its structure changes
+   */
+  private static class SilentMolecule extends SimpleMolecule {
+
+    @Override
+    protected void invalidateStructure() {
+    }
+
+    @Override
+    protected boolean reportsStructureChanges() {
+      return false;
+    }
+  }
+
+  private SilentMolecule silent(String smiles) throws Exception {
+    SilentMolecule molecule = new SilentMolecule();
+    molecule.addIBase(manipulator.getMolecule(smiles, null));
+    return molecule;
+  }
+
+  @Test
+  public void testGraphIsSnapshot() throws Exception {
+    AbstractMolecule molecule = manipulator.getMolecule("[*:1]CO", null);
+    MoleculeGraph graph = molecule.getGraph();
+    IAtomBase first = molecule.getIAtomArray().get(0);
+    IAtomBase last = molecule.getIAtomArray().get(2);
+    molecule.removeINode(first);
+    assertEquals(graph.getAtomCount(), 3);
+    assertSame(graph.getAtom(0), first);
+    assertEquals(graph.indexOf(last), 2);
+    assertEquals(molecule.getGraph().getAtomCount(), 2);
+    assertEquals(molecule.getGraph().indexOf(last), 1);
+  }
+
+  @Test
+  public void testRelabeledRgroupIsFound() throws Exception {
+    SilentMolecule molecule = silent("[*:1]CC[*:2]");
+    assertNotNull(molecule.getRGroupAtom(1, true));
+    assertNotNull(molecule.getRGroupAtom(2, true));
+    molecule.changeAtomLabel(2, 5);
+    IAtomBase atom = molecule.getRGroupAtom(5, true);
+    assertNotNull(atom);
+    assertEquals(atom.getRgroup(), 5);
+    assertNull(molecule.getRGroupAtom(2, true));
+    molecule.changeAtomLabel(1, 7);
+    assertTrue(molecule.getRgroups().containsKey("R7"));
+    assertEquals(molecule.getRGroupAtom(5, false).getIAtno(), 6);
+  }
+
+  @Test
+  public void testRemoveAttachmentOfRelabeledRgroup() throws Exception {
+    AttachmentList attachments = new AttachmentList();
+    attachments.add(new Attachment("3R3-H", "R3", "H", "[*:3][H]"));
+    SilentMolecule molecule = silent("[*:1]CC[*:2]");
+    molecule.setAttachments(attachments);
+    molecule.getRGroupAtom(1, true);
+    molecule.changeAtomLabel(2, 3);
+    molecule.removeAttachment(molecule.getRGroupAtom(3, true));
+    assertEquals(molecule.getAttachments().size(), 0);
+  }
+
+  @Test
+  public void testInfoIsNotKeptWithoutReportedChanges() throws Exception {
+    SilentMolecule molecule = silent("[*:1]CC[*:2]");
+    assertEquals(manipulator.getIncrementalMoleculeInfo(molecule).getMolecularFormula(), "C2H4");
+    molecule.removeINode(molecule.getRGroupAtom(2, true));
+    assertEquals(manipulator.getIncrementalMoleculeInfo(molecule).getMolecularFormula(), "C2H5");
+  }
+
+  @Test
+  public void testReportedMissIsTrusted() throws Exception {
+    AbstractMolecule molecule = manipulator.getMolecule("[*:1]CC[*:2]", null);
+    molecule.changeAtomLabel(2, 5);
+    assertNull(molecule.getRGroupAtom(2, true));
+    assertEquals(molecule.getRGroupAtom(5, true).getRgroup(), 5);
+  }
+
+}
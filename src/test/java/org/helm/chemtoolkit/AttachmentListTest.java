@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.util.ListIterator;
+
+import org.testng.annotations.Test;
+
+public class AttachmentListTest {
+
+  @Test
+  public void testCloneListSharesUntilModified() {
+    AttachmentList list = list("R1", "R2");
+    AttachmentList clone = list.cloneList();
+    assertSame(clone.peek(0), list.peek(0));
+
+    clone.remove(0);
+    assertEquals(list.size(), 2);
+    assertEquals(clone.size(), 1);
+    assertEquals(clone.peek(0).getLabel(), "R2");
+  }
+
+  @Test
+  public void testIteratorDoesNotModifyTheSource() {
+    AttachmentList list = list("R1", "R2");
+    AttachmentList clone = list.cloneList();
+    for (Attachment attachment : clone) {
+      attachment.changeIndex(attachment.getCurrentIndex() + 2);
+    }
+    assertEquals(list.peek(0).getLabel(), "R1");
+    assertEquals(list.peek(1).getLabel(), "R2");
+    assertEquals(clone.peek(0).getLabel(), "R3");
+    assertEquals(clone.peek(1).getLabel(), "R4");
+  }
+
+  @Test
+  public void testIteratorClonesOnlyOnce() {
+    AttachmentList list = list("R1", "R2");
+    AttachmentList clone = list.cloneList();
+    Attachment first = clone.iterator().next();
+    assertNotSame(first, list.peek(0));
+    assertSame(clone.iterator().next(), first);
+    assertSame(clone.peek(1), list.peek(1));
+  }
+
+  @Test
+  public void testListIteratorHandsOutOwnedAttachments() {
+    AttachmentList list = list("R1", "R2");
+    AttachmentList clone = list.cloneList();
+    ListIterator<Attachment> it = clone.listIterator(2);
+    Attachment second = it.previous();
+    second.changeIndex(4);
+    assertSame(clone.listIterator().next(), clone.peek(0));
+    assertNotSame(clone.peek(0), list.peek(0));
+    assertSame(clone.peek(1), second);
+    assertEquals(list.peek(1).getLabel(), "R2");
+    assertEquals(clone.peek(1).getLabel(), "R4");
+
+    it = clone.listIterator();
+    it.next();
+    it.add(new Attachment("R3-H", "R3", "H", "[*][H] |$_R3;$|"));
+    assertEquals(it.nextIndex(), 2);
+    assertEquals(clone.size(), 3);
+    assertEquals(list.size(), 2);
+  }
+
+  @Test
+  public void testReadingKeepsSharing() {
+    AttachmentList list = list("R1", "R2");
+    for (Attachment attachment : list) {
+      attachment.getLabel();
+    }
+    AttachmentList clone = list.cloneList();
+    assertSame(clone.peek(0), list.peek(0));
+    assertSame(clone.peek(1), list.peek(1));
+  }
+
+  @Test
+  public void testCloneListSortsModifiedLists() {
+    AttachmentList list = list("R1", "R2");
+    list.iterator().next().changeIndex(3);
+    AttachmentList clone = list.cloneList();
+    assertEquals(clone.peek(0).getLabel(), "R2");
+    assertEquals(clone.peek(1).getLabel(), "R3");
+  }
+
+  @Test
+  public void testGetReturnsCopies() {
+    AttachmentList list = list("R1");
+    list.get(0).changeIndex(5);
+    assertEquals(list.peek(0).getLabel(), "R1");
+  }
+
+  @Test(expectedExceptions = IndexOutOfBoundsException.class)
+  public void testPeekRejectsNegativeIndex() {
+    list("R1").peek(-1);
+  }
+
+  static AttachmentList list(String... labels) {
+    AttachmentList list = new AttachmentList();
+    for (String label : labels) {
+      list.add(new Attachment(label + "-H", label, "H", "[*][H] |$_" + label + ";$|"));
+    }
+    return list;
+  }
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class AttachmentTest {
+
+  @Test
+  public void testCurrentIndex() {
+    assertEquals(new Attachment("R1-H", "R1", "H", "[*][H] |$_R1;$|").getCurrentIndex(), 1);
+    assertEquals(new Attachment("R12-OH", "R12", "OH", "O[*:12]").getCurrentIndex(), 12);
+    assertEquals(new Attachment("X-H", "X", "H", "[*][H]").getCurrentIndex(), 0);
+  }
+
+  @Test
+  public void testChangeIndexRenumbersLabelIdAndSmiles() {
+    Attachment attachment = new Attachment("R1-H", "R1", "H", "[*][H] |$_R1;$|");
+    attachment.changeIndex(3);
+    assertEquals(attachment.getCurrentIndex(), 3);
+    assertEquals(attachment.getLabel(), "R3");
+    assertEquals(attachment.getId(), "R3-H");
+    assertEquals(attachment.getSmiles(), "[*][H] |$_R3;$|");
+  }
+
+  @Test
+  public void testChangeIndexKeepsRingClosures() {
+    Attachment attachment = new Attachment("R1-Ep", "R1", "Ep", "O1CC1[*:1]");
+    attachment.changeIndex(2);
+    assertEquals(attachment.getSmiles(), "O1CC1[*:2]");
+
+    attachment = new Attachment("R2-X", "R2", "X", "C2CC2[2*]");
+    attachment.changeIndex(10);
+    assertEquals(attachment.getSmiles(), "C2CC2[10*]");
+    assertEquals(attachment.getLabel(), "R10");
+  }
+
+  @Test
+  public void testChangeIndexRenumbersEveryPlaceholder() {
+    Attachment attachment = new Attachment("1R1-H", "R1", "H", "[*:1][H] |$_R1;$|");
+    attachment.changeIndex(3);
+    assertEquals(attachment.getSmiles(), "[*:3][H] |$_R3;$|");
+    attachment.changeIndex(12);
+    assertEquals(attachment.getSmiles(), "[*:12][H] |$_R12;$|");
+
+    attachment = new Attachment("R1-Ep", "R1", "Ep", "O1CC1[*:1] |$;;;;_R1$|");
+    attachment.changeIndex(2);
+    assertEquals(attachment.getSmiles(), "O1CC1[*:2] |$;;;;_R2$|");
+  }
+
+  @Test
+  public void testChangeIndexRepeatedly() {
+    Attachment attachment = new Attachment("R9-OH", "R9", "OH", "O[*:9]");
+    attachment.changeIndex(10);
+    attachment.changeIndex(2);
+    assertEquals(attachment.getLabel(), "R2");
+    assertEquals(attachment.getId(), "R2-OH");
+    assertEquals(attachment.getSmiles(), "O[*:2]");
+  }
+
+  @Test
+  public void testCloneIsIndependent() {
+    Attachment attachment = new Attachment("R1-H", "R1", "H", "[*:1][H]");
+    Attachment clone = attachment.cloneAttachment();
+    clone.changeIndex(4);
+    assertEquals(attachment.getLabel(), "R1");
+    assertEquals(clone.getSmiles(), "[*:4][H]");
+  }
+
+  @Test
+  public void testCompareByLabelThenIndex() {
+    Attachment r1 = new Attachment("R1-H", "R1", "H", "[*:1][H]");
+    Attachment r2 = new Attachment("R2-H", "R2", "H", "[*:2][H]");
+    assertTrue(r1.compareTo(r2) < 0);
+    assertTrue(r2.compareTo(r1) > 0);
+    assertEquals(r1.compareTo(r1.cloneAttachment()), 0);
+  }
+
+}
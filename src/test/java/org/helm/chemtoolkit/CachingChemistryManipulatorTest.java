@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+import org.helm.chemtoolkit.simple.SimpleManipulator;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CachingChemistryManipulatorTest {
+
+  /**
+   * manipulator counting the calls reaching it
+   */
+  private static class CountingManipulator extends SimpleManipulator {
+
+    private int canonicalizeCalls;
+
+    private int convertCalls;
+
+    @Override
+    public String canonicalize(String data) throws CTKException, CTKSmilesException {
+      canonicalizeCalls++;
+      return super.canonicalize(data);
+    }
+
+    @Override
+    public String convert(String data, StType type) throws CTKException {
+      convertCalls++;
+      return super.convert(data, type);
+    }
+  }
+
+  private CountingManipulator delegate;
+
+  @BeforeMethod
+  public void createDelegate() {
+    delegate = new CountingManipulator();
+  }
+
+  @Test
+  public void testRepeatedInputIsAnsweredFromCache() throws Exception {
+    CachingChemistryManipulator caching = new CachingChemistryManipulator(delegate, new CacheConfiguration());
+    String canonical = caching.canonicalize("OCC");
+    assertEquals(caching.canonicalize("OCC"), canonical);
+    assertEquals(delegate.canonicalizeCalls, 1);
+    assertEquals(caching.getCanonicalizeCache().getHitCount(), 1);
+    assertEquals(caching.getCanonicalizeCache().getMissCount(), 1);
+    assertNull(caching.getRenderCache());
+
+    String molfile = caching.convert("OCC", StType.SMILES);
+    assertEquals(caching.convert("OCC", StType.SMILES), molfile);
+    caching.convert(molfile, StType.MOLFILE);
+    assertEquals(delegate.convertCalls, 2);
+    assertEquals(caching.getConvertCache().size(), 2);
+
+    caching.clearCaches();
+    caching.canonicalize("OCC");
+    assertEquals(delegate.canonicalizeCalls, 2);
+  }
+
+  @Test
+  public void testFailuresAreNotCached() throws Exception {
+    CachingChemistryManipulator caching = new CachingChemistryManipulator(delegate, new CacheConfiguration());
+    for (int i = 0; i < 2; i++) {
+      try {
+        caching.canonicalize("CC(");
+        fail("invalid SMILES was canonicalized");
+      } catch (CTKException e) {
+        // expected
+      }
+    }
+    assertEquals(delegate.canonicalizeCalls, 2);
+    assertEquals(caching.getCanonicalizeCache().size(), 0);
+  }
+
+  @Test
+  public void testEvictedResultIsRecomputed() throws Exception {
+    CachingChemistryManipulator caching = new CachingChemistryManipulator(delegate, new CacheConfiguration(1,
+        CachePolicy.LRU, 1, CachePolicy.LRU));
+    caching.canonicalize("OCC");
+    caching.canonicalize("NCC");
+    caching.canonicalize("OCC");
+    assertEquals(delegate.canonicalizeCalls, 3);
+    assertEquals(caching.getCanonicalizeCache().getEvictionCount(), 2);
+  }
+
+  @Test
+  public void testDisabledCache() throws Exception {
+    CacheConfiguration configuration = new CacheConfiguration(0, CachePolicy.LRU, 0, CachePolicy.LFU);
+    configuration.setRenderCacheSize(0);
+    CachingChemistryManipulator caching = new CachingChemistryManipulator(delegate, configuration);
+    assertNull(caching.getCanonicalizeCache());
+    assertNull(caching.getConvertCache());
+    assertNull(caching.getRenderCache());
+    caching.canonicalize("OCC");
+    caching.canonicalize("OCC");
+    assertEquals(delegate.canonicalizeCalls, 2);
+  }
+
+}
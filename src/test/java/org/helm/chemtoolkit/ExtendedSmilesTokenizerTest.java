@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.helm.chemtoolkit.ExtendedSmilesTokenizer.TokenType;
+import org.testng.annotations.Test;
+
+public class ExtendedSmilesTokenizerTest {
+
+  @Test
+  public void testAtomLabels() {
+    String data = "[*]N[C@@H](C)C([*])=O |$_R1;;;;;_R2;$|";
+    ExtendedSmilesTokenizer tokenizer = new ExtendedSmilesTokenizer(data);
+    assertTrue(tokenizer.hasExtension());
+    assertEquals(tokenizer.getSmilesEnd(), data.indexOf('|'));
+
+    assertTrue(tokenizer.next());
+    assertEquals(tokenizer.getType(), TokenType.ATOM_LABEL);
+    assertEquals(tokenizer.getAtomIndex(), 0);
+    assertEquals(tokenizer.getRgroup(), 1);
+    assertEquals(tokenizer.appendToken(new StringBuilder()).toString(), "_R1");
+
+    assertTrue(tokenizer.next());
+    assertEquals(tokenizer.getAtomIndex(), 5);
+    assertEquals(tokenizer.getRgroup(), 2);
+    assertFalse(tokenizer.next());
+  }
+
+  @Test
+  public void testLabelsWithoutUnderscoreAndOtherLabels() {
+    List<String> tokens = tokens("C[*].[*]O |$;R12;Xx;_R3$|");
+    assertEquals(tokens, Arrays.asList("ATOM_LABEL 1 12 R12", "ATOM_LABEL 2 0 Xx", "ATOM_LABEL 3 3 _R3"));
+  }
+
+  @Test
+  public void testFields() {
+    List<String> tokens = tokens("c1ccccc1[*] |c:1,3,5,$;;;;;;_R1$,(1.0,2.0,;;)|");
+    assertEquals(tokens, Arrays.asList("FIELD -1 0 c:1,3,5", "ATOM_LABEL 6 1 _R1", "FIELD -1 0 (1.0,2.0,;;)"));
+  }
+
+  @Test
+  public void testWithoutExtension() {
+    ExtendedSmilesTokenizer tokenizer = new ExtendedSmilesTokenizer("CCO");
+    assertFalse(tokenizer.hasExtension());
+    assertEquals(tokenizer.getSmilesEnd(), 3);
+    assertFalse(tokenizer.next());
+
+    tokenizer.reset("CCO ||");
+    assertFalse(tokenizer.hasExtension());
+    assertFalse(tokenizer.next());
+  }
+
+  @Test
+  public void testReset() {
+    ExtendedSmilesTokenizer tokenizer = new ExtendedSmilesTokenizer("[*]C |$_R1;$|");
+    assertTrue(tokenizer.next());
+    assertEquals(tokenizer.getRgroup(), 1);
+    tokenizer.reset("C[*] |$;_R2$|");
+    assertTrue(tokenizer.next());
+    assertEquals(tokenizer.getAtomIndex(), 1);
+    assertEquals(tokenizer.getRgroup(), 2);
+    assertFalse(tokenizer.next());
+  }
+
+  private static List<String> tokens(String data) {
+    ExtendedSmilesTokenizer tokenizer = new ExtendedSmilesTokenizer(data);
+    List<String> result = new ArrayList<String>();
+    while (tokenizer.next()) {
+      result.add(tokenizer.getType() + " " + tokenizer.getAtomIndex() + " " + tokenizer.getRgroup() + " "
+          + tokenizer.appendToken(new StringBuilder()));
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.helm.chemtoolkit.simple.SimpleManipulator;
+import org.testng.annotations.Test;
+
+public class FingerprintGeneratorTest {
+
+  private final SimpleManipulator manipulator = new SimpleManipulator();
+
+  private final FingerprintGenerator generator = new FingerprintGenerator();
+
+  private long[] fingerprint(String smiles) throws Exception {
+    return generator.generate(manipulator.getMolecule(smiles, null));
+  }
+
+  private void assertScreened(String target, String query) throws Exception {
+    assertTrue(FingerprintGenerator.containsAll(fingerprint(target), fingerprint(query)), query + " in " + target);
+  }
+
+  @Test
+  public void testChainInRing() throws Exception {
+    assertScreened("C1CCCN1", "CCN");
+    assertScreened("C1CCCCC1", "CCCC");
+    assertScreened("C1CCCCC1C(=O)O", "CCC(=O)O");
+    assertScreened("c1ccccc1O", "C=CO");
+    assertScreened("c1ccccc1", "C=CC=C");
+  }
+
+  @Test
+  public void testAromaticAndKekuleRing() throws Exception {
+    assertEquals(fingerprint("c1ccccc1O"), fingerprint("OC1=CC=CC=C1"));
+  }
+
+  @Test
+  public void testRgroupsAreLeftOut() throws Exception {
+    assertScreened("CC(N)C(=O)NCC(=O)O", "[*:1]NC(C)C([*:2])=O");
+  }
+
+  @Test
+  public void testIndexScreen() throws Exception {
+    FingerprintIndex index = new FingerprintIndex(generator.getWordCount());
+    index.add(fingerprint("CCCC"));
+    index.add(fingerprint("C1CCCN1"));
+    index.add(fingerprint("CC#N"));
+    int[] hits = index.screen(fingerprint("CCN"));
+    assertEquals(hits.length, 1);
+    assertEquals(hits[0], 1);
+  }
+
+}
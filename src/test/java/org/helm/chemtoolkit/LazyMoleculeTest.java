@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.helm.chemtoolkit.simple.SimpleManipulator;
+import org.testng.annotations.Test;
+
+public class LazyMoleculeTest {
+
+  /**
+   * manipulator answering SMILES molecule info with a marker, to tell it from the info of the built molecule
+   */
+  private static class MarkingManipulator extends SimpleManipulator {
+
+    @Override
+    public MoleculeInfo getSmilesMoleculeInfo(String smiles) throws CTKException {
+      return new MoleculeInfo(1, "marker", 1);
+    }
+  }
+
+  private final MarkingManipulator manipulator = new MarkingManipulator();
+
+  @Test
+  public void testInfoWithoutBuilding() throws Exception {
+    LazyMolecule lazy = manipulator.getLazyMolecule("[*:1]CC[*:2]", null);
+    assertEquals(lazy.getRgroupLabels(), Arrays.asList("R1", "R2"));
+    assertEquals(manipulator.getIncrementalMoleculeInfo(lazy).getMolecularFormula(), "marker");
+    assertFalse(lazy.isMaterialized());
+  }
+
+  @Test
+  public void testSmilesInfoIsNotCopiedToBuiltMolecule() throws Exception {
+    LazyMolecule lazy = manipulator.getLazyMolecule("CCO", null);
+    assertEquals(manipulator.getIncrementalMoleculeInfo(lazy).getMolecularFormula(), "marker");
+    AbstractMolecule molecule = lazy.materialize();
+    assertTrue(lazy.isMaterialized());
+    assertNull(molecule.moleculeInfo);
+    assertEquals(manipulator.getIncrementalMoleculeInfo(lazy).getMolecularFormula(), "C2H6O");
+  }
+
+  @Test
+  public void testStructuralOperationBuildsMolecule() throws Exception {
+    LazyMolecule lazy = manipulator.getLazyMolecule("[*:1]CC[*:2]", null);
+    LazyMolecule clone = (LazyMolecule) lazy.cloneMolecule();
+    assertEquals(lazy.getIAtomArray().size(), 4);
+    assertTrue(lazy.isMaterialized());
+    assertFalse(clone.isMaterialized());
+    assertEquals(clone.getSmiles(), "[*:1]CC[*:2]");
+  }
+
+  @Test(expectedExceptions = CTKException.class)
+  public void testInvalidSmiles() throws Exception {
+    manipulator.getLazyMolecule("CC(", null).materialize();
+  }
+
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.helm.chemtoolkit.simple.SimpleManipulator;
+import org.testng.annotations.Test;
+
+public class ManipulatorStatisticsTest {
+
+  @Test
+  public void testOperationsAreRecorded() throws Exception {
+    ManipulatorStatistics statistics = new ManipulatorStatistics();
+    AbstractChemistryManipulator manipulator = new InstrumentedChemistryManipulator(new SimpleManipulator(),
+        statistics);
+    assertEquals(manipulator.canonicalize("OCC"), new SimpleManipulator().canonicalize("OCC"));
+    try {
+      manipulator.canonicalize("CC(");
+      fail("invalid SMILES was canonicalized");
+    } catch (CTKSmilesException e) {
+      // passed through unchanged
+    }
+    OperationStatistics canonicalize = statistics.getStatistics(ManipulatorOperation.CANONICALIZE);
+    assertEquals(canonicalize.getCount(), 2);
+    assertEquals(canonicalize.getErrorCount(), 1);
+    assertEquals(statistics.getCalledOperations().size(), 1);
+    assertTrue(canonicalize.getSlowestInput().equals("OCC") || canonicalize.getSlowestInput().equals("CC("));
+  }
+
+  @Test
+  public void testSlowestInputIsSummarized() throws Exception {
+    StringBuilder smiles = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      smiles.append('C');
+    }
+    String summary = OperationStatistics.summary(smiles.toString());
+    assertEquals(summary.length(), OperationStatistics.MAX_SUMMARY_LENGTH);
+    assertTrue(summary.endsWith("..."));
+    assertEquals(OperationStatistics.summary("OCC"), "OCC");
+    assertNull(OperationStatistics.summary(null));
+
+    SimpleManipulator manipulator = new SimpleManipulator();
+    assertEquals(OperationStatistics.summary(manipulator.getMolecule("OCC", null)), "molecule with 3 atoms");
+    assertEquals(OperationStatistics.summary(manipulator.getLazyMolecule("OCC", null)), "OCC");
+
+    ManipulatorStatistics statistics = new ManipulatorStatistics();
+    statistics.operationCompleted(ManipulatorOperation.GET_MOLECULE, smiles.toString(), smiles.length(), 10, null);
+    assertEquals(statistics.getStatistics(ManipulatorOperation.GET_MOLECULE).getSlowestInput(), summary);
+  }
+
+}
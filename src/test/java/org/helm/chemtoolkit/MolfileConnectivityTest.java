@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+public class MolfileConnectivityTest {
+
+  private static final String HEADER = "\n  test\n\n";
+
+  private static String v2000(int atomCount, int... bonds) {
+    StringBuilder sb = new StringBuilder(HEADER);
+    sb.append(String.format("%3d%3d  0  0  0  0  0  0  0  0999 V2000\n", atomCount, bonds.length / 2));
+    for (int i = 0; i < atomCount; i++) {
+      sb.append("    0.0000    0.0000    0.0000 C   0  0  0  0  0  0  0  0  0  0  0  0\n");
+    }
+    for (int i = 0; i < bonds.length; i += 2) {
+      sb.append(String.format("%3d%3d  1  0\n", bonds[i], bonds[i + 1]));
+    }
+    return sb.append("M  END\n").toString();
+  }
+
+  private static String v3000(String... lines) {
+    StringBuilder sb = new StringBuilder(HEADER);
+    sb.append("  0  0  0     0  0            999 V3000\n");
+    for (String line : lines) {
+      sb.append("M  V30 ").append(line).append('\n');
+    }
+    return sb.append("M  END\n").toString();
+  }
+
+  @Test
+  public void testV2000() throws Exception {
+    assertEquals(MolfileConnectivity.countComponents(v2000(3, 1, 2, 2, 3)), 1);
+    assertEquals(MolfileConnectivity.countComponents(v2000(4, 1, 2, 3, 4)), 2);
+    assertEquals(MolfileConnectivity.countComponents(v2000(3, 1, 2, 2, 3, 3, 1)), 1);
+    assertEquals(MolfileConnectivity.countComponents(v2000(0)), 0);
+    assertEquals(MolfileConnectivity.countComponents(v2000(2, 1, 2).replace("\n", "\r\n")), 1);
+  }
+
+  @Test
+  public void testV3000() throws Exception {
+    assertEquals(MolfileConnectivity.countComponents(v3000("BEGIN CTAB", "COUNTS 3 1 0 0 0", "BEGIN ATOM",
+        "1 C 0 0 0 0", "2 C 0 0 0 0", "3 O 0 0 0 0", "END ATOM", "BEGIN BOND", "1 1 1 2", "END BOND", "END CTAB")), 2);
+    assertEquals(MolfileConnectivity.countComponents(v3000("BEGIN CTAB", "COUNTS 3 2 0 0 0", "BEGIN ATOM",
+        "1 C 0 0 0 0", "2 C 0 0 0 0", "3 O 0 0 0 0", "END ATOM", "BEGIN BOND", "1 1 1 2", "2 1 2 3", "END BOND",
+        "END CTAB")), 1);
+  }
+
+  @Test
+  public void testV3000ContinuedLines() throws Exception {
+    assertEquals(MolfileConnectivity.countComponents(v3000("BEGIN CTAB", "COUNTS 3 2 0 0 0", "BEGIN ATOM",
+        "1 C 0 0 0 0 -", "CHG=1", "2 C 0 0 0 0", "3 O 0 -", "0 0 0", "END ATOM", "BEGIN BOND", "1 1 1 2 -",
+        "CFG=1", "2 1 2 -", "3", "END BOND", "END CTAB")), 1);
+  }
+
+  @Test
+  public void testV3000SkipsTemplates() throws Exception {
+    assertEquals(MolfileConnectivity.countComponents(v3000("BEGIN CTAB", "COUNTS 2 1 0 0 0", "BEGIN ATOM",
+        "1 Ala 0 0 0 0 CLASS=AA SAP=(3 1 2 Br)", "2 Gly 0 0 0 0 CLASS=AA", "END ATOM", "BEGIN BOND", "1 1 1 2",
+        "END BOND", "END CTAB", "BEGIN TEMPLATE", "TEMPLATE 1 AA/Ala/A/", "BEGIN CTAB", "COUNTS 3 1 0 0 0",
+        "BEGIN ATOM", "1 N 0 0 0 0", "2 C 0 0 0 0", "3 C 0 0 0 0", "END ATOM", "BEGIN BOND", "1 1 1 2", "END BOND",
+        "END CTAB", "END TEMPLATE")), 1);
+  }
+
+  @Test(expectedExceptions = CTKException.class)
+  public void testMissingCountsLine() throws Exception {
+    MolfileConnectivity.countComponents(HEADER);
+  }
+
+  @Test(expectedExceptions = CTKException.class)
+  public void testTruncatedBondBlock() throws Exception {
+    String molfile = v2000(2, 1, 2);
+    MolfileConnectivity.countComponents(molfile.substring(0, molfile.indexOf("  1  2  1")));
+  }
+
+  @Test(expectedExceptions = CTKException.class)
+  public void testBondToUnknownAtom() throws Exception {
+    MolfileConnectivity.countComponents(v2000(2, 1, 3));
+  }
+
+  @Test(expectedExceptions = CTKException.class)
+  public void testInvalidV3000Bond() throws Exception {
+    MolfileConnectivity.countComponents(v3000("BEGIN CTAB", "COUNTS 2 1 0 0 0", "BEGIN ATOM", "1 C 0 0 0 0",
+        "2 C 0 0 0 0", "END ATOM", "BEGIN BOND", "1 1 1 x", "END BOND", "END CTAB"));
+  }
+
+  @Test(expectedExceptions = CTKException.class)
+  public void testTruncatedContinuedLine() throws Exception {
+    MolfileConnectivity.countComponents(v3000("BEGIN CTAB", "COUNTS 2 1 0 0 0", "BEGIN ATOM", "1 C 0 0 0 0",
+        "2 C 0 0 0 0", "END ATOM", "BEGIN BOND", "1 1 1 -"));
+  }
+
+}
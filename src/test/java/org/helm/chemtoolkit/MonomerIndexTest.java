@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MonomerIndexTest {
+
+  private Path directory;
+
+  @BeforeMethod
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("monomer-index");
+  }
+
+  @AfterMethod
+  public void deleteDirectory() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  @Test
+  public void testSaveAndOpen() throws Exception {
+    MonomerIndex index = new MonomerIndex();
+    assertEquals(index.putIfAbsent("CC(N)C(=O)O", 7), MonomerIndex.NOT_FOUND);
+    assertEquals(index.putIfAbsent("NCC(=O)O", 8), MonomerIndex.NOT_FOUND);
+    Path file = directory.resolve("monomers.idx");
+    index.save(file);
+
+    MonomerIndex opened = MonomerIndex.open(file);
+    assertTrue(opened.isMapped());
+    assertEquals(opened.size(), 2);
+    assertEquals(opened.get("CC(N)C(=O)O"), 7);
+    assertEquals(opened.get("NCC(=O)O"), 8);
+    assertEquals(opened.get("OCC(N)C(=O)O"), MonomerIndex.NOT_FOUND);
+  }
+
+  @Test
+  public void testAddCopiesOpenedIndex() throws Exception {
+    MonomerIndex index = new MonomerIndex();
+    index.putIfAbsent("NCC(=O)O", 1);
+    Path file = directory.resolve("monomers.idx");
+    index.save(file);
+    byte[] saved = Files.readAllBytes(file);
+
+    MonomerIndex opened = MonomerIndex.open(file);
+    assertEquals(opened.putIfAbsent("CC(N)C(=O)O", 2), MonomerIndex.NOT_FOUND);
+    assertFalse(opened.isMapped());
+    assertEquals(opened.get("CC(N)C(=O)O"), 2);
+    assertEquals(opened.get("NCC(=O)O"), 1);
+    assertTrue(Arrays.equals(Files.readAllBytes(file), saved));
+    assertEquals(MonomerIndex.open(file).get("CC(N)C(=O)O"), MonomerIndex.NOT_FOUND);
+  }
+
+  @Test
+  public void testResize() throws Exception {
+    MonomerIndex index = new MonomerIndex();
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(index.putIfAbsent("C" + i, i), MonomerIndex.NOT_FOUND);
+    }
+    assertEquals(index.size(), 1000);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(index.get("C" + i), i);
+    }
+    Path file = directory.resolve("monomers.idx");
+    index.save(file);
+    MonomerIndex opened = MonomerIndex.open(file);
+    assertEquals(opened.size(), 1000);
+    assertEquals(opened.get("C999"), 999);
+  }
+
+  @Test
+  public void testDuplicates() throws Exception {
+    MonomerIndex index = new MonomerIndex();
+    assertEquals(index.putIfAbsent("NCC(=O)O", 3), MonomerIndex.NOT_FOUND);
+    assertEquals(index.putIfAbsent("NCC(=O)O", 4), 3);
+    assertEquals(index.putIfAbsent("CC(N)C(=O)O", 3), MonomerIndex.NOT_FOUND);
+    assertEquals(index.size(), 2);
+    assertEquals(index.get("NCC(=O)O"), 3);
+    assertEquals(index.get("CC(N)C(=O)O"), 3);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNegativeId() throws Exception {
+    new MonomerIndex().putIfAbsent("NCC(=O)O", -1);
+  }
+
+  @Test
+  public void testCorruptFileRejected() throws Exception {
+    MonomerIndex index = new MonomerIndex();
+    index.putIfAbsent("NCC(=O)O", 1);
+    Path file = directory.resolve("monomers.idx");
+    index.save(file);
+    byte[] saved = Files.readAllBytes(file);
+
+    assertRejected(Arrays.copyOf(saved, 8));
+    assertRejected(Arrays.copyOf(saved, saved.length - 1));
+    byte[] magic = saved.clone();
+    magic[0] ^= 1;
+    assertRejected(magic);
+    byte[] version = saved.clone();
+    ByteBuffer.wrap(version).putInt(4, 2);
+    assertRejected(version);
+    byte[] capacity = saved.clone();
+    ByteBuffer.wrap(capacity).putInt(8, 15);
+    assertRejected(capacity);
+    byte[] size = saved.clone();
+    ByteBuffer.wrap(size).putInt(12, -1);
+    assertRejected(size);
+  }
+
+  private void assertRejected(byte[] content) throws IOException {
+    Path file = Files.write(directory.resolve("corrupt.idx"), content);
+    try {
+      MonomerIndex.open(file);
+      fail("corrupt index file was opened");
+    } catch (CTKException e) {
+      assertTrue(e.getMessage().startsWith("Invalid monomer index file"), e.getMessage());
+    }
+  }
+
+}
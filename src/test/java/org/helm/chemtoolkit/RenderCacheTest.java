@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator.OutputType;
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RenderCacheTest {
+
+  private static final byte[] IMAGE = {1, 2, 3};
+
+  private Path directory;
+
+  @BeforeMethod
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("render-cache");
+  }
+
+  @AfterMethod
+  public void deleteDirectory() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  private static int countFiles(Path directory) throws IOException {
+    int count = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testImagesSurviveRestart() throws Exception {
+    RenderCache cache = new RenderCache(CachePolicy.LRU, 10, directory);
+    cache.put(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0xffffff, IMAGE);
+    String key = RenderCache.key(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0xffffff);
+    assertTrue(Files.isRegularFile(directory.resolve(key + ".png")));
+
+    RenderCache restarted = new RenderCache(CachePolicy.LRU, 10, directory);
+    assertEquals(restarted.get(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0xffffff), IMAGE);
+    assertEquals(restarted.getDiskHitCount(), 1);
+    assertEquals(restarted.get(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0xffffff), IMAGE);
+    assertEquals(restarted.getDiskHitCount(), 1);
+    assertEquals(restarted.getMemoryCache().getHitCount(), 1);
+  }
+
+  @Test
+  public void testEvictedImageIsReadFromDisk() throws Exception {
+    RenderCache cache = new RenderCache(CachePolicy.LRU, 1, directory);
+    cache.put(StType.MOLFILE, "first", OutputType.PNG, 100, 80, 0, IMAGE);
+    cache.put(StType.SEQUENCE, "second", OutputType.GIF, 100, 80, 0, new byte[] {4});
+    assertEquals(cache.getMemoryCache().size(), 1);
+    assertEquals(countFiles(directory), 2);
+    assertEquals(cache.get(StType.MOLFILE, "first", OutputType.PNG, 100, 80, 0), IMAGE);
+    assertEquals(cache.getDiskHitCount(), 1);
+  }
+
+  @Test
+  public void testParametersArePartOfTheKey() {
+    RenderCache cache = new RenderCache(CachePolicy.LRU, 10, directory);
+    cache.put(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0, IMAGE);
+    assertNull(cache.get(StType.MOLFILE, "molfile", OutputType.PNG, 100, 81, 0));
+    assertNull(cache.get(StType.MOLFILE, "molfile", OutputType.JPG, 100, 80, 0));
+    assertNull(cache.get(StType.SEQUENCE, "molfile", OutputType.PNG, 100, 80, 0));
+    assertNull(cache.get(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 1));
+  }
+
+  @Test
+  public void testImagesAreCopied() {
+    RenderCache cache = new RenderCache(CachePolicy.LRU, 10, null);
+    byte[] image = IMAGE.clone();
+    cache.put(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0, image);
+    image[0] = 9;
+    byte[] cached = cache.get(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0);
+    assertEquals(cached, IMAGE);
+    cached[1] = 9;
+    assertEquals(cache.get(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0), IMAGE);
+  }
+
+  @Test
+  public void testClearAllKeepsOtherFiles() throws Exception {
+    RenderCache cache = new RenderCache(CachePolicy.LRU, 10, directory);
+    cache.put(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0, IMAGE);
+    Path other = Files.write(directory.resolve("notes.png"), IMAGE);
+
+    cache.clear();
+    assertEquals(cache.get(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0), IMAGE);
+    cache.clearAll();
+    assertNull(cache.get(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0));
+    assertTrue(Files.exists(other));
+    assertEquals(countFiles(directory), 1);
+    assertFalse(Files.exists(directory.resolve(RenderCache.key(StType.MOLFILE, "molfile", OutputType.PNG, 100, 80, 0)
+        + ".png")));
+  }
+
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+public class ResultCacheTest {
+
+  @Test
+  public void testLruEvictsLeastRecentlyUsed() {
+    ResultCache<String, String> cache = ResultCache.create(CachePolicy.LRU, 2);
+    cache.put("a", "A");
+    cache.put("b", "B");
+    assertEquals(cache.get("a"), "A");
+    cache.put("c", "C");
+    assertNull(cache.get("b"));
+    assertEquals(cache.get("a"), "A");
+    assertEquals(cache.get("c"), "C");
+    assertEquals(cache.size(), 2);
+    assertEquals(cache.getEvictionCount(), 1);
+  }
+
+  @Test
+  public void testLfuEvictsLeastFrequentlyUsed() {
+    ResultCache<String, String> cache = ResultCache.create(CachePolicy.LFU, 2);
+    cache.put("a", "A");
+    cache.put("b", "B");
+    cache.get("a");
+    cache.get("a");
+    cache.get("b");
+    cache.put("c", "C");
+    assertNull(cache.get("b"));
+    assertEquals(cache.get("a"), "A");
+
+    // c was used once before d is added, a more often
+    cache.put("d", "D");
+    assertNull(cache.get("c"));
+    assertEquals(cache.get("d"), "D");
+    assertEquals(cache.getEvictionCount(), 2);
+  }
+
+  @Test
+  public void testLfuBreaksTiesByAge() {
+    ResultCache<String, String> cache = ResultCache.create(CachePolicy.LFU, 2);
+    cache.put("a", "A");
+    cache.put("b", "B");
+    cache.put("c", "C");
+    assertNull(cache.get("a"));
+    assertEquals(cache.get("b"), "B");
+    assertEquals(cache.get("c"), "C");
+  }
+
+  @Test
+  public void testReplacingDoesNotEvict() {
+    for (CachePolicy policy : CachePolicy.values()) {
+      ResultCache<String, String> cache = ResultCache.create(policy, 2);
+      cache.put("a", "A");
+      cache.put("b", "B");
+      cache.put("a", "A2");
+      assertEquals(cache.size(), 2, policy.name());
+      assertEquals(cache.get("a"), "A2", policy.name());
+      assertEquals(cache.get("b"), "B", policy.name());
+      assertEquals(cache.getEvictionCount(), 0, policy.name());
+    }
+  }
+
+  @Test
+  public void testStatistics() {
+    ResultCache<String, String> cache = ResultCache.create(CachePolicy.LRU, 4);
+    assertEquals(cache.getHitRate(), 0.0);
+    cache.put("a", "A");
+    cache.get("a");
+    cache.get("a");
+    cache.get("a");
+    cache.get("b");
+    assertEquals(cache.getHitCount(), 3);
+    assertEquals(cache.getMissCount(), 1);
+    assertEquals(cache.getHitRate(), 0.75);
+
+    cache.resetStatistics();
+    assertEquals(cache.getHitCount(), 0);
+    assertEquals(cache.getMissCount(), 0);
+    assertEquals(cache.size(), 1);
+    cache.clear();
+    assertEquals(cache.size(), 0);
+    assertNull(cache.get("a"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testRejectsEmptyCache() {
+    ResultCache.create(CachePolicy.LRU, 0);
+  }
+
+}
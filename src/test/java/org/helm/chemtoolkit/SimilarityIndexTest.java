@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+public class SimilarityIndexTest {
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @AfterClass
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  private static long[] randomFingerprint(Random random, int words, int bits) {
+    long[] fingerprint = new long[words];
+    for (int i = 0; i < bits; i++) {
+      int bit = random.nextInt(words * 64);
+      fingerprint[bit / 64] |= 1L << (bit % 64);
+    }
+    return fingerprint;
+  }
+
+  private static List<SimilarityHit> bruteForce(List<long[]> entries, long[] query, int k) {
+    List<SimilarityHit> hits = new ArrayList<SimilarityHit>();
+    int queryCount = FingerprintGenerator.cardinality(query);
+    for (int id = 0; id < entries.size(); id++) {
+      long[] fingerprint = entries.get(id);
+      int count = FingerprintGenerator.cardinality(fingerprint);
+      int common = 0;
+      for (int i = 0; i < query.length; i++) {
+        common += Long.bitCount(fingerprint[i] & query[i]);
+      }
+      int union = count + queryCount - common;
+      hits.add(new SimilarityHit(id, union == 0 ? 1 : (double) common / union));
+    }
+    Collections.sort(hits, new Comparator<SimilarityHit>() {
+      @Override
+      public int compare(SimilarityHit a, SimilarityHit b) {
+        int result = Double.compare(b.getSimilarity(), a.getSimilarity());
+        return result != 0 ? result : Long.compare(a.getId(), b.getId());
+      }
+    });
+    return hits.subList(0, Math.min(k, hits.size()));
+  }
+
+  @Test
+  public void testTopKMatchesBruteForce() {
+    Random random = new Random(42);
+    List<long[]> entries = new ArrayList<long[]>();
+    try (SimilarityIndex index = new SimilarityIndex(pool, 128, 7)) {
+      for (int id = 0; id < 70000; id++) {
+        long[] fingerprint = randomFingerprint(random, 2, random.nextInt(12));
+        entries.add(fingerprint);
+        index.add(id, fingerprint);
+      }
+      for (int query = 0; query < 5; query++) {
+        long[] fingerprint = randomFingerprint(random, 2, 6);
+        for (int k : new int[] {1, 10, 200}) {
+          assertEquals(index.search(fingerprint, k), bruteForce(entries, fingerprint, k), "k=" + k);
+        }
+      }
+      assertEquals(index.search(new long[2], 3), bruteForce(entries, new long[2], 3));
+    }
+  }
+
+  @Test
+  public void testKLargerThanIndex() {
+    Random random = new Random(7);
+    List<long[]> entries = new ArrayList<long[]>();
+    try (SimilarityIndex index = new SimilarityIndex(pool, 64, 7)) {
+      for (int id = 0; id < 20; id++) {
+        long[] fingerprint = randomFingerprint(random, 1, 5);
+        entries.add(fingerprint);
+        index.add(id, fingerprint);
+      }
+      long[] query = randomFingerprint(random, 1, 5);
+      assertEquals(index.search(query, 1000), bruteForce(entries, query, 1000));
+      assertEquals(index.search(query, 0).size(), 0);
+    }
+  }
+
+  @Test
+  public void testLargeFingerprints() {
+    Random random = new Random(3);
+    int words = (1 << 19) / 64;
+    List<long[]> entries = new ArrayList<long[]>();
+    try (SimilarityIndex index = new SimilarityIndex(pool, 1 << 19, 7)) {
+      for (int id = 0; id < 300; id++) {
+        long[] fingerprint = randomFingerprint(random, words, 50);
+        entries.add(fingerprint);
+        index.add(id, fingerprint);
+      }
+      assertEquals(index.size(), 300);
+      List<SimilarityHit> hits = index.search(entries.get(299), 5);
+      assertEquals(hits, bruteForce(entries, entries.get(299), 5));
+      assertEquals(hits.get(0).getId(), 299);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testClosedIndex() {
+    SimilarityIndex index = new SimilarityIndex(pool, 64, 7);
+    index.add(1, new long[] {3});
+    index.close();
+    index.close();
+    assertEquals(index.size(), 0);
+    index.search(new long[] {3}, 1);
+  }
+
+}
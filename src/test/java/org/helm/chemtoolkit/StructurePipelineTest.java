@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class StructurePipelineTest {
+
+  private static final String SIMPLE_MANIPULATOR = "org.helm.chemtoolkit.simple.SimpleManipulator";
+
+  private ExecutorService executor;
+
+  private StructurePipeline pipeline;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(2);
+    pipeline = new StructurePipeline(ManipulatorFactory.buildPool(SIMPLE_MANIPULATOR, 2), executor, 2);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRunKeepsInputOrder() throws Exception {
+    StringWriter output = new StringWriter();
+    StructurePipeline.Result result = pipeline.run(reader("CCO\nC1CC\n\nOCC\nC(C)O\n"), StructurePipeline.canonicalize(),
+        new StructureWriter(output, StType.SMILES));
+    assertEquals(result.getWrittenCount(), 3);
+    assertEquals(result.getFailureCount(), 1);
+    String[] lines = output.toString().split("\n");
+    assertEquals(lines.length, 3);
+    assertEquals(lines[1], lines[0]);
+    assertEquals(lines[2], lines[0]);
+  }
+
+  @Test
+  public void testResultsAreIndependentPerRun() throws Exception {
+    StructurePipeline.Result first = pipeline.run(reader("C1CC\nC1CC\n"), StructurePipeline.canonicalize(),
+        new StructureWriter(new StringWriter(), StType.SMILES));
+    StructurePipeline.Result second = pipeline.run(reader("CC\n"), StructurePipeline.canonicalize(),
+        new StructureWriter(new StringWriter(), StType.SMILES));
+    assertEquals(first.getFailureCount(), 2);
+    assertEquals(second.getFailureCount(), 0);
+    assertEquals(second.getWrittenCount(), 1);
+  }
+
+  @Test(timeOut = 10000)
+  public void testReaderRuntimeExceptionIsRethrown() throws Exception {
+    StructureReader reader = new StructureReader(new StringReader("CC\nCCC\nCCCC\nCCCCC\n"), StType.SMILES) {
+      @Override
+      public String next() throws IOException {
+        if (getRecordCount() == 3) {
+          throw new IllegalStateException("broken reader");
+        }
+        return super.next();
+      }
+    };
+    StringWriter output = new StringWriter();
+    try {
+      pipeline.run(reader, StructurePipeline.canonicalize(), new StructureWriter(output, StType.SMILES));
+      fail("reader error expected");
+    } catch (IllegalStateException e) {
+      assertEquals(e.getMessage(), "broken reader");
+    }
+    assertEquals(output.toString().split("\n").length, 3);
+  }
+
+  @Test(timeOut = 10000)
+  public void testRejectedSubmitIsRethrown() throws Exception {
+    executor.shutdown();
+    try {
+      pipeline.run(reader("CC\n"), StructurePipeline.canonicalize(),
+          new StructureWriter(new StringWriter(), StType.SMILES));
+      fail("rejected execution expected");
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+  }
+
+  @Test(timeOut = 10000)
+  public void testWriterErrorStopsThePipeline() throws Exception {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      input.append("CCO\n");
+    }
+    StructureWriter writer = new StructureWriter(new StringWriter(), StType.SMILES) {
+      @Override
+      public void write(String record) throws IOException {
+        throw new IOException("disk full");
+      }
+    };
+    try {
+      pipeline.run(reader(input.toString()), StructurePipeline.canonicalize(), writer);
+      fail("writer error expected");
+    } catch (IOException e) {
+      assertEquals(e.getMessage(), "disk full");
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  private static StructureReader reader(String records) {
+    return new StructureReader(new StringReader(records), StType.SMILES);
+  }
+
+}
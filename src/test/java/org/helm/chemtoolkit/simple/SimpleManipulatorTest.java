@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * Copyright C 2015, The Pistoia Alliance
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.chemtoolkit.simple;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.helm.chemtoolkit.AbstractChemistryManipulator;
+import org.helm.chemtoolkit.AbstractChemistryManipulator.StType;
+import org.helm.chemtoolkit.AbstractMolecule;
+import org.helm.chemtoolkit.AbstractMolecule.Flag;
+import org.helm.chemtoolkit.AssemblyContext;
+import org.helm.chemtoolkit.AssemblyPlan;
+import org.helm.chemtoolkit.Attachment;
+import org.helm.chemtoolkit.AttachmentList;
+import org.helm.chemtoolkit.CTKException;
+import org.helm.chemtoolkit.IAtomBase;
+import org.helm.chemtoolkit.InstrumentedChemistryManipulator;
+import org.helm.chemtoolkit.ManipulatorListener;
+import org.helm.chemtoolkit.MoleculeInfo;
+import org.helm.chemtoolkit.PeriodicTable;
+import org.testng.annotations.Test;
+
+public class SimpleManipulatorTest {
+
+  private final SimpleManipulator manipulator = new SimpleManipulator();
+
+  private void assertSameCanonical(String... smiles) throws Exception {
+    String expected = manipulator.canonicalize(smiles[0]);
+    for (String s : smiles) {
+      String canonical = manipulator.canonicalize(s);
+      assertEquals(canonical, expected, s);
+      assertEquals(manipulator.canonicalize(canonical), canonical, "not idempotent for " + s);
+    }
+  }
+
+  @Test
+  public void testCanonicalizeIgnoresAtomOrder() throws Exception {
+    assertSameCanonical("OC(=O)C(N)C", "CC(N)C(O)=O", "NC(C)C(=O)O");
+    assertSameCanonical("C[C@H](N)C(=O)O", "N[C@@H](C)C(=O)O", "OC(=O)[C@H](C)N");
+    assertNotEquals(manipulator.canonicalize("C[C@H](N)C(=O)O"), manipulator.canonicalize("C[C@@H](N)C(=O)O"));
+  }
+
+  @Test
+  public void testCanonicalizePerceivesAromaticity() throws Exception {
+    assertSameCanonical("c1ccccc1O", "OC1=CC=CC=C1", "C1=CC(O)=CC=C1");
+    assertSameCanonical("c1ccc2ccccc2c1", "C1=CC=C2C=CC=CC2=C1");
+    assertSameCanonical("c1cc[nH]c1", "C1=CNC=C1");
+    assertSameCanonical("O=c1cccc[nH]1", "O=C1C=CC=CN1");
+    assertEquals(manipulator.canonicalize("C1=CC=CC=C1"), "c1ccccc1");
+    assertFalse(manipulator.canonicalize("C1=CCCC=C1").contains("c"));
+  }
+
+  @Test
+  public void testCanonicalizeMirrorWrittenAchiralStructure() throws Exception {
+    assertSameCanonical("C[C@H]1CC[C@@H](C)CC1", "C[C@@H]1CC[C@H](C)CC1");
+    assertSameCanonical("C[C@H]1CC[C@H](C)CC1", "C[C@@H]1CC[C@@H](C)CC1");
+    assertNotEquals(manipulator.canonicalize("C[C@H]1CC[C@@H](C)CC1"), manipulator.canonicalize(
+        "C[C@H]1CC[C@H](C)CC1"));
+  }
+
+  @Test
+  public void testCanonicalizeKeepsDoubleBondStereo() throws Exception {
+    assertSameCanonical("F/C=C/F", "F\\C=C\\F", "C(\\F)=C/F");
+    assertSameCanonical("F/C=C\\F", "F\\C=C/F", "C(/F)=C/F");
+    assertNotEquals(manipulator.canonicalize("F/C=C/F"), manipulator.canonicalize("F/C=C\\F"));
+    assertTrue(manipulator.canonicalize("F/C=C/F").contains("/"));
+    assertSameCanonical("C/C=C/CC/C=C\\C", "C/C=C\\CC/C=C/C");
+  }
+
+  @Test
+  public void testMergeKeepsDoubleBondStereoAtRgroup() throws Exception {
+    AbstractMolecule first = manipulator.getMolecule("[*:1]/C=C/C", null);
+    AbstractMolecule second = manipulator.getMolecule("F[*:1]", null);
+    AbstractMolecule merged = manipulator.merge(first, first.getRGroupAtom(1, true), second, second.getRGroupAtom(1,
+        true));
+    String smiles = manipulator.convertMolecule(merged, StType.SMILES);
+    assertEquals(manipulator.canonicalize(smiles), manipulator.canonicalize("F/C=C/C"));
+  }
+
+  @Test
+  public void testMergeWithContextBindsAtoms() throws Exception {
+    AssemblyContext context = new AssemblyContext();
+    AbstractChemistryManipulator instrumented = new InstrumentedChemistryManipulator(manipulator,
+        ManipulatorListener.NONE);
+    for (AbstractChemistryManipulator m : new AbstractChemistryManipulator[] {manipulator, instrumented}) {
+      for (int i = 0; i < 2; i++) {
+        AbstractMolecule first = m.getMolecule("CC[*:2]", null);
+        AbstractMolecule second = m.getMolecule("[*:1]NC", null);
+        AbstractMolecule merged = m.merge(first, first.getRGroupAtom(2, true), second, second.getRGroupAtom(1, true),
+            context);
+        assertEquals(manipulator.canonicalize(m.convertMolecule(merged, StType.SMILES)), manipulator.canonicalize(
+            "CCNC"));
+      }
+    }
+  }
+
+  @Test
+  public void testKeptMoleculeInfo() throws Exception {
+    final int[] calculations = new int[1];
+    SimpleManipulator counting = new SimpleManipulator() {
+      @Override
+      public MoleculeInfo getMoleculeInfo(AbstractMolecule container) throws CTKException {
+        calculations[0]++;
+        return super.getMoleculeInfo(container);
+      }
+    };
+    AbstractMolecule first = counting.getMolecule("[*:1]CC", null);
+    AbstractMolecule second = counting.getMolecule("[*:1]N", null);
+    counting.getIncrementalMoleculeInfo(first);
+    AbstractMolecule merged = counting.merge(first, first.getRGroupAtom(1, true), second, second.getRGroupAtom(1,
+        true));
+    assertEquals(calculations[0], 2);
+    assertEquals(counting.getIncrementalMoleculeInfo(merged).getMolecularFormula(), "C2H7N");
+    assertEquals(calculations[0], 2);
+
+    AbstractMolecule molecule = counting.getMolecule("[*:1]CC[*:2]", null);
+    counting.getIncrementalMoleculeInfo(molecule);
+    molecule.removeINode(molecule.getRGroupAtom(2, true));
+    assertEquals(counting.getIncrementalMoleculeInfo(molecule).getMolecularFormula(), "C2H5");
+    assertEquals(calculations[0], 4);
+  }
+
+  @Test
+  public void testChangingCloneKeepsTemplate() throws Exception {
+    AbstractMolecule template = monomer("[*:1]N[C@@H](C)C([*:2])=O", "R1", "R2");
+    String templateSmiles = manipulator.convertMolecule(template, StType.SMILES);
+    IAtomBase r1 = template.getRGroupAtom(1, true);
+    IAtomBase r2 = template.getRGroupAtom(2, true);
+
+    AbstractMolecule clone = template.cloneMolecule();
+    clone.changeAtomLabel(1, 5);
+    AbstractMolecule other = manipulator.getMolecule("[*:1]O", null);
+    clone = manipulator.merge(clone, clone.getRGroupAtom(2, true), other, other.getRGroupAtom(1, true));
+    clone.removeINode(clone.getRGroupAtom(5, true));
+    assertEquals(manipulator.canonicalize(manipulator.convertMolecule(clone, StType.SMILES)), manipulator
+        .canonicalize("N[C@@H](C)C(O)=O"));
+
+    assertEquals(manipulator.convertMolecule(template, StType.SMILES), templateSmiles);
+    assertSame(template.getRGroupAtom(1, true), r1);
+    assertSame(template.getRGroupAtom(2, true), r2);
+    assertNotEquals(r1.getFlag(), Flag.PROCESSED);
+    assertEquals(template.getRgroups().keySet(), new HashSet<String>(Arrays.asList("R1", "R2")));
+    assertEquals(template.getIAtomArray().size(), 7);
+    assertEquals(template.getAttachments().size(), 2);
+    assertEquals(template.getAttachments().peek(1).getLabel(), "R2");
+  }
+
+  @Test
+  public void testAssembleRenumbersAttachments() throws Exception {
+    AssemblyPlan plan = new AssemblyPlan();
+    AbstractMolecule first = monomer("[*:1]N[C@@H](C)C([*:2])=O", "R1", "R2");
+    AbstractMolecule second = monomer("[*:1]NCC([*:2])=O", "R1", "R2");
+    AbstractMolecule third = monomer("[*:1]N[C@@H](CO)C([*:2])=O", "R1", "R2");
+    plan.addMonomer(first);
+    plan.addMonomer(second);
+    plan.addMonomer(third);
+    plan.connect(0, 2, 1, 1);
+    plan.connect(1, 2, 2, 1);
+    AbstractMolecule result = manipulator.assemble(plan);
+    assertSame(result, first);
+    assertEquals(manipulator.canonicalize(manipulator.convertMolecule(result, StType.SMILES)), manipulator
+        .canonicalize("[*:1]N[C@@H](C)C(=O)NCC(=O)N[C@@H](CO)C([*:2])=O"));
+    AttachmentList attachments = result.getAttachments();
+    assertEquals(attachments.size(), 2);
+    assertEquals(attachments.peek(0).getLabel(), "R1");
+    assertEquals(attachments.peek(1).getLabel(), "R2");
+    assertEquals(attachments.peek(1).getSmiles(), "[*:2][H] |$_R2;$|");
+    assertNotNull(result.getRGroupAtom(2, true));
+  }
+
+  @Test
+  public void testAssembleRingClosure() throws Exception {
+    AssemblyPlan plan = new AssemblyPlan();
+    plan.addMonomer(monomer("[*:1]NCC([*:2])=O", "R1", "R2"));
+    plan.addMonomer(monomer("[*:1]NCC([*:2])=O", "R1", "R2"));
+    plan.connect(0, 2, 1, 1);
+    plan.connect(1, 2, 0, 1);
+    AbstractMolecule result = manipulator.assemble(plan);
+    assertEquals(manipulator.canonicalize(manipulator.convertMolecule(result, StType.SMILES)), manipulator
+        .canonicalize("O=C1CNC(=O)CN1"));
+    assertEquals(result.getAttachments().size(), 0);
+  }
+
+  @Test
+  public void testAssembleKeepsStereoAtRgroup() throws Exception {
+    AssemblyPlan plan = new AssemblyPlan();
+    plan.addMonomer(manipulator.getMolecule("[*:1]/C=C/C", null));
+    plan.addMonomer(manipulator.getMolecule("F[*:1]", null));
+    plan.connect(0, 1, 1, 1);
+    AbstractMolecule result = manipulator.assemble(plan);
+    assertEquals(manipulator.canonicalize(manipulator.convertMolecule(result, StType.SMILES)), manipulator
+        .canonicalize("F/C=C/C"));
+  }
+
+  @Test
+  public void testAssembleKeptMoleculeInfo() throws Exception {
+    AssemblyPlan plan = new AssemblyPlan();
+    AbstractMolecule first = manipulator.getMolecule("[*:1]CC[*:2]", null);
+    AbstractMolecule second = manipulator.getMolecule("[*:1]N", null);
+    manipulator.getIncrementalMoleculeInfo(first);
+    manipulator.getIncrementalMoleculeInfo(second);
+    plan.addMonomer(first);
+    plan.addMonomer(second);
+    plan.connect(0, 1, 1, 1);
+    AbstractMolecule result = manipulator.assemble(plan);
+    MoleculeInfo expected = manipulator.getMoleculeInfo(manipulator.getMolecule("CCN", null));
+    MoleculeInfo info = manipulator.getIncrementalMoleculeInfo(result);
+    assertEquals(info.getMolecularFormula(), "C2H6N");
+    assertEquals(info.getMolecularWeight(), expected.getMolecularWeight()
+        - PeriodicTable.getAtomicWeight(PeriodicTable.HYDROGEN), 1e-6);
+  }
+
+  @Test
+  public void testInvalidAssemblyLeavesMonomersUnchanged() throws Exception {
+    String[] invalid = {"missing", "twice", "stereo"};
+    for (String kind : invalid) {
+      AbstractMolecule first = manipulator.getMolecule("[*:1][C@H](C)C([*:2])=O", null);
+      AbstractMolecule second = manipulator.getMolecule("[*:1]NC[C@H](C)[*:2]", null);
+      String firstSmiles = manipulator.convertMolecule(first, StType.SMILES);
+      String secondSmiles = manipulator.convertMolecule(second, StType.SMILES);
+      AssemblyPlan plan = new AssemblyPlan();
+      plan.addMonomer(first);
+      plan.addMonomer(second);
+      plan.connect(0, 2, 1, 1);
+      if (kind.equals("missing")) {
+        plan.connect(1, 2, 0, 3);
+      } else if (kind.equals("twice")) {
+        plan.connect(1, 2, 0, 2);
+      } else {
+        plan.connect(1, 2, 0, 1);
+      }
+      try {
+        manipulator.assemble(plan);
+        fail(kind);
+      } catch (CTKException e) {
+        assertEquals(manipulator.convertMolecule(first, StType.SMILES), firstSmiles, kind);
+        assertEquals(manipulator.convertMolecule(second, StType.SMILES), secondSmiles, kind);
+      }
+    }
+  }
+
+  private AbstractMolecule monomer(String smiles, String... labels) throws Exception {
+    AttachmentList attachments = new AttachmentList();
+    for (String label : labels) {
+      attachments.add(new Attachment(label + "-H", label, "H", "[*:" + label.substring(1) + "][H] |$_" + label
+          + ";$|"));
+    }
+    return manipulator.getMolecule(smiles, attachments);
+  }
+
+  @Test
+  public void testMergeWithUnparsableMoleculeInfo() throws Exception {
+    SimpleManipulator charged = new SimpleManipulator() {
+      @Override
+      public MoleculeInfo getMoleculeInfo(AbstractMolecule container) throws CTKException {
+        MoleculeInfo info = super.getMoleculeInfo(container);
+        info.setMolecularFormula(info.getMolecularFormula() + "-");
+        return info;
+      }
+    };
+    AbstractMolecule first = charged.getMolecule("[*:1]CC(=O)[O-]", null);
+    AbstractMolecule second = charged.getMolecule("[*:1]N", null);
+    charged.getIncrementalMoleculeInfo(first);
+    AbstractMolecule merged = charged.merge(first, first.getRGroupAtom(1, true), second, second.getRGroupAtom(1,
+        true));
+    assertEquals(charged.getIncrementalMoleculeInfo(merged).getMolecularFormula(), "C2H4NO2-");
+  }
+
+  @Test
+  public void testMoleculeInfoUsesIsotopeMasses() throws Exception {
+    MoleculeInfo natural = manipulator.getMoleculeInfo(manipulator.getMolecule("C", null));
+    MoleculeInfo labeled = manipulator.getMoleculeInfo(manipulator.getMolecule("[13CH4]", null));
+    assertEquals(labeled.getMolecularFormula(), "CH4");
+    assertEquals(labeled.getExactMass(), 17.0347, 1e-4);
+    assertEquals(labeled.getExactMass() - natural.getExactMass(), 1.0034, 1e-4);
+
+    MoleculeInfo deuterated = manipulator.getMoleculeInfo(manipulator.getMolecule("[2H]C([2H])([2H])O", null));
+    assertEquals(deuterated.getMolecularFormula(), "CH4O");
+    assertEquals(deuterated.getExactMass(), 35.0450, 1e-4);
+
+    for (String smiles : new String[] {"[13CH4]", "[2H]C([2H])([2H])O", "[13C@H](N)(C)C(=O)O", "[18OH2]"}) {
+      MoleculeInfo scanned = manipulator.getSmilesMoleculeInfo(smiles);
+      MoleculeInfo built = manipulator.getMoleculeInfo(manipulator.getMolecule(smiles, null));
+      assertEquals(scanned.getMolecularFormula(), built.getMolecularFormula(), smiles);
+      assertEquals(scanned.getMolecularWeight(), built.getMolecularWeight(), 1e-6, smiles);
+      assertEquals(scanned.getExactMass(), built.getExactMass(), 1e-6, smiles);
+    }
+  }
+
+  @Test
+  public void testSmilesMoleculeInfoIgnoresExtension() throws Exception {
+    MoleculeInfo plain = manipulator.getSmilesMoleculeInfo("[*]CC[*]");
+    for (String smiles : new String[] {"[*]CC[*]|$_R1;;;_R2$|", "[*]CC[*] |$_R1;;;_R2$|"}) {
+      MoleculeInfo info = manipulator.getSmilesMoleculeInfo(smiles);
+      assertEquals(info.getMolecularFormula(), plain.getMolecularFormula(), smiles);
+      assertEquals(info.getMolecularWeight(), plain.getMolecularWeight(), 1e-6, smiles);
+    }
+  }
+
+  @Test
+  public void testValidateSmiles() {
+    assertTrue(manipulator.validateSMILES("CC(=O)O"));
+    assertFalse(manipulator.validateSMILES("CC(=O"));
+    assertFalse(manipulator.validateSMILES("C1CC"));
+  }
+
+  @Test
+  public void testConvertExtendedSmiles() {
+    assertEquals(manipulator.convertExtendedSmiles("[*]N[C@@H](C)C([*])=O |$_R1;;;;;_R2;$|"),
+        "[*:1]N[C@@H](C)C([*:2])=O ");
+    assertEquals(manipulator.convertExtendedSmiles("CC(=O)O"), "CC(=O)O");
+  }
+
+}